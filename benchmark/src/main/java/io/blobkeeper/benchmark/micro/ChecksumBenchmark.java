@@ -0,0 +1,99 @@
+package io.blobkeeper.benchmark.micro;
+
+/*
+ * Copyright (C) 2016 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import io.blobkeeper.common.util.ChecksumType;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+
+/**
+ * Checksums of the typical file sizes: thumbs, images and large files
+ */
+@BenchmarkMode(Mode.AverageTime)
+@State(Scope.Benchmark)
+@Fork(3)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 10, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 10, timeUnit = TimeUnit.SECONDS)
+public class ChecksumBenchmark {
+
+    @Param({"4096", "65536", "524288", "4194304"})
+    public int size;
+
+    private ByteBuffer direct;
+    private ByteBuffer heap;
+
+    @Setup
+    public void setup() {
+        byte[] data = new byte[size];
+        new Random(42).nextBytes(data);
+
+        heap = ByteBuffer.wrap(data);
+        direct = ByteBuffer.allocateDirect(size);
+        direct.put(data);
+        direct.flip();
+    }
+
+    @Benchmark
+    public long crc32Copy() {
+        // the previous way: the direct buffer is copied to the heap
+        byte[] data = new byte[direct.remaining()];
+        direct.duplicate().get(data);
+
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        return crc.getValue();
+    }
+
+    @Benchmark
+    public long crc32Direct() {
+        return ChecksumType.CRC32.getValue(direct);
+    }
+
+    @Benchmark
+    public long crc32cDirect() {
+        return ChecksumType.CRC32C.getValue(direct);
+    }
+
+    @Benchmark
+    public long crc32cHeap() {
+        return ChecksumType.CRC32C.getValue(heap);
+    }
+
+    @Benchmark
+    public long crc32cChunked() {
+        // a file is hashed by the write buffer chunks
+        Checksum checksum = ChecksumType.CRC32C.create();
+        ByteBuffer data = direct.duplicate();
+        int chunk = 8192;
+        while (data.hasRemaining()) {
+            ByteBuffer slice = data.slice();
+            slice.limit(Math.min(chunk, slice.remaining()));
+            ChecksumType.CRC32C.update(checksum, slice);
+            data.position(data.position() + slice.limit());
+        }
+        return checksum.getValue();
+    }
+}
@@ -30,6 +30,8 @@ CLASS=io.blobkeeper.server.BlobKeeperServerApp
         -errfile $BASE_PATH/log/error.log \
         -Djgroups.bind_addr=$BIND_ADDRESS \
         -Djava.net.preferIPv4Stack=true \
+        -XX:+IgnoreUnrecognizedVMOptions \
+        --add-opens=java.base/java.io=ALL-UNNAMED \
         -DconfigFile=config/node1.properties
         -Dcom.sun.management.jmxremote \
         -Dcom.sun.management.jmxremote.authenticate=false \
@@ -19,6 +19,7 @@ package io.blobkeeper.client.service;
  * limitations under the License.
  */
 
+import com.google.common.collect.Multimap;
 import com.google.common.util.concurrent.Service;
 import io.blobkeeper.common.domain.api.*;
 import org.asynchttpclient.ListenableFuture;
@@ -33,6 +34,13 @@ public interface BlobKeeperClient extends Service {
 
     Response getFile(long id, int type, String authToken);
 
+    /**
+     * Gets blobs of the id/type pairs with a single multipart/mixed response
+     */
+    Response getFiles(@NotNull Multimap<Long, Integer> files);
+
+    Response getFiles(@NotNull Multimap<Long, Integer> files, String authToken);
+
     Response addFile(@NotNull File file, @NotNull Map<String, String> headers);
 
     Response addFile(long id, int type, @NotNull File file, @NotNull Map<String, String> headers);
@@ -41,6 +49,13 @@ public interface BlobKeeperClient extends Service {
 
     ListenableFuture<Response> deleteFileAsync(long id, @NotNull String apiToken);
 
+    /**
+     * Deletes all types of the ids with a single request, results are in the order of the ids
+     */
+    Response deleteFiles(@NotNull BulkFileRequest request);
+
+    Response restoreFiles(@NotNull BulkFileRequest request);
+
     Response isMaster();
 
     Response setMaster(@NotNull SetMasterApiRequest request);
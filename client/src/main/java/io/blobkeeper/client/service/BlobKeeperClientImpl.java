@@ -20,6 +20,7 @@ package io.blobkeeper.client.service;
  */
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.collect.Multimap;
 import com.google.common.util.concurrent.AbstractService;
 import io.blobkeeper.common.domain.api.*;
 import org.asynchttpclient.*;
@@ -38,6 +39,7 @@ import java.util.concurrent.ExecutionException;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static io.blobkeeper.common.util.MetadataUtils.AUTH_TOKEN_HEADER;
+import static java.util.stream.Collectors.joining;
 
 public class BlobKeeperClientImpl extends AbstractService implements BlobKeeperClient {
     private static final Logger log = LoggerFactory.getLogger(BlobKeeperClientImpl.class);
@@ -87,6 +89,34 @@ public class BlobKeeperClientImpl extends AbstractService implements BlobKeeperC
         }
     }
 
+    @Override
+    public Response getFiles(@NotNull Multimap<Long, Integer> files) {
+        return getFiles(files, null);
+    }
+
+    @Override
+    public Response getFiles(@NotNull Multimap<Long, Integer> files, String authToken) {
+        checkArgument(!files.isEmpty(), "Files are required!");
+
+        String ids = files.entries().stream()
+                .map(file -> file.getKey() + "/" + file.getValue())
+                .collect(joining(","));
+
+        try {
+            BoundRequestBuilder requestBuilder = httpClient.prepareGet(baseUrl + UriType.MULTI_GET.getUri())
+                    .addQueryParam("ids", ids);
+
+            if (authToken != null) {
+                requestBuilder.addHeader(AUTH_TOKEN_HEADER, authToken);
+            }
+
+            return requestBuilder.execute().get();
+        } catch (InterruptedException | ExecutionException e) {
+            log.error("Can't execute query", e);
+            throw new IllegalArgumentException(e);
+        }
+    }
+
     @Override
     public Response addFile(@NotNull File file, @NotNull Map<String, String> headers) {
         BoundRequestBuilder requestBuilder = httpClient.preparePost(baseUrl.toString());
@@ -114,6 +144,18 @@ public class BlobKeeperClientImpl extends AbstractService implements BlobKeeperC
         return httpClient.prepareDelete(baseUrl + "/" + id + "?token=" + apiToken).execute();
     }
 
+    @Override
+    public Response deleteFiles(@NotNull BulkFileRequest request) {
+        BoundRequestBuilder postRequestBuilder = httpClient.preparePost(baseUrl.toString() + UriType.BULK_DELETE.getUri());
+        return executePost(postRequestBuilder, request);
+    }
+
+    @Override
+    public Response restoreFiles(@NotNull BulkFileRequest request) {
+        BoundRequestBuilder postRequestBuilder = httpClient.preparePost(baseUrl.toString() + UriType.BULK_RESTORE.getUri());
+        return executePost(postRequestBuilder, request);
+    }
+
     @Override
     public Response isMaster() {
         try {
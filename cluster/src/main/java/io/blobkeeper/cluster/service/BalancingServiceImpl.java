@@ -24,7 +24,6 @@ import io.blobkeeper.file.configuration.FileConfiguration;
 import io.blobkeeper.file.service.DiskService;
 import io.blobkeeper.file.service.PartitionService;
 import io.blobkeeper.index.domain.DiskIndexElt;
-import io.blobkeeper.index.domain.IndexElt;
 import io.blobkeeper.index.domain.Partition;
 import io.blobkeeper.index.service.IndexService;
 import org.jetbrains.annotations.NotNull;
@@ -33,7 +32,6 @@ import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
-import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 
@@ -96,7 +94,7 @@ public class BalancingServiceImpl implements BalancingService {
                         dst -> {
                             log.info("Update a moved partition index, src {} dst {}", movedPartition, dst);
 
-                            indexService.getListByPartition(movedPartition).forEach(
+                            indexService.getStreamByPartition(movedPartition).forEach(
                                     file -> indexService.move(file, new DiskIndexElt(dst, file.getOffset(), file.getLength()))
                             );
 
@@ -135,9 +133,7 @@ public class BalancingServiceImpl implements BalancingService {
         try {
             log.info("Partition {} {} is going to be deleted, state = DATA_MOVED", partition.getDisk(), partition.getId());
 
-            List<IndexElt> elts = indexService.getLiveListByPartition(partition);
-
-            if (elts.isEmpty()) {
+            if (!indexService.getLiveStreamByPartition(partition).findAny().isPresent()) {
                 log.info("No live elements are left in the partition {}", partition);
 
                 if (!trySetDeletedState(partition)) {
@@ -23,7 +23,14 @@ import com.google.inject.ImplementedBy;
 import io.blobkeeper.index.domain.CacheKey;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.Collection;
+
 @ImplementedBy(ClusterMembershipClientImpl.class)
 public interface ClusterMembershipClient {
     void invalidateCache(@NotNull CacheKey cacheKey);
+
+    /**
+     * The keys are sent with a single message per node
+     */
+    void invalidateCache(@NotNull Collection<CacheKey> cacheKeys);
 }
@@ -33,6 +33,9 @@ import org.slf4j.LoggerFactory;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Optional;
 
 import static com.google.common.base.Preconditions.checkNotNull;
@@ -53,25 +56,39 @@ public class ClusterMembershipClientImpl implements ClusterMembershipClient {
             log.trace("Invalidate cache for {}", cacheKey);
         }
 
+        sendToSlaves(cacheKey);
+    }
+
+    @Override
+    public void invalidateCache(@NotNull Collection<CacheKey> cacheKeys) {
+        if (cacheKeys.isEmpty()) {
+            return;
+        }
+
+        log.trace("Invalidate cache for {} keys", cacheKeys.size());
+
+        sendToSlaves(new ArrayList<>(cacheKeys));
+    }
+
+    private void sendToSlaves(Serializable cacheKeys) {
         Optional<Node> masterNode = membershipService.getMaster();
 
         masterNode.ifPresent(
                 master -> membershipService.getNodes()
                         .stream()
                         .filter(node -> !(node.equals(master) || node.equals(membershipService.getSelfNode())))
-                        .forEach(node -> runAsync(() -> invalidateCache(cacheKey, node.getAddress())))
+                        .forEach(node -> runAsync(() -> invalidateCache(cacheKeys, node.getAddress())))
         );
     }
 
-
-    private void invalidateCache(CacheKey cacheKey, Address dst) {
+    private void invalidateCache(Serializable cacheKeys, Address dst) {
         JChannel channel = membershipService.getMessageChannel();
         log.trace("Invalidate cache packet sending for {}", dst);
         try {
             Message message = createMessage(
                     membershipService.getSelfNode().getAddress(),
                     dst,
-                    cacheKey,
+                    cacheKeys,
                     new CustomMessageHeader(CACHE_INVALIDATE_REQUEST)
             );
 
@@ -33,7 +33,6 @@ import io.blobkeeper.file.service.DiskService;
 import io.blobkeeper.file.service.FileListService;
 import io.blobkeeper.index.domain.CacheKey;
 import io.blobkeeper.index.domain.Partition;
-import io.blobkeeper.index.service.IndexCacheService;
 import io.blobkeeper.index.service.IndexService;
 import io.blobkeeper.index.util.IndexUtils;
 import org.jetbrains.annotations.NotNull;
@@ -54,6 +53,7 @@ import java.io.DataOutputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.lang.reflect.Method;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -131,9 +131,6 @@ public class ClusterMembershipServiceImpl extends ReceiverAdapter implements Clu
     @Inject
     private DiskService diskService;
 
-    @Inject
-    private IndexCacheService indexCacheService;
-
     private final Random random = new Random();
 
     private JChannel channel;
@@ -151,6 +148,14 @@ public class ClusterMembershipServiceImpl extends ReceiverAdapter implements Clu
                     .build()
     );
 
+    // the index is refreshed off the receive thread, the invalidations are applied in order
+    private final ExecutorService cacheInvalidateExecutor = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder()
+                    .setDaemon(true)
+                    .setNameFormat("CacheInvalidator-%d")
+                    .build()
+    );
+
     private static final Map<Short, Method> methods = createConcurrentMap(16);
 
     static {
@@ -598,12 +603,17 @@ public class ClusterMembershipServiceImpl extends ReceiverAdapter implements Clu
                 merkleTreeInfo.setTree(createEmptyTree(indexService.getMinMaxRange(partitionObject), MAX_LEVEL));
                 return merkleTreeInfo;
             } else {
+                file.startScan();
                 merkleTreeInfo.setTree(buildMerkleTree(indexService, file, partitionObject));
                 return merkleTreeInfo;
             }
         } finally {
             if (null != file) {
                 try {
+                    // the active partition is hot
+                    if (!isActivePartition(disk, partition)) {
+                        file.finishScan();
+                    }
                     file.close();
                 } catch (Exception ignored) {
                 }
@@ -612,7 +622,11 @@ public class ClusterMembershipServiceImpl extends ReceiverAdapter implements Clu
     }
 
     public DifferenceInfo _getDifference(int disk, int partition) {
-        MerkleTree expectedTree = indexUtils.buildMerkleTree(new Partition(disk, partition));
+        // the active partition has a live tree
+        MerkleTree expectedTree = diskService.get(disk)
+                .filter(activeDisk -> activeDisk.getActivePartition().getId() == partition)
+                .map(activeDisk -> activeDisk.getDigest().getTree())
+                .orElseGet(() -> indexUtils.buildMerkleTree(new Partition(disk, partition)));
 
         MerkleTreeInfo expected = new MerkleTreeInfo();
         expected.setDisk(disk);
@@ -622,6 +636,12 @@ public class ClusterMembershipServiceImpl extends ReceiverAdapter implements Clu
         return getDifference(expected);
     }
 
+    private boolean isActivePartition(int disk, int partition) {
+        return diskService.get(disk)
+                .filter(activeDisk -> activeDisk.getActivePartition().getId() == partition)
+                .isPresent();
+    }
+
     public void _deletePartitionFile(int disk, int partition) {
         log.info("Delete partition file: {} {}", disk, partition);
 
@@ -711,14 +731,21 @@ public class ClusterMembershipServiceImpl extends ReceiverAdapter implements Clu
     }
 
     private void handleCacheInvalidate(Message message) {
-        try {
-            Object cacheKey = message.getObject();
-            if (cacheKey instanceof CacheKey) {
-                indexCacheService.remove((CacheKey) cacheKey);
+        cacheInvalidateExecutor.execute(() -> {
+            try {
+                Object cacheKey = message.getObject();
+                if (cacheKey instanceof CacheKey) {
+                    indexService.invalidate((CacheKey) cacheKey);
+                } else if (cacheKey instanceof Collection) {
+                    // a bulk delete or restore
+                    for (Object key : (Collection<?>) cacheKey) {
+                        indexService.invalidate((CacheKey) key);
+                    }
+                }
+            } catch (Exception e) {
+                log.error("Can't invalidate cache", e);
             }
-        } catch (Exception e) {
-            log.error("Can't invalidate cache", e);
-        }
+        });
     }
 
     private class RepairTask implements Runnable {
@@ -23,6 +23,7 @@ import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import io.blobkeeper.common.util.ResultWrapper;
 import io.blobkeeper.file.configuration.FileConfiguration;
 import io.blobkeeper.file.domain.StorageFile;
+import io.blobkeeper.file.service.DiskSelectionPolicy;
 import io.blobkeeper.file.service.DiskService;
 import io.blobkeeper.file.service.PartitionService;
 import io.blobkeeper.file.service.WriterTaskQueue;
@@ -37,7 +38,7 @@ import org.slf4j.LoggerFactory;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import java.util.Collection;
-import java.util.List;
+import java.util.Iterator;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -70,6 +71,9 @@ public class CompactionServiceImpl implements CompactionService {
     @Inject
     private WriterTaskQueue compactionQueue;
 
+    @Inject
+    private DiskSelectionPolicy diskSelectionPolicy;
+
     private final AtomicInteger compactions = new AtomicInteger();
     private final AtomicInteger finalizations = new AtomicInteger();
 
@@ -149,6 +153,9 @@ public class CompactionServiceImpl implements CompactionService {
                             if (!partitionService.tryDelete(partition)) {
                                 throw new IllegalStateException();
                             }
+
+                            // nothing is written to the partition anymore
+                            indexService.deleteStats(partition);
                         } catch (Exception e) {
                             log.error("Can't delete partition {}", partition, e);
                         }
@@ -210,6 +217,12 @@ public class CompactionServiceImpl implements CompactionService {
                     .filter(partition -> partition.getTree() != null)
                     .map(partition -> immutableEntry(partition, FileUtils.getPercentOfDeleted(fileConfiguration, indexService, partition)))
                     .filter(entry -> entry.getValue() > fileConfiguration.getMinPercent())
+                    // the stats are approximate, a candidate is checked by the stats rebuilt from its index
+                    .map(entry -> {
+                        indexService.rebuildStats(entry.getKey());
+                        return immutableEntry(entry.getKey(), FileUtils.getPercentOfDeleted(fileConfiguration, indexService, entry.getKey()));
+                    })
+                    .filter(entry -> entry.getValue() > fileConfiguration.getMinPercent())
                     .forEach(
                             entry -> {
                                 try {
@@ -246,15 +259,16 @@ public class CompactionServiceImpl implements CompactionService {
         }
 
         private void moveLiveFiles(Partition partition) {
-            List<IndexElt> elts = indexService.getLiveListByPartition(partition);
+            Iterator<IndexElt> elts = indexService.getLiveStreamByPartition(partition).iterator();
 
-            if (elts.isEmpty()) {
+            if (!elts.hasNext()) {
                 log.info("No live elements are left in the partition {}", partition);
                 if (!trySetDeletedState(partition)) {
                     log.warn("The state was changed, actual {}", partitionService.getById(partition.getDisk(), partition.getId()));
                 }
             } else {
-                elts.forEach(elt -> compactionQueue.offer(
+                elts.forEachRemaining(elt -> compactionQueue.offer(
+                        diskSelectionPolicy.select().orElse(partition.getDisk()),
                         new StorageFile.CompactionFileBuilder()
                                 .id(elt.getId())
                                 .type(elt.getType())
@@ -29,11 +29,14 @@ import io.blobkeeper.cluster.util.ReplicationStatistic;
 import io.blobkeeper.common.util.LeafNode;
 import io.blobkeeper.common.util.MerkleTree;
 import io.blobkeeper.file.domain.File;
+import io.blobkeeper.file.domain.RecordHeader;
 import io.blobkeeper.file.domain.ReplicationFile;
+import io.blobkeeper.file.service.DiskService;
 import io.blobkeeper.file.service.FileListService;
 import io.blobkeeper.file.service.PartitionService;
 import io.blobkeeper.file.util.FileUtils;
 import io.blobkeeper.file.util.IndexEltOffsetComparator;
+import io.blobkeeper.index.domain.DiskIndexElt;
 import io.blobkeeper.index.domain.IndexElt;
 import io.blobkeeper.index.domain.Partition;
 import io.blobkeeper.index.service.IndexService;
@@ -56,10 +59,12 @@ import java.util.Optional;
 import static com.google.common.base.Preconditions.checkNotNull;
 import static io.blobkeeper.cluster.domain.Command.FILE;
 import static io.blobkeeper.cluster.util.ClusterUtils.createMessage;
+import static io.blobkeeper.common.util.GuavaCollectors.toImmutableList;
 import static io.blobkeeper.index.domain.PartitionState.NEW;
 import static java.lang.Thread.sleep;
 import static java.util.Collections.sort;
 import static java.util.concurrent.CompletableFuture.runAsync;
+import static java.util.concurrent.CompletableFuture.supplyAsync;
 
 @Singleton
 public class ReplicationClientServiceImpl implements ReplicationClientService {
@@ -86,6 +91,9 @@ public class ReplicationClientServiceImpl implements ReplicationClientService {
     @Inject
     private ReplicationStatistic replicationStatistic;
 
+    @Inject
+    private DiskService diskService;
+
     @Override
     public void replicate(@NotNull ReplicationFile file) {
         if (log.isTraceEnabled()) {
@@ -95,10 +103,24 @@ public class ReplicationClientServiceImpl implements ReplicationClientService {
         Optional<Node> masterNode = membershipService.getMaster();
         checkNotNull(masterNode.isPresent(), "Master node is required!");
 
-        membershipService.getNodes()
+        List<Address> dstNodes = membershipService.getNodes()
                 .stream()
                 .filter(node -> !(node.equals(masterNode.get()) || node.equals(membershipService.getSelfNode())))
-                .forEach(node -> runAsync(() -> replicate(file, node.getAddress())));
+                .map(Node::getAddress)
+                .collect(toImmutableList());
+
+        if (dstNodes.isEmpty()) {
+            return;
+        }
+
+        // read the data once for all nodes
+        supplyAsync(() -> withData(file))
+                .thenAccept(dataFile -> dstNodes.forEach(dst -> runAsync(() -> replicate(dataFile, dst))))
+                .whenComplete((ignored, t) -> {
+                    if (null != t) {
+                        log.error("Can't replicate file {}", file, t);
+                    }
+                });
     }
 
     @Override
@@ -109,7 +131,7 @@ public class ReplicationClientServiceImpl implements ReplicationClientService {
             Message message = createMessage(
                     membershipService.getSelfNode().getAddress(),
                     dst,
-                    file,
+                    withData(file),
                     new CustomMessageHeader(FILE)
             );
 
@@ -155,6 +177,8 @@ public class ReplicationClientServiceImpl implements ReplicationClientService {
             // sort it by offset, to read file consequentially
             sort(elts, new IndexEltOffsetComparator());
 
+            file.startScan();
+
             for (IndexElt elt : elts) {
                 // not in diff
                 if (null == nodes.get(elt.getId()) && !differenceInfo.isCompletelyDifferent()) {
@@ -174,15 +198,12 @@ public class ReplicationClientServiceImpl implements ReplicationClientService {
                     continue;
                 }
 
-                byte[] bufferBytes = new byte[buffer.remaining()];
-                buffer.get(bufferBytes);
-
-                if (bufferBytes.length < elt.getLength()) {
-                    log.error("Can't replicate elt {}", elt);
-                    continue;
-                }
-
-                ReplicationFile replicationFile = new ReplicationFile(elt.getDiskIndexElt(), bufferBytes);
+                // the buffer is read with the exact length, so its array is sent w/o copying
+                ReplicationFile replicationFile = new ReplicationFile(
+                        elt,
+                        buffer.array(),
+                        getHeader(file, elt.getDiskIndexElt())
+                );
                 try {
                     replicate(replicationFile, dst);
                 } catch (ReplicationServiceException e) {
@@ -195,6 +216,11 @@ public class ReplicationClientServiceImpl implements ReplicationClientService {
         } finally {
             if (null != file) {
                 try {
+                    // the active partition is hot
+                    Partition active = partitionService.getActivePartition(partition.getDisk());
+                    if (null == active || active.getId() != partition.getId()) {
+                        file.finishScan();
+                    }
                     file.close();
                 } catch (Exception ignored) {
                 }
@@ -202,6 +228,22 @@ public class ReplicationClientServiceImpl implements ReplicationClientService {
         }
     }
 
+    private ReplicationFile withData(ReplicationFile file) {
+        if (file.hasData()) {
+            return file;
+        }
+
+        DiskIndexElt elt = file.getIndex();
+        File blob = diskService.getFile(elt.getPartition());
+        ByteBuffer buffer = FileUtils.readFile(blob, elt.getOffset(), elt.getLength());
+        return file.withData(buffer.array(), getHeader(blob, elt));
+    }
+
+    private byte[] getHeader(File blob, DiskIndexElt elt) {
+        RecordHeader header = FileUtils.readRecordHeader(blob, elt);
+        return null == header ? null : header.toByteBuffer().array();
+    }
+
     private boolean isReplicationAvailable(Partition partition, DifferenceInfo differenceInfo) {
         return partition.getState() == NEW && (differenceInfo.isCompletelyDifferent() || isExpectedMerkleTree(partition));
     }
@@ -34,7 +34,10 @@ public enum UriType {
     REMOVE_MASTER("/removeMaster"),
     REPAIR("/repair"),
     REFRESH("/refresh"),
-    BALANCE("/balance");
+    BALANCE("/balance"),
+    MULTI_GET("/multi"),
+    BULK_DELETE("/delete"),
+    BULK_RESTORE("/restore");
 
     private String uri;
 
@@ -0,0 +1,132 @@
+package io.blobkeeper.common.util;
+
+/*
+ * Copyright (C) 2016 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.google.common.base.Throwables;
+import org.jetbrains.annotations.NotNull;
+
+import java.lang.invoke.MethodHandle;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+
+import static java.lang.invoke.MethodHandles.publicLookup;
+import static java.lang.invoke.MethodType.methodType;
+
+/**
+ * Checksum algorithm of a file, the id is stored with the index
+ */
+public enum ChecksumType {
+    CRC32(0, 0xEDB88320L, "java.util.zip.CRC32", CRC32.class),
+    // intrinsic since java 9
+    CRC32C(1, 0x82F63B78L, "java.util.zip.CRC32C", Crc32c.class);
+
+    private final int id;
+    private final long polynomial;
+    private final MethodHandle constructor;
+    private final MethodHandle bufferUpdate;
+
+    ChecksumType(int id, long polynomial, String className, Class<? extends Checksum> fallback) {
+        this.id = id;
+        this.polynomial = polynomial;
+
+        Class<? extends Checksum> checksumClass;
+        try {
+            checksumClass = Class.forName(className).asSubclass(Checksum.class);
+        } catch (ClassNotFoundException e) {
+            checksumClass = fallback;
+        }
+
+        try {
+            this.constructor = publicLookup()
+                    .findConstructor(checksumClass, methodType(void.class))
+                    .asType(methodType(Checksum.class));
+
+            this.bufferUpdate = publicLookup()
+                    .findVirtual(checksumClass, "update", methodType(void.class, ByteBuffer.class))
+                    .asType(methodType(void.class, Checksum.class, ByteBuffer.class));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Can't create checksum " + checksumClass, e);
+        }
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    /**
+     * Reversed polynomial, used to combine checksums
+     */
+    public long getPolynomial() {
+        return polynomial;
+    }
+
+    @NotNull
+    public Checksum create() {
+        try {
+            return (Checksum) constructor.invokeExact();
+        } catch (Throwable t) {
+            throw Throwables.propagate(t);
+        }
+    }
+
+    /**
+     * Updates the checksum by the remaining bytes without copying, the position is moved to the limit
+     */
+    public void update(@NotNull Checksum checksum, @NotNull ByteBuffer data) {
+        try {
+            bufferUpdate.invokeExact(checksum, data);
+        } catch (Throwable t) {
+            throw Throwables.propagate(t);
+        }
+    }
+
+    /**
+     * @return checksum of the remaining bytes, the position is not moved
+     */
+    public long getValue(@NotNull ByteBuffer data) {
+        Checksum checksum = create();
+        update(checksum, data.duplicate());
+        return checksum.getValue();
+    }
+
+    public long getValue(@NotNull byte[] data) {
+        Checksum checksum = create();
+        checksum.update(data, 0, data.length);
+        return checksum.getValue();
+    }
+
+    /**
+     * @return checksum of two sequential blocks
+     */
+    public long combine(long crc1, long crc2, long length2) {
+        return CrcUtils.combine(polynomial, crc1, crc2, length2);
+    }
+
+    @NotNull
+    public static ChecksumType fromId(int id) {
+        for (ChecksumType type : values()) {
+            if (type.id == id) {
+                return type;
+            }
+        }
+        throw new IllegalArgumentException("Unknown checksum type " + id);
+    }
+}
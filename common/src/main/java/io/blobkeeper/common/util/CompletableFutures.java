@@ -0,0 +1,63 @@
+package io.blobkeeper.common.util;
+
+/*
+ * Copyright (C) 2015 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.google.common.util.concurrent.ListenableFuture;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Function;
+
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+
+public class CompletableFutures {
+    private CompletableFutures() {
+    }
+
+    /**
+     * The mapper is called by the thread which completes the given future
+     */
+    @NotNull
+    public static <T, R> CompletableFuture<R> toCompletable(
+            @NotNull ListenableFuture<T> future,
+            @NotNull Function<T, R> mapper
+    ) {
+        CompletableFuture<R> result = new CompletableFuture<>();
+        future.addListener(
+                () -> {
+                    try {
+                        result.complete(mapper.apply(future.get()));
+                    } catch (ExecutionException e) {
+                        result.completeExceptionally(e.getCause());
+                    } catch (Exception e) {
+                        result.completeExceptionally(e);
+                    }
+                },
+                directExecutor()
+        );
+        return result;
+    }
+
+    @NotNull
+    public static CompletableFuture<Void> toCompletable(@NotNull ListenableFuture<?> future) {
+        return toCompletable(future, value -> null);
+    }
+}
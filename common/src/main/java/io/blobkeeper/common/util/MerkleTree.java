@@ -205,6 +205,14 @@ public class MerkleTree implements Serializable {
         return root;
     }
 
+    public Range<Long> getFullRange() {
+        return fullRange;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
     private static class TreeTraverser extends BinaryTreeTraverser<HashableNode> {
         @Override
         public com.google.common.base.Optional<HashableNode> leftChild(HashableNode parent) {
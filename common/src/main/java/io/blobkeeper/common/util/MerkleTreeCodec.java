@@ -0,0 +1,124 @@
+package io.blobkeeper.common.util;
+
+/*
+ * Copyright (C) 2015 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.google.common.collect.BoundType;
+import com.google.common.collect.Range;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+/**
+ * Versioned binary format of a merkle tree. The shape of a tree is defined by its range and depth,
+ * so only the leaves are written, the branches are calculated again.
+ * <p>
+ * version, range, depth, calculated flag, leaves count, (hash length, hash, length, blocks)*
+ * <p>
+ * The old java serialized trees are still decoded.
+ */
+public class MerkleTreeCodec {
+    public static final byte VERSION = 1;
+
+    // version, 2 bounds, depth, calculated, leaves
+    private static final int HEADER_SIZE = 1 + 2 * (1 + 8) + 4 + 1 + 4;
+    // hash length, length, blocks
+    private static final int LEAF_SIZE = 4 + 8 + 4;
+
+    private static final int NO_HASH = -1;
+
+    private MerkleTreeCodec() {
+    }
+
+    @NotNull
+    public static byte[] encode(@NotNull MerkleTree tree) {
+        List<LeafNode> leaves = tree.getLeafNodes();
+
+        int size = HEADER_SIZE;
+        for (LeafNode leaf : leaves) {
+            size += LEAF_SIZE + (null == leaf.hash ? 0 : leaf.hash.length);
+        }
+
+        Range<Long> range = tree.getFullRange();
+        ByteBuffer buffer = ByteBuffer.allocate(size)
+                .put(VERSION)
+                .put((byte) range.lowerBoundType().ordinal())
+                .putLong(range.lowerEndpoint())
+                .put((byte) range.upperBoundType().ordinal())
+                .putLong(range.upperEndpoint())
+                .putInt(tree.getMaxDepth())
+                .put((byte) (isCalculated(tree) ? 1 : 0))
+                .putInt(leaves.size());
+
+        for (LeafNode leaf : leaves) {
+            if (null == leaf.hash) {
+                buffer.putInt(NO_HASH);
+            } else {
+                buffer.putInt(leaf.hash.length).put(leaf.hash);
+            }
+            buffer.putLong(leaf.length).putInt(leaf.blocks);
+        }
+
+        return buffer.array();
+    }
+
+    @NotNull
+    public static MerkleTree decode(@NotNull byte[] data) {
+        if (SerializationUtils.isSerialized(data)) {
+            return (MerkleTree) SerializationUtils.deserialize(data);
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        byte version = buffer.get();
+        checkArgument(version == VERSION, "Unknown merkle tree version %s", version);
+
+        BoundType lowerType = BoundType.values()[buffer.get()];
+        long lower = buffer.getLong();
+        BoundType upperType = BoundType.values()[buffer.get()];
+        long upper = buffer.getLong();
+
+        MerkleTree tree = new MerkleTree(Range.range(lower, lowerType, upper, upperType), buffer.getInt());
+        boolean calculated = buffer.get() != 0;
+
+        List<LeafNode> leaves = tree.getLeafNodes();
+        checkArgument(leaves.size() == buffer.getInt(), "Merkle tree leaves mismatch");
+
+        for (LeafNode leaf : leaves) {
+            int hashLength = buffer.getInt();
+            if (hashLength != NO_HASH) {
+                leaf.hash = new byte[hashLength];
+                buffer.get(leaf.hash);
+            }
+            leaf.length = buffer.getLong();
+            leaf.blocks = buffer.getInt();
+        }
+
+        if (calculated) {
+            tree.calculate();
+        }
+        return tree;
+    }
+
+    private static boolean isCalculated(MerkleTree tree) {
+        return tree.getRoot() instanceof BranchNode && null != tree.getRoot().hash;
+    }
+}
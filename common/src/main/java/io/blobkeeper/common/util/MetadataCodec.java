@@ -0,0 +1,419 @@
+package io.blobkeeper.common.util;
+
+/*
+ * Copyright (C) 2015 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.Multimap;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static java.lang.Math.max;
+import static java.util.Collections.unmodifiableMap;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Versioned binary format of the file metadata. Keys are strings, values are strings, lists of strings
+ * and multimaps of strings (the headers), anything else is java serialized.
+ * <p>
+ * version, varint count, (key, tag, value)*
+ * <p>
+ * A decoded map parses only the values which are asked, the old java serialized maps are still decoded.
+ */
+public class MetadataCodec {
+    public static final byte VERSION = 1;
+
+    private static final byte NULL = 0;
+    private static final byte STRING = 1;
+    private static final byte LIST = 2;
+    private static final byte MULTIMAP = 3;
+    private static final byte SERIALIZED = 4;
+
+    private static final int INITIAL_SIZE = 256;
+
+    private static final ThreadLocal<byte[]> buffers = ThreadLocal.withInitial(() -> new byte[INITIAL_SIZE]);
+
+    private MetadataCodec() {
+    }
+
+    /**
+     * Only the result is allocated, a thread local buffer is used for the encoding
+     */
+    @NotNull
+    public static byte[] encode(@NotNull Map<String, Object> metadata) {
+        if (metadata instanceof LazyMetadata) {
+            return ((LazyMetadata) metadata).data;
+        }
+
+        Encoder encoder = new Encoder(buffers.get());
+        encoder.writeByte(VERSION);
+        encoder.writeVarint(metadata.size());
+        for (Map.Entry<String, Object> entry : metadata.entrySet()) {
+            encoder.writeString(entry.getKey());
+            encoder.writeValue(entry.getValue());
+        }
+
+        buffers.set(encoder.buffer);
+        return Arrays.copyOf(encoder.buffer, encoder.position);
+    }
+
+    @NotNull
+    @SuppressWarnings("unchecked")
+    public static Map<String, Object> decode(@NotNull byte[] data) {
+        if (SerializationUtils.isSerialized(data)) {
+            return (Map<String, Object>) SerializationUtils.deserialize(data);
+        }
+
+        if (data[0] != VERSION) {
+            throw new IllegalArgumentException("Unknown metadata version " + data[0]);
+        }
+
+        return new LazyMetadata(data);
+    }
+
+    private static boolean isStrings(Collection<?> values) {
+        for (Object value : values) {
+            if (!(value instanceof String)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static class Encoder {
+        private byte[] buffer;
+        private int position;
+
+        Encoder(byte[] buffer) {
+            this.buffer = buffer;
+        }
+
+        void writeValue(Object value) {
+            if (null == value) {
+                writeByte(NULL);
+            } else if (value instanceof String) {
+                writeByte(STRING);
+                writeString((String) value);
+            } else if (value instanceof List && isStrings((List<?>) value)) {
+                writeByte(LIST);
+                writeStrings((List<?>) value);
+            } else if (value instanceof Multimap
+                    && isStrings(((Multimap<?, ?>) value).keySet())
+                    && isStrings(((Multimap<?, ?>) value).values())) {
+                Map<?, ? extends Collection<?>> values = ((Multimap<?, ?>) value).asMap();
+                writeByte(MULTIMAP);
+                writeVarint(values.size());
+                for (Map.Entry<?, ? extends Collection<?>> entry : values.entrySet()) {
+                    writeString((String) entry.getKey());
+                    writeStrings(entry.getValue());
+                }
+            } else {
+                byte[] serialized = SerializationUtils.serialize(value);
+                writeByte(SERIALIZED);
+                writeVarint(serialized.length);
+                ensure(serialized.length);
+                System.arraycopy(serialized, 0, buffer, position, serialized.length);
+                position += serialized.length;
+            }
+        }
+
+        void writeStrings(Collection<?> values) {
+            writeVarint(values.size());
+            for (Object value : values) {
+                writeString((String) value);
+            }
+        }
+
+        void writeString(String value) {
+            int length = value.length();
+            // a char takes 3 bytes at most, a surrogate pair takes 4
+            ensure(5 + length * 3);
+
+            int start = position;
+            // 1 byte length is reserved for the short strings
+            position += length < 43 ? 1 : 5;
+
+            for (int i = 0; i < length; i++) {
+                char c = value.charAt(i);
+                if (c < 0x80) {
+                    buffer[position++] = (byte) c;
+                } else if (c < 0x800) {
+                    buffer[position++] = (byte) (0xC0 | (c >>> 6));
+                    buffer[position++] = (byte) (0x80 | (c & 0x3F));
+                } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                    int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                    buffer[position++] = (byte) (0xF0 | (codePoint >>> 18));
+                    buffer[position++] = (byte) (0x80 | ((codePoint >>> 12) & 0x3F));
+                    buffer[position++] = (byte) (0x80 | ((codePoint >>> 6) & 0x3F));
+                    buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+                } else if (Character.isSurrogate(c)) {
+                    // unpaired surrogate, as String.getBytes does
+                    buffer[position++] = '?';
+                } else {
+                    buffer[position++] = (byte) (0xE0 | (c >>> 12));
+                    buffer[position++] = (byte) (0x80 | ((c >>> 6) & 0x3F));
+                    buffer[position++] = (byte) (0x80 | (c & 0x3F));
+                }
+            }
+
+            int encoded = position - start - (length < 43 ? 1 : 5);
+            if (length < 43) {
+                buffer[start] = (byte) encoded;
+            } else {
+                // a padded varint, so the bytes are not shifted
+                for (int i = 0; i < 4; i++) {
+                    buffer[start + i] = (byte) (0x80 | ((encoded >>> (7 * i)) & 0x7F));
+                }
+                buffer[start + 4] = (byte) (encoded >>> 28);
+            }
+        }
+
+        void writeVarint(int value) {
+            ensure(5);
+            while ((value & ~0x7F) != 0) {
+                buffer[position++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buffer[position++] = (byte) value;
+        }
+
+        void writeByte(byte value) {
+            ensure(1);
+            buffer[position++] = value;
+        }
+
+        private void ensure(int length) {
+            if (position + length > buffer.length) {
+                buffer = Arrays.copyOf(buffer, max(buffer.length * 2, position + length));
+            }
+        }
+    }
+
+    private static class Decoder {
+        private final byte[] data;
+        private int position;
+
+        Decoder(byte[] data) {
+            this.data = data;
+            // skip the version
+            this.position = 1;
+        }
+
+        int readVarint() {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = data[position++];
+                value |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return value;
+                }
+            }
+        }
+
+        String readString() {
+            int length = readVarint();
+            String value = new String(data, position, length, UTF_8);
+            position += length;
+            return value;
+        }
+
+        boolean isString(byte[] expected) {
+            int length = readVarint();
+            int start = position;
+            position += length;
+
+            if (length != expected.length) {
+                return false;
+            }
+
+            for (int i = 0; i < length; i++) {
+                if (data[start + i] != expected[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        List<String> readStrings() {
+            int size = readVarint();
+            ImmutableList.Builder<String> values = ImmutableList.builder();
+            for (int i = 0; i < size; i++) {
+                values.add(readString());
+            }
+            return values.build();
+        }
+
+        Object readValue() {
+            byte tag = data[position++];
+            switch (tag) {
+                case NULL:
+                    return null;
+                case STRING:
+                    return readString();
+                case LIST:
+                    return readStrings();
+                case MULTIMAP:
+                    int size = readVarint();
+                    ImmutableListMultimap.Builder<String, String> values = ImmutableListMultimap.builder();
+                    for (int i = 0; i < size; i++) {
+                        values.putAll(readString(), readStrings());
+                    }
+                    return values.build();
+                case SERIALIZED:
+                    int length = readVarint();
+                    position += length;
+                    return SerializationUtils.deserialize(Arrays.copyOfRange(data, position - length, position));
+                default:
+                    throw new IllegalArgumentException("Unknown metadata tag " + tag);
+            }
+        }
+
+        void skipValue() {
+            byte tag = data[position++];
+            switch (tag) {
+                case NULL:
+                    break;
+                case STRING:
+                    skip();
+                    break;
+                case LIST:
+                    skipStrings();
+                    break;
+                case MULTIMAP:
+                    int size = readVarint();
+                    for (int i = 0; i < size; i++) {
+                        skip();
+                        skipStrings();
+                    }
+                    break;
+                case SERIALIZED:
+                    skip();
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown metadata tag " + tag);
+            }
+        }
+
+        private void skipStrings() {
+            int size = readVarint();
+            for (int i = 0; i < size; i++) {
+                skip();
+            }
+        }
+
+        private void skip() {
+            int length = readVarint();
+            position += length;
+        }
+    }
+
+    /**
+     * A value is parsed on each get, all of them are parsed once the map is iterated
+     */
+    private static class LazyMetadata extends AbstractMap<String, Object> implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final byte[] data;
+
+        private transient volatile Map<String, Object> values;
+
+        LazyMetadata(byte[] data) {
+            this.data = data;
+        }
+
+        @Override
+        public Object get(Object key) {
+            if (null != values || !(key instanceof String)) {
+                return getValues().get(key);
+            }
+
+            byte[] expected = ((String) key).getBytes(UTF_8);
+
+            Decoder decoder = new Decoder(data);
+            int size = decoder.readVarint();
+            for (int i = 0; i < size; i++) {
+                if (decoder.isString(expected)) {
+                    return decoder.readValue();
+                }
+                decoder.skipValue();
+            }
+            return null;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            if (null != values || !(key instanceof String)) {
+                return getValues().containsKey(key);
+            }
+
+            byte[] expected = ((String) key).getBytes(UTF_8);
+
+            Decoder decoder = new Decoder(data);
+            int size = decoder.readVarint();
+            for (int i = 0; i < size; i++) {
+                if (decoder.isString(expected)) {
+                    return true;
+                }
+                decoder.skipValue();
+            }
+            return false;
+        }
+
+        @Override
+        public int size() {
+            return new Decoder(data).readVarint();
+        }
+
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            return getValues().entrySet();
+        }
+
+        private Map<String, Object> getValues() {
+            Map<String, Object> current = values;
+            if (null == current) {
+                Decoder decoder = new Decoder(data);
+                int size = decoder.readVarint();
+
+                current = new HashMap<>();
+                for (int i = 0; i < size; i++) {
+                    current.put(decoder.readString(), decoder.readValue());
+                }
+                current = unmodifiableMap(current);
+                values = current;
+            }
+            return current;
+        }
+
+        // the java serialized elts (e.g. the cluster messages) keep a plain map
+        private Object writeReplace() throws ObjectStreamException {
+            return new HashMap<>(getValues());
+        }
+    }
+}
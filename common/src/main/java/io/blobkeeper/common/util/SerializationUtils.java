@@ -47,6 +47,13 @@ public abstract class SerializationUtils {
         return baos.toByteArray();
     }
 
+    /**
+     * @return true if the bytes start with the java serialization stream magic
+     */
+    public static boolean isSerialized(byte[] bytes) {
+        return null != bytes && bytes.length > 1 && bytes[0] == (byte) 0xAC && bytes[1] == (byte) 0xED;
+    }
+
     /**
      * Deserialize the byte array into an object.
      *
@@ -0,0 +1,72 @@
+package io.blobkeeper.common.util;
+
+/*
+ * Copyright (C) 2016 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.testng.annotations.Test;
+
+import java.nio.ByteBuffer;
+import java.util.zip.Checksum;
+
+import static org.testng.Assert.assertEquals;
+
+public class ChecksumTypeTest {
+    private static final byte[] CHECK = "123456789".getBytes();
+
+    @Test
+    public void checkValues() {
+        assertEquals(ChecksumType.CRC32.getValue(CHECK), 0xCBF43926L);
+        assertEquals(ChecksumType.CRC32C.getValue(CHECK), 0xE3069283L);
+    }
+
+    @Test
+    public void fallbackCrc32c() {
+        Checksum checksum = new Crc32c();
+        checksum.update(CHECK, 0, CHECK.length);
+        assertEquals(checksum.getValue(), 0xE3069283L);
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(CHECK.length);
+        direct.put(CHECK);
+        direct.flip();
+
+        Crc32c directChecksum = new Crc32c();
+        directChecksum.update(direct);
+        assertEquals(directChecksum.getValue(), 0xE3069283L);
+        assertEquals(direct.remaining(), 0);
+    }
+
+    @Test
+    public void directBuffer() {
+        ByteBuffer direct = ByteBuffer.allocateDirect(CHECK.length + 2);
+        direct.put((byte) 1).put(CHECK).put((byte) 2);
+        direct.position(1).limit(CHECK.length + 1);
+
+        for (ChecksumType type : ChecksumType.values()) {
+            assertEquals(type.getValue(direct), type.getValue(CHECK));
+            assertEquals(direct.position(), 1);
+        }
+    }
+
+    @Test
+    public void fromId() {
+        for (ChecksumType type : ChecksumType.values()) {
+            assertEquals(ChecksumType.fromId(type.getId()), type);
+        }
+    }
+}
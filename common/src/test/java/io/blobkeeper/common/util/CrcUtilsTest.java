@@ -0,0 +1,67 @@
+package io.blobkeeper.common.util;
+
+/*
+ * Copyright (C) 2016 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.testng.annotations.Test;
+
+import java.util.zip.CRC32;
+
+import static org.testng.Assert.assertEquals;
+
+public class CrcUtilsTest {
+    @Test
+    public void combine() {
+        byte[] first = "blobkeeper".getBytes();
+        byte[] second = "partition checksum".getBytes();
+
+        CRC32 whole = new CRC32();
+        whole.update(first);
+        whole.update(second);
+
+        assertEquals(CrcUtils.combine(ChecksumType.CRC32.getPolynomial(), crc(first), crc(second), second.length), whole.getValue());
+    }
+
+    @Test
+    public void combineEmpty() {
+        byte[] data = "blobkeeper".getBytes();
+
+        assertEquals(CrcUtils.combine(ChecksumType.CRC32.getPolynomial(), crc(data), 0, 0), crc(data));
+        assertEquals(CrcUtils.combine(ChecksumType.CRC32.getPolynomial(), 0, crc(data), data.length), crc(data));
+    }
+
+    @Test
+    public void combineCrc32c() {
+        byte[] first = "blobkeeper".getBytes();
+        byte[] second = "partition checksum".getBytes();
+
+        byte[] whole = (new String(first) + new String(second)).getBytes();
+
+        assertEquals(
+                ChecksumType.CRC32C.combine(ChecksumType.CRC32C.getValue(first), ChecksumType.CRC32C.getValue(second), second.length),
+                ChecksumType.CRC32C.getValue(whole)
+        );
+    }
+
+    private static long crc(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,106 @@
+package io.blobkeeper.common.util;
+
+/*
+ * Copyright (C) 2015 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableListMultimap;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Multimap;
+import com.google.common.collect.Range;
+import org.testng.annotations.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class MetadataCodecTest {
+    @Test
+    public void encodeDecode() {
+        Multimap<String, String> headers = ImmutableListMultimap.of(
+                "Content-Type", "text/plain",
+                "X-Metadata-Auth-Token", "token1",
+                "X-Metadata-Auth-Token", "token2"
+        );
+
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("headers", headers);
+        metadata.put("name", "\u0438\u043c\u044f \ud83d\ude00");
+        metadata.put("authTokens", ImmutableList.of("token1", "token2"));
+        metadata.put("range", Range.closed(1L, 2L));
+        metadata.put("empty", null);
+        metadata.put(longString(), longString());
+
+        byte[] data = MetadataCodec.encode(metadata);
+        assertEquals(data[0], MetadataCodec.VERSION);
+
+        Map<String, Object> decoded = MetadataCodec.decode(data);
+        assertEquals(decoded.size(), 6);
+        assertEquals(decoded.get("headers"), headers);
+        assertEquals(decoded.get("name"), metadata.get("name"));
+        assertEquals(decoded.get(longString()), longString());
+        assertTrue(decoded.containsKey("empty"));
+        assertFalse(decoded.containsKey("unknown"));
+        assertNull(decoded.get("unknown"));
+
+        assertEquals(decoded, metadata);
+        assertEquals(MetadataCodec.decode(MetadataCodec.encode(decoded)), metadata);
+    }
+
+    @Test
+    public void decodeSerialized() {
+        Map<String, Object> metadata = new HashMap<>(ImmutableMap.of("name", "test"));
+
+        byte[] data = SerializationUtils.serialize(metadata);
+        assertTrue(SerializationUtils.isSerialized(data));
+        assertEquals(MetadataCodec.decode(data), metadata);
+    }
+
+    @Test
+    public void serializeDecoded() {
+        Map<String, Object> decoded = MetadataCodec.decode(MetadataCodec.encode(ImmutableMap.of("name", "test")));
+
+        assertEquals(SerializationUtils.deserialize(SerializationUtils.serialize(decoded)), decoded);
+    }
+
+    @Test
+    public void encodeDecodeTree() {
+        MerkleTree tree = Utils.createEmptyTree(Range.openClosed(1L, 100L), 3);
+
+        MerkleTree decoded = MerkleTreeCodec.decode(MerkleTreeCodec.encode(tree));
+        assertEquals(decoded.getLeafNodes(), tree.getLeafNodes());
+        assertEquals(decoded.getRoot().getHash(), tree.getRoot().getHash());
+        assertEquals(decoded.getFullRange(), tree.getFullRange());
+
+        MerkleTree serialized = MerkleTreeCodec.decode(SerializationUtils.serialize(tree));
+        assertEquals(serialized.getLeafNodes(), tree.getLeafNodes());
+    }
+
+    private static String longString() {
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            value.append("\u043a\u043b\u044e\u0447");
+        }
+        return value.toString();
+    }
+}
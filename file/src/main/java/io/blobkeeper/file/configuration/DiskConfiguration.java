@@ -22,6 +22,7 @@ package io.blobkeeper.file.configuration;
 public class DiskConfiguration {
     private int disk;
     private int maxParts;
+    private DurabilityMode durability;
 
     public int getDisk() {
         return disk;
@@ -38,4 +39,15 @@ public class DiskConfiguration {
     public void setMaxParts(int maxParts) {
         this.maxParts = maxParts;
     }
+
+    /**
+     * Overrides the default durability mode, null if not set
+     */
+    public DurabilityMode getDurability() {
+        return durability;
+    }
+
+    public void setDurability(DurabilityMode durability) {
+        this.durability = durability;
+    }
 }
@@ -0,0 +1,64 @@
+package io.blobkeeper.file.configuration;
+
+/*
+ * Copyright (C) 2015 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.fasterxml.jackson.annotation.JsonCreator;
+import com.fasterxml.jackson.annotation.JsonValue;
+import org.jetbrains.annotations.NotNull;
+
+import static java.util.Arrays.stream;
+
+/**
+ * Guarantee that holds for a blob when its upload is acknowledged
+ */
+public enum DurabilityMode {
+    /**
+     * Data is left in the page cache
+     */
+    NONE("none"),
+    /**
+     * Data is forced by a group every N ms or N bytes, the acknowledgement waits for the group
+     */
+    GROUP_FSYNC("group-fsync"),
+    /**
+     * Partition is opened with synchronous data writes (O_DSYNC)
+     */
+    SYNC("sync");
+
+    private final String name;
+
+    DurabilityMode(String name) {
+        this.name = name;
+    }
+
+    @JsonValue
+    public String getName() {
+        return name;
+    }
+
+    @JsonCreator
+    @NotNull
+    public static DurabilityMode fromName(@NotNull String name) {
+        return stream(values())
+                .filter(mode -> mode.name.equals(name))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Unknown durability mode " + name));
+    }
+}
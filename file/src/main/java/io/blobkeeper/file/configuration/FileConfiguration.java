@@ -19,6 +19,7 @@ package io.blobkeeper.file.configuration;
  * limitations under the License.
  */
 
+import io.blobkeeper.common.util.ChecksumType;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.TestOnly;
 import org.slf4j.Logger;
@@ -70,6 +71,38 @@ public class FileConfiguration {
     @Named("blobkeeper.upload.path")
     private String uploadPath;
 
+    @Inject
+    @Named("blobkeeper.upload.direct")
+    private boolean directUpload;
+
+    @Inject
+    @Named("blobkeeper.checksum.type")
+    private String checksumType;
+
+    @Inject
+    @Named("blobkeeper.writer.queue.size")
+    private int writerQueueSize;
+
+    @Inject
+    @Named("blobkeeper.writer.batch.max.files")
+    private int writerBatchMaxFiles;
+
+    @Inject
+    @Named("blobkeeper.writer.batch.max.wait.micros")
+    private long writerBatchMaxWaitMicros;
+
+    @Inject
+    @Named("blobkeeper.durability.mode")
+    private String durabilityMode;
+
+    @Inject
+    @Named("blobkeeper.durability.group.interval.ms")
+    private long durabilityGroupIntervalMs;
+
+    @Inject
+    @Named("blobkeeper.durability.group.bytes")
+    private long durabilityGroupBytes;
+
     public String getBasePath() {
         return basePath;
     }
@@ -103,6 +136,50 @@ public class FileConfiguration {
         return uploadPath;
     }
 
+    public boolean isDirectUpload() {
+        return directUpload;
+    }
+
+    /**
+     * Algorithm of new files, existing files are verified by the stored one
+     */
+    public ChecksumType getChecksumType() {
+        return ChecksumType.valueOf(checksumType);
+    }
+
+    /**
+     * @return files waiting for a single disk, an upload is rejected once the queue is full
+     */
+    public int getWriterQueueSize() {
+        return writerQueueSize;
+    }
+
+    public int getWriterBatchMaxFiles() {
+        return writerBatchMaxFiles;
+    }
+
+    public long getWriterBatchMaxWaitMicros() {
+        return writerBatchMaxWaitMicros;
+    }
+
+    /**
+     * Durability mode of the disk, the disk configuration overrides the default one
+     */
+    @NotNull
+    public DurabilityMode getDurabilityMode(int disk) {
+        return ofNullable(diskConfigurations.get(disk))
+                .map(DiskConfiguration::getDurability)
+                .orElseGet(() -> DurabilityMode.fromName(durabilityMode));
+    }
+
+    public long getDurabilityGroupIntervalMs() {
+        return durabilityGroupIntervalMs;
+    }
+
+    public long getDurabilityGroupBytes() {
+        return durabilityGroupBytes;
+    }
+
     @NotNull
     public DiskConfiguration getDiskConfiguration(int disk) {
         return ofNullable(diskConfigurations.get(disk)).orElseThrow(() -> new IllegalArgumentException("Can't find config for disk " + disk));
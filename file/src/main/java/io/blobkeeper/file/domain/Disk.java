@@ -21,8 +21,10 @@ package io.blobkeeper.file.domain;
 
 import com.google.common.base.Objects;
 import io.blobkeeper.index.domain.Partition;
+import io.blobkeeper.index.domain.PartitionDigest;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.google.common.base.MoreObjects.toStringHelper;
@@ -32,13 +34,18 @@ public class Disk {
     private final boolean writable;
     private final File writer;
     private final Partition activePartition;
+    private final PartitionDigest digest;
     private final AtomicInteger errors = new AtomicInteger();
+    private final AtomicInteger writers = new AtomicInteger();
+    private final CompletableFuture<Void> writersDone = new CompletableFuture<>();
+    private volatile boolean sealing;
 
     public Disk(Builder builder) {
         this.id = builder.id;
         this.writable = builder.writable;
         this.writer = builder.writer;
         this.activePartition = builder.activePartition;
+        this.digest = builder.digest;
     }
 
     public int getId() {
@@ -61,6 +68,13 @@ public class Disk {
         return activePartition;
     }
 
+    /**
+     * Digest of the active partition, maintained by writers
+     */
+    public PartitionDigest getDigest() {
+        return digest;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -91,11 +105,44 @@ public class Disk {
         return errors;
     }
 
+    /**
+     * Writers of the active partition which have reserved a region but not finished yet
+     */
+    public AtomicInteger getWriters() {
+        return writers;
+    }
+
+    /**
+     * Unregisters a writer, returns true if it was the last one
+     */
+    public boolean releaseWriter() {
+        if (writers.decrementAndGet() > 0) {
+            return false;
+        }
+
+        if (sealing) {
+            writersDone.complete(null);
+        }
+        return true;
+    }
+
+    /**
+     * Completed when the writers of the sealed partition are finished
+     */
+    public CompletableFuture<Void> awaitWriters() {
+        sealing = true;
+        if (writers.get() == 0) {
+            writersDone.complete(null);
+        }
+        return writersDone;
+    }
+
     public static class Builder {
         private final int id;
         private boolean writable;
         private File writer;
         private Partition activePartition;
+        private final PartitionDigest digest = new PartitionDigest(RecordHeader.SIZE);
 
         public Builder(int id) {
             this.id = id;
@@ -113,6 +160,10 @@ public class Disk {
             return writable;
         }
 
+        public PartitionDigest getDigest() {
+            return digest;
+        }
+
         public Builder setWritable(boolean writable) {
             this.writable = writable;
             return this;
@@ -21,6 +21,7 @@ package io.blobkeeper.file.domain;
 
 import com.google.common.collect.ComparisonChain;
 import io.blobkeeper.common.util.AlphaNumComparator;
+import io.blobkeeper.file.util.NativeIO;
 import org.apache.commons.io.FilenameUtils;
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
@@ -33,6 +34,9 @@ import java.nio.channels.FileChannel;
 
 import static com.google.common.base.MoreObjects.toStringHelper;
 import static com.google.common.collect.Ordering.from;
+import static io.blobkeeper.file.util.NativeIO.Advice.DONTNEED;
+import static io.blobkeeper.file.util.NativeIO.Advice.NORMAL;
+import static io.blobkeeper.file.util.NativeIO.Advice.SEQUENTIAL;
 
 public class File implements Comparable<File> {
     private static final Logger log = LoggerFactory.getLogger(File.class);
@@ -41,10 +45,21 @@ public class File implements Comparable<File> {
     private final FileChannel channel;
 
     public File(java.io.File absolutePath) {
+        this(absolutePath, false);
+    }
+
+    /**
+     * @param sync every write of the content is synchronously forced to the device
+     */
+    public File(java.io.File absolutePath, boolean sync) {
+        this(absolutePath, sync ? "rwd" : "rw");
+    }
+
+    private File(java.io.File absolutePath, String mode) {
         name = FilenameUtils.getName(absolutePath.getAbsolutePath());
 
         try {
-            accessFile = new RandomAccessFile(absolutePath, "rw");
+            accessFile = new RandomAccessFile(absolutePath, mode);
             accessFile.seek(0);
             this.channel = accessFile.getChannel();
         } catch (FileNotFoundException e) {
@@ -56,6 +71,39 @@ public class File implements Comparable<File> {
         }
     }
 
+    /**
+     * The file must exist, any write fails
+     */
+    public static File readOnly(java.io.File absolutePath) {
+        return new File(absolutePath, "r");
+    }
+
+    /**
+     * @param length zero means up to the end of the file
+     */
+    public void advise(long offset, long length, @NotNull NativeIO.Advice advice) {
+        try {
+            NativeIO.advise(accessFile.getFD(), offset, length, advice);
+        } catch (IOException e) {
+            log.error("Can't advise file", e);
+        }
+    }
+
+    /**
+     * A sequential scan is read ahead aggressively
+     */
+    public void startScan() {
+        advise(0, 0, SEQUENTIAL);
+    }
+
+    /**
+     * The scanned pages are dropped, so the scan doesn't evict the hot blobs from the page cache
+     */
+    public void finishScan() {
+        advise(0, 0, DONTNEED);
+        advise(0, 0, NORMAL);
+    }
+
     public void preallocate(long fileSize) {
         try {
             accessFile.setLength(fileSize);
@@ -0,0 +1,236 @@
+package io.blobkeeper.file.domain;
+
+/*
+ * Copyright (C) 2015 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.google.common.base.Objects;
+import io.blobkeeper.common.util.ChecksumType;
+import io.blobkeeper.index.domain.IndexElt;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static io.blobkeeper.common.util.ChecksumType.CRC32C;
+import static io.blobkeeper.common.util.ChecksumType.fromId;
+
+/**
+ * Header of a blob record, it's written right before the blob data, so the offsets of the index point to the data.
+ * A partition is a sequence of records, it could be scanned without the index.
+ */
+public class RecordHeader {
+    public static final int SIZE = 64;
+
+    public static final int MAGIC = 0x424B5244; // BKRD
+    public static final short VERSION = 1;
+
+    private static final int MAGIC_POSITION = 0;
+    private static final int VERSION_POSITION = 4;
+    private static final int FLAGS_POSITION = 6;
+    private static final int ID_POSITION = 8;
+    private static final int TYPE_POSITION = 16;
+    private static final int CRC_TYPE_POSITION = 20;
+    private static final int LENGTH_POSITION = 24;
+    private static final int CRC_POSITION = 32;
+    private static final int CREATED_POSITION = 40;
+    // 48 - 56 is reserved
+    private static final int HEADER_CRC_POSITION = 56;
+
+    private final long id;
+    private final int type;
+    private final long offset;
+    private final long length;
+    private final long crc;
+    private final ChecksumType crcType;
+    private final int flags;
+    private final long created;
+
+    public RecordHeader(long id, int type, long offset, long length, long crc, @NotNull ChecksumType crcType, int flags, long created) {
+        this.id = id;
+        this.type = type;
+        this.offset = offset;
+        this.length = length;
+        this.crc = crc;
+        this.crcType = crcType;
+        this.flags = flags;
+        this.created = created;
+    }
+
+    @NotNull
+    public static RecordHeader of(@NotNull IndexElt elt) {
+        return new RecordHeader(
+                elt.getId(),
+                elt.getType(),
+                elt.getOffset(),
+                elt.getLength(),
+                elt.getCrc(),
+                elt.getCrcType(),
+                0,
+                elt.getCreated()
+        );
+    }
+
+    /**
+     * @param offset of the data which follows the header
+     * @return null if there is no valid header
+     */
+    @Nullable
+    public static RecordHeader read(@NotNull ByteBuffer buffer, long offset) {
+        if (buffer.remaining() < SIZE) {
+            return null;
+        }
+
+        ByteBuffer header = buffer.slice();
+        if (header.getInt(MAGIC_POSITION) != MAGIC || header.getShort(VERSION_POSITION) != VERSION) {
+            return null;
+        }
+
+        header.limit(HEADER_CRC_POSITION);
+        if ((int) CRC32C.getValue(header) != header.getInt(HEADER_CRC_POSITION)) {
+            return null;
+        }
+
+        long length = header.getLong(LENGTH_POSITION);
+        if (length < 0) {
+            return null;
+        }
+
+        ChecksumType crcType;
+        try {
+            crcType = fromId(header.getInt(CRC_TYPE_POSITION));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+
+        return new RecordHeader(
+                header.getLong(ID_POSITION),
+                header.getInt(TYPE_POSITION),
+                offset,
+                length,
+                header.getLong(CRC_POSITION),
+                crcType,
+                header.getShort(FLAGS_POSITION),
+                header.getLong(CREATED_POSITION)
+        );
+    }
+
+    /**
+     * @return the header to write at {@link #getHeaderOffset()}
+     */
+    @NotNull
+    public ByteBuffer toByteBuffer() {
+        ByteBuffer header = ByteBuffer.allocate(SIZE)
+                .putInt(MAGIC_POSITION, MAGIC)
+                .putShort(VERSION_POSITION, VERSION)
+                .putShort(FLAGS_POSITION, (short) flags)
+                .putLong(ID_POSITION, id)
+                .putInt(TYPE_POSITION, type)
+                .putInt(CRC_TYPE_POSITION, crcType.getId())
+                .putLong(LENGTH_POSITION, length)
+                .putLong(CRC_POSITION, crc)
+                .putLong(CREATED_POSITION, created);
+
+        ByteBuffer checked = header.duplicate();
+        checked.limit(HEADER_CRC_POSITION);
+        header.putInt(HEADER_CRC_POSITION, (int) CRC32C.getValue(checked));
+
+        return header;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public int getType() {
+        return type;
+    }
+
+    /**
+     * @return offset of the data
+     */
+    public long getOffset() {
+        return offset;
+    }
+
+    public long getHeaderOffset() {
+        return offset - SIZE;
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * @return offset of the next record
+     */
+    public long getEnd() {
+        return offset + length;
+    }
+
+    public long getCrc() {
+        return crc;
+    }
+
+    public ChecksumType getCrcType() {
+        return crcType;
+    }
+
+    public int getFlags() {
+        return flags;
+    }
+
+    public long getCreated() {
+        return created;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        RecordHeader that = (RecordHeader) o;
+
+        return Objects.equal(this.id, that.id) &&
+                Objects.equal(this.type, that.type) &&
+                Objects.equal(this.offset, that.offset) &&
+                Objects.equal(this.length, that.length) &&
+                Objects.equal(this.crc, that.crc) &&
+                Objects.equal(this.crcType, that.crcType) &&
+                Objects.equal(this.flags, that.flags) &&
+                Objects.equal(this.created, that.created);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(id, type, offset, length, crc, crcType, flags, created);
+    }
+
+    @Override
+    public String toString() {
+        return toStringHelper(this)
+                .add("id", id)
+                .add("type", type)
+                .add("offset", offset)
+                .add("length", length)
+                .add("crc", crc)
+                .add("crcType", crcType)
+                .toString();
+    }
+}
@@ -20,7 +20,9 @@ package io.blobkeeper.file.domain;
  */
 
 import com.google.common.base.Objects;
+import io.blobkeeper.common.util.ChecksumType;
 import io.blobkeeper.index.domain.DiskIndexElt;
+import io.blobkeeper.index.domain.IndexElt;
 
 import java.io.Serializable;
 
@@ -31,10 +33,33 @@ public class ReplicationFile implements Serializable {
 
     private final DiskIndexElt index;
     private final byte[] data;
+    // null if the blob is written without the record header
+    private final byte[] header;
+    // the data is verified by them if there is no header
+    private final long crc;
+    private final ChecksumType crcType;
 
-    public ReplicationFile(DiskIndexElt index, byte[] data) {
+    private ReplicationFile(DiskIndexElt index, byte[] data, byte[] header, long crc, ChecksumType crcType) {
         this.index = index;
         this.data = data;
+        this.header = header;
+        this.crc = crc;
+        this.crcType = crcType;
+    }
+
+    public ReplicationFile(IndexElt elt, byte[] data, byte[] header) {
+        this(elt.getDiskIndexElt(), data, header, elt.getCrc(), elt.getCrcType());
+    }
+
+    /**
+     * Data will be read from the blob before sending
+     */
+    public ReplicationFile(IndexElt elt) {
+        this(elt, null, null);
+    }
+
+    public ReplicationFile withData(byte[] data, byte[] header) {
+        return new ReplicationFile(index, data, header, crc, crcType);
     }
 
     public DiskIndexElt getIndex() {
@@ -45,6 +70,26 @@ public class ReplicationFile implements Serializable {
         return data;
     }
 
+    public boolean hasData() {
+        return null != data;
+    }
+
+    public byte[] getHeader() {
+        return header;
+    }
+
+    public boolean hasHeader() {
+        return null != header;
+    }
+
+    public long getCrc() {
+        return crc;
+    }
+
+    public ChecksumType getCrcType() {
+        return crcType;
+    }
+
 
     @Override
     public boolean equals(Object o) {
@@ -30,6 +30,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static io.blobkeeper.common.util.MetadataUtils.AUTH_TOKEN_HEADER;
@@ -43,6 +44,7 @@ public class StorageFile {
     private final byte[] data;
     private final Map<String, Object> metadata;
     private final boolean compaction;
+    private final CompletableFuture<Void> durable = new CompletableFuture<>();
 
     public StorageFile(StorageFileBuilder builder) {
         this.id = builder.id;
@@ -114,6 +116,13 @@ public class StorageFile {
         return compaction;
     }
 
+    /**
+     * Completed once the file is written and holds the durability mode of the disk
+     */
+    public CompletableFuture<Void> getDurable() {
+        return durable;
+    }
+
     public static class CompactionFileBuilder {
         private long id;
         private int type;
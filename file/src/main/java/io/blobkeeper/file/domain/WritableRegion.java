@@ -0,0 +1,162 @@
+package io.blobkeeper.file.domain;
+
+/*
+ * Copyright (C) 2016 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import io.blobkeeper.common.util.ChecksumType;
+import io.blobkeeper.file.service.WritablePartition;
+import io.blobkeeper.index.domain.Partition;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.Checksum;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+import static com.google.common.base.Preconditions.checkArgument;
+import static org.joda.time.DateTime.now;
+import static org.joda.time.DateTimeZone.UTC;
+
+/**
+ * Reserved region of a partition, the data is written sequentially from a single thread.
+ * The record header precedes the region.
+ */
+public class WritableRegion {
+    private final WritablePartition writablePartition;
+    private final Partition partition;
+    private final File file;
+    private final long id;
+    private final int type;
+    private final long created = now(UTC).getMillis();
+    private final long offset;
+    private final long length;
+    private final ChecksumType crcType;
+    private final Checksum crc;
+    private final AtomicBoolean released = new AtomicBoolean();
+    private long written;
+
+    public WritableRegion(
+            @NotNull WritablePartition writablePartition,
+            @NotNull File file,
+            long id,
+            int type,
+            long length,
+            @NotNull ChecksumType crcType
+    ) {
+        this.writablePartition = writablePartition;
+        this.partition = writablePartition.getDisk().getActivePartition();
+        this.file = file;
+        this.id = id;
+        this.type = type;
+        this.offset = writablePartition.getNextOffset() - length;
+        this.length = length;
+        this.crcType = crcType;
+        this.crc = crcType.create();
+    }
+
+    public int write(@NotNull ByteBuffer data) throws IOException {
+        checkArgument(written + data.remaining() <= length, "Data exceeds the reserved region!");
+
+        ByteBuffer crcData = data.duplicate();
+
+        int bytes = 0;
+        while (data.hasRemaining()) {
+            bytes += file.getFileChannel().write(data, offset + written + bytes);
+        }
+
+        crcType.update(crc, crcData);
+        written += bytes;
+        return bytes;
+    }
+
+    public boolean isComplete() {
+        return written == length;
+    }
+
+    @NotNull
+    public RecordHeader getHeader() {
+        checkArgument(isComplete(), "Region is not completely written!");
+
+        return new RecordHeader(id, type, offset, length, getCrc(), crcType, 0, created);
+    }
+
+    /**
+     * @return true only for the first call
+     */
+    public boolean release() {
+        return released.compareAndSet(false, true);
+    }
+
+    public WritablePartition getWritablePartition() {
+        return writablePartition;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public Partition getPartition() {
+        return partition;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public int getType() {
+        return type;
+    }
+
+    public long getCreated() {
+        return created;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    public long getWritten() {
+        return written;
+    }
+
+    public long getCrc() {
+        return crc.getValue();
+    }
+
+    public ChecksumType getCrcType() {
+        return crcType;
+    }
+
+    @Override
+    public String toString() {
+        return toStringHelper(this)
+                .add("id", id)
+                .add("type", type)
+                .add("partition", partition)
+                .add("offset", offset)
+                .add("length", length)
+                .add("written", written)
+                .toString();
+    }
+}
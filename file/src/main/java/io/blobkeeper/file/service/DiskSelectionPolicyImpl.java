@@ -0,0 +1,117 @@
+package io.blobkeeper.file.service;
+
+/*
+ * Copyright (C) 2015-2016 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import io.blobkeeper.file.configuration.FileConfiguration;
+import io.blobkeeper.file.domain.Disk;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static io.blobkeeper.common.util.GuavaCollectors.toImmutableList;
+import static io.blobkeeper.file.util.FileUtils.getDiskPathByDisk;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+@Singleton
+public class DiskSelectionPolicyImpl implements DiskSelectionPolicy {
+    private static final Logger log = LoggerFactory.getLogger(DiskSelectionPolicyImpl.class);
+
+    // a new write latency sample has weight 1/LATENCY_SMOOTHING in the moving average
+    private static final int LATENCY_SMOOTHING = 8;
+
+    @Inject
+    private DiskService diskService;
+
+    @Inject
+    private WriterTaskQueue writerTaskQueue;
+
+    @Inject
+    private FileConfiguration configuration;
+
+    private final ConcurrentMap<Integer, AtomicLong> disksToLatency = new ConcurrentHashMap<>();
+
+    @Override
+    public Optional<Integer> select() {
+        List<Disk> writable = diskService.getActiveDisks().values().stream()
+                .filter(Disk::isWritable)
+                .collect(toImmutableList());
+
+        if (writable.isEmpty()) {
+            log.error("No writable disks");
+            return Optional.empty();
+        }
+
+        List<Disk> candidates = writable.stream()
+                .filter(this::hasFreeSpace)
+                .collect(toImmutableList());
+
+        if (candidates.isEmpty()) {
+            log.warn("No disks with enough free space for a new partition");
+            candidates = writable;
+        }
+
+        // start from a random disk to spread files between the idle disks
+        int start = ThreadLocalRandom.current().nextInt(candidates.size());
+        Disk selected = null;
+        long minCost = Long.MAX_VALUE;
+        for (int i = 0; i < candidates.size(); i++) {
+            Disk disk = candidates.get((start + i) % candidates.size());
+            long cost = getCost(disk.getId());
+            if (cost < minCost) {
+                minCost = cost;
+                selected = disk;
+            }
+        }
+
+        if (log.isTraceEnabled()) {
+            log.trace("Disk {} was selected, cost {}", selected.getId(), minCost);
+        }
+        return Optional.of(selected.getId());
+    }
+
+    @Override
+    public void writeFinished(int disk, long elapsedNanos) {
+        long elapsedMicros = NANOSECONDS.toMicros(elapsedNanos);
+        disksToLatency
+                .computeIfAbsent(disk, ignored -> new AtomicLong(elapsedMicros))
+                .updateAndGet(latency -> latency + (elapsedMicros - latency) / LATENCY_SMOOTHING);
+    }
+
+    /**
+     * Estimated time to drain the disk queue
+     */
+    private long getCost(int disk) {
+        AtomicLong latency = disksToLatency.get(disk);
+        long latencyMicros = latency == null ? 1 : Math.max(latency.get(), 1);
+        return (writerTaskQueue.size(disk) + 1) * latencyMicros;
+    }
+
+    private boolean hasFreeSpace(Disk disk) {
+        return getDiskPathByDisk(configuration, disk.getId()).getUsableSpace() >= configuration.getMaxFileSize();
+    }
+}
@@ -44,10 +44,15 @@ public interface DiskService {
     File getFile(@NotNull Partition partition);
 
     /**
-     * Must be used from single thread per disk
+     * Thread safe, returned regions never overlap
      */
     WritablePartition getWritablePartition(int disk, long length);
 
+    /**
+     * Must be called once the reserved region is written and indexed, the partition is sealed after that
+     */
+    void release(@NotNull WritablePartition partition);
+
     int getRandomDisk();
 
     boolean isDiskFull(int disk);
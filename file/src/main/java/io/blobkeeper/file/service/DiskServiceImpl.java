@@ -21,16 +21,19 @@ package io.blobkeeper.file.service;
 
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import io.blobkeeper.common.util.MemoizingSupplier;
-import io.blobkeeper.common.util.MerkleTree;
 import io.blobkeeper.file.configuration.FileConfiguration;
 import io.blobkeeper.file.domain.Disk;
 import io.blobkeeper.file.domain.File;
 import io.blobkeeper.file.util.DiskStatistic;
+import io.blobkeeper.index.domain.IndexElt;
 import io.blobkeeper.index.domain.Partition;
+import io.blobkeeper.index.domain.PartitionDigest;
 import io.blobkeeper.index.service.IndexService;
 import io.blobkeeper.index.util.IndexUtils;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -38,8 +41,15 @@ import javax.inject.Inject;
 import javax.inject.Singleton;
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
 
@@ -49,11 +59,16 @@ import static io.blobkeeper.common.util.GuavaCollectors.toImmutableList;
 import static io.blobkeeper.common.util.Maps.atomicPut;
 import static io.blobkeeper.common.util.Suppliers.memoize;
 import static io.blobkeeper.common.util.Utils.throwingMerger;
-import static io.blobkeeper.file.util.FileUtils.getCrc;
 import static io.blobkeeper.file.util.FileUtils.getOrCreateFile;
+import static io.blobkeeper.file.util.NativeIO.Advice.WILLNEED;
 import static io.blobkeeper.index.domain.PartitionState.NEW;
 import static io.blobkeeper.index.domain.PartitionState.REBALANCING;
 import static java.lang.System.currentTimeMillis;
+import static java.lang.System.nanoTime;
+import static java.util.concurrent.CompletableFuture.supplyAsync;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static java.util.Optional.ofNullable;
 import static java.util.function.Function.identity;
 import static java.util.stream.Collectors.toMap;
@@ -62,6 +77,18 @@ import static java.util.stream.Collectors.toMap;
 public class DiskServiceImpl implements DiskService {
     private static final Logger log = LoggerFactory.getLogger(DiskServiceImpl.class);
 
+    private static final long DISK_FULL_RECHECK_MILLIS = 10000;
+
+    // the next partition is prepared when the active one is filled by the ratio
+    private static final double PREPARE_NEXT_RATIO = 0.75;
+
+    private static final int SEAL_THREADS = 2;
+    private static final int SEAL_QUEUE_SIZE = 64;
+    private static final long SEAL_WRITERS_WAIT_MILLIS = 60000;
+    private static final long SEAL_RETRY_MILLIS = 1000;
+
+    private static final long PERSIST_DIGESTS_INTERVAL_SECONDS = 60;
+
     @Inject
     private FileListService fileListService;
 
@@ -85,15 +112,65 @@ public class DiskServiceImpl implements DiskService {
     // TODO: refactor to Partition type key
     private final ConcurrentMap<Integer, Supplier<ConcurrentMap<Integer, MemoizingSupplier<File>>>> partitionsToFiles = new ConcurrentHashMap<>();
 
+    private final ConcurrentMap<Integer, Object> rollOverLocks = new ConcurrentHashMap<>();
+
+    // disk -> time of the last check
+    private final ConcurrentMap<Integer, Long> fullDisks = new ConcurrentHashMap<>();
+
+    // disk -> the next partition prepared in advance
+    private final ConcurrentMap<Integer, CompletableFuture<Disk.Builder>> nextDisks = new ConcurrentHashMap<>();
+
+    private final Set<CompletableFuture<Void>> seals = ConcurrentHashMap.newKeySet();
+
+    private final ScheduledExecutorService prepareExecutor = newSingleThreadScheduledExecutor(
+            new ThreadFactoryBuilder()
+                    .setDaemon(true)
+                    .setNameFormat("PartitionPreparer-%d")
+                    .build()
+    );
+
+    // seals are deferred if the sealers are overloaded, so a writer never seals itself
+    private final ExecutorService sealExecutor = new ThreadPoolExecutor(
+            SEAL_THREADS,
+            SEAL_THREADS,
+            0L,
+            MILLISECONDS,
+            new ArrayBlockingQueue<>(SEAL_QUEUE_SIZE),
+            new ThreadFactoryBuilder()
+                    .setDaemon(true)
+                    .setNameFormat("PartitionSealer-%d")
+                    .build(),
+            new ThreadPoolExecutor.AbortPolicy()
+    );
+
+    private volatile ScheduledFuture<?> persistDigestsTask;
+
     private final Random random = new Random();
 
     @Override
     public void openOnStart() {
         updateDisks();
+
+        persistDigestsTask = prepareExecutor.scheduleWithFixedDelay(
+                this::persistDigests,
+                PERSIST_DIGESTS_INTERVAL_SECONDS,
+                PERSIST_DIGESTS_INTERVAL_SECONDS,
+                SECONDS
+        );
     }
 
     @Override
     public void closeOnStop() {
+        ofNullable(persistDigestsTask).ifPresent(task -> task.cancel(false));
+
+        // seals must be stored before the stop
+        ImmutableList.copyOf(seals).forEach(seal -> {
+            try {
+                seal.join();
+            } catch (Exception ignored) {
+            }
+        });
+
         getActiveDisks().values().stream()
                 .forEach(disk -> {
                     try {
@@ -145,11 +222,42 @@ public class DiskServiceImpl implements DiskService {
 
     @Override
     public WritablePartition getWritablePartition(int diskId, long length) {
-        createNextWriterIfRequired(diskId);
+        while (true) {
+            if (isDiskFullCached(diskId)) {
+                log.error("Disk {} is full!", diskId);
+                diskStatistic.onDiskIsFullError(diskId);
+                throw new IllegalArgumentException();
+            }
+
+            Disk disk = getActiveDisks().get(diskId);
+            checkArgument(null != disk, "Disk is not active!");
 
-        Disk disk = getActiveDisks().get(diskId);
+            // a writer is registered before the reservation, so the seal waits for it
+            disk.getWriters().incrementAndGet();
 
-        return new WritablePartition(disk, disk.getActivePartition().incrementOffset(length));
+            long maxFileSize = fileConfiguration.getMaxFileSize();
+            long nextOffset = disk.getActivePartition().tryIncrementOffset(length, maxFileSize);
+            if (nextOffset >= 0) {
+                if (nextOffset >= maxFileSize * PREPARE_NEXT_RATIO && nextOffset < maxFileSize) {
+                    prepareNextDisk(disk);
+                }
+                return new WritablePartition(disk, nextOffset);
+            }
+
+            disk.releaseWriter();
+            rollOver(disk);
+        }
+    }
+
+    @Override
+    public void release(@NotNull WritablePartition partition) {
+        Disk disk = partition.getDisk();
+
+        // the regions below are reserved before, if there are no writers they are all written or released
+        long offset = disk.getActivePartition().getOffset();
+        if (disk.releaseWriter()) {
+            disk.getDigest().fold(offset);
+        }
     }
 
     @Override
@@ -193,65 +301,212 @@ public class DiskServiceImpl implements DiskService {
                 .ifPresent(Disk::resetErrors);
     }
 
-    private void createNextWriterIfRequired(int diskId) {
-        boolean diskIsFull = isDiskFull(diskId);
-        if (diskIsFull) {
-            log.error("Disk {} is full!", diskId);
-            diskStatistic.onDiskIsFullError(diskId);
-            throw new IllegalArgumentException();
-        }
+    /**
+     * Only one of concurrent writers switches to the next partition, others wait for it
+     */
+    private void rollOver(Disk fullDisk) {
+        synchronized (rollOverLocks.computeIfAbsent(fullDisk.getId(), ignored -> new Object())) {
+            if (getActiveDisks().get(fullDisk.getId()) != fullDisk) {
+                return;
+            }
 
-        try {
-            if (isFileReachedMaximum(diskId)) {
+            try {
                 long createWriterTime = currentTimeMillis();
-                createNextWriter(diskId);
+                createNextWriter(fullDisk);
                 log.trace("Create writer time is {}", currentTimeMillis() - createWriterTime);
-
+            } catch (Exception e) {
+                log.error("Can't create next writer", e);
+                throw e;
             }
+        }
+    }
+
+    private void prepareNextDisk(Disk disk) {
+        if (getActiveDisks().get(disk.getId()) != disk) {
+            return;
+        }
+
+        nextDisks.computeIfAbsent(
+                disk.getId(),
+                diskId -> supplyAsync(() -> createNextDisk(diskId), prepareExecutor)
+        );
+    }
+
+    @Nullable
+    private Disk.Builder takeNextDisk(int diskId) {
+        CompletableFuture<Disk.Builder> nextDisk = nextDisks.remove(diskId);
+        if (null == nextDisk) {
+            return null;
+        }
+
+        try {
+            return nextDisk.join();
         } catch (Exception e) {
-            log.error("Can't create next writer", e);
-            throw e;
+            log.error("Can't prepare next partition for disk {}", diskId, e);
+            return null;
         }
     }
 
-    private void createNextWriter(int diskId) {
-        Disk disk = getActiveDisks().get(diskId);
-        updateCrc(disk);
-        updateMerkleTree(disk);
-        closeCurrentWriter(disk);
+    private void closeNextDisk(int diskId) {
+        ofNullable(takeNextDisk(diskId))
+                .map(Disk.Builder::build)
+                .ifPresent(this::closeCurrentWriter);
+    }
+
+    @Nullable
+    private Disk.Builder createNextDisk(int diskId) {
+        if (isDiskFull(diskId)) {
+            return null;
+        }
 
-        Disk.Builder diskBuilder = new Disk.Builder(diskId)
-                .setWritable(!isDiskFull(diskId));
+        Partition partition = partitionService.getNextActivePartition(diskId);
 
-        createActivePartition(diskBuilder);
+        log.info("Prepare next partition {} for disk {}", partition.getId(), diskId);
 
-        log.info("Create next writable partition {} for disk {}", diskBuilder.getActivePartition().getId(), diskId);
+        Disk.Builder diskBuilder = new Disk.Builder(diskId);
+        loadPartition(diskBuilder, partition);
 
-        Disk newDisk = diskBuilder.build();
-        partitionService.setActive(newDisk.getActivePartition());
-        getActiveDisks().put(diskId, newDisk);
+        diskBuilder
+                .setWritable(true)
+                .setWriter(getOrCreateFile(fileConfiguration, partition))
+                .setActivePartition(partition);
+
+        diskStatistic.onCreatePartition(diskId);
+        return diskBuilder;
     }
 
-    private boolean isFileReachedMaximum(int disk) {
-        return partitionService.getActivePartition(disk).getOffset() >= fileConfiguration.getMaxFileSize();
+    private void seal(Disk disk) {
+        diskStatistic.onSealQueued(disk.getId());
+
+        CompletableFuture<Void> seal = new CompletableFuture<>();
+        seals.add(seal);
+        seal.whenComplete((ignored, e) -> seals.remove(seal));
+
+        // the seal is submitted by the last writer, no sealer waits for the writers
+        awaitWriters(disk).thenRun(() -> submitSeal(disk, seal));
+    }
+
+    private void submitSeal(Disk disk, CompletableFuture<Void> seal) {
+        try {
+            sealExecutor.execute(() -> {
+                try {
+                    sealPartition(disk);
+                } finally {
+                    seal.complete(null);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log.warn("Sealers are overloaded, partition {} is deferred", disk.getActivePartition());
+            prepareExecutor.schedule(() -> submitSeal(disk, seal), SEAL_RETRY_MILLIS, MILLISECONDS);
+        }
     }
 
-    private void updateCrc(Disk disk) {
+    private void sealPartition(Disk disk) {
         Partition partition = disk.getActivePartition();
-        checkNotNull(partition, "Active partition is required!");
+        long started = nanoTime();
+        boolean sealed = false;
+        try {
+            PartitionDigest digest = disk.getDigest();
+            if (digest.isEmpty()) {
+                indexService.getStreamByPartition(partition).forEach(digest::add);
+            }
+
+            partition.setCrc(digest.getCrc());
+            partitionService.updateCrc(partition);
+
+            partition.setTree(digest.getTree());
+            partitionService.updateTree(partition);
+
+            // the partition is not written anymore, so the approximate stats are fixed once
+            try {
+                indexService.rebuildStats(partition);
+            } catch (Exception e) {
+                log.error("Can't rebuild stats of partition {}", partition, e);
+            }
+
+            sealed = true;
 
-        partition.setCrc(getCrc(disk.getWriter()));
-        partitionService.updateCrc(partition);
+            log.info("Partition {} sealed", partition);
+        } catch (Exception e) {
+            log.error("Can't seal partition {}", partition, e);
+        } finally {
+            diskStatistic.onSealFinished(disk.getId(), nanoTime() - started, sealed);
+        }
     }
 
-    private void updateMerkleTree(Disk disk) {
-        Partition partition = disk.getActivePartition();
-        checkNotNull(partition, "Active partition is required!");
+    private CompletableFuture<Void> awaitWriters(Disk disk) {
+        CompletableFuture<Void> writersDone = disk.awaitWriters();
+        if (!writersDone.isDone()) {
+            prepareExecutor.schedule(() -> {
+                if (writersDone.complete(null)) {
+                    log.warn("Partition {} is sealed with {} unfinished writers", disk.getActivePartition(), disk.getWriters().get());
+                }
+            }, SEAL_WRITERS_WAIT_MILLIS, MILLISECONDS);
+        }
+        return writersDone;
+    }
+
+    /**
+     * A full disk is rechecked periodically, since a compaction could free partitions
+     */
+    private boolean isDiskFullCached(int diskId) {
+        Long checked = fullDisks.get(diskId);
+        if (null == checked) {
+            return false;
+        }
+
+        if (currentTimeMillis() - checked < DISK_FULL_RECHECK_MILLIS) {
+            return true;
+        }
+
+        return updateDiskFull(diskId);
+    }
+
+    private boolean updateDiskFull(int diskId) {
+        boolean diskFull = isDiskFull(diskId);
+        if (diskFull) {
+            fullDisks.put(diskId, currentTimeMillis());
+        } else {
+            fullDisks.remove(diskId);
+        }
+        return diskFull;
+    }
+
+    private void createNextWriter(Disk disk) {
+        int diskId = disk.getId();
+
+        Disk.Builder diskBuilder = takeNextDisk(diskId);
+        if (null == diskBuilder) {
+            diskBuilder = new Disk.Builder(diskId)
+                    .setWritable(!isDiskFull(diskId));
+
+            createActivePartition(diskBuilder);
+        }
+
+        log.info("Create next writable partition {} for disk {}", diskBuilder.getActivePartition().getId(), diskId);
+
+        Disk newDisk = diskBuilder.build();
+        partitionService.setActive(newDisk.getActivePartition());
+        getActiveDisks().put(diskId, newDisk);
+
+        // writers use the partition files, the previous writer is not required anymore
+        closeCurrentWriter(disk);
 
-        MerkleTree tree = indexUtils.buildMerkleTree(partition);
-        partition.setTree(tree);
+        updateDiskFull(diskId);
 
-        partitionService.updateTree(partition);
+        seal(disk);
+    }
+
+    private void persistDigests() {
+        getActiveDisks().values().forEach(disk -> {
+            try {
+                Partition partition = disk.getActivePartition();
+                partition.setCrc(disk.getDigest().getCrc());
+                partitionService.updateCrc(partition);
+            } catch (Exception e) {
+                log.error("Can't persist digest of disk {}", disk.getId(), e);
+            }
+        });
     }
 
     @Override
@@ -275,7 +530,7 @@ public class DiskServiceImpl implements DiskService {
         log.info("Create writer for disk {}", disIdk);
 
         Disk.Builder diskBuilder = new Disk.Builder(disIdk)
-                .setWritable(!isDiskFull(disIdk));
+                .setWritable(!updateDiskFull(disIdk));
 
         if (!diskBuilder.isWritable()) {
             log.info("Disk {} is not writable", disIdk);
@@ -369,11 +624,14 @@ public class DiskServiceImpl implements DiskService {
         File fromFile = getFile(from);
         File toFile = getFile(to);
 
+        fromFile.startScan();
         try {
             fromFile.getFileChannel().transferTo(0, fromFile.getLength(), toFile.getFileChannel());
         } catch (IOException e) {
             log.error("Can't copy partition", e);
             throw new IllegalStateException(e);
+        } finally {
+            fromFile.finishScan();
         }
     }
 
@@ -382,22 +640,48 @@ public class DiskServiceImpl implements DiskService {
         Partition activePartition = partitionService.getLastPartition(diskBuilder.getId());
 
         if (null != activePartition) {
-            activePartition.setOffset(indexUtils.getOffset(indexService.getListByPartition(activePartition)));
+            loadPartition(diskBuilder, activePartition);
 
             File partitionFile = getOrCreateFile(fileConfiguration, activePartition);
+            // the recent blobs are the hottest ones
+            partitionFile.advise(0, 0, WILLNEED);
             diskBuilder
                     .setWriter(partitionFile)
                     .setActivePartition(activePartition);
 
             log.info("Active partition found {} for disk {}", activePartition, diskBuilder.getId());
+
+            sealPrevious(activePartition);
         } else {
             log.info("No active partition found for disk {}", diskBuilder.getId());
         }
     }
 
+    private void loadPartition(Disk.Builder diskBuilder, Partition partition) {
+        List<IndexElt> elts = indexService.getListByPartition(partition);
+
+        partition.setOffset(indexUtils.getOffset(elts));
+        diskBuilder.getDigest().addAll(elts);
+    }
+
+    /**
+     * The previous partition is not sealed if the node was stopped after the next one had been prepared
+     */
+    private void sealPrevious(Partition activePartition) {
+        if (activePartition.getId() == 0) {
+            return;
+        }
+
+        Partition previous = partitionService.getById(activePartition.getDisk(), activePartition.getId() - 1);
+        if (null != previous && previous.getState() == NEW && null == previous.getTree()) {
+            log.info("Partition {} is not sealed", previous);
+            seal(new Disk.Builder(previous.getDisk()).setActivePartition(previous).build());
+        }
+    }
+
     private void createActivePartition(Disk.Builder diskBuilder) {
         Partition partition = partitionService.getNextActivePartition(diskBuilder.getId());
-        partition.setOffset(indexUtils.getOffset(indexService.getListByPartition(partition)));
+        loadPartition(diskBuilder, partition);
 
         log.info("Creating active partition {} for disk {}", partition.getId(), partition.getDisk());
 
@@ -417,6 +701,7 @@ public class DiskServiceImpl implements DiskService {
     private void closeDisk(Disk disk) {
         log.info("Close disk {}", disk);
 
+        closeNextDisk(disk.getId());
         closeCurrentWriter(disk);
         closeDiskPartitions(disk.getId());
         removeDisk(disk);
@@ -24,6 +24,10 @@ import io.blobkeeper.file.domain.*;
 import io.blobkeeper.index.domain.IndexElt;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
 @ImplementedBy(FileStorageImpl.class)
 public interface FileStorage {
 
@@ -43,6 +47,59 @@ public interface FileStorage {
      */
     ReplicationFile addFile(int disk, @NotNull StorageFile storageFile);
 
+    /**
+     * Writes files contiguously with a single gathering write and adds their index with a single batch.
+     * The same thread binding as for {@link #addFile(int, StorageFile)} is required.
+     * The index is added once the files are durable, nothing is added if an exception is thrown.
+     * The files which aren't synced are failed and kept staged for recovery.
+     *
+     * @throws java.lang.IllegalArgumentException if files have not been added to the storage
+     */
+    @NotNull
+    List<ReplicationFile> addFiles(int disk, @NotNull List<StorageFile> storageFiles);
+
+    /**
+     * Drops the upload of a file which can't be added, the waiting client is failed.
+     * The files of a failed {@link #addFiles(int, List)} are left as is, so they could be added again.
+     */
+    void discard(@NotNull StorageFile storageFile, @NotNull Throwable cause);
+
+    /**
+     * Reserves a region in the active partition for a direct upload, could be called from any thread
+     */
+    @NotNull
+    WritableRegion reserve(int disk, long id, int type, long length);
+
+    /**
+     * Returns a future which is completed once the written region holds the durability mode of its disk
+     */
+    @NotNull
+    CompletableFuture<Void> sync(@NotNull WritableRegion region);
+
+    /**
+     * Adds index of the completely written region
+     */
+    @NotNull
+    ReplicationFile commit(@NotNull WritableRegion region, @NotNull Map<String, Object> metadata);
+
+    /**
+     * {@link #reserve(int, long, int, long)} on the blocking executor, it could roll the partition over
+     */
+    @NotNull
+    CompletableFuture<WritableRegion> reserveAsync(int disk, long id, int type, long length);
+
+    /**
+     * {@link #sync(WritableRegion)} and {@link #commit(WritableRegion, Map)} on the blocking executor.
+     * The region is released by the commit, but not if the sync has failed.
+     */
+    @NotNull
+    CompletableFuture<ReplicationFile> commitAsync(@NotNull WritableRegion region, @NotNull Map<String, Object> metadata);
+
+    /**
+     * Releases the region of an interrupted upload, the committed region is already released
+     */
+    void release(@NotNull WritableRegion region);
+
     void addFile(@NotNull ReplicationFile replicationFile);
 
     void copyFile(@NotNull TransferFile transferFile);
@@ -19,12 +19,14 @@ package io.blobkeeper.file.service;
  * limitations under the License.
  */
 
-import com.google.common.io.ByteSource;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.blobkeeper.common.util.ChecksumType;
+import io.blobkeeper.file.configuration.FileConfiguration;
 import io.blobkeeper.file.domain.*;
 import io.blobkeeper.file.util.FileUtils;
 import io.blobkeeper.index.domain.DiskIndexElt;
 import io.blobkeeper.index.domain.IndexElt;
-import io.blobkeeper.index.domain.IndexTempElt;
+import io.blobkeeper.index.domain.Partition;
 import io.blobkeeper.index.service.IndexService;
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
@@ -32,27 +34,69 @@ import org.slf4j.Logger;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
-import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.zip.Checksum;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
+import static io.blobkeeper.common.util.GuavaCollectors.toImmutableList;
+import static io.blobkeeper.file.util.NativeIO.Advice.DONTNEED;
 import static java.lang.System.currentTimeMillis;
-import static java.nio.channels.Channels.newChannel;
+import static java.nio.ByteBuffer.allocateDirect;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.util.Collections.singletonList;
+import static java.util.concurrent.CompletableFuture.supplyAsync;
+import static java.util.concurrent.Executors.newFixedThreadPool;
+import static java.util.function.Function.identity;
 import static org.slf4j.LoggerFactory.getLogger;
 
 @Singleton
 public class FileStorageImpl implements FileStorage {
     private static final Logger log = getLogger(FileStorageImpl.class);
 
+    private static final int WRITE_BUFFER_SIZE = 1048576;
+
+    // direct uploads block on the index, the journal and the partition roll over
+    private static final int UPLOAD_THREADS = 32;
+
     @Inject
     private DiskService diskService;
 
     @Inject
     private IndexService indexService;
 
+    @Inject
+    private FileConfiguration configuration;
+
+    @Inject
+    private UploadJournal uploadJournal;
+
+    @Inject
+    private SyncService syncService;
+
+    @Inject
+    private StagingJournal stagingJournal;
+
+    @Inject
+    private PartitionService partitionService;
+
+    private final ExecutorService uploadExecutor = newFixedThreadPool(
+            UPLOAD_THREADS,
+            new ThreadFactoryBuilder()
+                    .setDaemon(true)
+                    .setNameFormat("DirectUploader-%d")
+                    .build()
+    );
+
+    private final ThreadLocal<ByteBuffer> writeBuffer = ThreadLocal.withInitial(() -> allocateDirect(WRITE_BUFFER_SIZE));
+
     private volatile boolean running;
 
     @Override
@@ -61,8 +105,17 @@ public class FileStorageImpl implements FileStorage {
 
         log.info("File storage is started, was running {}", running);
 
+        // before the disks are opened, so active partition offsets include recovered files
+        recoverUploads();
+
         diskService.openOnStart();
 
+        indexService.rebuildLocalIndex(
+                diskService.getDisks().stream()
+                        .flatMap(disk -> partitionService.getPartitions(disk).stream())
+                        .collect(toImmutableList())
+        );
+
         running = true;
     }
 
@@ -72,6 +125,8 @@ public class FileStorageImpl implements FileStorage {
 
         log.info("File storage is stopped");
 
+        syncService.flush();
+
         diskService.closeOnStop();
 
         running = false;
@@ -88,83 +143,253 @@ public class FileStorageImpl implements FileStorage {
 
     @Override
     public ReplicationFile addFile(int disk, @NotNull StorageFile storageFile) {
-        ByteBuffer dataBuffer;
+        return addFiles(disk, singletonList(storageFile)).get(0);
+    }
+
+    @NotNull
+    @Override
+    public List<ReplicationFile> addFiles(int disk, @NotNull List<StorageFile> storageFiles) {
+        boolean indexAdded = false;
+        WritablePartition writablePartition = null;
         try {
             checkArgument(running, "Storage is not running!");
+            checkArgument(!storageFiles.isEmpty(), "Files are required!");
 
-            WritablePartition writablePartition = diskService.getWritablePartition(disk, storageFile.getLength());
+            long batchLength = storageFiles.stream()
+                    .mapToLong(storageFile -> RecordHeader.SIZE + storageFile.getLength())
+                    .sum();
+
+            writablePartition = diskService.getWritablePartition(disk, batchLength);
             Disk writableDisk = writablePartition.getDisk();
 
             checkNotNull(writableDisk.getActivePartition(), "Active partition is required!");
 
-            FileChannel writerChannel = writableDisk.getWriter().getFileChannel();
-
-            dataBuffer = storageFile.getData();
-
-            byte[] dataBufferBytes = new byte[dataBuffer.remaining()];
-            dataBuffer.get(dataBufferBytes);
-
-            long fileCrc = FileUtils.getCrc(dataBufferBytes);
-            dataBuffer.flip();
-
-            IndexElt indexElt = new IndexElt.IndexEltBuilder()
-                    .id(storageFile.getId())
-                    .type(storageFile.getType())
-                    .partition(writableDisk.getActivePartition())
-                    .offset(writablePartition.getNextOffset() - storageFile.getLength())
-                    .length(storageFile.getLength())
-                    .crc(fileCrc)
-                    .metadata(storageFile.getMetadata())
-                    .build();
+            // the disk writer could be closed by a concurrent roll over, reserved region is written positionally
+            File writerFile = diskService.getFile(writableDisk.getActivePartition());
+            FileChannel writerChannel = writerFile.getFileChannel();
 
-            log.debug("Index elt for new file {}", indexElt);
+            List<IndexElt> indexElts = new ArrayList<>(storageFiles.size());
+            List<ReplicationFile> replicationFiles = new ArrayList<>(storageFiles.size());
 
             long writeStarted = currentTimeMillis();
 
-            // write data
-            long transferred = writerChannel.write(dataBuffer, indexElt.getOffset());
-            if (transferred < indexElt.getLength()) {
-                throw new IllegalStateException("Data writing error, transferred " + transferred);
+            // small files are staged contiguously and written at once, large ones are transferred directly
+            ByteBuffer buffer = writeBuffer.get();
+            buffer.clear();
+
+            ChecksumType checksumType = configuration.getChecksumType();
+
+            long offset = writablePartition.getNextOffset() - batchLength;
+            long bufferOffset = offset;
+            for (StorageFile storageFile : storageFiles) {
+                long recordLength = RecordHeader.SIZE + storageFile.getLength();
+                if (recordLength > buffer.remaining()) {
+                    flush(buffer, writerChannel, bufferOffset);
+                    bufferOffset = offset;
+                }
+
+                // the header is filled once crc is known
+                int headerPosition = -1;
+                long fileCrc;
+                if (recordLength <= buffer.remaining()) {
+                    headerPosition = buffer.position();
+                    buffer.position(headerPosition + RecordHeader.SIZE);
+                    fileCrc = stage(storageFile, buffer, checksumType);
+                } else {
+                    fileCrc = transfer(storageFile, buffer, checksumType, writerChannel, offset + RecordHeader.SIZE);
+                    bufferOffset = offset + recordLength;
+                }
+
+                IndexElt indexElt = new IndexElt.IndexEltBuilder()
+                        .id(storageFile.getId())
+                        .type(storageFile.getType())
+                        .partition(writableDisk.getActivePartition())
+                        .offset(offset + RecordHeader.SIZE)
+                        .length(storageFile.getLength())
+                        .crc(fileCrc)
+                        .crcType(checksumType)
+                        .metadata(storageFile.getMetadata())
+                        .build();
+
+                log.debug("Index elt for new file {}", indexElt);
+
+                ByteBuffer header = RecordHeader.of(indexElt).toByteBuffer();
+                if (headerPosition >= 0) {
+                    ByteBuffer headerBuffer = buffer.duplicate();
+                    headerBuffer.position(headerPosition);
+                    headerBuffer.put(header);
+                } else {
+                    write(header, writerChannel, offset);
+                }
+
+                offset += recordLength;
+
+                indexElts.add(indexElt);
+                // replication data will be read from the blob
+                replicationFiles.add(new ReplicationFile(indexElt));
             }
+            flush(buffer, writerChannel, bufferOffset);
 
-            log.trace("Bytes transferred {}", transferred);
+            log.trace("Batch of {} files, bytes written {}", storageFiles.size(), batchLength);
 
             log.trace("Write time is {}", currentTimeMillis() - writeStarted);
 
             long updateIndexStarted = currentTimeMillis();
 
-            // update index
-            indexService.add(indexElt);
+            // the index points only to durable data, so the writer waits for the group as well
+            try {
+                syncService.sync(writableDisk.getId(), writerFile, batchLength).join();
+            } catch (CompletionException e) {
+                log.error("Can't sync files, they are kept staged for recovery", e.getCause());
 
-            log.trace("Update index time is {}", currentTimeMillis() - updateIndexStarted);
+                diskService.updateErrors(disk);
 
-            long replicationTime = currentTimeMillis();
-            // create replication ready file
-            ReplicationFile replicationFile = new ReplicationFile(indexElt.getDiskIndexElt(), dataBufferBytes);
+                storageFiles.forEach(storageFile -> storageFile.getDurable().completeExceptionally(e.getCause()));
+                throw new IllegalArgumentException("Can't sync files");
+            }
 
-            log.trace("Replication copy time is {}", currentTimeMillis() - replicationTime);
+            indexService.addAsync(indexElts).join();
+            indexAdded = true;
+
+            writableDisk.getDigest().addAll(indexElts);
+
+            log.trace("Update index time is {}", currentTimeMillis() - updateIndexStarted);
 
             diskService.resetErrors(disk);
 
-            return replicationFile;
+            return replicationFiles;
         } catch (IOException e) {
-            log.error("Can't add file to the storage", e);
+            log.error("Can't add files to the storage", e);
 
             diskService.updateErrors(disk);
 
-            throw new IllegalArgumentException("Can't add file to the storage");
+            throw new IllegalArgumentException("Can't add files to the storage");
         } catch (Exception e) {
-            log.error("Can't add file to the storage", e);
-            throw new IllegalArgumentException("Can't add file to the storage");
+            log.error("Can't add files to the storage", e);
+            throw new IllegalArgumentException("Can't add files to the storage");
         } finally {
             long maintainTime = currentTimeMillis();
 
-            cleanFile(storageFile);
+            if (null != writablePartition) {
+                diskService.release(writablePartition);
+            }
+
+            // durable files are not recovered anymore, failed ones are left to the caller
+            if (indexAdded) {
+                storageFiles.forEach(this::cleanFile);
+                storageFiles.forEach(storageFile -> storageFile.getDurable().complete(null));
+            }
 
             log.trace("Maintain time is {}", currentTimeMillis() - maintainTime);
         }
     }
 
+    @Override
+    public void discard(@NotNull StorageFile storageFile, @NotNull Throwable cause) {
+        cleanFile(storageFile);
+        storageFile.getDurable().completeExceptionally(cause);
+    }
+
+    @NotNull
+    @Override
+    public WritableRegion reserve(int disk, long id, int type, long length) {
+        checkArgument(running, "Storage is not running!");
+
+        // the header precedes the region
+        WritablePartition writablePartition = diskService.getWritablePartition(disk, RecordHeader.SIZE + length);
+        Partition partition = writablePartition.getDisk().getActivePartition();
+
+        try {
+            checkNotNull(partition, "Active partition is required!");
+
+            return new WritableRegion(writablePartition, diskService.getFile(partition), id, type, length, configuration.getChecksumType());
+        } catch (Exception e) {
+            diskService.release(writablePartition);
+            throw e;
+        }
+    }
+
+    @NotNull
+    @Override
+    public CompletableFuture<Void> sync(@NotNull WritableRegion region) {
+        checkArgument(region.isComplete(), "Region is not completely written!");
+
+        RecordHeader header = region.getHeader();
+        try {
+            write(header.toByteBuffer(), region.getFile().getFileChannel(), header.getHeaderOffset());
+        } catch (IOException e) {
+            log.error("Can't write the record header {}", header, e);
+
+            diskService.updateErrors(region.getPartition().getDisk());
+
+            throw new IllegalArgumentException("Can't write the record header");
+        }
+
+        return syncService.sync(region.getPartition().getDisk(), region.getFile(), RecordHeader.SIZE + region.getLength());
+    }
+
+    @NotNull
+    @Override
+    public ReplicationFile commit(@NotNull WritableRegion region, @NotNull Map<String, Object> metadata) {
+        checkArgument(region.isComplete(), "Region is not completely written!");
+
+        IndexElt indexElt = new IndexElt.IndexEltBuilder()
+                .id(region.getId())
+                .type(region.getType())
+                .partition(region.getPartition())
+                .offset(region.getOffset())
+                .length(region.getLength())
+                .crc(region.getCrc())
+                .crcType(region.getCrcType())
+                .created(region.getCreated())
+                .metadata(metadata)
+                .build();
+
+        log.debug("Index elt for new file {}", indexElt);
+
+        boolean journaled = false;
+        boolean committed = false;
+        try {
+            uploadJournal.completed(indexElt);
+            journaled = true;
+
+            indexService.add(indexElt);
+            uploadJournal.committed(indexElt);
+            committed = true;
+
+            region.getWritablePartition().getDisk().getDigest().add(indexElt);
+        } finally {
+            // the client is failed, so the upload must not be recovered
+            if (journaled && !committed) {
+                uploadJournal.aborted(indexElt);
+            }
+            release(region);
+        }
+
+        return new ReplicationFile(indexElt);
+    }
+
+    @NotNull
+    @Override
+    public CompletableFuture<WritableRegion> reserveAsync(int disk, long id, int type, long length) {
+        return supplyAsync(() -> reserve(disk, id, type, length), uploadExecutor);
+    }
+
+    @NotNull
+    @Override
+    public CompletableFuture<ReplicationFile> commitAsync(@NotNull WritableRegion region, @NotNull Map<String, Object> metadata) {
+        return supplyAsync(() -> sync(region), uploadExecutor)
+                .thenCompose(identity())
+                .thenApplyAsync(ignored -> commit(region, metadata), uploadExecutor);
+    }
+
+    @Override
+    public void release(@NotNull WritableRegion region) {
+        if (region.release()) {
+            diskService.release(region.getWritablePartition());
+        }
+    }
+
     @Override
     public void addFile(@NotNull ReplicationFile replicationFile) {
         log.info("Replicate file {}", replicationFile);
@@ -176,20 +401,29 @@ public class FileStorageImpl implements FileStorage {
 
         checkNotNull(file, "Blob file is required!");
 
-        InputStream is;
         try {
-            is = ByteSource.wrap(replicationFile.getData()).openStream();
-        } catch (IOException e) {
-            throw new IllegalArgumentException("Can't wrap the buffer", e);
-        }
-
-        ReadableByteChannel dataChannel = newChannel(is);
+            ByteBuffer data = ByteBuffer.wrap(replicationFile.getData());
+            if (data.remaining() < indexElt.getLength()) {
+                throw new IllegalStateException("Data writing error, received " + data.remaining());
+            }
+            data.limit((int) indexElt.getLength());
+
+            // the replica keeps the same layout, the data is verified by the crc of the header or of the index
+            if (replicationFile.hasHeader()) {
+                RecordHeader header = RecordHeader.read(ByteBuffer.wrap(replicationFile.getHeader()), indexElt.getOffset() - RecordHeader.SIZE);
+                checkArgument(null != header, "Replicated header is broken");
+                checkArgument(header.getCrcType().getValue(data) == header.getCrc(), "Replicated data is broken");
+            } else {
+                checkArgument(
+                        replicationFile.getCrcType().getValue(data) == replicationFile.getCrc(),
+                        "Replicated data is broken"
+                );
+            }
 
-        try {
-            long transferred = file.getFileChannel().transferFrom(dataChannel, indexElt.getOffset(), indexElt.getLength());
+            write(data, file.getFileChannel(), indexElt.getOffset());
 
-            if (transferred < indexElt.getLength()) {
-                throw new IllegalStateException("Data writing error, transferred " + transferred);
+            if (replicationFile.hasHeader()) {
+                write(ByteBuffer.wrap(replicationFile.getHeader()), file.getFileChannel(), indexElt.getOffset() - RecordHeader.SIZE);
             }
         } catch (IOException e) {
             log.error("Can't add file to the storage", e);
@@ -197,12 +431,6 @@ public class FileStorageImpl implements FileStorage {
             diskService.updateErrors(indexElt.getPartition().getDisk());
 
             throw new IllegalArgumentException("Can't add file to the storage");
-        } finally {
-            if (null != dataChannel) {
-                try {
-                    dataChannel.close();
-                } catch (IOException e) {/*_*/}
-            }
         }
     }
 
@@ -224,6 +452,9 @@ public class FileStorageImpl implements FileStorage {
             if (transferred < transferFile.getFrom().getLength()) {
                 throw new IllegalStateException("Data writing error, transferred " + transferred);
             }
+
+            // the source partition is compacted, so it's never read again
+            from.advise(fromElt.getOffset(), fromElt.getLength(), DONTNEED);
         } catch (IOException e) {
             log.error("Can't transfer file to the storage", e);
 
@@ -237,6 +468,7 @@ public class FileStorageImpl implements FileStorage {
     public void copyFile(int disk, @NotNull StorageFile from) {
         log.info("Transfer file {}", from);
 
+        WritablePartition writablePartition = null;
         try {
             checkArgument(running, "Storage is not running!");
 
@@ -245,7 +477,7 @@ public class FileStorageImpl implements FileStorage {
             // FIXME: file could be delete, but not expired
             checkArgument(indexElt != null && !indexElt.isDeleted(), "Index elt must be exists and live!");
 
-            WritablePartition writablePartition = diskService.getWritablePartition(disk, indexElt.getLength());
+            writablePartition = diskService.getWritablePartition(disk, RecordHeader.SIZE + indexElt.getLength());
             Disk writableDisk = writablePartition.getDisk();
 
             checkNotNull(writableDisk.getActivePartition(), "Active partition is required!");
@@ -260,6 +492,19 @@ public class FileStorageImpl implements FileStorage {
             // write data
             copyFile(transferFile);
 
+            File to = diskService.getFile(transferFile.getTo().getPartition());
+            RecordHeader header = new RecordHeader(
+                    indexElt.getId(),
+                    indexElt.getType(),
+                    transferFile.getTo().getOffset(),
+                    indexElt.getLength(),
+                    indexElt.getCrc(),
+                    indexElt.getCrcType(),
+                    0,
+                    indexElt.getCreated()
+            );
+            write(header.toByteBuffer(), to.getFileChannel(), header.getHeaderOffset());
+
             log.trace("Write time is {}", currentTimeMillis() - writeStarted);
 
             long updateIndexStarted = currentTimeMillis();
@@ -267,6 +512,19 @@ public class FileStorageImpl implements FileStorage {
             // update index
             indexService.move(indexElt, transferFile.getTo());
 
+            writableDisk.getDigest().add(
+                    new IndexElt.IndexEltBuilder()
+                            .id(indexElt.getId())
+                            .type(indexElt.getType())
+                            .partition(writableDisk.getActivePartition())
+                            .offset(transferFile.getTo().getOffset())
+                            .length(indexElt.getLength())
+                            .crc(indexElt.getCrc())
+                            .crcType(indexElt.getCrcType())
+                            .metadata(indexElt.getMetadata())
+                            .build()
+            );
+
             log.trace("Update index time is {}", currentTimeMillis() - updateIndexStarted);
 
             long replicationTime = currentTimeMillis();
@@ -285,6 +543,10 @@ public class FileStorageImpl implements FileStorage {
         } finally {
             long maintainTime = currentTimeMillis();
 
+            if (null != writablePartition) {
+                diskService.release(writablePartition);
+            }
+
             log.trace("Maintain time is {}", currentTimeMillis() - maintainTime);
         }
     }
@@ -294,14 +556,165 @@ public class FileStorageImpl implements FileStorage {
         return diskService.getFile(indexElt.getPartition());
     }
 
+    /**
+     * Appends the file to the buffer
+     *
+     * @return crc of the file
+     */
+    private long stage(StorageFile storageFile, ByteBuffer buffer, ChecksumType checksumType) throws IOException {
+        int start = buffer.position();
+
+        if (null == storageFile.getFile()) {
+            buffer.put(storageFile.getData());
+        } else {
+            try (FileChannel source = openUpload(storageFile)) {
+                int end = start + (int) storageFile.getLength();
+                ByteBuffer fileBuffer = buffer.duplicate();
+                fileBuffer.limit(end);
+                while (fileBuffer.hasRemaining()) {
+                    readUpload(storageFile, source, fileBuffer);
+                }
+                buffer.position(end);
+            }
+        }
+
+        ByteBuffer stagedData = buffer.duplicate();
+        stagedData.flip();
+        stagedData.position(start);
+        return checksumType.getValue(stagedData);
+    }
+
+    /**
+     * Copies the file to the blob through the direct buffer, crc is calculated by the same pass
+     *
+     * @return crc of the file
+     */
+    private long transfer(
+            StorageFile storageFile,
+            ByteBuffer buffer,
+            ChecksumType checksumType,
+            FileChannel writerChannel,
+            long offset
+    ) throws IOException {
+        if (null == storageFile.getFile()) {
+            ByteBuffer data = storageFile.getData();
+            long fileCrc = checksumType.getValue(data);
+            write(data, writerChannel, offset);
+            return fileCrc;
+        }
+
+        Checksum checksum = checksumType.create();
+        try (FileChannel source = openUpload(storageFile)) {
+            long remaining = storageFile.getLength();
+            while (remaining > 0) {
+                buffer.clear();
+                if (remaining < buffer.capacity()) {
+                    buffer.limit((int) remaining);
+                }
+
+                readUpload(storageFile, source, buffer);
+
+                buffer.flip();
+                checksumType.update(checksum, buffer.duplicate());
+
+                remaining -= buffer.remaining();
+                while (buffer.hasRemaining()) {
+                    offset += writerChannel.write(buffer, offset);
+                }
+            }
+        } finally {
+            buffer.clear();
+        }
+
+        log.trace("Bytes transferred {}", storageFile.getLength());
+
+        return checksum.getValue();
+    }
+
+    /**
+     * A broken upload file is not an error of the disk
+     */
+    private FileChannel openUpload(StorageFile storageFile) {
+        try {
+            return FileChannel.open(storageFile.getFile().toPath(), READ);
+        } catch (IOException e) {
+            throw new IllegalStateException("Can't open upload file " + storageFile.getFile(), e);
+        }
+    }
+
+    private void readUpload(StorageFile storageFile, FileChannel source, ByteBuffer buffer) {
+        int bytes;
+        try {
+            bytes = source.read(buffer);
+        } catch (IOException e) {
+            throw new IllegalStateException("Can't read upload file " + storageFile.getFile(), e);
+        }
+
+        if (bytes < 0) {
+            throw new IllegalStateException("Unexpected end of file " + storageFile.getFile());
+        }
+    }
+
+    private void write(ByteBuffer data, FileChannel writerChannel, long offset) throws IOException {
+        while (data.hasRemaining()) {
+            offset += writerChannel.write(data, offset);
+        }
+    }
+
+    private void flush(ByteBuffer buffer, FileChannel writerChannel, long offset) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            offset += writerChannel.write(buffer, offset);
+        }
+        buffer.clear();
+    }
+
+    private void recoverUploads() {
+        List<IndexElt> elts = uploadJournal.getUncommitted();
+        if (!elts.isEmpty()) {
+            log.info("Recover {} uploads", elts.size());
+        }
+
+        for (IndexElt elt : elts) {
+            java.io.File partitionFile = FileUtils.getFilePathByPartition(configuration, elt.getPartition());
+            if (!partitionFile.exists()) {
+                log.error("No partition file for upload {}", elt);
+                continue;
+            }
+
+            File file = File.readOnly(partitionFile);
+            try {
+                // the upload could be indexed before the crash, it isn't added and counted again
+                IndexElt indexed = indexService.getById(elt.getId(), elt.getType());
+                if (null != indexed && indexed.getDiskIndexElt().equals(elt.getDiskIndexElt())) {
+                    log.info("Upload is already indexed {}", elt);
+                    continue;
+                }
+
+                ByteBuffer data = FileUtils.readFile(file, elt.getOffset(), elt.getLength());
+                if (elt.getCrcType().getValue(data) == elt.getCrc()) {
+                    indexService.add(elt);
+                    log.info("Upload recovered {}", elt);
+                } else {
+                    log.error("Upload data is broken {}", elt);
+                }
+            } catch (Exception e) {
+                log.error("Can't recover upload {}", elt, e);
+            } finally {
+                file.close();
+            }
+        }
+
+        uploadJournal.clear();
+    }
+
     private void cleanFile(StorageFile storageFile) {
-        IndexTempElt elt = new IndexTempElt.IndexTempEltBuilder()
-                .id(storageFile.getId())
-                .type(storageFile.getType())
-                .build();
+        stagingJournal.done(storageFile.getId(), storageFile.getType());
 
-        indexService.delete(elt);
+        deleteUploadFile(storageFile);
+    }
 
+    private void deleteUploadFile(StorageFile storageFile) {
         if (null != storageFile.getFile()) {
             if (!storageFile.getFile().delete()) {
                 log.error("Can't delete file {}", storageFile.getName());
@@ -0,0 +1,387 @@
+package io.blobkeeper.file.service;
+
+/*
+ * Copyright (C) 2015 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import io.blobkeeper.index.domain.CacheKey;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.collect.ImmutableList.copyOf;
+import static io.blobkeeper.common.util.ChecksumType.CRC32C;
+import static io.blobkeeper.common.util.GuavaCollectors.toImmutableList;
+import static java.lang.String.format;
+import static java.nio.channels.FileChannel.MapMode.READ_WRITE;
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Append-only memory mapped segments of the keyed records, a segment is deleted once all records added up to it
+ * are removed. An added record is forced to the disk before the call returns, a removal is forced with the next
+ * added record or the segment: a lost removal only replays the record which is already done. Records are appended
+ * under the journal lock and forced out of it, one force covers all records appended before it.
+ */
+class SegmentedJournal<T> {
+    private static final Logger log = LoggerFactory.getLogger(SegmentedJournal.class);
+
+    private static final String SEGMENT_SUFFIX = ".segment";
+
+    private static final int SEGMENT_SIZE = 16 * 1024 * 1024;
+
+    private static final byte ADDED = 1;
+    private static final byte REMOVED = 2;
+
+    // length + crc of the kind and payload, zero length marks the end of the segment
+    private static final int HEADER_SIZE = 8;
+
+    private final Path path;
+    private final Function<T, byte[]> encoder;
+    private final Function<byte[], T> decoder;
+    private final Function<T, CacheKey> key;
+
+    // from the oldest to the active one
+    private final Deque<Segment> segments = new ArrayDeque<>();
+    private final Map<CacheKey, Segment> added = new HashMap<>();
+    private final Map<CacheKey, T> values = new LinkedHashMap<>();
+
+    private Segment active;
+
+    // sequence numbers of the appended records, the forced ones are guarded by the force lock
+    private long appended;
+    private final Object forceLock = new Object();
+    private long forced;
+
+    SegmentedJournal(
+            @NotNull Path path,
+            @NotNull Function<T, byte[]> encoder,
+            @NotNull Function<byte[], T> decoder,
+            @NotNull Function<T, CacheKey> key
+    ) {
+        this.path = path;
+        this.encoder = encoder;
+        this.decoder = decoder;
+        this.key = key;
+    }
+
+    /**
+     * The value replaces the one of the same key
+     */
+    void add(@NotNull T value) {
+        byte[] payload = encoder.apply(value);
+
+        long sequence;
+        synchronized (this) {
+            open();
+
+            append(ADDED, payload);
+            sequence = ++appended;
+
+            CacheKey valueKey = key.apply(value);
+            put(valueKey, active);
+            values.put(valueKey, value);
+
+            truncate();
+        }
+
+        force(sequence);
+    }
+
+    /**
+     * The full segments are forced by the roll, so the active one covers all appended records
+     */
+    private void force(long sequence) {
+        synchronized (forceLock) {
+            if (forced >= sequence) {
+                return;
+            }
+
+            MappedByteBuffer buffer;
+            long target;
+            synchronized (this) {
+                buffer = active.buffer;
+                target = appended;
+            }
+
+            buffer.force();
+            forced = target;
+        }
+    }
+
+    /**
+     * @return false if there is no value of the key
+     */
+    synchronized boolean remove(@NotNull CacheKey valueKey) {
+        open();
+
+        Segment segment = added.remove(valueKey);
+        if (null == segment) {
+            return false;
+        }
+
+        values.remove(valueKey);
+
+        ByteBuffer payload = ByteBuffer.allocate(12)
+                .putLong(valueKey.getId())
+                .putInt(valueKey.getTypeId());
+
+        append(REMOVED, payload.array());
+
+        segment.live--;
+        truncate();
+        return true;
+    }
+
+    @NotNull
+    synchronized List<T> getValues() {
+        open();
+
+        return copyOf(values.values());
+    }
+
+    synchronized void clear() {
+        open();
+
+        segments.clear();
+        added.clear();
+        values.clear();
+
+        // including the segments which are created by the other instances
+        try (Stream<Path> files = Files.list(path)) {
+            files.filter(segmentPath -> segmentPath.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .forEach(segmentPath -> delete(new Segment(segmentPath, getSegmentId(segmentPath))));
+        } catch (IOException e) {
+            log.error("Can't clear journal {}", path, e);
+            throw new IllegalStateException(e);
+        }
+
+        active = null;
+        roll();
+    }
+
+    private void open() {
+        if (null != active) {
+            return;
+        }
+
+        try {
+            Files.createDirectories(path);
+
+            List<Path> paths;
+            try (Stream<Path> files = Files.list(path)) {
+                paths = files
+                        .filter(segmentPath -> segmentPath.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                        .sorted()
+                        .collect(toImmutableList());
+            }
+
+            // segments are decoded in parallel, then applied in order
+            List<List<Record<T>>> records = paths.parallelStream()
+                    .map(this::read)
+                    .collect(toImmutableList());
+
+            for (int i = 0; i < paths.size(); i++) {
+                Segment segment = new Segment(paths.get(i), getSegmentId(paths.get(i)));
+                segments.addLast(segment);
+
+                for (Record<T> record : records.get(i)) {
+                    if (null != record.value) {
+                        put(record.key, segment);
+                        values.put(record.key, record.value);
+                    } else {
+                        Segment addedSegment = added.remove(record.key);
+                        if (null != addedSegment) {
+                            addedSegment.live--;
+                            values.remove(record.key);
+                        }
+                    }
+                }
+            }
+
+            log.info("Journal {} is opened, segments {}, records {}", path, segments.size(), values.size());
+        } catch (IOException e) {
+            log.error("Can't open journal {}", path, e);
+            throw new IllegalStateException(e);
+        }
+
+        // the tail of the last segment could be torn, new records go to the new one
+        roll();
+        truncate();
+    }
+
+    /**
+     * The replaced record doesn't keep its segment anymore
+     */
+    private void put(CacheKey valueKey, Segment segment) {
+        Segment replaced = added.put(valueKey, segment);
+        if (null != replaced) {
+            replaced.live--;
+        }
+        segment.live++;
+    }
+
+    private List<Record<T>> read(Path segmentPath) {
+        List<Record<T>> records = new ArrayList<>();
+        try {
+            ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(segmentPath));
+
+            while (data.remaining() >= HEADER_SIZE) {
+                int length = data.getInt();
+                int crc = data.getInt();
+                if (length <= 0 || length > data.remaining()) {
+                    break;
+                }
+
+                ByteBuffer record = data.slice();
+                record.limit(length);
+                data.position(data.position() + length);
+
+                if ((int) CRC32C.getValue(record) != crc) {
+                    log.warn("Journal record is broken, segment {}", segmentPath);
+                    break;
+                }
+
+                // the length is valid, so the next record is still read
+                try {
+                    byte kind = record.get();
+                    if (kind == ADDED) {
+                        byte[] payload = new byte[record.remaining()];
+                        record.get(payload);
+
+                        T value = decoder.apply(payload);
+                        records.add(new Record<>(key.apply(value), value));
+                    } else {
+                        records.add(new Record<>(new CacheKey(record.getLong(), record.getInt()), null));
+                    }
+                } catch (Exception e) {
+                    log.error("Can't decode journal record, segment {}", segmentPath, e);
+                }
+            }
+        } catch (Exception e) {
+            log.error("Can't read journal segment {}", segmentPath, e);
+        }
+        return records;
+    }
+
+    private void append(byte kind, byte[] payload) {
+        int length = 1 + payload.length;
+        checkArgument(HEADER_SIZE + length <= SEGMENT_SIZE, "Journal record is too large");
+
+        if (active.buffer.remaining() < HEADER_SIZE + length) {
+            roll();
+        }
+
+        ByteBuffer record = ByteBuffer.allocate(length)
+                .put(kind)
+                .put(payload);
+        record.flip();
+
+        // the record becomes visible for the replay when the length is written
+        int position = active.buffer.position();
+        active.buffer.position(position + 4);
+        active.buffer.putInt((int) CRC32C.getValue(record));
+        active.buffer.put(record);
+        active.buffer.putInt(position, length);
+    }
+
+    private void roll() {
+        long id = null == active ? segments.stream().mapToLong(segment -> segment.id).max().orElse(0) + 1 : active.id + 1;
+        Path segmentPath = path.resolve(format("%020d%s", id, SEGMENT_SUFFIX));
+
+        try (FileChannel channel = FileChannel.open(segmentPath, CREATE_NEW, READ, WRITE)) {
+            Segment segment = new Segment(segmentPath, id);
+            segment.buffer = channel.map(READ_WRITE, 0, SEGMENT_SIZE);
+
+            // the full segment is complete on the disk before the new one is used
+            if (null != active) {
+                active.buffer.force();
+                active.buffer = null;
+            }
+
+            segments.addLast(segment);
+            active = segment;
+        } catch (IOException e) {
+            log.error("Can't create journal segment {}", segmentPath, e);
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Removals could refer to the older segments, so segments are deleted from the head only
+     */
+    private void truncate() {
+        while (segments.size() > 1 && segments.peekFirst().live == 0) {
+            delete(segments.pollFirst());
+        }
+    }
+
+    private void delete(Segment segment) {
+        segment.buffer = null;
+        try {
+            Files.deleteIfExists(segment.path);
+        } catch (IOException e) {
+            log.error("Can't delete journal segment {}", segment.path, e);
+        }
+    }
+
+    private long getSegmentId(Path segmentPath) {
+        String name = segmentPath.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static class Segment {
+        private final Path path;
+        private final long id;
+        private MappedByteBuffer buffer;
+        private int live;
+
+        Segment(Path path, long id) {
+            this.path = path;
+            this.id = id;
+        }
+    }
+
+    private static class Record<T> {
+        private final CacheKey key;
+        private final T value;
+
+        Record(CacheKey key, T value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package io.blobkeeper.file.service;
+
+/*
+ * Copyright (C) 2015 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.google.inject.ImplementedBy;
+import io.blobkeeper.index.domain.IndexTempElt;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+/**
+ * Local journal of uploaded files which are queued, but not written to the storage yet
+ */
+@ImplementedBy(StagingJournalImpl.class)
+public interface StagingJournal {
+    void staged(@NotNull IndexTempElt elt);
+
+    /**
+     * The file is written or dropped, it's not recovered anymore
+     */
+    void done(long id, int type);
+
+    /**
+     * Files which are not done yet, including the ones staged before the restart
+     */
+    @NotNull
+    List<IndexTempElt> getStaged();
+
+    void clear();
+}
@@ -0,0 +1,77 @@
+package io.blobkeeper.file.service;
+
+/*
+ * Copyright (C) 2015 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import io.blobkeeper.file.configuration.FileConfiguration;
+import io.blobkeeper.index.domain.CacheKey;
+import io.blobkeeper.index.domain.IndexTempElt;
+import io.blobkeeper.index.util.IndexEltCodec;
+import org.jetbrains.annotations.NotNull;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Staged files are kept in the segmented journal of the upload directory
+ */
+@Singleton
+public class StagingJournalImpl implements StagingJournal {
+    private static final String STAGING_DIRECTORY = "staging";
+
+    @Inject
+    private FileConfiguration configuration;
+
+    private SegmentedJournal<IndexTempElt> journal;
+
+    @Override
+    public void staged(@NotNull IndexTempElt elt) {
+        getJournal().add(elt);
+    }
+
+    @Override
+    public void done(long id, int type) {
+        getJournal().remove(new CacheKey(id, type));
+    }
+
+    @NotNull
+    @Override
+    public List<IndexTempElt> getStaged() {
+        return getJournal().getValues();
+    }
+
+    @Override
+    public void clear() {
+        getJournal().clear();
+    }
+
+    private synchronized SegmentedJournal<IndexTempElt> getJournal() {
+        if (null == journal) {
+            journal = new SegmentedJournal<>(
+                    Paths.get(configuration.getUploadPath(), STAGING_DIRECTORY),
+                    IndexEltCodec::encode,
+                    IndexEltCodec::decodeTempElt,
+                    elt -> new CacheKey(elt.getId(), elt.getType())
+            );
+        }
+        return journal;
+    }
+}
@@ -0,0 +1,40 @@
+package io.blobkeeper.file.service;
+
+/*
+ * Copyright (C) 2015 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.google.inject.ImplementedBy;
+import io.blobkeeper.file.domain.File;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.CompletableFuture;
+
+@ImplementedBy(SyncServiceImpl.class)
+public interface SyncService {
+    /**
+     * Returns a future which is completed once the bytes written to the file hold the durability mode of the disk
+     */
+    @NotNull
+    CompletableFuture<Void> sync(int disk, @NotNull File file, long bytes);
+
+    /**
+     * Forces all pending groups and waits for them
+     */
+    void flush();
+}
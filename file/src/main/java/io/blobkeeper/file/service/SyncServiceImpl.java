@@ -0,0 +1,157 @@
+package io.blobkeeper.file.service;
+
+/*
+ * Copyright (C) 2015 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.blobkeeper.file.configuration.FileConfiguration;
+import io.blobkeeper.file.domain.File;
+import io.blobkeeper.file.util.DiskStatistic;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static io.blobkeeper.file.configuration.DurabilityMode.GROUP_FSYNC;
+import static java.lang.System.nanoTime;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static java.util.concurrent.Executors.newScheduledThreadPool;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.slf4j.LoggerFactory.getLogger;
+
+@Singleton
+public class SyncServiceImpl implements SyncService {
+    private static final Logger log = getLogger(SyncServiceImpl.class);
+
+    @Inject
+    private FileConfiguration configuration;
+
+    @Inject
+    private DiskService diskService;
+
+    @Inject
+    private DiskStatistic diskStatistic;
+
+    private final ConcurrentMap<Integer, Group> groups = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService syncExecutor = newScheduledThreadPool(
+            2,
+            new ThreadFactoryBuilder()
+                    .setDaemon(true)
+                    .setNameFormat("DiskSyncer-%d")
+                    .build()
+    );
+
+    @NotNull
+    @Override
+    public CompletableFuture<Void> sync(int disk, @NotNull File file, long bytes) {
+        // synchronous partitions are durable once the write is returned
+        if (configuration.getDurabilityMode(disk) != GROUP_FSYNC) {
+            return completedFuture(null);
+        }
+
+        CompletableFuture<Void> future = new CompletableFuture<>();
+
+        Group group = groups.computeIfAbsent(disk, Group::new);
+        synchronized (group) {
+            group.files.put(file, file);
+            group.waiters.add(future);
+            group.bytes += bytes;
+
+            if (group.bytes >= configuration.getDurabilityGroupBytes()) {
+                group.scheduled = true;
+                syncExecutor.execute(() -> force(group));
+            } else if (!group.scheduled) {
+                group.scheduled = true;
+                syncExecutor.schedule(() -> force(group), configuration.getDurabilityGroupIntervalMs(), MILLISECONDS);
+            }
+        }
+        return future;
+    }
+
+    @Override
+    public void flush() {
+        groups.values().forEach(this::force);
+    }
+
+    /**
+     * Forces the files written by the group, writes arrived during the force are left for the next group
+     */
+    private void force(Group group) {
+        List<File> files;
+        List<CompletableFuture<Void>> waiters;
+        long bytes;
+        synchronized (group) {
+            if (group.waiters.isEmpty()) {
+                group.scheduled = false;
+                return;
+            }
+
+            files = new ArrayList<>(group.files.keySet());
+            waiters = group.waiters;
+            bytes = group.bytes;
+
+            group.files.clear();
+            group.waiters = new ArrayList<>();
+            group.bytes = 0;
+            group.scheduled = false;
+        }
+
+        long started = nanoTime();
+        try {
+            for (File file : files) {
+                file.getFileChannel().force(false);
+            }
+            diskStatistic.onSync(group.disk, nanoTime() - started, bytes);
+
+            diskService.resetErrors(group.disk);
+
+            waiters.forEach(waiter -> waiter.complete(null));
+        } catch (IOException e) {
+            log.error("Can't force files of the disk {}", group.disk, e);
+
+            diskStatistic.onSyncError(group.disk);
+            diskService.updateErrors(group.disk);
+
+            waiters.forEach(waiter -> waiter.completeExceptionally(e));
+        }
+    }
+
+    private static class Group {
+        private final int disk;
+        private final Map<File, File> files = new IdentityHashMap<>();
+        private List<CompletableFuture<Void>> waiters = new ArrayList<>();
+        private long bytes;
+        private boolean scheduled;
+
+        Group(int disk) {
+            this.disk = disk;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package io.blobkeeper.file.service;
+
+/*
+ * Copyright (C) 2016 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.google.inject.ImplementedBy;
+import io.blobkeeper.index.domain.IndexElt;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.List;
+
+/**
+ * Local journal of direct uploads which data is written, but the index is not committed yet
+ */
+@ImplementedBy(UploadJournalImpl.class)
+public interface UploadJournal {
+    void completed(@NotNull IndexElt elt);
+
+    void committed(@NotNull IndexElt elt);
+
+    /**
+     * The index of the completed upload isn't added, the upload is not recovered
+     */
+    void aborted(@NotNull IndexElt elt);
+
+    @NotNull
+    List<IndexElt> getUncommitted();
+
+    void clear();
+}
@@ -0,0 +1,81 @@
+package io.blobkeeper.file.service;
+
+/*
+ * Copyright (C) 2016 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import io.blobkeeper.file.configuration.FileConfiguration;
+import io.blobkeeper.index.domain.IndexElt;
+import io.blobkeeper.index.util.IndexEltCodec;
+import org.jetbrains.annotations.NotNull;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Completed uploads are kept in the segmented journal of the upload directory, as the staged files are
+ */
+@Singleton
+public class UploadJournalImpl implements UploadJournal {
+    private static final String UPLOAD_DIRECTORY = "uploads";
+
+    @Inject
+    private FileConfiguration configuration;
+
+    private SegmentedJournal<IndexElt> journal;
+
+    @Override
+    public void completed(@NotNull IndexElt elt) {
+        getJournal().add(elt);
+    }
+
+    @Override
+    public void committed(@NotNull IndexElt elt) {
+        getJournal().remove(elt.toCacheKey());
+    }
+
+    @Override
+    public void aborted(@NotNull IndexElt elt) {
+        getJournal().remove(elt.toCacheKey());
+    }
+
+    @NotNull
+    @Override
+    public List<IndexElt> getUncommitted() {
+        return getJournal().getValues();
+    }
+
+    @Override
+    public void clear() {
+        getJournal().clear();
+    }
+
+    private synchronized SegmentedJournal<IndexElt> getJournal() {
+        if (null == journal) {
+            journal = new SegmentedJournal<>(
+                    Paths.get(configuration.getUploadPath(), UPLOAD_DIRECTORY),
+                    IndexEltCodec::encode,
+                    IndexEltCodec::decodeElt,
+                    IndexElt::toCacheKey
+            );
+        }
+        return journal;
+    }
+}
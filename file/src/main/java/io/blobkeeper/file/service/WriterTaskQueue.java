@@ -23,12 +23,35 @@ import com.google.inject.ImplementedBy;
 import io.blobkeeper.file.domain.StorageFile;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.List;
+
 @ImplementedBy(WriterTaskQueueImpl.class)
 public interface WriterTaskQueue {
-    boolean offer(@NotNull StorageFile file);
+    /**
+     * Puts the file to the queue of the given disk
+     */
+    boolean offer(int disk, @NotNull StorageFile file);
+
+    /**
+     * Takes a file from the queue of the given disk or steals it from the most loaded one
+     */
+    @NotNull
+    StorageFile take(int disk);
 
+    /**
+     * Takes a file like {@link #take(int)}, then drains the queue of the given disk
+     * until maxFiles are taken or maxWaitMicros are elapsed
+     */
+    @NotNull
+    List<StorageFile> take(int disk, int maxFiles, long maxWaitMicros);
+
+    /**
+     * Takes a file from any disk queue
+     */
     @NotNull
     StorageFile take();
 
+    int size(int disk);
+
     boolean isEmpty();
 }
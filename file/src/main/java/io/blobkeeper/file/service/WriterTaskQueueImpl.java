@@ -1,14 +1,26 @@
 package io.blobkeeper.file.service;
 
+import io.blobkeeper.file.configuration.FileConfiguration;
 import io.blobkeeper.file.domain.StorageFile;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 
+import javax.inject.Inject;
 import javax.inject.Singleton;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingDeque;
 
 import static com.google.common.base.Preconditions.checkNotNull;
+import static java.lang.System.nanoTime;
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 import static org.slf4j.LoggerFactory.getLogger;
 
 /*
@@ -33,28 +45,115 @@ import static org.slf4j.LoggerFactory.getLogger;
 @Singleton
 public class WriterTaskQueueImpl implements WriterTaskQueue {
     private static final Logger log = getLogger(WriterTaskQueueImpl.class);
-    private final BlockingQueue<StorageFile> filesToSave = new ArrayBlockingQueue<>(1048576);
 
-    public boolean offer(@NotNull StorageFile file) {
+    private static final long STEAL_INTERVAL_MS = 10;
+
+    @Inject
+    private FileConfiguration fileConfiguration;
+
+    private final ConcurrentMap<Integer, BlockingDeque<StorageFile>> disksToFiles = new ConcurrentHashMap<>();
+
+    @Override
+    public boolean offer(int disk, @NotNull StorageFile file) {
         if (log.isTraceEnabled()) {
-            log.trace("Putting file to the queue");
+            log.trace("Putting file to the queue of disk {}", disk);
         }
         checkNotNull(file, "File is required!");
-        return filesToSave.offer(file);
+        return getQueue(disk).offerLast(file);
     }
 
     @NotNull
+    @Override
+    public StorageFile take(int disk) {
+        BlockingDeque<StorageFile> queue = getQueue(disk);
+        try {
+            while (true) {
+                StorageFile file = queue.pollFirst();
+                if (file != null) {
+                    return file;
+                }
+
+                file = steal();
+                if (file != null) {
+                    return file;
+                }
+
+                file = queue.pollFirst(STEAL_INTERVAL_MS, MILLISECONDS);
+                if (file != null) {
+                    return file;
+                }
+            }
+        } catch (InterruptedException e) {
+            log.error("Can't get file from the queue", e);
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @NotNull
+    @Override
+    public List<StorageFile> take(int disk, int maxFiles, long maxWaitMicros) {
+        List<StorageFile> files = new ArrayList<>(maxFiles);
+        files.add(take(disk));
+
+        BlockingDeque<StorageFile> queue = getQueue(disk);
+        long deadline = nanoTime() + MICROSECONDS.toNanos(maxWaitMicros);
+        try {
+            while (files.size() < maxFiles) {
+                StorageFile file = queue.pollFirst(deadline - nanoTime(), NANOSECONDS);
+                if (file == null) {
+                    break;
+                }
+                files.add(file);
+            }
+        } catch (InterruptedException e) {
+            log.error("Can't get file from the queue", e);
+            throw new IllegalStateException(e);
+        }
+        return files;
+    }
+
+    @NotNull
+    @Override
     public StorageFile take() {
         try {
-            return filesToSave.take();
+            while (true) {
+                StorageFile file = steal();
+                if (file != null) {
+                    return file;
+                }
+                MILLISECONDS.sleep(STEAL_INTERVAL_MS);
+            }
         } catch (InterruptedException e) {
             log.error("Can't get file from the queue", e);
             throw new IllegalStateException(e);
         }
     }
 
+    @Override
+    public int size(int disk) {
+        BlockingDeque<StorageFile> queue = disksToFiles.get(disk);
+        return queue == null ? 0 : queue.size();
+    }
+
     @Override
     public boolean isEmpty() {
-        return filesToSave.isEmpty();
+        return disksToFiles.values().stream()
+                .allMatch(BlockingDeque::isEmpty);
+    }
+
+    private BlockingDeque<StorageFile> getQueue(int disk) {
+        return disksToFiles.computeIfAbsent(disk, ignored -> new LinkedBlockingDeque<>(fileConfiguration.getWriterQueueSize()));
+    }
+
+    /**
+     * Steals the latest file from the most loaded disk queue, the owner keeps taking from the head
+     */
+    @Nullable
+    private StorageFile steal() {
+        return disksToFiles.values().stream()
+                .filter(queue -> !queue.isEmpty())
+                .max(Comparator.comparingInt(BlockingDeque::size))
+                .map(BlockingDeque::pollLast)
+                .orElse(null);
     }
 }
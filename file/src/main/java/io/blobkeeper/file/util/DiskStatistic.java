@@ -21,6 +21,7 @@ package io.blobkeeper.file.util;
 
 import com.codahale.metrics.Counter;
 import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -30,6 +31,7 @@ import java.util.Optional;
 
 import static java.lang.String.format;
 import static java.util.Optional.ofNullable;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
 @Singleton
 public class DiskStatistic {
@@ -37,6 +39,12 @@ public class DiskStatistic {
 
     private static final String DISK_PART_CREATED_NAME_PATTERN = "blobkeeper.disk.%d.partitions.created";
     private static final String DISK_IS_FULL_PATTERN = "blobkeeper.disk.%d.is.full";
+    private static final String DISK_SEAL_PENDING_PATTERN = "blobkeeper.disk.%d.seal.pending";
+    private static final String DISK_SEAL_TIME_PATTERN = "blobkeeper.disk.%d.seal.time";
+    private static final String DISK_SEAL_ERRORS_PATTERN = "blobkeeper.disk.%d.seal.errors";
+    private static final String DISK_FSYNC_TIME_PATTERN = "blobkeeper.disk.%d.fsync.time";
+    private static final String DISK_FSYNC_GROUP_BYTES_PATTERN = "blobkeeper.disk.%d.fsync.group.bytes";
+    private static final String DISK_FSYNC_ERRORS_PATTERN = "blobkeeper.disk.%d.fsync.errors";
 
     @Inject
     private MetricRegistry metricRegistry;
@@ -59,6 +67,53 @@ public class DiskStatistic {
             counter.inc();
         }
 
+    public void onSealQueued(int disk) {
+        metricRegistry.counter(format(DISK_SEAL_PENDING_PATTERN, disk)).inc();
+    }
+
+    public void onSealFinished(int disk, long elapsedNanos, boolean sealed) {
+        metricRegistry.counter(format(DISK_SEAL_PENDING_PATTERN, disk)).dec();
+
+        if (sealed) {
+            metricRegistry.timer(format(DISK_SEAL_TIME_PATTERN, disk)).update(elapsedNanos, NANOSECONDS);
+        } else {
+            metricRegistry.counter(format(DISK_SEAL_ERRORS_PATTERN, disk)).inc();
+        }
+    }
+
+    public void onSync(int disk, long elapsedNanos, long groupBytes) {
+        metricRegistry.timer(format(DISK_FSYNC_TIME_PATTERN, disk)).update(elapsedNanos, NANOSECONDS);
+        metricRegistry.histogram(format(DISK_FSYNC_GROUP_BYTES_PATTERN, disk)).update(groupBytes);
+    }
+
+    public void onSyncError(int disk) {
+        metricRegistry.counter(format(DISK_FSYNC_ERRORS_PATTERN, disk)).inc();
+    }
+
+    public long getSyncs(int disk) {
+        return ofNullable(metricRegistry.getTimers().get(format(DISK_FSYNC_TIME_PATTERN, disk)))
+                .map(Timer::getCount)
+                .orElse(0L);
+    }
+
+    public long getPendingSeals(int disk) {
+        return ofNullable(metricRegistry.getCounters().get(format(DISK_SEAL_PENDING_PATTERN, disk)))
+                .map(Counter::getCount)
+                .orElse(0L);
+    }
+
+    public long getSealedPartitions(int disk) {
+        return ofNullable(metricRegistry.getTimers().get(format(DISK_SEAL_TIME_PATTERN, disk)))
+                .map(Timer::getCount)
+                .orElse(0L);
+    }
+
+    public long getSealErrors(int disk) {
+        return ofNullable(metricRegistry.getCounters().get(format(DISK_SEAL_ERRORS_PATTERN, disk)))
+                .map(Counter::getCount)
+                .orElse(0L);
+    }
+
     public long getCreatedPartitions(int disk) {
         return ofNullable(metricRegistry.getCounters().get(getDiskPartCreatedMetric(disk)))
                 .map(Counter::getCount)
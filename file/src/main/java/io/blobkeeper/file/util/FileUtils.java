@@ -26,10 +26,13 @@ import com.google.common.base.Charsets;
 import io.blobkeeper.common.util.*;
 import io.blobkeeper.file.configuration.FileConfiguration;
 import io.blobkeeper.file.domain.File;
+import io.blobkeeper.file.domain.RecordHeader;
+import io.blobkeeper.index.domain.DiskIndexElt;
 import io.blobkeeper.index.domain.IndexElt;
 import io.blobkeeper.index.domain.Partition;
 import io.blobkeeper.index.service.IndexService;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -40,11 +43,11 @@ import java.util.List;
 import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.function.Function;
-import java.util.zip.CRC32;
 
 import static com.google.common.base.Preconditions.checkArgument;
 import static io.blobkeeper.common.util.GuavaCollectors.toImmutableList;
 import static io.blobkeeper.common.util.MerkleTree.MAX_LEVEL;
+import static io.blobkeeper.file.configuration.DurabilityMode.SYNC;
 import static java.lang.Math.max;
 import static java.lang.Math.min;
 import static java.lang.Math.round;
@@ -57,7 +60,7 @@ import static org.apache.commons.io.FilenameUtils.concat;
 public class FileUtils {
     private static final Logger log = LoggerFactory.getLogger(FileUtils.class);
 
-    private static final int CHUNK_SIZE = 8192;
+    private static final int SCAN_BUFFER_SIZE = 1024 * 1024;
 
     private FileUtils() {
     }
@@ -81,40 +84,6 @@ public class FileUtils {
         return true;
     }
 
-    public static long getCrc(byte[] data) {
-        CRC32 crc = new CRC32();
-        crc.update(data);
-        return crc.getValue();
-    }
-
-    public static long getCrc(@NotNull File file) {
-        CRC32 crc = new CRC32();
-
-        while (true) {
-            ByteBuffer buffer = ByteBuffer.allocate(CHUNK_SIZE);
-            while (buffer.hasRemaining()) {
-                int bytes = 0;
-                try {
-                    bytes = file.getFileChannel().read(buffer);
-                } catch (IOException e) {
-                    log.error("Can't read blob file " + file, e);
-                    throw new IllegalArgumentException(e);
-                }
-                if (bytes < 0) {
-                    break;
-                }
-            }
-            buffer.flip();
-            if (buffer.remaining() == 0) {
-                break;
-            } else {
-                crc.update(buffer.array());
-            }
-        }
-
-        return crc.getValue();
-    }
-
     public static java.io.File getDiskPathByDisk(@NotNull FileConfiguration configuration, int disk) {
         return new java.io.File(concat(configuration.getBasePath(), valueOf(disk)));
     }
@@ -150,7 +119,7 @@ public class FileUtils {
         checkArgument(newFile.canRead(), "It must be readable");
         checkArgument(newFile.canWrite(), "It must be writable");
 
-        File file = new File(newFile);
+        File file = new File(newFile, configuration.getDurabilityMode(partition.getDisk()) == SYNC);
         if (preallocateRequired) {
             file.preallocate(configuration.getMaxFileSize());
         }
@@ -208,6 +177,99 @@ public class FileUtils {
         return new String(readFile(javaFile).array(), Charsets.UTF_8);
     }
 
+    /**
+     * @return header of the record, null if the data is written without it (by an older version)
+     */
+    @Nullable
+    public static RecordHeader readRecordHeader(@NotNull File file, @NotNull DiskIndexElt elt) {
+        if (elt.getOffset() < RecordHeader.SIZE) {
+            return null;
+        }
+
+        RecordHeader header = readRecordHeader(file, elt.getOffset() - RecordHeader.SIZE);
+        return null != header && header.getLength() == elt.getLength() ? header : null;
+    }
+
+    /**
+     * Reads headers of the partition records sequentially. A gap (a released region, a torn record or the data
+     * written by an older version) is skipped up to the next magic which starts a header of the valid crc.
+     */
+    @NotNull
+    public static List<RecordHeader> scanRecords(@NotNull File file) {
+        List<RecordHeader> headers = new ArrayList<>();
+
+        long size;
+        try {
+            size = file.getFileChannel().size();
+        } catch (IOException e) {
+            log.error("Can't read blob file " + file, e);
+            throw new IllegalArgumentException(e);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+
+        long position = 0;
+        while (position + RecordHeader.SIZE <= size) {
+            RecordHeader header = readRecordHeader(file, position);
+            if (null != header && header.getEnd() <= size) {
+                headers.add(header);
+                position = header.getEnd();
+            } else {
+                position = findMagic(file, position + 1, size, buffer);
+            }
+        }
+
+        return headers;
+    }
+
+    /**
+     * @return position of the next magic or the size if there is no one
+     */
+    private static long findMagic(File file, long from, long size, ByteBuffer buffer) {
+        long position = from;
+        while (position + RecordHeader.SIZE <= size) {
+            buffer.clear();
+            buffer.limit((int) min(buffer.capacity(), size - position));
+            try {
+                while (buffer.hasRemaining()) {
+                    if (file.getFileChannel().read(buffer, position + buffer.position()) < 0) {
+                        return size;
+                    }
+                }
+            } catch (IOException e) {
+                log.error("Can't read blob file " + file, e);
+                throw new IllegalArgumentException(e);
+            }
+
+            for (int i = 0; i + 4 <= buffer.limit(); i++) {
+                if (buffer.getInt(i) == RecordHeader.MAGIC) {
+                    return position + i;
+                }
+            }
+
+            // the magic could cross the end of the chunk
+            position += max(1, buffer.limit() - 3);
+        }
+        return size;
+    }
+
+    private static RecordHeader readRecordHeader(File file, long headerOffset) {
+        ByteBuffer buffer = ByteBuffer.allocate(RecordHeader.SIZE);
+        try {
+            while (buffer.hasRemaining()) {
+                if (file.getFileChannel().read(buffer, headerOffset + buffer.position()) < 0) {
+                    return null;
+                }
+            }
+        } catch (IOException e) {
+            log.error("Can't read blob file " + file, e);
+            throw new IllegalArgumentException(e);
+        }
+
+        buffer.flip();
+        return RecordHeader.read(buffer, headerOffset + RecordHeader.SIZE);
+    }
+
     @NotNull
     public static SortedMap<Long, Block> readBlob(@NotNull IndexService indexService, @NotNull File blob, @NotNull Partition partition) {
         List<IndexElt> elts = new ArrayList<>(indexService.getListByPartition(partition));
@@ -220,10 +282,8 @@ public class FileUtils {
         for (IndexElt elt : elts) {
             try {
                 ByteBuffer dataBuffer = readFile(blob, elt.getOffset(), elt.getLength());
-                byte[] dataBufferBytes = new byte[dataBuffer.remaining()];
-                dataBuffer.get(dataBufferBytes);
 
-                long fileCrc = FileUtils.getCrc(dataBufferBytes);
+                long fileCrc = elt.getCrcType().getValue(dataBuffer);
                 if (fileCrc == elt.getCrc()) {
                     blockElts.add(new BlockElt(elt.getId(), elt.getType(), elt.getOffset(), elt.getLength(), fileCrc));
                 }
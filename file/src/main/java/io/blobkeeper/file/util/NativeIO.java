@@ -0,0 +1,108 @@
+package io.blobkeeper.file.util;
+
+/*
+ * Copyright (C) 2015 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.sun.jna.Native;
+import com.sun.jna.Platform;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.FileDescriptor;
+import java.lang.reflect.Field;
+
+/**
+ * Page cache hints of the blob files, every call is a no-op if posix_fadvise is not available.
+ * Java 9+ requires --add-opens=java.base/java.io=ALL-UNNAMED to get the descriptor of the file
+ */
+public class NativeIO {
+    private static final Logger log = LoggerFactory.getLogger(NativeIO.class);
+
+    private static final boolean available;
+    private static final Field fdField;
+
+    public enum Advice {
+        NORMAL(0),
+        RANDOM(1),
+        // doubles the read-ahead window
+        SEQUENTIAL(2),
+        // starts the asynchronous read-ahead of the range
+        WILLNEED(3),
+        // drops the clean pages of the range from the page cache
+        DONTNEED(4);
+
+        private final int value;
+
+        Advice(int value) {
+            this.value = value;
+        }
+    }
+
+    static {
+        boolean registered = false;
+        Field field = null;
+        try {
+            if (Platform.isLinux()) {
+                field = FileDescriptor.class.getDeclaredField("fd");
+                field.setAccessible(true);
+
+                Native.register(NativeIO.class, "c");
+                registered = true;
+            }
+        } catch (Throwable t) {
+            log.warn("Native IO hints are not available, is java.io opened by --add-opens=java.base/java.io=ALL-UNNAMED?", t);
+        }
+
+        available = registered;
+        fdField = field;
+
+        log.info("Native IO hints are {}", available ? "available" : "not available");
+    }
+
+    private NativeIO() {
+    }
+
+    private static native int posix_fadvise(int fd, long offset, long length, int advice);
+
+    public static boolean isAvailable() {
+        return available;
+    }
+
+    /**
+     * @param length zero means up to the end of the file
+     * @return true if the hint is applied
+     */
+    public static boolean advise(@NotNull FileDescriptor descriptor, long offset, long length, @NotNull Advice advice) {
+        if (!available) {
+            return false;
+        }
+
+        try {
+            int result = posix_fadvise(fdField.getInt(descriptor), offset, length, advice.value);
+            if (result != 0) {
+                log.debug("Can't advise {}, error {}", advice, result);
+            }
+            return result == 0;
+        } catch (Throwable t) {
+            log.debug("Can't advise {}", advice, t);
+            return false;
+        }
+    }
+}
@@ -31,7 +31,6 @@ import io.blobkeeper.file.util.FileUtils;
 import io.blobkeeper.index.domain.IndexElt;
 import io.blobkeeper.index.domain.Partition;
 import io.blobkeeper.index.service.IndexService;
-import io.blobkeeper.index.service.NoIndexRangeException;
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Guice;
@@ -42,6 +41,8 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
 
+import static com.jayway.awaitility.Awaitility.await;
+import static com.jayway.awaitility.Duration.FIVE_SECONDS;
 import static io.blobkeeper.file.util.FileUtils.writeFile;
 import static org.testng.Assert.*;
 
@@ -104,22 +105,47 @@ public class DiskServiceTest extends BaseFileTest {
         assertEquals(partition.getNextOffset(), 84L);
     }
 
-    @Test(expectedExceptions = NoIndexRangeException.class)
-    public void createNextWritablePartitionFailed() {
+    @Test
+    public void sealPartitionFailed() throws InterruptedException {
         diskService.openOnStart();
 
-        diskService.getWritablePartition(0, 128L);
+        long sealErrors = diskStatistic.getSealErrors(0);
+
+        diskService.release(diskService.getWritablePartition(0, 128L));
+
+        // get next, there is no index to build the tree, but the writer doesn't wait for the seal
+        WritablePartition partition = diskService.getWritablePartition(0, 42L);
+        diskService.release(partition);
+
+        assertEquals(partition.getDisk().getActivePartition(), new Partition(0, 1));
+        assertEquals(partition.getNextOffset(), 42L);
+
+        waitForSeals(0);
+
+        assertEquals(diskStatistic.getSealErrors(0), sealErrors + 1);
+    }
+
+    @Test
+    public void prepareNextWritablePartition() throws InterruptedException {
+        diskService.openOnStart();
+
+        diskService.release(diskService.getWritablePartition(0, 80L));
+
+        java.io.File nextFile = FileUtils.getFilePathByPartition(fileConfiguration, new Partition(0, 1));
+        await().atMost(FIVE_SECONDS).until(nextFile::exists);
+
+        diskService.release(diskService.getWritablePartition(0, 42L));
 
         // get next
         WritablePartition partition = diskService.getWritablePartition(0, 42L);
-        assertEquals(partition.getDisk().getActivePartition(), new Partition(0, 0));
-        assertTrue(partition.getDisk().getWriter().getFileChannel().isOpen());
-        assertTrue(partition.getDisk().isWritable());
-        assertEquals(partition.getNextOffset(), 170L);
+        diskService.release(partition);
+
+        assertEquals(partition.getDisk().getActivePartition(), new Partition(0, 1));
+        assertEquals(partition.getNextOffset(), 42L);
     }
 
     @Test
-    public void createNextWritablePartition() {
+    public void createNextWritablePartition() throws InterruptedException {
         diskService.openOnStart();
 
         WritablePartition partition = diskService.getWritablePartition(0, 128L);
@@ -135,6 +161,7 @@ public class DiskServiceTest extends BaseFileTest {
                 .build();
 
         indexService.add(indexElt);
+        diskService.release(partition);
 
         // get next
         partition = diskService.getWritablePartition(0, 42L);
@@ -144,6 +171,42 @@ public class DiskServiceTest extends BaseFileTest {
         assertEquals(partition.getNextOffset(), 42L);
 
         assertEquals(diskService.getDisks(), ImmutableList.of(0, 1));
+
+        waitForSeals(0);
+
+        assertNotNull(partitionService.getById(0, 0).getTree());
+    }
+
+    @Test
+    public void sealWaitsForWriters() throws InterruptedException {
+        diskService.openOnStart();
+
+        WritablePartition partition = diskService.getWritablePartition(0, 42L);
+
+        IndexElt indexElt = new IndexElt.IndexEltBuilder()
+                .id(generatorService.generate(1))
+                .type(0)
+                .partition(partition.getDisk().getActivePartition())
+                .offset(partition.getNextOffset() - 42L)
+                .length(42L)
+                .crc(42L)
+                .metadata(ImmutableMap.of())
+                .build();
+
+        indexService.add(indexElt);
+
+        // the next partition is created while the writer of the previous one is not finished
+        WritablePartition nextPartition = diskService.getWritablePartition(0, 128L);
+        diskService.release(nextPartition);
+        assertEquals(nextPartition.getDisk().getActivePartition(), new Partition(0, 1));
+
+        await().atMost(FIVE_SECONDS).until(() -> diskStatistic.getPendingSeals(0) > 0);
+        assertNull(partitionService.getById(0, 0).getTree());
+
+        diskService.release(partition);
+        waitForSeals(0);
+
+        assertNotNull(partitionService.getById(0, 0).getTree());
     }
 
     @Test
@@ -163,6 +226,7 @@ public class DiskServiceTest extends BaseFileTest {
                 .build();
 
         indexService.add(indexElt);
+        diskService.release(partition);
 
         // get next
         partition = diskService.getWritablePartition(0, 42L);
@@ -198,6 +262,7 @@ public class DiskServiceTest extends BaseFileTest {
                 .build();
 
         indexService.add(indexElt);
+        diskService.release(partition);
 
         // get next
         WritablePartition nextPartition = diskService.getWritablePartition(0, 42L);
@@ -232,6 +297,10 @@ public class DiskServiceTest extends BaseFileTest {
         assertEquals(bufferBytes, data);
     }
 
+    private void waitForSeals(int disk) {
+        await().atMost(FIVE_SECONDS).until(() -> diskStatistic.getPendingSeals(disk) == 0L);
+    }
+
     @BeforeMethod(dependsOnMethods = {"deleteFiles"})
     private void start() throws InterruptedException {
         indexService.clear();
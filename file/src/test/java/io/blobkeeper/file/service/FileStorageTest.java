@@ -20,6 +20,7 @@ package io.blobkeeper.file.service;
  */
 
 import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.ImmutableSet;
 import io.blobkeeper.common.configuration.MetricModule;
@@ -28,13 +29,16 @@ import io.blobkeeper.common.service.IdGeneratorService;
 import io.blobkeeper.common.util.Streams;
 import io.blobkeeper.file.configuration.FileConfiguration;
 import io.blobkeeper.file.configuration.FileModule;
+import io.blobkeeper.file.domain.RecordHeader;
 import io.blobkeeper.file.domain.ReplicationFile;
 import io.blobkeeper.file.domain.StorageFile;
 import io.blobkeeper.file.domain.TransferFile;
 import io.blobkeeper.file.util.DiskStatistic;
 import io.blobkeeper.file.util.FileUtils;
 import io.blobkeeper.index.domain.DiskIndexElt;
+import io.blobkeeper.index.domain.IndexElt;
 import io.blobkeeper.index.domain.Partition;
+import io.blobkeeper.index.domain.PartitionDigest;
 import io.blobkeeper.index.domain.PartitionState;
 import io.blobkeeper.index.service.IndexService;
 import org.testng.annotations.AfterMethod;
@@ -47,8 +51,12 @@ import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
+import java.util.zip.Checksum;
 
+import static io.blobkeeper.file.configuration.DurabilityMode.GROUP_FSYNC;
+import static io.blobkeeper.file.configuration.DurabilityMode.NONE;
 import static io.blobkeeper.file.util.FileUtils.readFileToString;
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertFalse;
 
@@ -76,6 +84,9 @@ public class FileStorageTest extends BaseFileTest {
     @Inject
     private PartitionService partitionService;
 
+    @Inject
+    private WriterTaskQueue writerTaskQueue;
+
     @Test
     public void getDiskConfiguration() {
         assertEquals(fileConfiguration.getDiskConfiguration(0).getMaxParts(), 2);
@@ -98,6 +109,65 @@ public class FileStorageTest extends BaseFileTest {
         assertEquals(indexService.getById(fileId, 0).getDiskIndexElt(), replicationFile.getIndex());
     }
 
+    @Test
+    public void addFileWithGroupFsync() throws Exception {
+        fileConfiguration.getDiskConfiguration(0).setDurability(GROUP_FSYNC);
+        try {
+            assertEquals(fileConfiguration.getDurabilityMode(0), GROUP_FSYNC);
+            assertEquals(fileConfiguration.getDurabilityMode(1), NONE);
+
+            long syncs = diskStatistic.getSyncs(0);
+
+            StorageFile file = new StorageFile.StorageFileBuilder()
+                    .id(generatorService.generate(1))
+                    .type(0)
+                    .name("test")
+                    .data(Strings.repeat("1234", 128).getBytes())
+                    .headers(ImmutableMultimap.<String, String>of())
+                    .build();
+
+            fileStorage.addFile(0, file);
+
+            file.getDurable().get(5, SECONDS);
+            assertEquals(diskStatistic.getSyncs(0), syncs + 1);
+        } finally {
+            fileConfiguration.getDiskConfiguration(0).setDurability(null);
+        }
+    }
+
+    @Test
+    public void stolenFileIsDurableOnItsWriterDisk() throws Exception {
+        fileConfiguration.getDiskConfiguration(1).setDurability(GROUP_FSYNC);
+        try {
+            assertEquals(fileConfiguration.getDurabilityMode(0), NONE);
+            assertEquals(fileConfiguration.getDurabilityMode(1), GROUP_FSYNC);
+
+            long syncs = diskStatistic.getSyncs(1);
+
+            StorageFile file = new StorageFile.StorageFileBuilder()
+                    .id(generatorService.generate(1))
+                    .type(0)
+                    .name("test")
+                    .data(Strings.repeat("1234", 128).getBytes())
+                    .headers(ImmutableMultimap.<String, String>of())
+                    .build();
+
+            // queued to the disk without fsync, but stolen by the writer of the group fsync one
+            writerTaskQueue.offer(0, file);
+            List<StorageFile> stolen = writerTaskQueue.take(1, 1, 0);
+            assertEquals(stolen, ImmutableList.of(file));
+            assertFalse(file.getDurable().isDone());
+
+            fileStorage.addFiles(1, stolen);
+
+            file.getDurable().get(5, SECONDS);
+            assertEquals(diskStatistic.getSyncs(1), syncs + 1);
+            assertEquals(indexService.getById(file.getId(), 0).getPartition().getDisk(), 1);
+        } finally {
+            fileConfiguration.getDiskConfiguration(1).setDurability(null);
+        }
+    }
+
     @Test
     public void copyFile() {
         Long fileId = generatorService.generate(1);
@@ -156,6 +226,39 @@ public class FileStorageTest extends BaseFileTest {
         }
     }
 
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void replicatedFileWithBrokenHeader() {
+        IndexElt elt = addReplicatedElt();
+
+        byte[] header = RecordHeader.of(elt).toByteBuffer().array();
+        header[0] ^= 1;
+
+        fileStorage.addFile(new ReplicationFile(elt, Strings.repeat("1234", 128).getBytes(), header));
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void replicatedFileWithBrokenData() {
+        IndexElt elt = addReplicatedElt();
+
+        fileStorage.addFile(new ReplicationFile(elt, Strings.repeat("4321", 128).getBytes(), null));
+    }
+
+    private IndexElt addReplicatedElt() {
+        Long fileId = generatorService.generate(1);
+
+        StorageFile file = new StorageFile.StorageFileBuilder()
+                .id(fileId)
+                .type(0)
+                .name("test")
+                .data(Strings.repeat("1234", 128).getBytes())
+                .headers(ImmutableMultimap.<String, String>of())
+                .build();
+
+        fileStorage.addFile(0, file);
+
+        return indexService.getById(fileId, 0);
+    }
+
     @Test
     public void copyFileWithIndexUpdate() throws InterruptedException {
         Long fileId = generatorService.generate(1);
@@ -178,11 +281,88 @@ public class FileStorageTest extends BaseFileTest {
         fileStorage.copyFile(0, new StorageFile.CompactionFileBuilder().id(fileId).type(0).build());
 
         copyFile = FileUtils.getFilePathByPartition(fileConfiguration, new Partition(0, 1));
-        assertEquals(copyFile.length(), replicationFile.getIndex().getLength());
+        assertEquals(copyFile.length(), RecordHeader.SIZE + replicationFile.getIndex().getLength());
 
         assertEquals(indexService.getById(fileId, 0).getDiskIndexElt().getPartition(), new Partition(0, 1));
     }
 
+    @Test
+    public void scanRecords() {
+        List<StorageFile> files = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            files.add(new StorageFile.StorageFileBuilder()
+                    .id(generatorService.generate(1))
+                    .type(i)
+                    .name("test")
+                    .data(Strings.repeat("" + i, 128 * (i + 1)).getBytes())
+                    .headers(ImmutableMultimap.<String, String>of())
+                    .build());
+        }
+
+        fileStorage.addFiles(0, files);
+
+        List<RecordHeader> headers = FileUtils.scanRecords(diskService.getFile(new Partition(0, 0)));
+        assertEquals(headers.size(), files.size());
+
+        for (RecordHeader header : headers) {
+            IndexElt elt = indexService.getById(header.getId(), header.getType());
+            assertEquals(RecordHeader.of(elt), header);
+            assertEquals(FileUtils.readRecordHeader(diskService.getFile(elt.getPartition()), elt.getDiskIndexElt()), header);
+        }
+    }
+
+    @Test
+    public void scanRecordsAfterGap() {
+        List<StorageFile> files = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            files.add(new StorageFile.StorageFileBuilder()
+                    .id(generatorService.generate(1))
+                    .type(0)
+                    .name("test")
+                    .data(Strings.repeat("" + i, 128).getBytes())
+                    .headers(ImmutableMultimap.<String, String>of())
+                    .build());
+        }
+
+        fileStorage.addFiles(0, files.subList(0, 2));
+        // a direct upload is interrupted, its region is a gap
+        fileStorage.release(fileStorage.reserve(0, generatorService.generate(1), 0, 4242));
+        fileStorage.addFiles(0, files.subList(2, 4));
+
+        List<RecordHeader> headers = FileUtils.scanRecords(diskService.getFile(new Partition(0, 0)));
+        assertEquals(headers.size(), files.size());
+
+        for (int i = 0; i < files.size(); i++) {
+            assertEquals(headers.get(i).getId(), files.get(i).getId());
+        }
+    }
+
+    @Test
+    public void digestOfRecords() {
+        List<StorageFile> files = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            files.add(new StorageFile.StorageFileBuilder()
+                    .id(generatorService.generate(1))
+                    .type(0)
+                    .name("test")
+                    .data(Strings.repeat("" + i, 128 * (i + 1)).getBytes())
+                    .headers(ImmutableMultimap.<String, String>of())
+                    .build());
+        }
+
+        fileStorage.addFiles(0, files.subList(0, 2));
+        // a direct upload is interrupted, its region is a gap
+        fileStorage.release(fileStorage.reserve(0, generatorService.generate(1), 0, 42));
+        fileStorage.addFiles(0, files.subList(2, 4));
+
+        Checksum expected = fileConfiguration.getChecksumType().create();
+        files.forEach(file -> fileConfiguration.getChecksumType().update(expected, file.getData()));
+
+        PartitionDigest digest = diskService.getActiveDisks().get(0).getDigest();
+        assertEquals(digest.getPendingFiles(), 0);
+        assertEquals(digest.getCrc(), expected.getValue());
+    }
+
     //@Test
     public void multiThreadAddOrCopy() {
         // for a test only
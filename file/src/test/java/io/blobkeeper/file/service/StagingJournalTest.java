@@ -0,0 +1,124 @@
+package io.blobkeeper.file.service;
+
+/*
+ * Copyright (C) 2015 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.google.common.base.Strings;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.inject.Injector;
+import io.blobkeeper.common.configuration.MetricModule;
+import io.blobkeeper.common.configuration.RootModule;
+import io.blobkeeper.file.configuration.FileConfiguration;
+import io.blobkeeper.file.configuration.FileModule;
+import io.blobkeeper.index.domain.IndexTempElt;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Guice;
+import org.testng.annotations.Test;
+
+import javax.inject.Inject;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+@Guice(modules = {RootModule.class, MetricModule.class, FileModule.class})
+public class StagingJournalTest {
+
+    @Inject
+    private StagingJournal stagingJournal;
+
+    @Inject
+    private FileConfiguration fileConfiguration;
+
+    @Inject
+    private Injector injector;
+
+    @Test
+    public void replayStaged() {
+        IndexTempElt elt1 = createElt(1, "");
+        IndexTempElt elt2 = createElt(2, "");
+        IndexTempElt elt3 = createElt(3, "");
+
+        stagingJournal.staged(elt1);
+        stagingJournal.staged(elt2);
+        stagingJournal.staged(elt3);
+        stagingJournal.done(2, 0);
+
+        assertEquals(stagingJournal.getStaged(), ImmutableList.of(elt1, elt3));
+
+        // new node instance
+        assertEquals(reopen().getStaged(), ImmutableList.of(elt1, elt3));
+    }
+
+    @Test
+    public void deleteDoneSegments() {
+        String metadata = Strings.repeat("42", 65536);
+
+        for (int i = 0; i < 512; i++) {
+            stagingJournal.staged(createElt(i, metadata));
+        }
+        assertTrue(getSegments() > 1);
+
+        for (int i = 0; i < 512; i++) {
+            stagingJournal.done(i, 0);
+        }
+        assertEquals(getSegments(), 1);
+
+        assertTrue(reopen().getStaged().isEmpty());
+    }
+
+    @Test
+    public void deleteRestagedSegments() {
+        String metadata = Strings.repeat("42", 65536);
+
+        // the same file is staged again and again, older segments don't keep it
+        for (int i = 0; i < 512; i++) {
+            stagingJournal.staged(createElt(1, metadata));
+        }
+        assertEquals(stagingJournal.getStaged().size(), 1);
+
+        stagingJournal.done(1, 0);
+        assertEquals(getSegments(), 1);
+    }
+
+    @BeforeMethod
+    private void clear() {
+        stagingJournal.clear();
+    }
+
+    private StagingJournal reopen() {
+        StagingJournal journal = new StagingJournalImpl();
+        injector.injectMembers(journal);
+        return journal;
+    }
+
+    private int getSegments() {
+        return new java.io.File(fileConfiguration.getUploadPath(), "staging").list().length;
+    }
+
+    private IndexTempElt createElt(long id, String metadata) {
+        return new IndexTempElt.IndexTempEltBuilder()
+                .id(id)
+                .type(0)
+                .created(42)
+                .metadata(ImmutableMap.of("meta", metadata))
+                .file("/tmp/upload/" + id)
+                .build();
+    }
+}
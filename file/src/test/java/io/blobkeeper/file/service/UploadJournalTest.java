@@ -0,0 +1,139 @@
+package io.blobkeeper.file.service;
+
+/*
+ * Copyright (C) 2015 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.google.common.collect.ImmutableList;
+import com.google.inject.Injector;
+import io.blobkeeper.common.configuration.MetricModule;
+import io.blobkeeper.common.configuration.RootModule;
+import io.blobkeeper.file.configuration.FileConfiguration;
+import io.blobkeeper.file.configuration.FileModule;
+import io.blobkeeper.index.domain.IndexElt;
+import io.blobkeeper.index.domain.Partition;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Guice;
+import org.testng.annotations.Test;
+
+import javax.inject.Inject;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.stream.Stream;
+
+import static io.blobkeeper.common.util.ChecksumType.CRC32C;
+import static java.lang.String.format;
+import static org.testng.Assert.assertEquals;
+
+@Guice(modules = {RootModule.class, MetricModule.class, FileModule.class})
+public class UploadJournalTest {
+
+    @Inject
+    private UploadJournal uploadJournal;
+
+    @Inject
+    private FileConfiguration fileConfiguration;
+
+    @Inject
+    private Injector injector;
+
+    @Test
+    public void abortedIsNotRecovered() {
+        IndexElt elt1 = createElt(1);
+        IndexElt elt2 = createElt(2);
+        IndexElt elt3 = createElt(3);
+
+        uploadJournal.completed(elt1);
+        uploadJournal.completed(elt2);
+        uploadJournal.completed(elt3);
+        uploadJournal.committed(elt1);
+        uploadJournal.aborted(elt2);
+
+        assertEquals(reopen().getUncommitted(), ImmutableList.of(elt3));
+
+        // all uploads are done
+        uploadJournal.committed(elt3);
+        assertEquals(reopen().getUncommitted(), ImmutableList.of());
+    }
+
+    @Test
+    public void brokenTailIsIgnored() throws IOException {
+        IndexElt elt = createElt(1);
+        uploadJournal.completed(elt);
+
+        // a torn record of the last segment
+        Files.write(
+                Paths.get(fileConfiguration.getUploadPath(), "uploads", format("%020d.segment", 1000)),
+                new byte[]{0, 0, 0, 9, 4, 2, 4, 2, 1, 0}
+        );
+
+        assertEquals(reopen().getUncommitted(), ImmutableList.of(elt));
+    }
+
+    @Test
+    public void undecodableRecordIsSkipped() throws IOException {
+        IndexElt elt = createElt(1);
+        uploadJournal.completed(elt);
+
+        ByteBuffer segment;
+        try (Stream<Path> files = Files.list(Paths.get(fileConfiguration.getUploadPath(), "uploads"))) {
+            segment = ByteBuffer.wrap(Files.readAllBytes(files.sorted().reduce((first, second) -> second).get()));
+        }
+        byte[] added = new byte[8 + segment.getInt(0)];
+        segment.get(added);
+
+        uploadJournal.committed(elt);
+
+        // the crc and the length of the broken record are valid, the next one is replayed
+        byte[] broken = new byte[]{1, 4, 2};
+        ByteBuffer tail = ByteBuffer.allocate(8 + broken.length + added.length)
+                .putInt(broken.length)
+                .putInt((int) CRC32C.getValue(broken))
+                .put(broken)
+                .put(added);
+        Files.write(Paths.get(fileConfiguration.getUploadPath(), "uploads", format("%020d.segment", 1000)), tail.array());
+
+        assertEquals(reopen().getUncommitted(), ImmutableList.of(elt));
+    }
+
+    @BeforeMethod
+    private void clear() {
+        uploadJournal.clear();
+    }
+
+    private UploadJournal reopen() {
+        UploadJournal journal = new UploadJournalImpl();
+        injector.injectMembers(journal);
+        return journal;
+    }
+
+    private IndexElt createElt(long id) {
+        return new IndexElt.IndexEltBuilder()
+                .id(id)
+                .type(0)
+                .partition(new Partition(0, 0))
+                .offset(64)
+                .length(42)
+                .created(42)
+                .updated(42)
+                .build();
+    }
+}
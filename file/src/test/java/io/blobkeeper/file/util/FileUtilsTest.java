@@ -25,6 +25,7 @@ import com.google.common.collect.Range;
 import com.google.common.io.Files;
 import io.blobkeeper.common.configuration.MetricModule;
 import io.blobkeeper.common.configuration.RootModule;
+import io.blobkeeper.common.util.ChecksumType;
 import io.blobkeeper.common.util.MerkleTree;
 import io.blobkeeper.file.configuration.FileConfiguration;
 import io.blobkeeper.file.configuration.FileModule;
@@ -45,6 +46,7 @@ import org.testng.annotations.Test;
 import javax.inject.Inject;
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.NonWritableChannelException;
 
 import static io.blobkeeper.file.util.FileUtils.getFilePathByPartition;
 import static org.joda.time.DateTime.now;
@@ -92,7 +94,8 @@ public class FileUtilsTest extends BaseFileTest {
                 .offset(0L)
                 .length(128L)
                 .metadata(ImmutableMap.of("key", "value"))
-                .crc(FileUtils.getCrc(data))
+                .crc(ChecksumType.CRC32C.getValue(data))
+                .crcType(ChecksumType.CRC32C)
                 .build();
 
         indexService.add(expected);
@@ -142,6 +145,24 @@ public class FileUtilsTest extends BaseFileTest {
         file.close();
     }
 
+    @Test(expectedExceptions = NonWritableChannelException.class)
+    public void readOnlyFile() throws IOException {
+        java.io.File dataFile1 = getFilePathByPartition(configuration, 0, 0);
+        Files.write(new byte[]{0x0, 0x1, 0x2, 0x3}, dataFile1);
+
+        File file = File.readOnly(dataFile1);
+        try {
+            // hints are ignored where they are not supported
+            file.startScan();
+            assertEquals(Bytes.getArray(FileUtils.readFile(file, 2, 1))[0], 0x2);
+            file.finishScan();
+
+            file.getFileChannel().write(ByteBuffer.wrap(new byte[]{0x4}), 0);
+        } finally {
+            file.close();
+        }
+    }
+
     @BeforeMethod
     private void clear() {
         indexService.clear();
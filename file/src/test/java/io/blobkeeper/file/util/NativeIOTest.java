@@ -0,0 +1,56 @@
+package io.blobkeeper.file.util;
+
+/*
+ * Copyright (C) 2015 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.sun.jna.Platform;
+import org.testng.SkipException;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.FileDescriptor;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import static io.blobkeeper.file.util.NativeIO.Advice.SEQUENTIAL;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+
+public class NativeIOTest {
+
+    @Test
+    public void adviseIsApplied() throws IOException {
+        if (!Platform.isLinux()) {
+            throw new SkipException("posix_fadvise is available on linux only");
+        }
+
+        // java.io is opened for the tests on Java 9+
+        assertTrue(NativeIO.isAvailable());
+
+        File file = File.createTempFile("native-io", ".data");
+        file.deleteOnExit();
+
+        try (RandomAccessFile accessFile = new RandomAccessFile(file, "r")) {
+            assertTrue(NativeIO.advise(accessFile.getFD(), 0, 0, SEQUENTIAL));
+        }
+
+        // the result of the call is returned, the descriptor is invalid
+        assertFalse(NativeIO.advise(new FileDescriptor(), 0, 0, SEQUENTIAL));
+    }
+}
@@ -29,15 +29,115 @@ public class IndexConfiguration {
     @Named("blobkeeper.index.cache.enabled")
     private boolean cacheEnabled;
 
+    @Inject
+    @Named("blobkeeper.index.cache.size")
+    private long cacheSize;
+
+    @Inject
+    @Named("blobkeeper.index.negative.cache.ttl")
+    private long negativeCacheTtl;
+
     @Inject
     @Named("blobkeeper.index.gc.grace.seconds")
     private int gcGraceTime;
 
+    @Inject
+    @Named("blobkeeper.index.scan.chunk.size")
+    private int scanChunkSize;
+
+    @Inject
+    @Named("blobkeeper.index.scan.parallelism")
+    private int scanParallelism;
+
+    @Inject
+    @Named("blobkeeper.index.bulk.parallelism")
+    private int bulkParallelism;
+
+    @Inject
+    @Named("blobkeeper.index.stats.bucket.seconds")
+    private int statsBucketTime;
+
+    @Inject
+    @Named("blobkeeper.index.local.enabled")
+    private boolean localIndexEnabled;
+
+    @Inject
+    @Named("blobkeeper.index.local.path")
+    private String localIndexPath;
+
+    @Inject
+    @Named("blobkeeper.blob.cache.enabled")
+    private boolean blobCacheEnabled;
+
+    @Inject
+    @Named("blobkeeper.blob.cache.size")
+    private long blobCacheSize;
+
+    @Inject
+    @Named("blobkeeper.blob.cache.max.object.size")
+    private int blobCacheMaxObjectSize;
+
     public boolean isCacheEnabled() {
         return cacheEnabled;
     }
 
+    public long getCacheSize() {
+        return cacheSize;
+    }
+
+    /**
+     * @return millis to keep not found elts, zero disables the negative cache
+     */
+    public long getNegativeCacheTtl() {
+        return negativeCacheTtl;
+    }
+
     public int getGcGraceTime() {
         return gcGraceTime;
     }
+
+    /**
+     * @return ids of a partition which are read by a single query
+     */
+    public int getScanChunkSize() {
+        return scanChunkSize;
+    }
+
+    public int getScanParallelism() {
+        return scanParallelism;
+    }
+
+    /**
+     * @return ids of a bulk delete or restore which are updated concurrently
+     */
+    public int getBulkParallelism() {
+        return bulkParallelism;
+    }
+
+    /**
+     * @return seconds of a deleted bytes bucket, a bucket is expired once its last second is expired
+     */
+    public int getStatsBucketTime() {
+        return statsBucketTime;
+    }
+
+    public boolean isLocalIndexEnabled() {
+        return localIndexEnabled;
+    }
+
+    public String getLocalIndexPath() {
+        return localIndexPath;
+    }
+
+    public boolean isBlobCacheEnabled() {
+        return blobCacheEnabled;
+    }
+
+    public long getBlobCacheSize() {
+        return blobCacheSize;
+    }
+
+    public int getBlobCacheMaxObjectSize() {
+        return blobCacheMaxObjectSize;
+    }
 }
@@ -24,34 +24,92 @@ import io.blobkeeper.index.domain.DiskIndexElt;
 import io.blobkeeper.index.domain.IndexElt;
 import io.blobkeeper.index.domain.IndexTempElt;
 import io.blobkeeper.index.domain.Partition;
+import io.blobkeeper.index.domain.PartitionStats;
 import org.jetbrains.annotations.NotNull;
 import org.joda.time.DateTime;
 
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 
 @ImplementedBy(IndexDaoImpl.class)
 public interface IndexDao {
     void add(@NotNull IndexElt elt);
 
+    /**
+     * Adds elements with a single batch
+     */
+    @NotNull
+    CompletableFuture<Void> addAsync(@NotNull List<IndexElt> elts);
+
     void add(@NotNull IndexTempElt elt);
 
     IndexElt getById(long id, int type);
 
+    /**
+     * The future is completed by the driver thread
+     */
+    @NotNull
+    CompletableFuture<IndexElt> getByIdAsync(long id, int type);
+
     List<IndexElt> getListById(long id);
 
     List<IndexElt> getListByPartition(@NotNull Partition partition);
 
+    /**
+     * Elts are read page by page while the stream is consumed, the metadata is not read
+     */
+    @NotNull
+    Stream<IndexElt> getStreamByPartition(@NotNull Partition partition);
+
+    /**
+     * Elts are read with the metadata
+     */
+    @NotNull
+    Stream<IndexElt> getFullStreamByPartition(@NotNull Partition partition);
+
+    /**
+     * Denormalizes the location of elts written by an older version into BlobIndexByPart,
+     * the partition stats are recomputed as well
+     *
+     * @return number of elts
+     */
+    long backfill(@NotNull Partition partition);
+
     void updateDelete(long id, boolean deleted);
 
     void updateDelete(long id, boolean deleted, @NotNull DateTime updated);
 
+    /**
+     * Doesn't block on the lookup of the types, the future is completed with the updated types,
+     * empty if the id is not found
+     */
+    @NotNull
+    CompletableFuture<List<IndexElt>> updateDeleteAsync(long id, boolean deleted, @NotNull DateTime updated);
+
     void clear();
 
     List<IndexElt> getLiveListByPartition(@NotNull Partition partition);
 
+    @NotNull
+    Stream<IndexElt> getLiveStreamByPartition(@NotNull Partition partition);
+
+    /**
+     * @return bytes of the deleted elts older than gc grace time, read from the partition stats
+     */
     long getSizeOfDeleted(@NotNull Partition partition);
 
+    @NotNull
+    PartitionStats getStats(@NotNull Partition partition);
+
+    /**
+     * Sets the stats of the partition to the sizes of its elts
+     */
+    void rebuildStats(@NotNull Partition partition);
+
+    void deleteStats(@NotNull Partition partition);
+
     void move(@NotNull IndexElt from, @NotNull DiskIndexElt to);
 
     void delete(@NotNull IndexTempElt indexElt);
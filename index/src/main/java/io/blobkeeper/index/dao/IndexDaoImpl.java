@@ -21,13 +21,16 @@ package io.blobkeeper.index.dao;
 
 import com.datastax.driver.core.*;
 import com.datastax.driver.core.querybuilder.QueryBuilder;
-import io.blobkeeper.common.util.SerializationUtils;
+import com.google.common.collect.ImmutableList;
+import io.blobkeeper.common.util.MetadataCodec;
 import io.blobkeeper.index.configuration.CassandraIndexConfiguration;
 import io.blobkeeper.index.configuration.IndexConfiguration;
+import io.blobkeeper.index.domain.CacheKey;
 import io.blobkeeper.index.domain.DiskIndexElt;
 import io.blobkeeper.index.domain.IndexElt;
 import io.blobkeeper.index.domain.IndexTempElt;
 import io.blobkeeper.index.domain.Partition;
+import io.blobkeeper.index.domain.PartitionStats;
 import org.jetbrains.annotations.NotNull;
 import org.joda.time.DateTime;
 import org.slf4j.Logger;
@@ -36,14 +39,28 @@ import org.slf4j.LoggerFactory;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.function.Predicate;
+import java.util.stream.Stream;
 
 import static com.datastax.driver.core.querybuilder.QueryBuilder.*;
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+import static io.blobkeeper.common.util.ChecksumType.fromId;
+import static io.blobkeeper.common.util.CompletableFutures.toCompletable;
 import static io.blobkeeper.common.util.GuavaCollectors.toImmutableList;
-import static io.blobkeeper.common.util.SerializationUtils.serialize;
 import static java.nio.ByteBuffer.wrap;
+import static java.util.Spliterator.NONNULL;
+import static java.util.Spliterator.ORDERED;
+import static java.util.Spliterators.spliteratorUnknownSize;
+import static java.util.concurrent.CompletableFuture.allOf;
 import static java.util.stream.StreamSupport.stream;
 import static org.joda.time.DateTimeZone.UTC;
 
@@ -51,15 +68,19 @@ import static org.joda.time.DateTimeZone.UTC;
 public class IndexDaoImpl implements IndexDao {
     private static final Logger log = LoggerFactory.getLogger(IndexDaoImpl.class);
 
+    private static final int PART_FETCH_SIZE = 5000;
+
     private final Session session;
 
     private final PreparedStatement insertBlobIndexTempQuery;
     private final PreparedStatement insertBlobIndexQuery;
     private final PreparedStatement insertBlobIndexByPartQuery;
     private final PreparedStatement getByIdAndTypeQuery;
-    private final PreparedStatement getIdsByPartQuery;
+    private final PreparedStatement getByPartQuery;
     private final PreparedStatement getByIdsQuery;
     private final PreparedStatement updateDeletedQuery;
+    private final PreparedStatement updateDeletedByPartQuery;
+    private final PreparedStatement updateLocationQuery;
     private final PreparedStatement getByIdQuery;
     private final PreparedStatement truncateBlobIndexQuery;
     private final PreparedStatement truncateBlobIndexByPartQuery;
@@ -71,6 +92,9 @@ public class IndexDaoImpl implements IndexDao {
     @Inject
     private PartitionDao partitionDao;
 
+    @Inject
+    private PartitionStatsDao partitionStatsDao;
+
     @Inject
     private IndexConfiguration indexConfiguration;
 
@@ -88,17 +112,26 @@ public class IndexDaoImpl implements IndexDao {
                         .value("updated", bindMarker())
                         .value("deleted", bindMarker())
                         .value("crc", bindMarker())
+                        .value("crc_type", bindMarker())
                         .value("offset", bindMarker())
                         .value("length", bindMarker())
                         .value("data", bindMarker())
         );
 
+        // the location and the state are denormalized, so a partition is scanned w/o reading BlobIndex
         insertBlobIndexByPartQuery = session.prepare(
                 insertInto("BlobIndexByPart")
                         .value("id", bindMarker())
                         .value("type", bindMarker())
                         .value("disk", bindMarker())
                         .value("part", bindMarker())
+                        .value("created", bindMarker())
+                        .value("updated", bindMarker())
+                        .value("deleted", bindMarker())
+                        .value("crc", bindMarker())
+                        .value("crc_type", bindMarker())
+                        .value("offset", bindMarker())
+                        .value("length", bindMarker())
         );
 
         insertBlobIndexTempQuery = session.prepare(
@@ -117,8 +150,8 @@ public class IndexDaoImpl implements IndexDao {
                         .and(eq("type", bindMarker()))
         );
 
-        getIdsByPartQuery = session.prepare(
-                select().column("id")
+        getByPartQuery = session.prepare(
+                select().all()
                         .from("BlobIndexByPart")
                         .where(eq("disk", bindMarker()))
                         .and(eq("part", bindMarker()))
@@ -138,6 +171,27 @@ public class IndexDaoImpl implements IndexDao {
                         .and(eq("type", bindMarker()))
         );
 
+        updateDeletedByPartQuery = session.prepare(
+                update("BlobIndexByPart")
+                        .with(set("deleted", bindMarker()))
+                        .and(set("updated", bindMarker()))
+                        .where(eq("disk", bindMarker()))
+                        .and(eq("part", bindMarker()))
+                        .and(eq("id", bindMarker()))
+                        .and(eq("type", bindMarker()))
+        );
+
+        // the metadata is left as is
+        updateLocationQuery = session.prepare(
+                update("BlobIndex")
+                        .with(set("disk", bindMarker()))
+                        .and(set("part", bindMarker()))
+                        .and(set("offset", bindMarker()))
+                        .and(set("length", bindMarker()))
+                        .where(eq("id", bindMarker()))
+                        .and(eq("type", bindMarker()))
+        );
+
         getByIdQuery = session.prepare(
                 select().all()
                         .from("BlobIndex")
@@ -174,6 +228,24 @@ public class IndexDaoImpl implements IndexDao {
     @Override
     public void add(@NotNull IndexElt elt) {
         BatchStatement batchStatement = new BatchStatement();
+        addStatements(batchStatement, elt);
+
+        session.execute(batchStatement);
+        updateStats(partitionStatsDao.add(ImmutableList.of(elt)));
+    }
+
+    @NotNull
+    @Override
+    public CompletableFuture<Void> addAsync(@NotNull List<IndexElt> elts) {
+        BatchStatement batchStatement = new BatchStatement();
+        elts.forEach(elt -> addStatements(batchStatement, elt));
+
+        CompletableFuture<Void> added = toCompletable(session.executeAsync(batchStatement));
+        added.thenRun(() -> updateStats(partitionStatsDao.add(elts)));
+        return added;
+    }
+
+    private void addStatements(BatchStatement batchStatement, IndexElt elt) {
         batchStatement.add(
                 insertBlobIndexQuery.bind(
                         elt.getId(),
@@ -184,21 +256,29 @@ public class IndexDaoImpl implements IndexDao {
                         elt.getUpdated(),
                         elt.isDeleted(),
                         elt.getCrc(),
+                        elt.getCrcType().getId(),
                         elt.getOffset(),
                         elt.getLength(),
-                        wrap(serialize(elt.getMetadata()))
-                )
-        );
-        batchStatement.add(
-                insertBlobIndexByPartQuery.bind(
-                        elt.getId(),
-                        elt.getType(),
-                        elt.getPartition().getDisk(),
-                        elt.getPartition().getId()
+                        wrap(MetadataCodec.encode(elt.getMetadata()))
                 )
         );
+        batchStatement.add(bindByPart(elt, elt.getDiskIndexElt()));
+    }
 
-        session.execute(batchStatement);
+    private BoundStatement bindByPart(IndexElt elt, DiskIndexElt location) {
+        return insertBlobIndexByPartQuery.bind(
+                elt.getId(),
+                elt.getType(),
+                location.getPartition().getDisk(),
+                location.getPartition().getId(),
+                elt.getCreated(),
+                elt.getUpdated(),
+                elt.isDeleted(),
+                elt.getCrc(),
+                elt.getCrcType().getId(),
+                location.getOffset(),
+                location.getLength()
+        );
     }
 
     @Override
@@ -208,7 +288,7 @@ public class IndexDaoImpl implements IndexDao {
                         elt.getId(),
                         elt.getType(),
                         elt.getCreated(),
-                        wrap(serialize(elt.getMetadata())),
+                        wrap(MetadataCodec.encode(elt.getMetadata())),
                         elt.getFile()
                 )
         );
@@ -216,7 +296,28 @@ public class IndexDaoImpl implements IndexDao {
 
     @Override
     public IndexElt getById(long id, int type) {
-        ResultSet result = session.execute(getByIdAndTypeQuery.bind(id, type));
+        return mapElt(id, session.execute(getByIdAndTypeQuery.bind(id, type)));
+    }
+
+    @NotNull
+    @Override
+    public CompletableFuture<IndexElt> getByIdAsync(long id, int type) {
+        CompletableFuture<IndexElt> result = new CompletableFuture<>();
+        ResultSetFuture future = session.executeAsync(getByIdAndTypeQuery.bind(id, type));
+        future.addListener(
+                () -> {
+                    try {
+                        result.complete(mapElt(id, future.getUninterruptibly()));
+                    } catch (Exception e) {
+                        result.completeExceptionally(e);
+                    }
+                },
+                directExecutor()
+        );
+        return result;
+    }
+
+    private IndexElt mapElt(long id, ResultSet result) {
         if (result.getAvailableWithoutFetching() > 1) {
             throw new IllegalStateException("Too many rows found for key:" + id);
         }
@@ -238,7 +339,40 @@ public class IndexDaoImpl implements IndexDao {
 
     @Override
     public List<IndexElt> getListByPartition(@NotNull Partition partition) {
-        return getListByPartition(partition, elt -> true);
+        return getStreamByPartition(partition).collect(toImmutableList());
+    }
+
+    @NotNull
+    @Override
+    public Stream<IndexElt> getStreamByPartition(@NotNull Partition partition) {
+        return getStreamByPartition(partition, elt -> true);
+    }
+
+    @NotNull
+    @Override
+    public Stream<IndexElt> getFullStreamByPartition(@NotNull Partition partition) {
+        return getStreamByPartition(partition, elt -> true, true);
+    }
+
+    @Override
+    public long backfill(@NotNull Partition partition) {
+        long backfilled = 0;
+        Deque<ResultSetFuture> futures = new ArrayDeque<>();
+
+        Iterator<IndexElt> elts = getFullStreamByPartition(partition).iterator();
+        while (elts.hasNext()) {
+            IndexElt elt = elts.next();
+            if (futures.size() >= indexConfiguration.getScanChunkSize()) {
+                futures.pollFirst().getUninterruptibly();
+            }
+            futures.addLast(session.executeAsync(bindByPart(elt, elt.getDiskIndexElt())));
+            backfilled++;
+        }
+
+        futures.forEach(ResultSetFuture::getUninterruptibly);
+
+        rebuildStats(partition);
+        return backfilled;
     }
 
     @Override
@@ -248,21 +382,44 @@ public class IndexDaoImpl implements IndexDao {
 
     @Override
     public void updateDelete(long id, boolean deleted, @NotNull DateTime updated) {
-        List<IndexElt> allTypes = getListById(id);
-
-        List<ResultSetFuture> futures = allTypes
-                .stream()
-                .map(type -> session.executeAsync(
-                        updateDeletedQuery.bind(
-                                deleted,
-                                updated.getMillis(),
-                                type.getId(),
-                                type.getType())
-                        )
-                )
-                .collect(toImmutableList());
+        updateDeleteAsync(id, deleted, updated).join();
+    }
 
-        futures.forEach(ResultSetFuture::getUninterruptibly);
+    @NotNull
+    @Override
+    public CompletableFuture<List<IndexElt>> updateDeleteAsync(long id, boolean deleted, @NotNull DateTime updated) {
+        return toCompletable(
+                session.executeAsync(getByIdQuery.bind(id)),
+                result -> stream(result.spliterator(), false)
+                        .map(this::mapEltRow)
+                        .collect(toImmutableList())
+        ).thenCompose(allTypes -> {
+            List<CompletableFuture<Void>> futures = allTypes
+                    .stream()
+                    .map(type -> {
+                        BatchStatement batchStatement = new BatchStatement();
+                        batchStatement.add(updateDeletedQuery.bind(deleted, updated.getMillis(), type.getId(), type.getType()));
+                        batchStatement.add(
+                                updateDeletedByPartQuery.bind(
+                                        deleted,
+                                        updated.getMillis(),
+                                        type.getPartition().getDisk(),
+                                        type.getPartition().getId(),
+                                        type.getId(),
+                                        type.getType()
+                                )
+                        );
+                        return toCompletable(session.executeAsync(batchStatement))
+                                .thenRun(() -> updateStats(partitionStatsDao.updateDelete(type, deleted, updated.getMillis())));
+                    })
+                    .collect(toImmutableList());
+
+            return allOf(futures.toArray(new CompletableFuture[futures.size()]))
+                    .thenApply(ignored -> allTypes
+                            .stream()
+                            .map(type -> withDeleted(type, deleted, updated.getMillis()))
+                            .collect(toImmutableList()));
+        });
     }
 
     @Override
@@ -271,39 +428,53 @@ public class IndexDaoImpl implements IndexDao {
         session.execute(truncateBlobIndexByPartQuery.bind());
         session.execute(truncateBlobIndexTempQuery.bind());
         partitionDao.clear();
+        partitionStatsDao.clear();
     }
 
     @Override
     public List<IndexElt> getLiveListByPartition(@NotNull Partition partition) {
+        return getLiveStreamByPartition(partition).collect(toImmutableList());
+    }
+
+    @NotNull
+    @Override
+    public Stream<IndexElt> getLiveStreamByPartition(@NotNull Partition partition) {
         Predicate<IndexElt> liveEltsPredicate = isNotDeleted.or(isDeleted.and(new ExpiredPredicate(indexConfiguration.getGcGraceTime())).negate());
-        return getListByPartition(partition, liveEltsPredicate);
+        return getStreamByPartition(partition, liveEltsPredicate);
     }
 
     @Override
     public long getSizeOfDeleted(@NotNull Partition partition) {
-        Predicate<IndexElt> deleteAndExpiredEltsPredicate = isDeleted.and(new ExpiredPredicate(indexConfiguration.getGcGraceTime()));
+        return partitionStatsDao.getStats(partition).getExpiredBytes();
+    }
 
-        return getListByPartition(partition, deleteAndExpiredEltsPredicate).stream()
-                .mapToLong(IndexElt::getLength)
-                .sum();
+    @NotNull
+    @Override
+    public PartitionStats getStats(@NotNull Partition partition) {
+        return partitionStatsDao.getStats(partition);
+    }
+
+    @Override
+    public void rebuildStats(@NotNull Partition partition) {
+        partitionStatsDao.rebuild(partition, getStreamByPartition(partition));
+    }
+
+    @Override
+    public void deleteStats(@NotNull Partition partition) {
+        partitionStatsDao.delete(partition);
     }
 
     @Override
     public void move(@NotNull IndexElt from, @NotNull DiskIndexElt to) {
         BatchStatement batchStatement = new BatchStatement();
         batchStatement.add(
-                insertBlobIndexQuery.bind(
-                        from.getId(),
-                        from.getType(),
+                updateLocationQuery.bind(
                         to.getPartition().getDisk(),
                         to.getPartition().getId(),
-                        from.getCreated(),
-                        from.getUpdated(),
-                        from.isDeleted(),
-                        from.getCrc(),
                         to.getOffset(),
                         to.getLength(),
-                        wrap(serialize(from.getMetadata()))
+                        from.getId(),
+                        from.getType()
                 )
         );
         batchStatement.add(
@@ -314,16 +485,10 @@ public class IndexDaoImpl implements IndexDao {
                         from.getType()
                 )
         );
-        batchStatement.add(
-                insertBlobIndexByPartQuery.bind(
-                        from.getId(),
-                        from.getType(),
-                        to.getPartition().getDisk(),
-                        to.getPartition().getId()
-                )
-        );
+        batchStatement.add(bindByPart(from, to));
 
         session.execute(batchStatement);
+        updateStats(partitionStatsDao.move(from, to));
     }
 
     @Override
@@ -341,6 +506,22 @@ public class IndexDaoImpl implements IndexDao {
                 .collect(toImmutableList());
     }
 
+    private static IndexElt withDeleted(IndexElt elt, boolean deleted, long updated) {
+        return new IndexElt.IndexEltBuilder()
+                .id(elt.getId())
+                .type(elt.getType())
+                .partition(elt.getPartition())
+                .crc(elt.getCrc())
+                .crcType(elt.getCrcType())
+                .offset(elt.getOffset())
+                .length(elt.getLength())
+                .metadata(elt.getMetadata())
+                .created(elt.getCreated())
+                .updated(updated)
+                .deleted(deleted)
+                .build();
+    }
+
     private IndexElt mapEltRow(Row row) {
         Partition partition = new Partition(row.getInt("disk"), row.getInt("part"));
 
@@ -349,20 +530,51 @@ public class IndexDaoImpl implements IndexDao {
                 .type(row.getInt("type"))
                 .partition(partition)
                 .crc(row.getLong("crc"))
+                // null for rows written before the type was stored
+                .crcType(fromId(row.getInt("crc_type")))
+                .offset(row.getLong("offset"))
+                .length(row.getLong("length"))
+                .metadata(MetadataCodec.decode(getData(row)))
+                .created(row.getLong("created"))
+                .updated(row.getLong("updated"))
+                .deleted(row.getBool("deleted"))
+                .build();
+    }
+
+    /**
+     * The metadata is not denormalized
+     */
+    private IndexElt mapByPartRow(Row row) {
+        return new IndexElt.IndexEltBuilder()
+                .id(row.getLong("id"))
+                .type(row.getInt("type"))
+                .partition(new Partition(row.getInt("disk"), row.getInt("part")))
+                .crc(row.getLong("crc"))
+                .crcType(fromId(row.getInt("crc_type")))
                 .offset(row.getLong("offset"))
                 .length(row.getLong("length"))
-                .metadata((Map<String, Object>) SerializationUtils.deserialize(getData(row)))
                 .created(row.getLong("created"))
                 .updated(row.getLong("updated"))
                 .deleted(row.getBool("deleted"))
                 .build();
     }
 
+    /**
+     * The counters are approximate, they are updated off the write path and rebuilt from the index
+     */
+    private void updateStats(CompletableFuture<Void> update) {
+        update.whenComplete((ignored, e) -> {
+            if (null != e) {
+                log.error("Can't update partition stats", e);
+            }
+        });
+    }
+
     private IndexTempElt mapTempEltRow(Row row) {
         return new IndexTempElt.IndexTempEltBuilder()
                 .id(row.getLong("id"))
                 .type(row.getInt("type"))
-                .metadata((Map<String, Object>) SerializationUtils.deserialize(getData(row)))
+                .metadata(MetadataCodec.decode(getData(row)))
                 .created(row.getLong("created"))
                 .file(row.getString("file"))
                 .build();
@@ -375,21 +587,121 @@ public class IndexDaoImpl implements IndexDao {
         return metadataBytes;
     }
 
-    private List<IndexElt> getListByPartition(Partition partition, Predicate<IndexElt> predicates) {
-        ResultSet result = session.execute(getIdsByPartQuery.bind(partition.getDisk(), partition.getId()));
+    private Stream<IndexElt> getStreamByPartition(Partition partition, Predicate<IndexElt> predicates) {
+        return getStreamByPartition(partition, predicates, false);
+    }
 
-        List<Long> ids = stream(result.spliterator(), false)
-                .map(row -> row.getLong("id"))
-                .distinct()
-                .collect(toImmutableList());
+    private Stream<IndexElt> getStreamByPartition(Partition partition, Predicate<IndexElt> predicates, boolean full) {
+        Statement statement = getByPartQuery.bind(partition.getDisk(), partition.getId())
+                .setFetchSize(PART_FETCH_SIZE);
 
-        result = session.execute(getByIdsQuery.bind(ids));
+        PartitionScan scan = new PartitionScan(partition, session.execute(statement).iterator(), predicates, full);
+        return stream(spliteratorUnknownSize(scan, ORDERED | NONNULL), false);
+    }
 
-        return stream(result.spliterator(), false)
-                .map(this::mapEltRow)
-                .filter(elt -> partition.equals(elt.getPartition()))
-                .filter(predicates)
-                .collect(toImmutableList());
+    /**
+     * Rows of the partition are paged by the driver and mapped as they are.
+     * Rows written before the location was denormalized (or all rows of a full scan) are read from BlobIndex
+     * by the chunked IN queries, a few chunks are read ahead asynchronously.
+     * So only a bounded number of elts is held at once.
+     */
+    private class PartitionScan implements Iterator<IndexElt> {
+        private final Partition partition;
+        private final Iterator<Row> rows;
+        private final Predicate<IndexElt> predicates;
+        private final boolean full;
+
+        private final int chunkSize = indexConfiguration.getScanChunkSize();
+        private final int parallelism = indexConfiguration.getScanParallelism();
+
+        private final Deque<Chunk> chunks = new ArrayDeque<>();
+        private final Deque<IndexElt> elts = new ArrayDeque<>();
+
+        private Chunk chunk = new Chunk();
+
+        PartitionScan(Partition partition, Iterator<Row> rows, Predicate<IndexElt> predicates, boolean full) {
+            this.partition = partition;
+            this.rows = rows;
+            this.predicates = predicates;
+            this.full = full;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (elts.isEmpty()) {
+                if (rows.hasNext()) {
+                    read(rows.next());
+                } else if (!chunk.keys.isEmpty()) {
+                    query();
+                } else if (!chunks.isEmpty()) {
+                    drain();
+                } else {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public IndexElt next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            return elts.pollFirst();
+        }
+
+        private void read(Row row) {
+            if (!full && !row.isNull("length")) {
+                offer(mapByPartRow(row));
+                return;
+            }
+
+            chunk.add(row.getLong("id"), row.getInt("type"));
+            if (chunk.ids.size() >= chunkSize) {
+                query();
+            }
+        }
+
+        private void query() {
+            if (chunks.size() >= parallelism) {
+                drain();
+            }
+
+            chunk.future = session.executeAsync(getByIdsQuery.bind(chunk.ids));
+            chunks.addLast(chunk);
+            chunk = new Chunk();
+        }
+
+        private void drain() {
+            Chunk oldest = chunks.pollFirst();
+            for (Row row : oldest.future.getUninterruptibly()) {
+                IndexElt elt = mapEltRow(row);
+                // the other types of the id could be in the other partitions
+                if (partition.equals(elt.getPartition()) && oldest.keys.contains(elt.toCacheKey())) {
+                    offer(elt);
+                }
+            }
+        }
+
+        private void offer(IndexElt elt) {
+            if (predicates.test(elt)) {
+                elts.addLast(elt);
+            }
+        }
+    }
+
+    private static class Chunk {
+        private final List<Long> ids = new ArrayList<>();
+        private final Set<CacheKey> keys = new HashSet<>();
+        private ResultSetFuture future;
+
+        void add(long id, int type) {
+            // types of the same id are clustered together
+            if (ids.isEmpty() || ids.get(ids.size() - 1) != id) {
+                ids.add(id);
+            }
+            keys.add(new CacheKey(id, type));
+        }
     }
 
     private static Predicate<IndexElt> isDeleted = IndexElt::isDeleted;
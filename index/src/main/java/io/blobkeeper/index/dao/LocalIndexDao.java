@@ -0,0 +1,48 @@
+package io.blobkeeper.index.dao;
+
+/*
+ * Copyright (C) 2015 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.google.inject.ImplementedBy;
+import io.blobkeeper.index.domain.IndexElt;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Node local copy of the index, the Cassandra index is the source of truth
+ */
+@ImplementedBy(LocalIndexDaoImpl.class)
+public interface LocalIndexDao {
+    /**
+     * Lookups are allowed once the index is rebuilt
+     */
+    boolean isReady();
+
+    void setReady(boolean ready);
+
+    IndexElt getById(long id, int type);
+
+    void add(@NotNull IndexElt elt);
+
+    /**
+     * Adds the elt if it's newer than the local one
+     */
+    void merge(@NotNull IndexElt elt);
+
+    void clear();
+}
@@ -0,0 +1,519 @@
+package io.blobkeeper.index.dao;
+
+/*
+ * Copyright (C) 2015 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.blobkeeper.common.util.MetadataCodec;
+import io.blobkeeper.index.configuration.IndexConfiguration;
+import io.blobkeeper.index.domain.CacheKey;
+import io.blobkeeper.index.domain.IndexElt;
+import io.blobkeeper.index.domain.Partition;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.stream.Stream;
+
+import static com.google.common.collect.ImmutableList.copyOf;
+import static com.google.common.collect.ImmutableList.of;
+import static io.blobkeeper.common.util.ChecksumType.fromId;
+import static java.lang.String.format;
+import static java.nio.channels.Channels.newChannel;
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.util.concurrent.Executors.newSingleThreadExecutor;
+
+/**
+ * Log structured store: a memtable is flushed to a sorted segment file, segments are memory mapped and searched
+ * by the sparse fence index. Too many segments are merged into the runs of the limited size.
+ * The content isn't recovered after the restart, it's rebuilt from the Cassandra index.
+ */
+@Singleton
+public class LocalIndexDaoImpl implements LocalIndexDao {
+    private static final Logger log = LoggerFactory.getLogger(LocalIndexDaoImpl.class);
+
+    private static final String SEGMENT_SUFFIX = ".index";
+
+    private static final int MEMTABLE_SIZE = 65536;
+    private static final int MAX_SEGMENTS = 8;
+    private static final int MAX_SEGMENT_SIZE = 1024 * 1024 * 1024;
+    // every n-th record is in the fence index
+    private static final int FENCE_INTERVAL = 64;
+
+    private static final int ID = 0;
+    private static final int TYPE = 8;
+    private static final int FLAGS = 12;
+    private static final int DISK = 16;
+    private static final int PART = 20;
+    private static final int OFFSET = 24;
+    private static final int LENGTH = 32;
+    private static final int CRC = 40;
+    private static final int CREATED = 48;
+    private static final int UPDATED = 56;
+    private static final int DATA_LENGTH = 64;
+    private static final int HEADER_SIZE = 68;
+
+    private static final int DELETED = 1;
+    private static final int CRC_TYPE_SHIFT = 8;
+
+    private static final Comparator<CacheKey> KEY_ORDER = Comparator.comparingLong(CacheKey::getId)
+            .thenComparingInt(CacheKey::getTypeId);
+
+    @Inject
+    private IndexConfiguration configuration;
+
+    private final ExecutorService flushExecutor = newSingleThreadExecutor(
+            new ThreadFactoryBuilder()
+                    .setDaemon(true)
+                    .setNameFormat("LocalIndexFlusher-%d")
+                    .build()
+    );
+
+    private volatile ConcurrentSkipListMap<CacheKey, byte[]> memtable = new ConcurrentSkipListMap<>(KEY_ORDER);
+    // the memtable which is being flushed
+    private volatile NavigableMap<CacheKey, byte[]> flushing;
+    // from the newest
+    private volatile List<Segment> segments = of();
+
+    private volatile boolean ready;
+
+    private long generation;
+
+    @Override
+    public boolean isReady() {
+        return ready && configuration.isLocalIndexEnabled();
+    }
+
+    @Override
+    public void setReady(boolean ready) {
+        this.ready = ready;
+    }
+
+    @Override
+    public IndexElt getById(long id, int type) {
+        ByteBuffer record = getRecord(new CacheKey(id, type));
+        return null == record ? null : toIndexElt(record);
+    }
+
+    @Override
+    public synchronized void add(@NotNull IndexElt elt) {
+        if (!configuration.isLocalIndexEnabled()) {
+            return;
+        }
+
+        memtable.put(elt.toCacheKey(), toRecord(elt));
+
+        if (memtable.size() >= MEMTABLE_SIZE && null == flushing) {
+            NavigableMap<CacheKey, byte[]> full = memtable;
+            // readers see the full memtable until its segment is added
+            flushing = full;
+            memtable = new ConcurrentSkipListMap<>(KEY_ORDER);
+
+            flushExecutor.submit(() -> flush(full));
+        }
+    }
+
+    @Override
+    public synchronized void merge(@NotNull IndexElt elt) {
+        if (!configuration.isLocalIndexEnabled()) {
+            return;
+        }
+
+        ByteBuffer record = getRecord(elt.toCacheKey());
+        if (null == record || record.getLong(UPDATED) < elt.getUpdated()) {
+            add(elt);
+        }
+    }
+
+    @Override
+    public void clear() {
+        try {
+            flushExecutor.submit(() -> {
+                synchronized (this) {
+                    memtable = new ConcurrentSkipListMap<>(KEY_ORDER);
+                    flushing = null;
+                    segments = of();
+                }
+                deleteSegmentFiles();
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private ByteBuffer getRecord(CacheKey key) {
+        byte[] record = memtable.get(key);
+        if (null != record) {
+            return ByteBuffer.wrap(record);
+        }
+
+        NavigableMap<CacheKey, byte[]> current = flushing;
+        if (null != current && null != (record = current.get(key))) {
+            return ByteBuffer.wrap(record);
+        }
+
+        for (Segment segment : segments) {
+            ByteBuffer found = segment.find(key.getId(), key.getTypeId());
+            if (null != found) {
+                return found;
+            }
+        }
+        return null;
+    }
+
+    private void flush(NavigableMap<CacheKey, byte[]> full) {
+        try {
+            Segment segment = write(full.values().stream().map(ByteBuffer::wrap).iterator(), ++generation).get(0);
+
+            synchronized (this) {
+                List<Segment> updated = new ArrayList<>(segments.size() + 1);
+                updated.add(segment);
+                updated.addAll(segments);
+                segments = copyOf(updated);
+                flushing = null;
+            }
+
+            if (segments.stream().mapToLong(existing -> existing.generation).distinct().count() > MAX_SEGMENTS) {
+                compact();
+            }
+        } catch (Exception e) {
+            log.error("Can't flush local index", e);
+            // back to the memtable, the older segments could keep the stale versions
+            synchronized (this) {
+                full.forEach(memtable::putIfAbsent);
+                flushing = null;
+            }
+        }
+    }
+
+    /**
+     * Merges the newer segments to the runs of a new generation, the newest record wins.
+     * The oldest generation is merged as well only if it isn't larger than the newer ones, so it's not rewritten often.
+     */
+    private void compact() throws IOException {
+        List<Segment> current = segments;
+
+        long oldestGeneration = current.get(current.size() - 1).generation;
+        long oldestSize = current.stream()
+                .filter(segment -> segment.generation == oldestGeneration)
+                .mapToLong(segment -> segment.buffer.limit())
+                .sum();
+        long newerSize = current.stream()
+                .filter(segment -> segment.generation != oldestGeneration)
+                .mapToLong(segment -> segment.buffer.limit())
+                .sum();
+
+        List<Segment> merged = newerSize < oldestSize
+                ? copyOf(current.stream().filter(segment -> segment.generation != oldestGeneration).iterator())
+                : current;
+
+        PriorityQueue<Cursor> cursors = new PriorityQueue<>();
+        for (int i = 0; i < merged.size(); i++) {
+            Cursor cursor = new Cursor(merged.get(i), i);
+            if (cursor.hasNext()) {
+                cursors.add(cursor);
+            }
+        }
+
+        Iterator<ByteBuffer> records = new Iterator<ByteBuffer>() {
+            @Override
+            public boolean hasNext() {
+                return !cursors.isEmpty();
+            }
+
+            @Override
+            public ByteBuffer next() {
+                Cursor newest = cursors.poll();
+                ByteBuffer record = newest.next();
+
+                // skip the older versions
+                while (!cursors.isEmpty() && cursors.peek().compareKey(record) == 0) {
+                    Cursor older = cursors.poll();
+                    older.next();
+                    if (older.hasNext()) {
+                        cursors.add(older);
+                    }
+                }
+
+                if (newest.hasNext()) {
+                    cursors.add(newest);
+                }
+                return record;
+            }
+        };
+
+        List<Segment> runs = write(records, ++generation);
+
+        synchronized (this) {
+            // flushes and merges are done by the same thread, so the segments are the same
+            List<Segment> updated = new ArrayList<>(runs);
+            updated.addAll(segments.subList(merged.size(), segments.size()));
+            segments = copyOf(updated);
+        }
+
+        for (Segment segment : merged) {
+            Files.deleteIfExists(segment.path);
+        }
+
+        log.info("Local index is compacted, {} segments are merged to {}", merged.size(), runs.size());
+    }
+
+    /**
+     * Writes the sorted records to the runs of the limited size
+     */
+    private List<Segment> write(Iterator<ByteBuffer> records, long generation) throws IOException {
+        Path directory = getPath();
+        Files.createDirectories(directory);
+
+        List<Segment> runs = new ArrayList<>();
+        while (records.hasNext()) {
+            Path path = directory.resolve(format("%020d-%06d%s", generation, runs.size(), SEGMENT_SUFFIX));
+
+            long size = 0;
+            try (WritableByteChannel output = newChannel(new BufferedOutputStream(Files.newOutputStream(path), 65536))) {
+                // a record is limited by the metadata size, so a run is less than 2G
+                while (records.hasNext() && size < MAX_SEGMENT_SIZE) {
+                    ByteBuffer record = records.next();
+                    size += record.remaining();
+                    while (record.hasRemaining()) {
+                        output.write(record);
+                    }
+                }
+            }
+
+            runs.add(new Segment(path, generation));
+        }
+        return runs;
+    }
+
+    private void deleteSegmentFiles() {
+        Path directory = getPath();
+        if (!Files.exists(directory)) {
+            return;
+        }
+
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(path -> path.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                    .forEach(path -> {
+                        try {
+                            Files.delete(path);
+                        } catch (IOException e) {
+                            log.error("Can't delete local index segment {}", path, e);
+                        }
+                    });
+        } catch (IOException e) {
+            log.error("Can't delete local index", e);
+        }
+    }
+
+    private Path getPath() {
+        return Paths.get(configuration.getLocalIndexPath());
+    }
+
+    private static byte[] toRecord(IndexElt elt) {
+        byte[] data = null == elt.getMetadata() ? new byte[0] : MetadataCodec.encode(elt.getMetadata());
+        int flags = (elt.getCrcType().getId() << CRC_TYPE_SHIFT) | (elt.isDeleted() ? DELETED : 0);
+
+        Partition partition = elt.getPartition();
+        return ByteBuffer.allocate(HEADER_SIZE + data.length)
+                .putLong(elt.getId())
+                .putInt(elt.getType())
+                .putInt(flags)
+                .putInt(partition.getDisk())
+                .putInt(partition.getId())
+                .putLong(elt.getOffset())
+                .putLong(elt.getLength())
+                .putLong(elt.getCrc())
+                .putLong(elt.getCreated())
+                .putLong(elt.getUpdated())
+                .putInt(data.length)
+                .put(data)
+                .array();
+    }
+
+    /**
+     * @param record a buffer which starts with the record
+     */
+    private static IndexElt toIndexElt(ByteBuffer record) {
+        int flags = record.getInt(FLAGS);
+
+        IndexElt.IndexEltBuilder builder = new IndexElt.IndexEltBuilder()
+                .id(record.getLong(ID))
+                .type(record.getInt(TYPE))
+                .partition(new Partition(record.getInt(DISK), record.getInt(PART)))
+                .offset(record.getLong(OFFSET))
+                .length(record.getLong(LENGTH))
+                .crc(record.getLong(CRC))
+                .crcType(fromId((flags >>> CRC_TYPE_SHIFT) & 0xFF))
+                .created(record.getLong(CREATED))
+                .updated(record.getLong(UPDATED))
+                .deleted((flags & DELETED) != 0);
+
+        int dataLength = record.getInt(DATA_LENGTH);
+        if (dataLength > 0) {
+            byte[] data = new byte[dataLength];
+            ByteBuffer view = record.duplicate();
+            view.position(record.position() + HEADER_SIZE);
+            view.get(data);
+            builder.metadata(MetadataCodec.decode(data));
+        }
+
+        return builder.build();
+    }
+
+    private static int getRecordSize(ByteBuffer buffer, int position) {
+        return HEADER_SIZE + buffer.getInt(position + DATA_LENGTH);
+    }
+
+    private static int compare(ByteBuffer buffer, int position, long id, int type) {
+        int result = Long.compare(buffer.getLong(position + ID), id);
+        return result != 0 ? result : Integer.compare(buffer.getInt(position + TYPE), type);
+    }
+
+    private static class Segment {
+        private final Path path;
+        private final long generation;
+        private final MappedByteBuffer buffer;
+
+        private final long[] fenceIds;
+        private final int[] fenceTypes;
+        private final int[] fencePositions;
+
+        Segment(Path path, long generation) throws IOException {
+            this.path = path;
+            this.generation = generation;
+            try (FileChannel channel = FileChannel.open(path)) {
+                this.buffer = channel.map(READ_ONLY, 0, channel.size());
+            }
+
+            List<Integer> positions = new ArrayList<>();
+            int count = 0;
+            for (int position = 0; position < buffer.limit(); position += getRecordSize(buffer, position)) {
+                if (count++ % FENCE_INTERVAL == 0) {
+                    positions.add(position);
+                }
+            }
+
+            fenceIds = new long[positions.size()];
+            fenceTypes = new int[positions.size()];
+            fencePositions = new int[positions.size()];
+            for (int i = 0; i < positions.size(); i++) {
+                fencePositions[i] = positions.get(i);
+                fenceIds[i] = buffer.getLong(fencePositions[i] + ID);
+                fenceTypes[i] = buffer.getInt(fencePositions[i] + TYPE);
+            }
+        }
+
+        /**
+         * @return a slice which starts with the record
+         */
+        ByteBuffer find(long id, int type) {
+            // the last fence which isn't greater than the key
+            int low = 0, high = fencePositions.length - 1, fence = -1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                int result = Long.compare(fenceIds[middle], id);
+                if (result == 0) {
+                    result = Integer.compare(fenceTypes[middle], type);
+                }
+
+                if (result <= 0) {
+                    fence = middle;
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+
+            if (fence < 0) {
+                return null;
+            }
+
+            int end = fence + 1 < fencePositions.length ? fencePositions[fence + 1] : buffer.limit();
+            for (int position = fencePositions[fence]; position < end; position += getRecordSize(buffer, position)) {
+                int result = compare(buffer, position, id, type);
+                if (result == 0) {
+                    ByteBuffer record = buffer.duplicate();
+                    record.position(position).limit(position + getRecordSize(buffer, position));
+                    return record.slice();
+                }
+                if (result > 0) {
+                    return null;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static class Cursor implements Comparable<Cursor> {
+        private final ByteBuffer buffer;
+        // a lower age is a newer segment
+        private final int age;
+        private int position;
+
+        Cursor(Segment segment, int age) {
+            this.buffer = segment.buffer.duplicate();
+            this.age = age;
+        }
+
+        boolean hasNext() {
+            return position < buffer.limit();
+        }
+
+        ByteBuffer next() {
+            ByteBuffer record = buffer.duplicate();
+            record.position(position).limit(position + getRecordSize(buffer, position));
+            position += getRecordSize(buffer, position);
+            return record.slice();
+        }
+
+        int compareKey(ByteBuffer record) {
+            return compare(buffer, position, record.getLong(ID), record.getInt(TYPE));
+        }
+
+        @Override
+        public int compareTo(@NotNull Cursor o) {
+            int result = compare(buffer, position, o.buffer.getLong(o.position + ID), o.buffer.getInt(o.position + TYPE));
+            return result != 0 ? result : Integer.compare(age, o.age);
+        }
+    }
+}
@@ -24,8 +24,7 @@ import com.datastax.driver.core.ResultSet;
 import com.datastax.driver.core.Row;
 import com.datastax.driver.core.Session;
 import io.blobkeeper.common.util.GuavaCollectors;
-import io.blobkeeper.common.util.MerkleTree;
-import io.blobkeeper.common.util.SerializationUtils;
+import io.blobkeeper.common.util.MerkleTreeCodec;
 import io.blobkeeper.index.configuration.CassandraIndexConfiguration;
 import io.blobkeeper.index.domain.Partition;
 import io.blobkeeper.index.domain.PartitionState;
@@ -196,7 +195,7 @@ public class PartitionDaoImpl implements PartitionDao {
     @Override
     public void updateTree(@NotNull Partition partition) {
         session.execute(updateTreeQuery.bind(
-                wrap(SerializationUtils.serialize(partition.getTree())),
+                wrap(MerkleTreeCodec.encode(partition.getTree())),
                 partition.getDisk(),
                 partition.getId())
         );
@@ -277,7 +276,7 @@ public class PartitionDaoImpl implements PartitionDao {
             byte[] treeBufferBytes = new byte[treeBuffer.remaining()];
             treeBuffer.get(treeBufferBytes);
 
-            partition.setTree((MerkleTree) SerializationUtils.deserialize(treeBufferBytes));
+            partition.setTree(MerkleTreeCodec.decode(treeBufferBytes));
 
             // TODO: ensure merkle tree has been built
         }
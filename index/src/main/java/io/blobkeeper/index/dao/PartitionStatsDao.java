@@ -0,0 +1,65 @@
+package io.blobkeeper.index.dao;
+
+/*
+ * Copyright (C) 2015 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.google.inject.ImplementedBy;
+import io.blobkeeper.index.domain.DiskIndexElt;
+import io.blobkeeper.index.domain.IndexElt;
+import io.blobkeeper.index.domain.Partition;
+import io.blobkeeper.index.domain.PartitionStats;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.TestOnly;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+/**
+ * Counters of the partition sizes, they are updated by the index writes.
+ * The deleted bytes are also counted by the buckets of deletion time, so the expired bytes are summed up
+ * by a single slice of the buckets older than gc grace time.
+ * The counters are approximate: the updates are applied off the write path and are not idempotent,
+ * so a replayed add or concurrent deletes of a file could count it twice until the partition is rebuilt.
+ */
+@ImplementedBy(PartitionStatsDaoImpl.class)
+public interface PartitionStatsDao {
+    @NotNull
+    CompletableFuture<Void> add(@NotNull List<IndexElt> elts);
+
+    @NotNull
+    CompletableFuture<Void> updateDelete(@NotNull IndexElt elt, boolean deleted, long updated);
+
+    @NotNull
+    CompletableFuture<Void> move(@NotNull IndexElt from, @NotNull DiskIndexElt to);
+
+    @NotNull
+    PartitionStats getStats(@NotNull Partition partition);
+
+    /**
+     * Sets the counters to the sizes of the given elts of the partition.
+     * Concurrent writes to the partition could be lost.
+     */
+    void rebuild(@NotNull Partition partition, @NotNull Stream<IndexElt> elts);
+
+    void delete(@NotNull Partition partition);
+
+    @TestOnly
+    void clear();
+}
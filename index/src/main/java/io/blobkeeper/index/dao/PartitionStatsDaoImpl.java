@@ -0,0 +1,289 @@
+package io.blobkeeper.index.dao;
+
+/*
+ * Copyright (C) 2015 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Session;
+import com.datastax.driver.core.querybuilder.QueryBuilder;
+import io.blobkeeper.index.configuration.CassandraIndexConfiguration;
+import io.blobkeeper.index.configuration.IndexConfiguration;
+import io.blobkeeper.index.domain.DiskIndexElt;
+import io.blobkeeper.index.domain.IndexElt;
+import io.blobkeeper.index.domain.Partition;
+import io.blobkeeper.index.domain.PartitionStats;
+import org.jetbrains.annotations.NotNull;
+import org.joda.time.DateTime;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
+
+import static com.datastax.driver.core.BatchStatement.Type.COUNTER;
+import static com.datastax.driver.core.querybuilder.QueryBuilder.*;
+import static io.blobkeeper.common.util.CompletableFutures.toCompletable;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static org.joda.time.DateTimeZone.UTC;
+
+@Singleton
+public class PartitionStatsDaoImpl implements PartitionStatsDao {
+    private final Session session;
+    private final PreparedStatement updateStatsQuery;
+    private final PreparedStatement updateDeletedQuery;
+    private final PreparedStatement getStatsQuery;
+    private final PreparedStatement getDeletedQuery;
+    private final PreparedStatement getExpiredQuery;
+    private final PreparedStatement deleteStatsQuery;
+    private final PreparedStatement deleteDeletedQuery;
+    private final PreparedStatement truncateStatsQuery;
+    private final PreparedStatement truncateDeletedQuery;
+
+    @Inject
+    private IndexConfiguration indexConfiguration;
+
+    @Inject
+    public PartitionStatsDaoImpl(CassandraIndexConfiguration configuration) {
+        session = configuration.createCluster().connect(configuration.getKeyspace());
+
+        updateStatsQuery = session.prepare(
+                update("BlobPartitionStats")
+                        .with(incr("live_bytes", bindMarker()))
+                        .and(incr("deleted_bytes", bindMarker()))
+                        .and(incr("files", bindMarker()))
+                        .where(eq("disk", bindMarker()))
+                        .and(eq("part", bindMarker()))
+        );
+
+        updateDeletedQuery = session.prepare(
+                update("BlobPartitionDeleted")
+                        .with(incr("bytes", bindMarker()))
+                        .where(eq("disk", bindMarker()))
+                        .and(eq("part", bindMarker()))
+                        .and(eq("bucket", bindMarker()))
+        );
+
+        getStatsQuery = session.prepare(
+                select().all()
+                        .from("BlobPartitionStats")
+                        .where(eq("disk", bindMarker()))
+                        .and(eq("part", bindMarker()))
+        );
+
+        getDeletedQuery = session.prepare(
+                select().all()
+                        .from("BlobPartitionDeleted")
+                        .where(eq("disk", bindMarker()))
+                        .and(eq("part", bindMarker()))
+        );
+
+        getExpiredQuery = session.prepare(
+                select("bytes")
+                        .from("BlobPartitionDeleted")
+                        .where(eq("disk", bindMarker()))
+                        .and(eq("part", bindMarker()))
+                        .and(lte("bucket", bindMarker()))
+        );
+
+        deleteStatsQuery = session.prepare(
+                QueryBuilder.delete().all()
+                        .from("BlobPartitionStats")
+                        .where(eq("disk", bindMarker()))
+                        .and(eq("part", bindMarker()))
+        );
+
+        deleteDeletedQuery = session.prepare(
+                QueryBuilder.delete().all()
+                        .from("BlobPartitionDeleted")
+                        .where(eq("disk", bindMarker()))
+                        .and(eq("part", bindMarker()))
+        );
+
+        truncateStatsQuery = session.prepare(truncate("BlobPartitionStats"));
+        truncateDeletedQuery = session.prepare(truncate("BlobPartitionDeleted"));
+    }
+
+    @NotNull
+    @Override
+    public CompletableFuture<Void> add(@NotNull List<IndexElt> elts) {
+        Deltas deltas = new Deltas();
+        elts.forEach(elt -> deltas.add(elt.getPartition(), elt.getLength(), elt, 1));
+        return execute(deltas);
+    }
+
+    @NotNull
+    @Override
+    public CompletableFuture<Void> updateDelete(@NotNull IndexElt elt, boolean deleted, long updated) {
+        if (elt.isDeleted() == deleted) {
+            return completedFuture(null);
+        }
+
+        Deltas deltas = new Deltas();
+        Counters counters = deltas.get(elt.getPartition());
+        if (deleted) {
+            counters.liveBytes -= elt.getLength();
+            counters.addDeleted(getBucket(updated), elt.getLength());
+        } else {
+            // restored from the bucket it was deleted in
+            counters.addDeleted(getBucket(elt.getUpdated()), -elt.getLength());
+            counters.liveBytes += elt.getLength();
+        }
+        return execute(deltas);
+    }
+
+    @NotNull
+    @Override
+    public CompletableFuture<Void> move(@NotNull IndexElt from, @NotNull DiskIndexElt to) {
+        Deltas deltas = new Deltas();
+        deltas.add(from.getPartition(), from.getLength(), from, -1);
+        deltas.add(to.getPartition(), to.getLength(), from, 1);
+        return execute(deltas);
+    }
+
+    @NotNull
+    @Override
+    public PartitionStats getStats(@NotNull Partition partition) {
+        long expiredBucket = DateTime.now(UTC).getMillis()
+                - indexConfiguration.getGcGraceTime() * 1000L
+                - indexConfiguration.getStatsBucketTime() * 1000L;
+
+        ResultSetFuture stats = session.executeAsync(getStatsQuery.bind(partition.getDisk(), partition.getId()));
+        ResultSetFuture expired = session.executeAsync(getExpiredQuery.bind(partition.getDisk(), partition.getId(), expiredBucket));
+
+        long expiredBytes = 0;
+        for (Row row : expired.getUninterruptibly()) {
+            expiredBytes += row.getLong("bytes");
+        }
+
+        Row row = stats.getUninterruptibly().one();
+        if (null == row) {
+            return new PartitionStats(0, 0, expiredBytes, 0);
+        }
+
+        return new PartitionStats(row.getLong("live_bytes"), row.getLong("deleted_bytes"), expiredBytes, row.getLong("files"));
+    }
+
+    @Override
+    public void rebuild(@NotNull Partition partition, @NotNull Stream<IndexElt> elts) {
+        Deltas deltas = new Deltas();
+        elts.forEach(elt -> deltas.add(partition, elt.getLength(), elt, 1));
+
+        // counters can be only incremented, so the actual values are subtracted
+        Counters counters = deltas.get(partition);
+
+        Row row = session.execute(getStatsQuery.bind(partition.getDisk(), partition.getId())).one();
+        if (null != row) {
+            counters.liveBytes -= row.getLong("live_bytes");
+            counters.deletedBytes -= row.getLong("deleted_bytes");
+            counters.files -= row.getLong("files");
+        }
+
+        for (Row bucket : session.execute(getDeletedQuery.bind(partition.getDisk(), partition.getId()))) {
+            counters.buckets.merge(bucket.getLong("bucket"), -bucket.getLong("bytes"), Long::sum);
+        }
+
+        execute(deltas).join();
+    }
+
+    @Override
+    public void delete(@NotNull Partition partition) {
+        session.execute(deleteStatsQuery.bind(partition.getDisk(), partition.getId()));
+        session.execute(deleteDeletedQuery.bind(partition.getDisk(), partition.getId()));
+    }
+
+    @Override
+    public void clear() {
+        session.execute(truncateStatsQuery.bind());
+        session.execute(truncateDeletedQuery.bind());
+    }
+
+    private long getBucket(long updated) {
+        long bucketTime = indexConfiguration.getStatsBucketTime() * 1000L;
+        return updated - updated % bucketTime;
+    }
+
+    private CompletableFuture<Void> execute(Deltas deltas) {
+        BatchStatement batchStatement = new BatchStatement(COUNTER);
+        deltas.partitions.forEach((partition, counters) -> {
+            if (counters.liveBytes != 0 || counters.deletedBytes != 0 || counters.files != 0) {
+                batchStatement.add(
+                        updateStatsQuery.bind(
+                                counters.liveBytes,
+                                counters.deletedBytes,
+                                counters.files,
+                                partition.getDisk(),
+                                partition.getId()
+                        )
+                );
+            }
+
+            counters.buckets.forEach((bucket, bytes) -> {
+                if (bytes != 0) {
+                    batchStatement.add(updateDeletedQuery.bind(bytes, partition.getDisk(), partition.getId(), bucket));
+                }
+            });
+        });
+
+        if (batchStatement.size() == 0) {
+            return completedFuture(null);
+        }
+
+        return toCompletable(session.executeAsync(batchStatement));
+    }
+
+    private class Deltas {
+        private final Map<Partition, Counters> partitions = new HashMap<>();
+
+        Counters get(Partition partition) {
+            return partitions.computeIfAbsent(partition, p -> new Counters());
+        }
+
+        /**
+         * @param sign 1 to count the elt in, -1 to count it out
+         */
+        void add(Partition partition, long length, IndexElt elt, int sign) {
+            Counters counters = get(partition);
+            counters.files += sign;
+            if (elt.isDeleted()) {
+                counters.addDeleted(getBucket(elt.getUpdated()), sign * length);
+            } else {
+                counters.liveBytes += sign * length;
+            }
+        }
+    }
+
+    private static class Counters {
+        private final Map<Long, Long> buckets = new HashMap<>();
+
+        private long liveBytes;
+        private long deletedBytes;
+        private long files;
+
+        void addDeleted(long bucket, long bytes) {
+            deletedBytes += bytes;
+            buckets.merge(bucket, bytes, Long::sum);
+        }
+    }
+}
@@ -24,6 +24,7 @@ import com.google.common.base.Objects;
 import com.google.common.collect.ImmutableMultimap;
 import com.google.common.collect.Multimap;
 import io.blobkeeper.common.util.BlockElt;
+import io.blobkeeper.common.util.ChecksumType;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.Serializable;
@@ -58,6 +59,7 @@ public class IndexElt implements Serializable {
     private final long updated;
     private final boolean deleted;
     private final long crc;
+    private final ChecksumType crcType;
     private final Map<String, Object> metadata;
     private final DiskIndexElt diskIndexElt;
 
@@ -68,6 +70,7 @@ public class IndexElt implements Serializable {
         this.updated = builder.updated;
         this.deleted = builder.deleted;
         this.crc = builder.crc;
+        this.crcType = builder.crcType;
         this.metadata = builder.metadata;
         this.diskIndexElt = new DiskIndexElt(builder.partition, builder.offset, builder.length);
     }
@@ -165,6 +168,11 @@ public class IndexElt implements Serializable {
         return crc;
     }
 
+    public ChecksumType getCrcType() {
+        // elts serialized before the type was added
+        return null == crcType ? ChecksumType.CRC32 : crcType;
+    }
+
     public boolean isAuthRequired() {
         List<String> authTokens = getAuthTokens();
         return null != authTokens && !authTokens.isEmpty();
@@ -199,6 +207,7 @@ public class IndexElt implements Serializable {
         private long offset;
         private long length;
         private long crc;
+        private ChecksumType crcType = ChecksumType.CRC32;
         private Map<String, Object> metadata = new HashMap<>();
 
         public IndexEltBuilder id(long id) {
@@ -246,6 +255,11 @@ public class IndexElt implements Serializable {
             return this;
         }
 
+        public IndexEltBuilder crcType(@NotNull ChecksumType crcType) {
+            this.crcType = crcType;
+            return this;
+        }
+
         public IndexEltBuilder metadata(@NotNull Map<String, Object> metadata) {
             this.metadata = metadata;
             return this;
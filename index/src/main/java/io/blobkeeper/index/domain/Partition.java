@@ -67,6 +67,24 @@ public class Partition implements Serializable {
         return this.offset.addAndGet(value);
     }
 
+    /**
+     * Reserves space if the partition is not full yet, the last file could exceed the limit
+     *
+     * @return next offset or -1 if the partition is full
+     */
+    public long tryIncrementOffset(long value, long limit) {
+        while (true) {
+            long current = offset.get();
+            if (current >= limit) {
+                return -1;
+            }
+
+            if (offset.compareAndSet(current, current + value)) {
+                return current + value;
+            }
+        }
+    }
+
     @Override
     public boolean equals(Object object) {
         if (this == object) {
@@ -0,0 +1,230 @@
+package io.blobkeeper.index.domain;
+
+/*
+ * Copyright (C) 2016 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.google.common.collect.Range;
+import io.blobkeeper.common.util.Block;
+import io.blobkeeper.common.util.BlockElt;
+import io.blobkeeper.common.util.ChecksumType;
+import io.blobkeeper.common.util.MerkleTree;
+import io.blobkeeper.index.service.NoIndexRangeException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.TestOnly;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import static io.blobkeeper.common.util.MerkleTree.MAX_LEVEL;
+
+/**
+ * Checksum and merkle tree blocks of a partition, maintained as files are appended
+ */
+public class PartitionDigest {
+    // id -> types of the block, a block is replaced when a type is appended, so it's read without the lock
+    private final ConcurrentNavigableMap<Long, TypeBlock> blocks = new ConcurrentSkipListMap<>();
+
+    // files after a gap, the checksum is combined in the order of offsets
+    private final SortedMap<Long, FileCrc> pending = new TreeMap<>();
+
+    // every file is preceded by the record header
+    private final int headerSize;
+
+    private long crc;
+    // end of the last combined file
+    private long end;
+
+    // the tree is built again only if a file is appended after it
+    private volatile long version;
+    private volatile VersionedTree tree;
+
+    public PartitionDigest() {
+        this(0);
+    }
+
+    public PartitionDigest(int headerSize) {
+        this.headerSize = headerSize;
+    }
+
+    public synchronized void add(@NotNull IndexElt elt) {
+        blocks.merge(elt.getId(), new TypeBlock(elt.getType(), elt.getLength()), TypeBlock::merge);
+        version++;
+
+        if (elt.getOffset() >= end + headerSize) {
+            pending.put(elt.getOffset(), new FileCrc(elt.getCrcType(), elt.getCrc(), elt.getLength()));
+        }
+
+        combineNext();
+    }
+
+    /**
+     * All files below the offset are written, gaps of the released regions are skipped
+     */
+    public synchronized void fold(long offset) {
+        SortedMap<Long, FileCrc> written = pending.headMap(offset);
+        written.forEach((fileOffset, file) -> {
+            crc = file.combine(crc);
+            end = fileOffset + file.length;
+        });
+        written.clear();
+
+        end = Math.max(end, offset);
+        combineNext();
+    }
+
+    public synchronized void addAll(@NotNull Collection<IndexElt> elts) {
+        elts.forEach(this::add);
+    }
+
+    public boolean isEmpty() {
+        return blocks.isEmpty();
+    }
+
+    /**
+     * @return combined crc of the files, gaps of failed writes are skipped
+     */
+    public synchronized long getCrc() {
+        long value = crc;
+        for (FileCrc file : pending.values()) {
+            value = file.combine(value);
+        }
+        return value;
+    }
+
+    @TestOnly
+    public synchronized int getPendingFiles() {
+        return pending.size();
+    }
+
+    /**
+     * @return the same tree as built from the index of the partition, it's built outside of the lock
+     */
+    @NotNull
+    public MerkleTree getTree() {
+        if (blocks.isEmpty()) {
+            throw new NoIndexRangeException();
+        }
+
+        // a file appended during the build changes the version, so the tree is built again next time
+        long treeVersion = version;
+        VersionedTree built = tree;
+        if (null != built && built.version == treeVersion) {
+            return built.tree;
+        }
+
+        long first = blocks.firstKey();
+        long last = blocks.lastKey();
+
+        SortedMap<Long, Block> treeBlocks = new TreeMap<>();
+        blocks.subMap(first, true, last, true).forEach((id, block) -> treeBlocks.put(id, block.toBlock(id)));
+
+        MerkleTree merkleTree = new MerkleTree(Range.openClosed(first - 1, last), MAX_LEVEL);
+        MerkleTree.fillTree(merkleTree, treeBlocks);
+        merkleTree.calculate();
+
+        tree = new VersionedTree(treeVersion, merkleTree);
+        return merkleTree;
+    }
+
+    private void combineNext() {
+        FileCrc next;
+        while (null != (next = pending.remove(end + headerSize))) {
+            crc = next.combine(crc);
+            end += headerSize + next.length;
+        }
+    }
+
+    private static class FileCrc {
+        private final ChecksumType crcType;
+        private final long crc;
+        private final long length;
+
+        FileCrc(ChecksumType crcType, long crc, long length) {
+            this.crcType = crcType;
+            this.crc = crc;
+            this.length = length;
+        }
+
+        long combine(long value) {
+            return crcType.combine(value, crc, length);
+        }
+    }
+
+    /**
+     * Types of an id in the order of the tree blocks and their lengths
+     */
+    private static class TypeBlock {
+        private final int[] types;
+        private final long[] lengths;
+
+        TypeBlock(int type, long length) {
+            this(new int[]{type}, new long[]{length});
+        }
+
+        private TypeBlock(int[] types, long[] lengths) {
+            this.types = types;
+            this.lengths = lengths;
+        }
+
+        TypeBlock merge(TypeBlock appended) {
+            int type = appended.types[0];
+            int index = Arrays.binarySearch(types, type);
+            if (index >= 0) {
+                long[] newLengths = lengths.clone();
+                newLengths[index] = appended.lengths[0];
+                return new TypeBlock(types, newLengths);
+            }
+
+            int position = -index - 1;
+            int[] newTypes = new int[types.length + 1];
+            long[] newLengths = new long[lengths.length + 1];
+            System.arraycopy(types, 0, newTypes, 0, position);
+            System.arraycopy(lengths, 0, newLengths, 0, position);
+            newTypes[position] = type;
+            newLengths[position] = appended.lengths[0];
+            System.arraycopy(types, position, newTypes, position + 1, types.length - position);
+            System.arraycopy(lengths, position, newLengths, position + 1, lengths.length - position);
+            return new TypeBlock(newTypes, newLengths);
+        }
+
+        Block toBlock(long id) {
+            List<BlockElt> elts = new ArrayList<>(types.length);
+            for (int i = 0; i < types.length; i++) {
+                elts.add(new BlockElt(id, types[i], 0, lengths[i], 0));
+            }
+            return new Block(id, elts);
+        }
+    }
+
+    private static class VersionedTree {
+        private final long version;
+        private final MerkleTree tree;
+
+        VersionedTree(long version, MerkleTree tree) {
+            this.version = version;
+            this.tree = tree;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package io.blobkeeper.index.domain;
+
+/*
+ * Copyright (C) 2015 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.google.common.base.Objects;
+
+import static com.google.common.base.MoreObjects.toStringHelper;
+
+/**
+ * Sizes of a partition, the expired bytes are the deleted bytes which are older than gc grace time
+ */
+public class PartitionStats {
+    private final long liveBytes;
+    private final long deletedBytes;
+    private final long expiredBytes;
+    private final long files;
+
+    public PartitionStats(long liveBytes, long deletedBytes, long expiredBytes, long files) {
+        this.liveBytes = liveBytes;
+        this.deletedBytes = deletedBytes;
+        this.expiredBytes = expiredBytes;
+        this.files = files;
+    }
+
+    public long getLiveBytes() {
+        return liveBytes;
+    }
+
+    public long getDeletedBytes() {
+        return deletedBytes;
+    }
+
+    public long getExpiredBytes() {
+        return expiredBytes;
+    }
+
+    public long getFiles() {
+        return files;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        PartitionStats that = (PartitionStats) o;
+
+        return Objects.equal(this.liveBytes, that.liveBytes) &&
+                Objects.equal(this.deletedBytes, that.deletedBytes) &&
+                Objects.equal(this.expiredBytes, that.expiredBytes) &&
+                Objects.equal(this.files, that.files);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(liveBytes, deletedBytes, expiredBytes, files);
+    }
+
+    @Override
+    public String toString() {
+        return toStringHelper(this)
+                .add("liveBytes", liveBytes)
+                .add("deletedBytes", deletedBytes)
+                .add("expiredBytes", expiredBytes)
+                .add("files", files)
+                .toString();
+    }
+}
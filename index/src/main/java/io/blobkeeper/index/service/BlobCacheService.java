@@ -0,0 +1,51 @@
+package io.blobkeeper.index.service;
+
+/*
+ * Copyright (C) 2015 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.google.inject.ImplementedBy;
+import io.blobkeeper.index.domain.CacheKey;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.util.function.Function;
+
+/**
+ * Off-heap cache of small blobs
+ */
+@ImplementedBy(BlobCacheServiceImpl.class)
+public interface BlobCacheService {
+    boolean isCacheable(long length);
+
+    /**
+     * The reader gets a read only view of the cached blob, the view is valid until the reader returns
+     *
+     * @return null if the blob is not cached
+     */
+    <T> T get(@NotNull CacheKey key, @NotNull Function<ByteBuffer, T> reader);
+
+    /**
+     * Copies the remaining bytes of the data if the blob is admitted
+     */
+    boolean put(@NotNull CacheKey key, @NotNull ByteBuffer data);
+
+    void remove(@NotNull CacheKey key);
+
+    void clear();
+}
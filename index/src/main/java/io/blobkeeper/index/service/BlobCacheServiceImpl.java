@@ -0,0 +1,310 @@
+package io.blobkeeper.index.service;
+
+/*
+ * Copyright (C) 2015 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
+import io.blobkeeper.index.configuration.IndexConfiguration;
+import io.blobkeeper.index.domain.CacheKey;
+import io.blobkeeper.index.util.FrequencySketch;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.inject.Inject;
+import javax.inject.Singleton;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+import static java.lang.Integer.highestOneBit;
+import static java.lang.Integer.numberOfTrailingZeros;
+import static java.lang.Math.max;
+import static java.nio.ByteBuffer.allocateDirect;
+
+/**
+ * Blobs are kept in the direct slabs split into power of two chunks, a slab is bound to a chunk size once allocated.
+ * A new blob evicts the LRU blob of the same chunk size only if it's more frequent (TinyLFU admission).
+ */
+@Singleton
+public class BlobCacheServiceImpl implements BlobCacheService {
+    private static final Logger log = LoggerFactory.getLogger(BlobCacheServiceImpl.class);
+
+    private static final String HITS = "blobkeeper.blob.cache.hits";
+    private static final String MISSES = "blobkeeper.blob.cache.misses";
+    private static final String HIT_RATE = "blobkeeper.blob.cache.hit.rate";
+    private static final String HIT_BYTES = "blobkeeper.blob.cache.hit.bytes";
+    private static final String BYTES = "blobkeeper.blob.cache.bytes";
+    private static final String EVICTIONS = "blobkeeper.blob.cache.evictions";
+    private static final String REJECTIONS = "blobkeeper.blob.cache.rejections";
+
+    private static final int SLAB_SIZE = 1024 * 1024;
+    private static final int MIN_CHUNK_SIZE = 256;
+    private static final int STRIPES = 8;
+
+    @Inject
+    private IndexConfiguration configuration;
+
+    @Inject
+    private MetricRegistry metricRegistry;
+
+    private volatile Stripe[] stripes;
+
+    @Override
+    public boolean isCacheable(long length) {
+        return configuration.isBlobCacheEnabled() && length > 0 && length <= configuration.getBlobCacheMaxObjectSize();
+    }
+
+    @Override
+    public <T> T get(@NotNull CacheKey key, @NotNull Function<ByteBuffer, T> reader) {
+        Stripe stripe = getStripe(key);
+        synchronized (stripe) {
+            stripe.sketch.increment(key.hashCode());
+
+            Entry entry = stripe.entries.get(key);
+            if (null == entry) {
+                metricRegistry.counter(MISSES).inc();
+                return null;
+            }
+
+            // touch
+            entry.sizeClass.lru.get(key);
+
+            metricRegistry.counter(HITS).inc();
+            metricRegistry.counter(HIT_BYTES).inc(entry.length);
+
+            ByteBuffer view = entry.chunk.asReadOnlyBuffer();
+            view.limit(entry.length);
+            return reader.apply(view);
+        }
+    }
+
+    @Override
+    public boolean put(@NotNull CacheKey key, @NotNull ByteBuffer data) {
+        if (!isCacheable(data.remaining())) {
+            return false;
+        }
+
+        Stripe stripe = getStripe(key);
+        synchronized (stripe) {
+            if (stripe.entries.containsKey(key)) {
+                return false;
+            }
+
+            SizeClass sizeClass = stripe.getSizeClass(data.remaining());
+            ByteBuffer chunk = sizeClass.free.pollFirst();
+            if (null == chunk && stripe.allocate(sizeClass)) {
+                chunk = sizeClass.free.pollFirst();
+            }
+
+            if (null == chunk) {
+                Iterator<Entry> lru = sizeClass.lru.values().iterator();
+                if (!lru.hasNext()) {
+                    metricRegistry.counter(REJECTIONS).inc();
+                    return false;
+                }
+
+                Entry victim = lru.next();
+                if (stripe.sketch.getFrequency(key.hashCode()) <= stripe.sketch.getFrequency(victim.key.hashCode())) {
+                    metricRegistry.counter(REJECTIONS).inc();
+                    return false;
+                }
+
+                stripe.remove(victim.key);
+                metricRegistry.counter(EVICTIONS).inc();
+                chunk = sizeClass.free.pollFirst();
+            }
+
+            chunk.clear();
+            chunk.put(data.duplicate());
+            chunk.flip();
+
+            Entry entry = new Entry(key, chunk, chunk.limit(), sizeClass);
+            stripe.entries.put(key, entry);
+            sizeClass.lru.put(key, entry);
+
+            metricRegistry.counter(BYTES).inc(entry.length);
+            return true;
+        }
+    }
+
+    @Override
+    public void remove(@NotNull CacheKey key) {
+        if (null == stripes) {
+            return;
+        }
+
+        Stripe stripe = getStripe(key);
+        synchronized (stripe) {
+            stripe.remove(key);
+        }
+    }
+
+    @Override
+    public void clear() {
+        if (null == stripes) {
+            return;
+        }
+
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                stripe.reset();
+            }
+        }
+    }
+
+    private Stripe getStripe(CacheKey key) {
+        Stripe[] current = stripes;
+        if (null == current) {
+            synchronized (this) {
+                current = stripes;
+                if (null == current) {
+                    current = createStripes();
+                    stripes = current;
+                }
+            }
+        }
+        return current[(key.hashCode() & Integer.MAX_VALUE) % STRIPES];
+    }
+
+    private Stripe[] createStripes() {
+        long capacity = configuration.getBlobCacheSize() / STRIPES;
+        int maxChunkSize = getChunkSize(configuration.getBlobCacheMaxObjectSize());
+
+        Stripe[] created = new Stripe[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            created[i] = new Stripe(capacity, maxChunkSize);
+        }
+
+        metricRegistry.register(HIT_RATE, new RatioGauge() {
+            @Override
+            protected Ratio getRatio() {
+                long hits = metricRegistry.counter(HITS).getCount();
+                return Ratio.of(hits, hits + metricRegistry.counter(MISSES).getCount());
+            }
+        });
+
+        log.info("Blob cache is created, size {}, max object size {}",
+                configuration.getBlobCacheSize(), configuration.getBlobCacheMaxObjectSize());
+        return created;
+    }
+
+    private static int getChunkSize(int length) {
+        return max(MIN_CHUNK_SIZE, highestOneBit(length * 2 - 1));
+    }
+
+    private class Stripe {
+        private final long capacity;
+        private final SizeClass[] sizeClasses;
+        private final Map<CacheKey, Entry> entries = new HashMap<>();
+        private final FrequencySketch sketch;
+
+        private long allocated;
+
+        Stripe(long capacity, int maxChunkSize) {
+            this.capacity = capacity;
+            this.sketch = new FrequencySketch((int) Math.min(Integer.MAX_VALUE, capacity / MIN_CHUNK_SIZE));
+
+            int classes = numberOfTrailingZeros(maxChunkSize) - numberOfTrailingZeros(MIN_CHUNK_SIZE) + 1;
+            this.sizeClasses = new SizeClass[classes];
+            for (int i = 0; i < classes; i++) {
+                sizeClasses[i] = new SizeClass(MIN_CHUNK_SIZE << i);
+            }
+        }
+
+        SizeClass getSizeClass(int length) {
+            return sizeClasses[numberOfTrailingZeros(getChunkSize(length)) - numberOfTrailingZeros(MIN_CHUNK_SIZE)];
+        }
+
+        boolean allocate(SizeClass sizeClass) {
+            int slabSize = max(SLAB_SIZE, sizeClass.chunkSize);
+            if (allocated + slabSize > capacity) {
+                return false;
+            }
+
+            ByteBuffer slab = allocateDirect(slabSize);
+            for (int position = 0; position + sizeClass.chunkSize <= slabSize; position += sizeClass.chunkSize) {
+                slab.limit(position + sizeClass.chunkSize).position(position);
+                sizeClass.free.addLast(slab.slice());
+            }
+
+            allocated += slabSize;
+            return true;
+        }
+
+        /**
+         * Slabs are released as well, so they could be bound to the other chunk sizes
+         */
+        void reset() {
+            for (Entry entry : entries.values()) {
+                metricRegistry.counter(BYTES).dec(entry.length);
+            }
+            entries.clear();
+
+            for (SizeClass sizeClass : sizeClasses) {
+                sizeClass.free.clear();
+                sizeClass.lru.clear();
+            }
+            allocated = 0;
+        }
+
+        void remove(CacheKey key) {
+            Entry entry = entries.remove(key);
+            if (null == entry) {
+                return;
+            }
+
+            entry.sizeClass.lru.remove(key);
+            entry.sizeClass.free.addFirst(entry.chunk);
+
+            metricRegistry.counter(BYTES).dec(entry.length);
+        }
+    }
+
+    private static class SizeClass {
+        private final int chunkSize;
+        private final Deque<ByteBuffer> free = new ArrayDeque<>();
+        // access order, the eldest is a victim
+        private final LinkedHashMap<CacheKey, Entry> lru = new LinkedHashMap<>(16, 0.75f, true);
+
+        SizeClass(int chunkSize) {
+            this.chunkSize = chunkSize;
+        }
+    }
+
+    private static class Entry {
+        private final CacheKey key;
+        private final ByteBuffer chunk;
+        private final int length;
+        private final SizeClass sizeClass;
+
+        Entry(CacheKey key, ByteBuffer chunk, int length, SizeClass sizeClass) {
+            this.key = key;
+            this.chunk = chunk;
+            this.length = length;
+            this.sizeClass = sizeClass;
+        }
+    }
+}
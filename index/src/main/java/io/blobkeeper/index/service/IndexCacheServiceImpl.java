@@ -19,42 +19,385 @@ package io.blobkeeper.index.service;
  * limitations under the License.
  */
 
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
+import io.blobkeeper.common.util.MetadataCodec;
+import io.blobkeeper.index.configuration.IndexConfiguration;
 import io.blobkeeper.index.domain.CacheKey;
 import io.blobkeeper.index.domain.IndexElt;
+import io.blobkeeper.index.domain.Partition;
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.inject.Inject;
 import javax.inject.Singleton;
+import java.nio.ByteBuffer;
 
+import static io.blobkeeper.common.util.ChecksumType.fromId;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.nio.ByteBuffer.allocateDirect;
+
+/**
+ * Segments of the open addressed tables of the fixed width slots, serialized metadata is kept in a ring per segment.
+ * A slot is evicted by the clock, or when the ring overwrites its metadata.
+ */
 @Singleton
 public class IndexCacheServiceImpl implements IndexCacheService {
     private static final Logger log = LoggerFactory.getLogger(IndexCacheServiceImpl.class);
 
-    private final Cache<CacheKey, IndexElt> cache = CacheBuilder.newBuilder()
-            // TODO: move to config
-            .maximumSize(1048576)
-            .build();
+    private static final int SEGMENTS = 16;
+    private static final float LOAD_FACTOR = 0.75f;
+    // expected size of the serialized metadata
+    private static final int AVERAGE_DATA_SIZE = 256;
+
+    private static final int ID = 0;
+    private static final int TYPE = 8;
+    private static final int FLAGS = 12;
+    private static final int DISK = 16;
+    private static final int PART = 20;
+    private static final int OFFSET = 24;
+    private static final int LENGTH = 32;
+    private static final int CRC = 40;
+    private static final int CREATED = 48;
+    private static final int UPDATED = 56;
+    private static final int DATA_START = 64;
+    private static final int DATA_LENGTH = 72;
+    private static final int SLOT_SIZE = 80;
+
+    private static final int OCCUPIED = 1;
+    private static final int REFERENCED = 1 << 1;
+    private static final int DELETED = 1 << 2;
+    private static final int CRC_TYPE_SHIFT = 8;
+
+    @Inject
+    private IndexConfiguration configuration;
+
+    private volatile Segment[] segments;
 
     @Override
     public IndexElt getById(@NotNull CacheKey key) {
-        return cache.getIfPresent(key);
+        int hash = hash(key.getId(), key.getTypeId());
+        Segment segment = getSegment(hash);
+
+        Slot slot;
+        synchronized (segment) {
+            slot = segment.get(key.getId(), key.getTypeId(), hash);
+        }
+
+        // deserialize out of the lock
+        return null == slot ? null : slot.toIndexElt();
     }
 
     @Override
     public void set(@NotNull IndexElt elt) {
-        cache.put(new CacheKey(elt.getId(), elt.getType()), elt);
+        byte[] data = null == elt.getMetadata() ? null : MetadataCodec.encode(elt.getMetadata());
+
+        int hash = hash(elt.getId(), elt.getType());
+        Segment segment = getSegment(hash);
+        synchronized (segment) {
+            segment.put(elt, data, hash);
+        }
     }
 
     @Override
     public void remove(@NotNull CacheKey key) {
-        cache.invalidate(key);
+        int hash = hash(key.getId(), key.getTypeId());
+        Segment segment = getSegment(hash);
+        synchronized (segment) {
+            segment.remove(key.getId(), key.getTypeId(), hash);
+        }
     }
 
     @Override
     public void clear() {
-        cache.cleanUp();
+        Segment[] current = segments;
+        if (null == current) {
+            return;
+        }
+
+        for (Segment segment : current) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    private Segment getSegment(int hash) {
+        Segment[] current = segments;
+        if (null == current) {
+            synchronized (this) {
+                current = segments;
+                if (null == current) {
+                    current = createSegments();
+                    segments = current;
+                }
+            }
+        }
+        return current[(hash >>> 16) & (SEGMENTS - 1)];
+    }
+
+    private Segment[] createSegments() {
+        long segmentSize = min(Integer.MAX_VALUE, configuration.getCacheSize() / SEGMENTS);
+        int maxEntries = max(1, (int) (segmentSize / (SLOT_SIZE / LOAD_FACTOR + AVERAGE_DATA_SIZE)));
+        int slots = (int) (maxEntries / LOAD_FACTOR) + 1;
+        int dataSize = (int) max(0, segmentSize - (long) slots * SLOT_SIZE);
+
+        Segment[] created = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            created[i] = new Segment(slots, maxEntries, dataSize);
+        }
+
+        log.info("Index cache is created, size {}, max entries {}", configuration.getCacheSize(), (long) maxEntries * SEGMENTS);
+        return created;
+    }
+
+    private static int hash(long id, int type) {
+        long hash = id * 0x9E3779B97F4A7C15L + type;
+        hash ^= hash >>> 33;
+        hash *= 0xFF51AFD7ED558CCDL;
+        hash ^= hash >>> 33;
+        return (int) hash;
+    }
+
+    private static class Segment {
+        private final ByteBuffer slots;
+        private final int capacity;
+        private final int maxEntries;
+        private final ByteBuffer data;
+
+        private int size;
+        private int hand;
+        // absolute position in the ring, the metadata older than head - data capacity is overwritten
+        private long head;
+
+        Segment(int capacity, int maxEntries, int dataSize) {
+            this.capacity = capacity;
+            this.maxEntries = maxEntries;
+            this.slots = allocateDirect(capacity * SLOT_SIZE);
+            this.data = allocateDirect(dataSize);
+        }
+
+        Slot get(long id, int type, int hash) {
+            int slot = find(id, type, hash);
+            if (slot < 0) {
+                return null;
+            }
+
+            int base = slot * SLOT_SIZE;
+            int dataLength = slots.getInt(base + DATA_LENGTH);
+            long dataStart = slots.getLong(base + DATA_START);
+
+            byte[] bytes = null;
+            if (dataLength >= 0) {
+                if (dataStart < head - data.capacity()) {
+                    delete(slot);
+                    return null;
+                }
+
+                bytes = new byte[dataLength];
+                ByteBuffer view = data.duplicate();
+                view.position((int) (dataStart % data.capacity()));
+                view.get(bytes);
+            }
+
+            int flags = slots.getInt(base + FLAGS);
+            slots.putInt(base + FLAGS, flags | REFERENCED);
+
+            return new Slot(slots, base, bytes);
+        }
+
+        void put(IndexElt elt, byte[] bytes, int hash) {
+            remove(elt.getId(), elt.getType(), hash);
+
+            if (null != bytes && bytes.length > data.capacity()) {
+                return;
+            }
+
+            if (size >= maxEntries) {
+                evict();
+            }
+
+            long dataStart = 0;
+            if (null != bytes) {
+                int position = (int) (head % data.capacity());
+                // the metadata is never wrapped
+                if (position + bytes.length > data.capacity()) {
+                    head += data.capacity() - position;
+                    position = 0;
+                }
+
+                ByteBuffer view = data.duplicate();
+                view.position(position);
+                view.put(bytes);
+
+                dataStart = head;
+                head += bytes.length;
+            }
+
+            int slot = getHome(hash);
+            while ((slots.getInt(slot * SLOT_SIZE + FLAGS) & OCCUPIED) != 0) {
+                slot = next(slot);
+            }
+
+            int base = slot * SLOT_SIZE;
+            int flags = OCCUPIED | (elt.getCrcType().getId() << CRC_TYPE_SHIFT);
+            if (elt.isDeleted()) {
+                flags |= DELETED;
+            }
+
+            slots.putLong(base + ID, elt.getId());
+            slots.putInt(base + TYPE, elt.getType());
+            slots.putInt(base + FLAGS, flags);
+            slots.putInt(base + DISK, elt.getPartition().getDisk());
+            slots.putInt(base + PART, elt.getPartition().getId());
+            slots.putLong(base + OFFSET, elt.getOffset());
+            slots.putLong(base + LENGTH, elt.getLength());
+            slots.putLong(base + CRC, elt.getCrc());
+            slots.putLong(base + CREATED, elt.getCreated());
+            slots.putLong(base + UPDATED, elt.getUpdated());
+            slots.putLong(base + DATA_START, dataStart);
+            slots.putInt(base + DATA_LENGTH, null == bytes ? -1 : bytes.length);
+
+            size++;
+        }
+
+        void remove(long id, int type, int hash) {
+            int slot = find(id, type, hash);
+            if (slot >= 0) {
+                delete(slot);
+            }
+        }
+
+        void clear() {
+            for (int slot = 0; slot < capacity; slot++) {
+                slots.putInt(slot * SLOT_SIZE + FLAGS, 0);
+            }
+            size = 0;
+            hand = 0;
+            head = 0;
+        }
+
+        private int find(long id, int type, int hash) {
+            int slot = getHome(hash);
+            while (true) {
+                int base = slot * SLOT_SIZE;
+                if ((slots.getInt(base + FLAGS) & OCCUPIED) == 0) {
+                    return -1;
+                }
+
+                if (slots.getLong(base + ID) == id && slots.getInt(base + TYPE) == type) {
+                    return slot;
+                }
+
+                slot = next(slot);
+            }
+        }
+
+        /**
+         * Clock, a referenced slot gets the second chance
+         */
+        private void evict() {
+            while (true) {
+                int base = hand * SLOT_SIZE;
+                int flags = slots.getInt(base + FLAGS);
+                if ((flags & OCCUPIED) != 0) {
+                    if ((flags & REFERENCED) != 0) {
+                        slots.putInt(base + FLAGS, flags & ~REFERENCED);
+                    } else {
+                        delete(hand);
+                        hand = next(hand);
+                        return;
+                    }
+                }
+                hand = next(hand);
+            }
+        }
+
+        /**
+         * Backward shift, so the probe sequences stay without tombstones
+         */
+        private void delete(int slot) {
+            int hole = slot;
+            int current = next(hole);
+            while ((slots.getInt(current * SLOT_SIZE + FLAGS) & OCCUPIED) != 0) {
+                int base = current * SLOT_SIZE;
+                int home = getHome(hash(slots.getLong(base + ID), slots.getInt(base + TYPE)));
+
+                boolean reachable = hole <= current ? home > hole && home <= current : home > hole || home <= current;
+                if (!reachable) {
+                    copy(current, hole);
+                    hole = current;
+                }
+                current = next(current);
+            }
+
+            slots.putInt(hole * SLOT_SIZE + FLAGS, 0);
+            size--;
+        }
+
+        private void copy(int from, int to) {
+            for (int i = 0; i < SLOT_SIZE; i += 8) {
+                slots.putLong(to * SLOT_SIZE + i, slots.getLong(from * SLOT_SIZE + i));
+            }
+        }
+
+        private int getHome(int hash) {
+            return (hash & Integer.MAX_VALUE) % capacity;
+        }
+
+        private int next(int slot) {
+            return slot + 1 == capacity ? 0 : slot + 1;
+        }
+    }
+
+    /**
+     * Copy of a slot taken under the segment lock
+     */
+    private static class Slot {
+        private final long id;
+        private final int type;
+        private final int flags;
+        private final int disk;
+        private final int part;
+        private final long offset;
+        private final long length;
+        private final long crc;
+        private final long created;
+        private final long updated;
+        private final byte[] data;
+
+        Slot(ByteBuffer slots, int base, byte[] data) {
+            this.id = slots.getLong(base + ID);
+            this.type = slots.getInt(base + TYPE);
+            this.flags = slots.getInt(base + FLAGS);
+            this.disk = slots.getInt(base + DISK);
+            this.part = slots.getInt(base + PART);
+            this.offset = slots.getLong(base + OFFSET);
+            this.length = slots.getLong(base + LENGTH);
+            this.crc = slots.getLong(base + CRC);
+            this.created = slots.getLong(base + CREATED);
+            this.updated = slots.getLong(base + UPDATED);
+            this.data = data;
+        }
+
+        IndexElt toIndexElt() {
+            IndexElt.IndexEltBuilder builder = new IndexElt.IndexEltBuilder()
+                    .id(id)
+                    .type(type)
+                    .partition(new Partition(disk, part))
+                    .crc(crc)
+                    .crcType(fromId((flags >>> CRC_TYPE_SHIFT) & 0xFF))
+                    .offset(offset)
+                    .length(length)
+                    .created(created)
+                    .updated(updated)
+                    .deleted((flags & DELETED) != 0);
+
+            if (null != data) {
+                builder.metadata(MetadataCodec.decode(data));
+            }
+
+            return builder.build();
+        }
     }
 }
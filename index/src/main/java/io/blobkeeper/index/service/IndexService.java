@@ -21,23 +21,39 @@ package io.blobkeeper.index.service;
 
 import com.google.common.collect.Range;
 import com.google.inject.ImplementedBy;
+import io.blobkeeper.index.domain.CacheKey;
 import io.blobkeeper.index.domain.DiskIndexElt;
 import io.blobkeeper.index.domain.IndexElt;
 import io.blobkeeper.index.domain.IndexTempElt;
 import io.blobkeeper.index.domain.Partition;
+import io.blobkeeper.index.domain.PartitionStats;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Stream;
 
 @ImplementedBy(IndexServiceImpl.class)
 public interface IndexService {
     IndexElt getById(long id, int type);
 
+    /**
+     * Doesn't block on the index lookup, the future is completed with null if the elt is not found
+     */
+    @NotNull
+    CompletableFuture<IndexElt> getByIdAsync(long id, int type);
+
     @NotNull
     List<IndexElt> getListById(long id);
 
     void add(@NotNull IndexElt indexElt);
 
+    /**
+     * Adds elements with a single batch
+     */
+    @NotNull
+    CompletableFuture<Void> addAsync(@NotNull List<IndexElt> indexElts);
+
     void add(@NotNull IndexTempElt indexElt);
 
     void delete(@NotNull IndexElt indexElt);
@@ -46,19 +62,65 @@ public interface IndexService {
 
     void restore(@NotNull IndexElt indexElt);
 
+    /**
+     * Deletes all types of the ids, at most bulk parallelism ids are in flight, blocks until all of them are done
+     *
+     * @return futures in the order of the ids, completed with the updated types, empty if the id is not found
+     */
+    @NotNull
+    List<CompletableFuture<List<IndexElt>>> delete(@NotNull List<Long> ids);
+
+    /**
+     * @see #delete(List)
+     */
+    @NotNull
+    List<CompletableFuture<List<IndexElt>>> restore(@NotNull List<Long> ids);
+
     void move(@NotNull IndexElt from, @NotNull DiskIndexElt to);
 
+    /**
+     * The elt is changed by the other node
+     */
+    void invalidate(@NotNull CacheKey key);
+
+    /**
+     * Loads the local index from the given partitions in background, the local index is used once it's done
+     */
+    void rebuildLocalIndex(@NotNull List<Partition> partitions);
+
     @NotNull
     List<IndexElt> getListByPartition(@NotNull Partition partition);
 
+    /**
+     * Elts are read page by page while the stream is consumed, the metadata is not read
+     */
+    @NotNull
+    Stream<IndexElt> getStreamByPartition(@NotNull Partition partition);
+
     @NotNull
     List<IndexElt> getLiveListByPartition(@NotNull Partition partition);
 
+    @NotNull
+    Stream<IndexElt> getLiveStreamByPartition(@NotNull Partition partition);
+
     @NotNull
     Range<Long> getMinMaxRange(@NotNull Partition partition);
 
     long getSizeOfDeleted(@NotNull Partition partition);
 
+    @NotNull
+    PartitionStats getStats(@NotNull Partition partition);
+
+    /**
+     * The stats are approximate, they are rebuilt from the index for a sealed partition and a compaction candidate
+     */
+    void rebuildStats(@NotNull Partition partition);
+
+    /**
+     * Drops the stats of a finalized partition
+     */
+    void deleteStats(@NotNull Partition partition);
+
     @NotNull
     List<IndexTempElt> getTempIndexList(int limit);
 
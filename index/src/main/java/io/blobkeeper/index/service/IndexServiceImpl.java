@@ -19,49 +19,147 @@ package io.blobkeeper.index.service;
  * limitations under the License.
  */
 
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.base.Throwables;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.Range;
 import io.blobkeeper.index.configuration.IndexConfiguration;
 import io.blobkeeper.index.dao.IndexDao;
+import io.blobkeeper.index.dao.LocalIndexDao;
 import io.blobkeeper.index.domain.*;
 import io.blobkeeper.index.util.MinMaxConsumer;
 import org.jetbrains.annotations.NotNull;
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
 
-import static java.util.Optional.ofNullable;
+import static io.blobkeeper.index.domain.IndexElt.DEFAULT_TYPE;
+import static java.lang.Boolean.TRUE;
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static java.util.concurrent.CompletableFuture.runAsync;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static org.joda.time.DateTime.now;
+import static org.joda.time.DateTimeZone.UTC;
 
 @Singleton
 public class IndexServiceImpl implements IndexService {
+    private static final Logger log = LoggerFactory.getLogger(IndexServiceImpl.class);
+
+    private static final String COALESCED = "blobkeeper.index.lookup.coalesced";
+    private static final String NOT_FOUND_HITS = "blobkeeper.index.lookup.not.found.hits";
+
+    private static final int NOT_FOUND_CACHE_SIZE = 65536;
+
     @Inject
     private IndexDao indexDao;
 
+    @Inject
+    private LocalIndexDao localIndexDao;
+
     @Inject
     private IndexCacheService indexCacheService;
 
+    @Inject
+    private BlobCacheService blobCacheService;
+
     @Inject
     private IndexConfiguration indexConfiguration;
 
+    @Inject
+    private MetricRegistry metricRegistry;
+
+    // a single lookup of the missed elt, others wait for it
+    private final ConcurrentMap<CacheKey, CompletableFuture<IndexElt>> lookups = new ConcurrentHashMap<>();
+
+    // changed on every add, a lookup concurrent with an add doesn't mark the elt as not found
+    private final AtomicLong version = new AtomicLong();
+
+    private volatile Cache<CacheKey, Boolean> notFound;
+
     @Override
     public IndexElt getById(long id, int type) {
+        return join(getByIdAsync(id, type));
+    }
+
+    @NotNull
+    @Override
+    public CompletableFuture<IndexElt> getByIdAsync(long id, int type) {
+        CacheKey key = new CacheKey(id, type);
+
         if (indexConfiguration.isCacheEnabled()) {
-            return ofNullable(indexCacheService.getById(new CacheKey(id, type)))
-                    .orElseGet(
-                            () -> {
-                                IndexElt elt = indexDao.getById(id, type);
+            IndexElt elt = indexCacheService.getById(key);
+            if (null != elt) {
+                return completedFuture(elt);
+            }
+        }
 
-                                if (elt != null) {
-                                    indexCacheService.set(elt);
-                                }
+        Cache<CacheKey, Boolean> notFoundCache = getNotFoundCache();
+        if (null != notFoundCache && null != notFoundCache.getIfPresent(key)) {
+            metricRegistry.counter(NOT_FOUND_HITS).inc();
+            return completedFuture(null);
+        }
 
-                                return elt;
-                            }
+        if (localIndexDao.isReady()) {
+            IndexElt elt = localIndexDao.getById(id, type);
+            if (null != elt) {
+                if (indexConfiguration.isCacheEnabled()) {
+                    indexCacheService.set(elt);
+                }
+                return completedFuture(elt);
+            }
+        }
 
-                    );
-        } else {
-            return indexDao.getById(id, type);
+        CompletableFuture<IndexElt> lookup = new CompletableFuture<>();
+        CompletableFuture<IndexElt> inFlight = lookups.putIfAbsent(key, lookup);
+        if (null != inFlight) {
+            metricRegistry.counter(COALESCED).inc();
+            return inFlight;
         }
+
+        long startVersion = version.get();
+
+        CompletableFuture<IndexElt> loaded;
+        try {
+            loaded = indexDao.getByIdAsync(id, type);
+        } catch (RuntimeException e) {
+            loaded = new CompletableFuture<>();
+            loaded.completeExceptionally(e);
+        }
+
+        loaded.whenComplete((elt, t) -> {
+            try {
+                if (null == t) {
+                    loaded(key, elt, startVersion);
+                }
+            } catch (RuntimeException e) {
+                log.error("Can't cache the elt {}", elt, e);
+            } finally {
+                // new lookups go to the caches once the result is there
+                lookups.remove(key, lookup);
+            }
+
+            if (null == t) {
+                lookup.complete(elt);
+            } else {
+                lookup.completeExceptionally(t);
+            }
+        });
+
+        return lookup;
     }
 
     @NotNull
@@ -73,6 +171,18 @@ public class IndexServiceImpl implements IndexService {
     @Override
     public void add(@NotNull IndexElt indexElt) {
         indexDao.add(indexElt);
+        localIndexDao.add(indexElt);
+        found(indexElt.toCacheKey());
+    }
+
+    @NotNull
+    @Override
+    public CompletableFuture<Void> addAsync(@NotNull List<IndexElt> indexElts) {
+        return indexDao.addAsync(indexElts)
+                .thenRun(() -> indexElts.forEach(indexElt -> {
+                    localIndexDao.add(indexElt);
+                    found(indexElt.toCacheKey());
+                }));
     }
 
     @Override
@@ -88,6 +198,8 @@ public class IndexServiceImpl implements IndexService {
             if (indexConfiguration.isCacheEnabled()) {
                 indexCacheService.remove(indexElt.toCacheKey());
             }
+            blobCacheService.remove(indexElt.toCacheKey());
+            refreshLocalIndex(indexElt.getId());
         }
     }
 
@@ -104,18 +216,69 @@ public class IndexServiceImpl implements IndexService {
             if (indexConfiguration.isCacheEnabled()) {
                 indexCacheService.remove(indexElt.toCacheKey());
             }
+            blobCacheService.remove(indexElt.toCacheKey());
+            refreshLocalIndex(indexElt.getId());
         }
     }
 
+    @NotNull
+    @Override
+    public List<CompletableFuture<List<IndexElt>>> delete(@NotNull List<Long> ids) {
+        return updateDelete(ids, true);
+    }
+
+    @NotNull
+    @Override
+    public List<CompletableFuture<List<IndexElt>>> restore(@NotNull List<Long> ids) {
+        return updateDelete(ids, false);
+    }
+
     @Override
     public void move(@NotNull IndexElt from, @NotNull DiskIndexElt to) {
         try {
             indexDao.move(from, to);
+            // the given elt could be read w/o the metadata
+            refreshLocalIndex(from.getId());
+            found(from.toCacheKey());
         } finally {
             if (indexConfiguration.isCacheEnabled()) {
                 indexCacheService.remove(from.toCacheKey());
             }
+            blobCacheService.remove(from.toCacheKey());
+        }
+    }
+
+    @Override
+    public void invalidate(@NotNull CacheKey key) {
+        if (indexConfiguration.isCacheEnabled()) {
+            indexCacheService.remove(key);
         }
+        blobCacheService.remove(key);
+        refreshLocalIndex(key.getId());
+        found(key);
+    }
+
+    @Override
+    public void rebuildLocalIndex(@NotNull List<Partition> partitions) {
+        if (!indexConfiguration.isLocalIndexEnabled()) {
+            return;
+        }
+
+        localIndexDao.setReady(false);
+        localIndexDao.clear();
+
+        runAsync(() -> {
+            log.info("Local index rebuilding is started, partitions {}", partitions.size());
+            try {
+                // the write path could add newer elts meanwhile
+                partitions.forEach(partition -> indexDao.getFullStreamByPartition(partition).forEach(localIndexDao::merge));
+
+                localIndexDao.setReady(true);
+                log.info("Local index is rebuilt");
+            } catch (Exception e) {
+                log.error("Can't rebuild local index, the index is used", e);
+            }
+        });
     }
 
     @NotNull
@@ -124,6 +287,12 @@ public class IndexServiceImpl implements IndexService {
         return indexDao.getListByPartition(partition);
     }
 
+    @NotNull
+    @Override
+    public Stream<IndexElt> getStreamByPartition(@NotNull Partition partition) {
+        return indexDao.getStreamByPartition(partition);
+    }
+
     @NotNull
     @Override
     public List<IndexElt> getLiveListByPartition(@NotNull Partition partition) {
@@ -132,10 +301,14 @@ public class IndexServiceImpl implements IndexService {
 
     @NotNull
     @Override
-    public Range<Long> getMinMaxRange(@NotNull Partition partition) {
-        List<IndexElt> elts = getListByPartition(partition);
+    public Stream<IndexElt> getLiveStreamByPartition(@NotNull Partition partition) {
+        return indexDao.getLiveStreamByPartition(partition);
+    }
 
-        MinMaxConsumer minMax = elts.stream()
+    @NotNull
+    @Override
+    public Range<Long> getMinMaxRange(@NotNull Partition partition) {
+        MinMaxConsumer minMax = getStreamByPartition(partition)
                 .collect(MinMaxConsumer::new, MinMaxConsumer::accept, MinMaxConsumer::combine);
 
         if (minMax.isEmpty()) {
@@ -150,6 +323,22 @@ public class IndexServiceImpl implements IndexService {
         return indexDao.getSizeOfDeleted(partition);
     }
 
+    @NotNull
+    @Override
+    public PartitionStats getStats(@NotNull Partition partition) {
+        return indexDao.getStats(partition);
+    }
+
+    @Override
+    public void rebuildStats(@NotNull Partition partition) {
+        indexDao.rebuildStats(partition);
+    }
+
+    @Override
+    public void deleteStats(@NotNull Partition partition) {
+        indexDao.deleteStats(partition);
+    }
+
     @NotNull
     @Override
     public List<IndexTempElt> getTempIndexList(int limit) {
@@ -158,7 +347,138 @@ public class IndexServiceImpl implements IndexService {
 
     @Override
     public void clear() {
+        Cache<CacheKey, Boolean> notFoundCache = getNotFoundCache();
+        if (null != notFoundCache) {
+            version.incrementAndGet();
+            notFoundCache.invalidateAll();
+        }
+
         indexDao.clear();
+        localIndexDao.clear();
         indexCacheService.clear();
+        blobCacheService.clear();
+    }
+
+    private Cache<CacheKey, Boolean> getNotFoundCache() {
+        long ttl = indexConfiguration.getNegativeCacheTtl();
+        if (ttl <= 0) {
+            return null;
+        }
+
+        Cache<CacheKey, Boolean> current = notFound;
+        if (null == current) {
+            synchronized (this) {
+                current = notFound;
+                if (null == current) {
+                    current = CacheBuilder.newBuilder()
+                            .expireAfterWrite(ttl, MILLISECONDS)
+                            .maximumSize(NOT_FOUND_CACHE_SIZE)
+                            .build();
+                    notFound = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    /**
+     * The elt could be found by the next lookup
+     */
+    private void found(CacheKey key) {
+        version.incrementAndGet();
+
+        Cache<CacheKey, Boolean> notFoundCache = getNotFoundCache();
+        if (null != notFoundCache) {
+            notFoundCache.invalidate(key);
+        }
+    }
+
+    private static IndexElt join(CompletableFuture<IndexElt> lookup) {
+        try {
+            return lookup.join();
+        } catch (CompletionException e) {
+            Throwables.propagateIfPossible(e.getCause());
+            throw e;
+        }
+    }
+
+    private void loaded(CacheKey key, IndexElt elt, long startVersion) {
+        if (null != elt) {
+            localIndexDao.merge(elt);
+
+            if (indexConfiguration.isCacheEnabled()) {
+                indexCacheService.set(elt);
+            }
+            return;
+        }
+
+        Cache<CacheKey, Boolean> notFoundCache = getNotFoundCache();
+        if (null != notFoundCache && startVersion == version.get()) {
+            notFoundCache.put(key, TRUE);
+        }
+    }
+
+    /**
+     * The lookup and the update of an id are pipelined, the caches are invalidated by the caller thread
+     * once the id is done, so the driver threads aren't blocked by the local index
+     */
+    private List<CompletableFuture<List<IndexElt>>> updateDelete(List<Long> ids, boolean deleted) {
+        DateTime updated = now(UTC);
+        List<CompletableFuture<List<IndexElt>>> results = new ArrayList<>(ids.size());
+        Deque<Integer> inFlight = new ArrayDeque<>();
+
+        for (long id : ids) {
+            if (inFlight.size() >= indexConfiguration.getBulkParallelism()) {
+                int done = inFlight.pollFirst();
+                invalidateUpdated(ids.get(done), results.get(done));
+            }
+            inFlight.addLast(results.size());
+            results.add(indexDao.updateDeleteAsync(id, deleted, updated));
+        }
+
+        inFlight.forEach(done -> invalidateUpdated(ids.get(done), results.get(done)));
+        return results;
+    }
+
+    private void invalidateUpdated(long id, CompletableFuture<List<IndexElt>> result) {
+        List<IndexElt> elts;
+        try {
+            elts = result.join();
+        } catch (CompletionException e) {
+            log.error("Can't update the elt {}", id, e.getCause());
+
+            // the update could be applied partially, all types are reloaded
+            try {
+                elts = indexDao.getListById(id);
+            } catch (Exception listError) {
+                log.error("Can't get types of the elt {}", id, listError);
+
+                CacheKey key = new CacheKey(id, DEFAULT_TYPE);
+                if (indexConfiguration.isCacheEnabled()) {
+                    indexCacheService.remove(key);
+                }
+                blobCacheService.remove(key);
+                return;
+            }
+        }
+
+        for (IndexElt elt : elts) {
+            if (indexConfiguration.isCacheEnabled()) {
+                indexCacheService.remove(elt.toCacheKey());
+            }
+            blobCacheService.remove(elt.toCacheKey());
+            if (indexConfiguration.isLocalIndexEnabled()) {
+                localIndexDao.add(elt);
+            }
+        }
+    }
+
+    /**
+     * All types of the elt are updated by the index
+     */
+    private void refreshLocalIndex(long id) {
+        if (indexConfiguration.isLocalIndexEnabled()) {
+            indexDao.getListById(id).forEach(localIndexDao::add);
+        }
     }
 }
@@ -0,0 +1,83 @@
+package io.blobkeeper.index.util;
+
+/*
+ * Copyright (C) 2015 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import static com.google.common.math.IntMath.checkedMultiply;
+import static java.lang.Integer.highestOneBit;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+/**
+ * Count-min sketch of 4-bit counters, counters are halved periodically, so old popularity fades out.
+ * It's not thread safe.
+ */
+public class FrequencySketch {
+    private static final int DEPTH = 4;
+    private static final int MAX_COUNT = 15;
+    private static final int[] SEEDS = {0x97cb3127, 0xb3d7a5e1, 0x7f4a7c15, 0x9e3779b9};
+
+    private final byte[] table;
+    private final int width;
+    private final int sampleSize;
+
+    private int size;
+
+    public FrequencySketch(int expectedEntries) {
+        this.width = highestOneBit(max(16, min(expectedEntries, 1 << 24)) * 2 - 1);
+        this.table = new byte[checkedMultiply(width, DEPTH)];
+        this.sampleSize = checkedMultiply(width, 10);
+    }
+
+    public void increment(int hash) {
+        boolean added = false;
+        for (int row = 0; row < DEPTH; row++) {
+            int index = getIndex(hash, row);
+            if (table[index] < MAX_COUNT) {
+                table[index]++;
+                added = true;
+            }
+        }
+
+        if (added && ++size >= sampleSize) {
+            reset();
+        }
+    }
+
+    public int getFrequency(int hash) {
+        int frequency = MAX_COUNT;
+        for (int row = 0; row < DEPTH; row++) {
+            frequency = min(frequency, table[getIndex(hash, row)]);
+        }
+        return frequency;
+    }
+
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (byte) (table[i] >>> 1);
+        }
+        size /= 2;
+    }
+
+    private int getIndex(int hash, int row) {
+        int value = hash * SEEDS[row];
+        value ^= value >>> 17;
+        return row * width + (value & (width - 1));
+    }
+}
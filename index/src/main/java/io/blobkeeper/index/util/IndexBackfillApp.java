@@ -0,0 +1,63 @@
+package io.blobkeeper.index.util;
+
+/*
+ * Copyright (C) 2015 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import io.blobkeeper.common.configuration.MetricModule;
+import io.blobkeeper.common.configuration.RootModule;
+import io.blobkeeper.index.dao.IndexDao;
+import io.blobkeeper.index.dao.PartitionDao;
+import io.blobkeeper.index.domain.Partition;
+import org.slf4j.Logger;
+
+import static java.lang.Integer.parseInt;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Denormalizes the location of the index written by an older version into BlobIndexByPart
+ * and recomputes the partition stats.
+ * It's safe to run on a live cluster, the scans read BlobIndex for the rows which are not backfilled yet.
+ * <p>
+ * java -DconfigFile=node1.properties -cp 'lib/*' io.blobkeeper.index.util.IndexBackfillApp 0 1
+ */
+public class IndexBackfillApp {
+    private static final Logger log = getLogger(IndexBackfillApp.class);
+
+    public static void main(String[] args) throws Exception {
+        if (args.length == 0) {
+            System.err.println("Usage: IndexBackfillApp <disk>...");
+            System.exit(1);
+        }
+
+        Injector injector = Guice.createInjector(new RootModule(), new MetricModule());
+        IndexDao indexDao = injector.getInstance(IndexDao.class);
+        PartitionDao partitionDao = injector.getInstance(PartitionDao.class);
+
+        for (String disk : args) {
+            for (Partition partition : partitionDao.getPartitions(parseInt(disk))) {
+                long backfilled = indexDao.backfill(partition);
+                log.info("Partition {} is backfilled, elts {}", partition, backfilled);
+            }
+        }
+
+        System.exit(0);
+    }
+}
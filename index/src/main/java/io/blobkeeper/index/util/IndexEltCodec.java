@@ -0,0 +1,176 @@
+package io.blobkeeper.index.util;
+
+/*
+ * Copyright (C) 2015 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import io.blobkeeper.common.util.MetadataCodec;
+import io.blobkeeper.common.util.SerializationUtils;
+import io.blobkeeper.index.domain.IndexElt;
+import io.blobkeeper.index.domain.IndexTempElt;
+import io.blobkeeper.index.domain.Partition;
+import org.jetbrains.annotations.NotNull;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static io.blobkeeper.common.util.ChecksumType.fromId;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Versioned binary format of the journal records, the metadata is written by {@link MetadataCodec}.
+ * The old java serialized records are still decoded.
+ */
+public class IndexEltCodec {
+    public static final byte VERSION = 1;
+
+    // version, id, type, disk, part, offset, length, crc, crc type, created, updated, deleted, metadata length
+    private static final int ELT_HEADER_SIZE = 1 + 8 + 4 + 4 + 4 + 8 + 8 + 8 + 4 + 8 + 8 + 1 + 4;
+    // version, id, type, created, file length, metadata length
+    private static final int TEMP_ELT_HEADER_SIZE = 1 + 8 + 4 + 8 + 4 + 4;
+
+    private static final byte[] NO_METADATA = new byte[0];
+
+    private IndexEltCodec() {
+    }
+
+    @NotNull
+    public static byte[] encode(@NotNull IndexElt elt) {
+        byte[] metadata = encodeMetadata(elt.getMetadata());
+
+        return ByteBuffer.allocate(ELT_HEADER_SIZE + metadata.length)
+                .put(VERSION)
+                .putLong(elt.getId())
+                .putInt(elt.getType())
+                .putInt(elt.getPartition().getDisk())
+                .putInt(elt.getPartition().getId())
+                .putLong(elt.getOffset())
+                .putLong(elt.getLength())
+                .putLong(elt.getCrc())
+                .putInt(elt.getCrcType().getId())
+                .putLong(elt.getCreated())
+                .putLong(elt.getUpdated())
+                .put((byte) (elt.isDeleted() ? 1 : 0))
+                .putInt(metadata.length)
+                .put(metadata)
+                .array();
+    }
+
+    @NotNull
+    public static IndexElt decodeElt(@NotNull byte[] data) {
+        if (SerializationUtils.isSerialized(data)) {
+            return (IndexElt) SerializationUtils.deserialize(data);
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        checkVersion(buffer);
+
+        IndexElt.IndexEltBuilder builder = new IndexElt.IndexEltBuilder()
+                .id(buffer.getLong())
+                .type(buffer.getInt())
+                .partition(new Partition(buffer.getInt(), buffer.getInt()))
+                .offset(buffer.getLong())
+                .length(buffer.getLong())
+                .crc(buffer.getLong())
+                .crcType(fromId(buffer.getInt()))
+                .created(buffer.getLong())
+                .updated(buffer.getLong())
+                .deleted(buffer.get() != 0);
+
+        byte[] metadata = readBytes(buffer);
+        if (null != metadata && metadata.length > 0) {
+            builder.metadata(MetadataCodec.decode(metadata));
+        }
+        return builder.build();
+    }
+
+    @NotNull
+    public static byte[] encode(@NotNull IndexTempElt elt) {
+        byte[] file = null == elt.getFile() ? null : elt.getFile().getBytes(UTF_8);
+        byte[] metadata = encodeMetadata(elt.getMetadata());
+
+        ByteBuffer buffer = ByteBuffer.allocate(TEMP_ELT_HEADER_SIZE + (null == file ? 0 : file.length) + metadata.length)
+                .put(VERSION)
+                .putLong(elt.getId())
+                .putInt(elt.getType())
+                .putLong(elt.getCreated());
+
+        writeBytes(buffer, file);
+        writeBytes(buffer, metadata);
+        return buffer.array();
+    }
+
+    @NotNull
+    public static IndexTempElt decodeTempElt(@NotNull byte[] data) {
+        if (SerializationUtils.isSerialized(data)) {
+            return (IndexTempElt) SerializationUtils.deserialize(data);
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        checkVersion(buffer);
+
+        IndexTempElt.IndexTempEltBuilder builder = new IndexTempElt.IndexTempEltBuilder()
+                .id(buffer.getLong())
+                .type(buffer.getInt())
+                .created(buffer.getLong());
+
+        byte[] file = readBytes(buffer);
+        if (null != file) {
+            builder.file(new String(file, UTF_8));
+        }
+
+        byte[] metadata = readBytes(buffer);
+        if (null != metadata && metadata.length > 0) {
+            builder.metadata(MetadataCodec.decode(metadata));
+        }
+        return builder.build();
+    }
+
+    private static byte[] encodeMetadata(Map<String, Object> metadata) {
+        return null == metadata ? NO_METADATA : MetadataCodec.encode(metadata);
+    }
+
+    private static void checkVersion(ByteBuffer buffer) {
+        byte version = buffer.get();
+        checkArgument(version == VERSION, "Unknown index elt version %s", version);
+    }
+
+    /**
+     * @param value null is written as -1 length
+     */
+    private static void writeBytes(ByteBuffer buffer, byte[] value) {
+        if (null == value) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(value.length).put(value);
+        }
+    }
+
+    private static byte[] readBytes(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+
+        int start = buffer.position();
+        buffer.position(start + length);
+        return Arrays.copyOfRange(buffer.array(), start, start + length);
+    }
+}
@@ -22,6 +22,7 @@ package io.blobkeeper.index.util;
 import io.blobkeeper.common.util.*;
 import io.blobkeeper.index.domain.IndexElt;
 import io.blobkeeper.index.domain.Partition;
+import io.blobkeeper.index.domain.PartitionDigest;
 import io.blobkeeper.index.service.IndexService;
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
@@ -32,15 +33,8 @@ import javax.inject.Inject;
 import javax.inject.Singleton;
 import java.util.Comparator;
 import java.util.List;
-import java.util.SortedMap;
-import java.util.TreeMap;
-import java.util.function.Function;
 
 import static com.google.common.base.Preconditions.checkNotNull;
-import static io.blobkeeper.common.util.GuavaCollectors.toImmutableList;
-import static io.blobkeeper.common.util.MerkleTree.MAX_LEVEL;
-import static java.util.stream.Collectors.groupingBy;
-import static java.util.stream.Collectors.toMap;
 
 @Singleton
 public class IndexUtils {
@@ -52,37 +46,18 @@ public class IndexUtils {
     public long getOffset(@NotNull List<IndexElt> elts) {
         checkNotNull(elts, "Elts are required!");
 
+        // regions of failed writes are not indexed, so the end of the last file is used instead of a sum
         return elts.stream()
-                .mapToLong(IndexElt::getLength)
-                .sum();
+                .mapToLong(elt -> elt.getOffset() + elt.getLength())
+                .max()
+                .orElse(0);
     }
 
     @NotNull
     public MerkleTree buildMerkleTree(@NotNull Partition partition) {
-        List<IndexElt> elts = indexService.getListByPartition(partition);
+        PartitionDigest digest = new PartitionDigest();
+        indexService.getStreamByPartition(partition).forEach(digest::add);
 
-        SortedMap<Long, Block> blocks = elts.stream()
-                .collect(groupingBy(IndexElt::getId))
-                .values()
-                .stream()
-                .map(groupedElts -> new Block(groupedElts.get(0).getId(), groupedElts.stream()
-                        .map(IndexElt::toBlockElt)
-                        .sorted(new BlockEltComparator())
-                        .collect(toImmutableList()))
-                ).collect(
-                        // TODO: replace with ImmutableSortedMap
-                        toMap(
-                                Block::getId,
-                                Function.identity(),
-                                Utils.throwingMerger(),
-                                TreeMap::new
-                        )
-                );
-
-        MerkleTree tree = new MerkleTree(indexService.getMinMaxRange(partition), MAX_LEVEL);
-        MerkleTree.fillTree(tree, blocks);
-        tree.calculate();
-
-        return tree;
+        return digest.getTree();
     }
 }
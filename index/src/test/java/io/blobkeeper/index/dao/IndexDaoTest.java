@@ -29,6 +29,7 @@ import io.blobkeeper.index.domain.DiskIndexElt;
 import io.blobkeeper.index.domain.IndexElt;
 import io.blobkeeper.index.domain.IndexTempElt;
 import io.blobkeeper.index.domain.Partition;
+import io.blobkeeper.index.domain.PartitionStats;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.testng.annotations.BeforeMethod;
@@ -36,8 +37,13 @@ import org.testng.annotations.Guice;
 import org.testng.annotations.Test;
 
 import javax.inject.Inject;
+import java.util.HashSet;
+import java.util.Set;
 
 import static com.google.common.collect.ImmutableList.of;
+import static com.jayway.awaitility.Awaitility.await;
+import static com.jayway.awaitility.Duration.FIVE_SECONDS;
+import static java.util.stream.Collectors.toSet;
 import static org.joda.time.DateTime.now;
 import static org.joda.time.DateTimeZone.UTC;
 import static org.testng.Assert.*;
@@ -86,6 +92,26 @@ public class IndexDaoTest {
         assertEquals(indexDao.getListByPartition(partition), of(expected));
     }
 
+    @Test
+    public void getByIdAsync() {
+        long newId = generatorService.generate(1);
+
+        assertNull(indexDao.getByIdAsync(newId, 1).join());
+
+        IndexElt expected = new IndexElt.IndexEltBuilder()
+                .id(newId)
+                .type(1)
+                .partition(new Partition(42, 42))
+                .offset(0L)
+                .length(128L)
+                .metadata(ImmutableMap.of("key", "value"))
+                .build();
+
+        indexDao.add(expected);
+
+        assertEquals(indexDao.getByIdAsync(newId, 1).join(), expected);
+    }
+
     @Test
     public void partitionFilter() {
         long newId = generatorService.generate(1);
@@ -124,6 +150,67 @@ public class IndexDaoTest {
         assertEquals(indexDao.getListByPartition(partition), of(expected));
     }
 
+    @Test
+    public void streamByPartition() {
+        Partition partition = new Partition(42, 42);
+
+        // more ids than the chunks in flight
+        Set<IndexElt> expected = new HashSet<>();
+        for (int i = 0; i < 11; i++) {
+            long newId = generatorService.generate(1);
+            for (int type = 0; type < 2; type++) {
+                IndexElt elt = new IndexElt.IndexEltBuilder()
+                        .id(newId)
+                        .type(type)
+                        .partition(i == 0 && type == 1 ? new Partition(41, 41) : partition)
+                        .offset(128L * (2 * i + type))
+                        .length(128L)
+                        .metadata(ImmutableMap.of("key", "value"))
+                        .build();
+
+                indexDao.add(elt);
+                if (elt.getPartition().equals(partition)) {
+                    expected.add(elt);
+                }
+            }
+        }
+
+        assertEquals(indexDao.getStreamByPartition(partition).collect(toSet()), expected);
+        assertEquals(indexDao.getListByPartition(partition).size(), 21);
+        assertEquals(indexDao.getStreamByPartition(partition).limit(3).count(), 3);
+        assertFalse(indexDao.getStreamByPartition(new Partition(43, 43)).findAny().isPresent());
+    }
+
+    @Test
+    public void denormalizedStreamByPartition() {
+        long newId = generatorService.generate(1);
+
+        Partition partition = new Partition(42, 42);
+
+        IndexElt expected = new IndexElt.IndexEltBuilder()
+                .id(newId)
+                .type(1)
+                .partition(partition)
+                .offset(64L)
+                .length(128L)
+                .crc(42L)
+                .metadata(ImmutableMap.of("key", "value"))
+                .build();
+
+        indexDao.add(expected);
+
+        IndexElt elt = indexDao.getStreamByPartition(partition).findFirst().get();
+        assertEquals(elt.getDiskIndexElt(), expected.getDiskIndexElt());
+        assertEquals(elt.getCrc(), 42L);
+        assertEquals(elt.getCreated(), expected.getCreated());
+        assertTrue(elt.getMetadata().isEmpty());
+
+        assertEquals(indexDao.getFullStreamByPartition(partition).findFirst().get().getMetadata(), expected.getMetadata());
+
+        assertEquals(indexDao.backfill(partition), 1);
+        assertEquals(indexDao.getListByPartition(partition), of(expected));
+    }
+
     @Test
     public void deletedFilter() {
         partitionFilter();
@@ -148,6 +235,79 @@ public class IndexDaoTest {
         assertEquals(indexDao.getSizeOfDeleted(partition), 128);
     }
 
+    @Test
+    public void partitionStats() {
+        Partition partition = new Partition(42, 42);
+
+        IndexElt live = new IndexElt.IndexEltBuilder()
+                .id(generatorService.generate(1))
+                .type(1)
+                .partition(partition)
+                .offset(0L)
+                .length(128L)
+                .metadata(ImmutableMap.of("key", "value"))
+                .build();
+
+        IndexElt expired = new IndexElt.IndexEltBuilder()
+                .id(generatorService.generate(1))
+                .type(1)
+                .partition(partition)
+                .offset(128L)
+                .length(64L)
+                .deleted(true)
+                .updated(now(UTC).minusSeconds(indexConfiguration.getGcGraceTime() + indexConfiguration.getStatsBucketTime() + 1).getMillis())
+                .metadata(ImmutableMap.of("key", "value"))
+                .build();
+
+        indexDao.add(live);
+        indexDao.add(expired);
+        assertStats(partition, new PartitionStats(128, 64, 64, 2));
+
+        indexDao.updateDelete(live.getId(), true);
+        assertStats(partition, new PartitionStats(0, 192, 64, 2));
+
+        indexDao.updateDelete(live.getId(), false);
+        assertStats(partition, new PartitionStats(128, 64, 64, 2));
+
+        Partition newPartition = new Partition(42, 43);
+        indexDao.move(live, new DiskIndexElt(newPartition, 0, 128));
+        assertStats(partition, new PartitionStats(0, 64, 64, 1));
+        assertStats(newPartition, new PartitionStats(128, 0, 0, 1));
+
+        indexDao.backfill(partition);
+        assertStats(partition, new PartitionStats(0, 64, 64, 1));
+    }
+
+    @Test
+    public void rebuildReplayedStats() {
+        Partition partition = new Partition(42, 42);
+
+        IndexElt elt = new IndexElt.IndexEltBuilder()
+                .id(generatorService.generate(1))
+                .type(1)
+                .partition(partition)
+                .offset(0L)
+                .length(128L)
+                .metadata(ImmutableMap.of("key", "value"))
+                .build();
+
+        // the counters are approximate, a replayed add is counted twice
+        indexDao.add(elt);
+        indexDao.add(elt);
+        assertStats(partition, new PartitionStats(256, 0, 0, 2));
+
+        indexDao.rebuildStats(partition);
+        assertStats(partition, new PartitionStats(128, 0, 0, 1));
+    }
+
+    /**
+     * The counters are updated off the write path
+     */
+    private void assertStats(Partition partition, PartitionStats expected) {
+        await().atMost(FIVE_SECONDS).until(() -> indexDao.getStats(partition).equals(expected));
+        assertEquals(indexDao.getStats(partition), expected);
+    }
+
     @Test
     public void updateDeleted() {
         long newId = generatorService.generate(1);
@@ -0,0 +1,111 @@
+package io.blobkeeper.index.dao;
+
+/*
+ * Copyright (C) 2015 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.google.common.collect.ImmutableMap;
+import io.blobkeeper.common.configuration.MetricModule;
+import io.blobkeeper.common.configuration.RootModule;
+import io.blobkeeper.index.domain.IndexElt;
+import io.blobkeeper.index.domain.Partition;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Guice;
+import org.testng.annotations.Test;
+
+import javax.inject.Inject;
+
+import static org.testng.Assert.*;
+
+@Guice(modules = {RootModule.class, MetricModule.class})
+public class LocalIndexDaoTest {
+
+    @Inject
+    private LocalIndexDao localIndexDao;
+
+    @Test
+    public void getEmpty() {
+        assertNull(localIndexDao.getById(42L, 0));
+    }
+
+    @Test
+    public void add() {
+        IndexElt expected = createElt(42L, 1, 1L);
+
+        localIndexDao.add(expected);
+
+        IndexElt actual = localIndexDao.getById(42L, 1);
+        assertEquals(actual, expected);
+        assertEquals(actual.getPartition(), expected.getPartition());
+        assertEquals(actual.getCrc(), expected.getCrc());
+        assertEquals(actual.getMetadata(), expected.getMetadata());
+        assertNull(localIndexDao.getById(42L, 0));
+    }
+
+    @Test
+    public void merge() {
+        localIndexDao.add(createElt(42L, 1, 2L));
+        localIndexDao.merge(createElt(42L, 1, 1L));
+
+        assertEquals(localIndexDao.getById(42L, 1).getUpdated(), 2L);
+
+        localIndexDao.merge(createElt(42L, 1, 3L));
+
+        assertEquals(localIndexDao.getById(42L, 1).getUpdated(), 3L);
+    }
+
+    @Test
+    public void flushAndCompact() throws Exception {
+        // enough for a few segments and the compaction
+        int count = 65536 * 10;
+        for (int i = 0; i < count; i++) {
+            localIndexDao.add(createElt(i, 0, 1L));
+        }
+
+        // overrides are flushed to the newer segments
+        for (int i = 0; i < count; i += 1000) {
+            localIndexDao.add(createElt(i, 0, 2L));
+        }
+
+        for (int i = 0; i < count; i += 997) {
+            IndexElt elt = localIndexDao.getById(i, 0);
+            assertNotNull(elt, "Elt " + i);
+            assertEquals(elt.getUpdated(), i % 1000 == 0 ? 2L : 1L);
+        }
+        assertNull(localIndexDao.getById(count, 0));
+    }
+
+    @BeforeMethod
+    private void clear() {
+        localIndexDao.clear();
+    }
+
+    private IndexElt createElt(long id, int type, long updated) {
+        return new IndexElt.IndexEltBuilder()
+                .id(id)
+                .type(type)
+                .partition(new Partition(42, 42))
+                .offset(128L)
+                .length(256L)
+                .crc(42L)
+                .created(1L)
+                .updated(updated)
+                .metadata(ImmutableMap.of("key", "value"))
+                .build();
+    }
+}
@@ -0,0 +1,122 @@
+package io.blobkeeper.index.domain;
+
+/*
+ * Copyright (C) 2016 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.google.common.collect.ImmutableMap;
+import io.blobkeeper.common.util.MerkleTree;
+import io.blobkeeper.index.service.NoIndexRangeException;
+import org.testng.annotations.Test;
+
+import java.util.zip.CRC32;
+
+import static org.testng.Assert.assertEquals;
+
+public class PartitionDigestTest {
+    private static final int HEADER_SIZE = 64;
+
+    private final Partition partition = new Partition(42, 42);
+
+    @Test
+    public void tree() {
+        PartitionDigest digest = new PartitionDigest();
+        digest.add(createElt(303277865741324292L, 1, 0L, 128L, 42L));
+        digest.add(createElt(303277865741324292L, 2, 128L, 128L, 42L));
+        digest.add(createElt(303277865741324291L, 0, 256L, 128L, 42L));
+
+        MerkleTree tree = digest.getTree();
+        assertEquals(tree.getLeafNodes().size(), 2);
+        assertEquals(tree.getLeafNodes().get(1).getHash(), new byte[]{4, 53, 117, -100, -81, -64, 16, 4, 0, 0, 0, 1, 0, 0, 0, 2});
+    }
+
+    @Test(expectedExceptions = NoIndexRangeException.class)
+    public void emptyTree() {
+        new PartitionDigest().getTree();
+    }
+
+    @Test
+    public void crc() {
+        byte[] first = "first".getBytes();
+        byte[] second = "second file".getBytes();
+
+        // the second writer has finished first
+        PartitionDigest digest = new PartitionDigest();
+        digest.add(createElt(2L, 0, first.length, second.length, crc(second)));
+        digest.add(createElt(1L, 0, 0L, first.length, crc(first)));
+
+        CRC32 expected = new CRC32();
+        expected.update(first);
+        expected.update(second);
+
+        assertEquals(digest.getCrc(), expected.getValue());
+    }
+
+    @Test
+    public void crcOfRecords() {
+        byte[] first = "first".getBytes();
+        byte[] second = "second file".getBytes();
+        byte[] third = "third".getBytes();
+
+        long secondOffset = HEADER_SIZE + first.length + HEADER_SIZE;
+        // the region before the third file is released
+        long thirdOffset = secondOffset + second.length + HEADER_SIZE + 42 + HEADER_SIZE;
+
+        PartitionDigest digest = new PartitionDigest(HEADER_SIZE);
+        digest.add(createElt(2L, 0, secondOffset, second.length, crc(second)));
+        digest.add(createElt(1L, 0, HEADER_SIZE, first.length, crc(first)));
+        assertEquals(digest.getPendingFiles(), 0);
+
+        digest.add(createElt(3L, 0, thirdOffset, third.length, crc(third)));
+        assertEquals(digest.getPendingFiles(), 1);
+
+        digest.fold(thirdOffset + third.length);
+        assertEquals(digest.getPendingFiles(), 0);
+
+        // the next file is combined right away
+        byte[] fourth = "fourth".getBytes();
+        digest.add(createElt(4L, 0, thirdOffset + third.length + HEADER_SIZE, fourth.length, crc(fourth)));
+        assertEquals(digest.getPendingFiles(), 0);
+
+        CRC32 expected = new CRC32();
+        expected.update(first);
+        expected.update(second);
+        expected.update(third);
+        expected.update(fourth);
+
+        assertEquals(digest.getCrc(), expected.getValue());
+    }
+
+    private IndexElt createElt(long id, int type, long offset, long length, long crc) {
+        return new IndexElt.IndexEltBuilder()
+                .id(id)
+                .type(type)
+                .partition(partition)
+                .offset(offset)
+                .length(length)
+                .metadata(ImmutableMap.of("key", "value"))
+                .crc(crc)
+                .build();
+    }
+
+    private static long crc(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data);
+        return crc.getValue();
+    }
+}
@@ -0,0 +1,100 @@
+package io.blobkeeper.index.service;
+
+/*
+ * Copyright (C) 2015 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.codahale.metrics.MetricRegistry;
+import io.blobkeeper.common.configuration.MetricModule;
+import io.blobkeeper.common.configuration.RootModule;
+import io.blobkeeper.index.domain.CacheKey;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Guice;
+import org.testng.annotations.Test;
+
+import javax.inject.Inject;
+import java.nio.ByteBuffer;
+
+import static java.nio.ByteBuffer.wrap;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+@Guice(modules = {RootModule.class, MetricModule.class})
+public class BlobCacheServiceTest {
+    private static final int MAX_OBJECT_SIZE = 65536;
+
+    @Inject
+    private BlobCacheService blobCacheService;
+
+    @Inject
+    private MetricRegistry metricRegistry;
+
+    @Test
+    public void putAndGet() {
+        CacheKey key = new CacheKey(42, 0);
+        assertNull(blobCacheService.get(key, ByteBuffer::remaining));
+
+        assertTrue(blobCacheService.put(key, wrap("test".getBytes())));
+        assertFalse(blobCacheService.put(key, wrap("test".getBytes())));
+
+        assertEquals(blobCacheService.get(key, this::toString), "test");
+
+        blobCacheService.remove(key);
+        assertNull(blobCacheService.get(key, ByteBuffer::remaining));
+    }
+
+    @Test
+    public void largeObjectIsNotCached() {
+        assertTrue(blobCacheService.isCacheable(MAX_OBJECT_SIZE));
+        assertFalse(blobCacheService.isCacheable(MAX_OBJECT_SIZE + 1));
+        assertFalse(blobCacheService.isCacheable(0));
+
+        assertFalse(blobCacheService.put(new CacheKey(42, 0), ByteBuffer.allocate(MAX_OBJECT_SIZE + 1)));
+    }
+
+    @Test
+    public void admitFrequentOnly() {
+        for (int i = 0; i < 512; i++) {
+            blobCacheService.put(new CacheKey(i, 0), ByteBuffer.allocate(MAX_OBJECT_SIZE));
+        }
+        assertTrue(metricRegistry.counter("blobkeeper.blob.cache.bytes").getCount() <= 16 * 1024 * 1024);
+
+        // the cache is full, a new blob is not more popular than the victim
+        CacheKey key = new CacheKey(1024, 0);
+        assertFalse(blobCacheService.put(key, ByteBuffer.allocate(MAX_OBJECT_SIZE)));
+
+        blobCacheService.get(key, ByteBuffer::remaining);
+        blobCacheService.get(key, ByteBuffer::remaining);
+
+        assertTrue(blobCacheService.put(key, ByteBuffer.allocate(MAX_OBJECT_SIZE)));
+        assertEquals(blobCacheService.get(key, ByteBuffer::remaining), Integer.valueOf(MAX_OBJECT_SIZE));
+    }
+
+    @BeforeMethod
+    private void clear() {
+        blobCacheService.clear();
+    }
+
+    private String toString(ByteBuffer data) {
+        byte[] bytes = new byte[data.remaining()];
+        data.get(bytes);
+        return new String(bytes);
+    }
+}
@@ -0,0 +1,127 @@
+package io.blobkeeper.index.service;
+
+/*
+ * Copyright (C) 2015 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableMultimap;
+import io.blobkeeper.common.configuration.MetricModule;
+import io.blobkeeper.common.configuration.RootModule;
+import io.blobkeeper.common.util.ChecksumType;
+import io.blobkeeper.index.domain.CacheKey;
+import io.blobkeeper.index.domain.IndexElt;
+import io.blobkeeper.index.domain.Partition;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Guice;
+import org.testng.annotations.Test;
+
+import javax.inject.Inject;
+
+import static io.blobkeeper.index.domain.IndexElt.HEADERS;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+@Guice(modules = {RootModule.class, MetricModule.class})
+public class IndexCacheServiceTest {
+
+    @Inject
+    private IndexCacheService indexCacheService;
+
+    @Test
+    public void setAndGet() {
+        IndexElt expected = createElt(42L, 1);
+        indexCacheService.set(expected);
+
+        IndexElt elt = indexCacheService.getById(new CacheKey(42L, 1));
+        assertEquals(elt, expected);
+        assertEquals(elt.getDiskIndexElt(), expected.getDiskIndexElt());
+        assertEquals(elt.getCrc(), expected.getCrc());
+        assertEquals(elt.getCrcType(), ChecksumType.CRC32C);
+        assertEquals(elt.getCreated(), expected.getCreated());
+        assertEquals(elt.getUpdated(), expected.getUpdated());
+        assertTrue(elt.isDeleted());
+        assertEquals(elt.getHeaders(), expected.getHeaders());
+        assertEquals(elt.getMetadata(), expected.getMetadata());
+
+        assertNull(indexCacheService.getById(new CacheKey(42L, 0)));
+    }
+
+    @Test
+    public void remove() {
+        for (int i = 0; i < 1024; i++) {
+            indexCacheService.set(createElt(i, 0));
+        }
+
+        for (int i = 0; i < 1024; i += 2) {
+            indexCacheService.remove(new CacheKey(i, 0));
+        }
+
+        // probe sequences are kept after removal
+        for (int i = 0; i < 1024; i++) {
+            IndexElt elt = indexCacheService.getById(new CacheKey(i, 0));
+            if (i % 2 == 0) {
+                assertNull(elt);
+            } else {
+                assertEquals(elt.getOffset(), i);
+            }
+        }
+    }
+
+    @Test
+    public void evict() {
+        // much more than the cache could keep
+        int count = 200_000;
+        for (int i = 0; i < count; i++) {
+            indexCacheService.set(createElt(i, 0));
+        }
+
+        IndexElt last = indexCacheService.getById(new CacheKey(count - 1, 0));
+        assertEquals(last.getOffset(), count - 1);
+
+        int cached = 0;
+        for (int i = 0; i < count; i++) {
+            if (null != indexCacheService.getById(new CacheKey(i, 0))) {
+                cached++;
+            }
+        }
+        assertTrue(cached > 0 && cached < count);
+    }
+
+    @BeforeMethod
+    private void clear() {
+        indexCacheService.clear();
+    }
+
+    private IndexElt createElt(long id, int type) {
+        return new IndexElt.IndexEltBuilder()
+                .id(id)
+                .type(type)
+                .partition(new Partition(1, 2))
+                .offset(id)
+                .length(128)
+                .crc(42L)
+                .crcType(ChecksumType.CRC32C)
+                .created(1000L)
+                .updated(2000L)
+                .deleted(type > 0)
+                .metadata(ImmutableMap.<String, Object>of(HEADERS, ImmutableMultimap.of("X-Metadata-Content-Type", "text/plain")))
+                .build();
+    }
+}
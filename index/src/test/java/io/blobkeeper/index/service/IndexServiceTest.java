@@ -0,0 +1,109 @@
+package io.blobkeeper.index.service;
+
+/*
+ * Copyright (C) 2015 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.google.common.collect.ImmutableMap;
+import io.blobkeeper.common.configuration.MetricModule;
+import io.blobkeeper.common.configuration.RootModule;
+import io.blobkeeper.common.service.IdGeneratorService;
+import io.blobkeeper.index.dao.IndexDao;
+import io.blobkeeper.index.domain.IndexElt;
+import io.blobkeeper.index.domain.Partition;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Guice;
+import org.testng.annotations.Test;
+
+import javax.inject.Inject;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import static io.blobkeeper.common.util.GuavaCollectors.toImmutableList;
+import static java.util.concurrent.Executors.newFixedThreadPool;
+import static java.util.stream.IntStream.range;
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+
+@Guice(modules = {RootModule.class, MetricModule.class})
+public class IndexServiceTest {
+
+    @Inject
+    private IndexService indexService;
+
+    @Inject
+    private IndexDao indexDao;
+
+    @Inject
+    private IdGeneratorService generatorService;
+
+    @Test
+    public void notFoundIsCached() {
+        long id = generatorService.generate(1);
+        IndexElt elt = createElt(id);
+
+        assertNull(indexService.getById(id, 0));
+
+        // bypassing the service, the not found elt is still cached
+        indexDao.add(elt);
+        assertNull(indexService.getById(id, 0));
+
+        indexService.add(elt);
+        assertEquals(indexService.getById(id, 0), elt);
+    }
+
+    @Test
+    public void concurrentLookups() throws Exception {
+        long id = generatorService.generate(1);
+        IndexElt elt = createElt(id);
+        indexDao.add(elt);
+
+        ExecutorService executor = newFixedThreadPool(16);
+        try {
+            List<Future<IndexElt>> lookups = executor.invokeAll(
+                    range(0, 256)
+                            .mapToObj(i -> (Callable<IndexElt>) () -> indexService.getById(id, 0))
+                            .collect(toImmutableList())
+            );
+
+            for (Future<IndexElt> lookup : lookups) {
+                assertEquals(lookup.get(), elt);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @BeforeMethod
+    private void clear() {
+        indexService.clear();
+    }
+
+    private IndexElt createElt(long id) {
+        return new IndexElt.IndexEltBuilder()
+                .id(id)
+                .type(0)
+                .partition(new Partition(42, 42))
+                .offset(0L)
+                .length(128L)
+                .metadata(ImmutableMap.of("key", "value"))
+                .build();
+    }
+}
@@ -66,8 +66,8 @@ public class BlobKeeperServer extends AbstractService {
         clusterMembershipService.start(serverConfiguration.getServerName());
 
         bossGroup = new EpollEventLoopGroup();
-        // FIXME: add to config
-        workerGroup = new EpollEventLoopGroup(512);
+        // reads, api calls and direct uploads don't block the event loop, multipart uploads still do
+        workerGroup = new EpollEventLoopGroup(serverConfiguration.getWorkerThreads());
 
         bootstrap = new ServerBootstrap();
         bootstrap.option(ALLOCATOR, PooledByteBufAllocator.DEFAULT);
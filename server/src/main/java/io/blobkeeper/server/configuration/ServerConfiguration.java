@@ -61,6 +61,10 @@ public class ServerConfiguration {
     @Named("blobkeeper.server.secret.token")
     private String secretToken;
 
+    @Inject
+    @Named("blobkeeper.server.worker.threads")
+    private int workerThreads;
+
     private long writerTaskStartDelay;
 
     private volatile String[] allowedHeadersCache;
@@ -77,6 +81,13 @@ public class ServerConfiguration {
         return serverPort;
     }
 
+    /**
+     * @return number of the event loop threads, zero means the netty default (twice the number of cores)
+     */
+    public int getWorkerThreads() {
+        return workerThreads;
+    }
+
     public String getServerName() {
         return serverName;
     }
@@ -23,6 +23,7 @@ package io.blobkeeper.server.handler;
 import io.blobkeeper.common.domain.Result;
 import io.blobkeeper.common.domain.api.ReturnValue;
 import io.blobkeeper.server.handler.api.DeleteRequestHandler;
+import io.blobkeeper.server.handler.api.RequestMapper;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.http.FullHttpRequest;
@@ -35,6 +36,7 @@ import javax.inject.Singleton;
 
 import static io.blobkeeper.common.domain.Error.createError;
 import static io.blobkeeper.common.domain.ErrorCode.INVALID_REQUEST;
+import static io.blobkeeper.common.domain.ErrorCode.SERVICE_ERROR;
 import static io.netty.handler.codec.http.HttpMethod.DELETE;
 import static io.netty.handler.codec.http.HttpMethod.POST;
 import static io.netty.handler.codec.http.HttpResponseStatus.*;
@@ -50,6 +52,9 @@ public class FileDeleteHandler extends BaseFileHandler<FullHttpRequest> {
     @Inject
     private DeleteRequestHandler requestHandler;
 
+    @Inject
+    private RequestMapper requestMapper;
+
     @Override
     protected void channelRead0(ChannelHandlerContext context, FullHttpRequest request) throws Exception {
         setContext();
@@ -89,11 +94,22 @@ public class FileDeleteHandler extends BaseFileHandler<FullHttpRequest> {
     }
 
     private void handleApiRequest(ChannelHandlerContext context, FullHttpRequest request) {
-        try {
-            ReturnValue<Result> returnValue = requestHandler.handleRequest(request.getUri());
-            writeResponse(context, returnValue, request);
-        } catch (Exception e) {
-            log.error("Can't handle request", e);
-        }
+        // the request is released once channelRead0 is returned
+        request.retain();
+
+        requestMapper.handleRequestAsync(requestHandler, request.getUri())
+                .whenComplete((returnValue, t) -> context.executor().execute(() -> {
+                    try {
+                        setContext();
+                        if (null != t) {
+                            log.error("Can't handle request", t);
+                            writeResponse(context, new ReturnValue<Result>(createError(SERVICE_ERROR, "Unknown error")), request);
+                        } else {
+                            writeResponse(context, returnValue, request);
+                        }
+                    } finally {
+                        request.release();
+                    }
+                }));
     }
 }
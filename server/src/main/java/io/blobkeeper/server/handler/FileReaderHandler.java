@@ -20,17 +20,26 @@ package io.blobkeeper.server.handler;
  */
 
 import io.blobkeeper.common.domain.ErrorCode;
+import io.blobkeeper.common.domain.api.ApiRequest;
 import io.blobkeeper.common.domain.api.ReturnValue;
 import io.blobkeeper.file.domain.File;
 import io.blobkeeper.file.service.FileStorage;
 import io.blobkeeper.file.util.FileUtils;
+import io.blobkeeper.index.domain.CacheKey;
 import io.blobkeeper.index.domain.IndexElt;
+import io.blobkeeper.index.service.BlobCacheService;
 import io.blobkeeper.index.service.IndexService;
+import io.blobkeeper.server.handler.api.RequestHandler;
 import io.blobkeeper.server.handler.api.RequestMapper;
+import io.blobkeeper.server.util.ByteRange;
+import io.blobkeeper.server.util.CacheHeaders;
 import io.blobkeeper.server.util.MetadataParser;
+import io.blobkeeper.server.util.UnClosableChunkedFile;
 import io.blobkeeper.server.util.UnClosableFileRegion;
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.*;
 import io.netty.handler.codec.http.*;
+import io.netty.handler.ssl.SslHandler;
 import org.asynchttpclient.util.DateUtils;
 import org.joda.time.DateTime;
 import org.slf4j.Logger;
@@ -39,19 +48,40 @@ import org.slf4j.LoggerFactory;
 import javax.inject.Inject;
 import javax.inject.Provider;
 import javax.inject.Singleton;
-import java.time.Instant;
-import java.time.ZoneId;
-import java.time.ZonedDateTime;
-import java.time.format.DateTimeFormatter;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Date;
-import java.util.Locale;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
 
 import static io.blobkeeper.common.domain.Error.createError;
 import static io.blobkeeper.common.domain.ErrorCode.*;
+import static io.blobkeeper.common.domain.api.UriType.MULTI_GET;
+import static io.blobkeeper.common.util.GuavaCollectors.toImmutableList;
 import static io.blobkeeper.server.util.HttpUtils.NOT_FOUND;
 import static io.blobkeeper.server.util.HttpUtils.*;
+import static io.netty.buffer.Unpooled.copiedBuffer;
 import static io.netty.channel.ChannelFutureListener.CLOSE;
+import static io.netty.handler.codec.http.HttpHeaders.Names.ACCEPT_RANGES;
+import static io.netty.handler.codec.http.HttpHeaders.Names.CACHE_CONTROL;
 import static io.netty.handler.codec.http.HttpHeaders.Names.CONNECTION;
+import static io.netty.handler.codec.http.HttpHeaders.Names.CONTENT_LENGTH;
+import static io.netty.handler.codec.http.HttpHeaders.Names.CONTENT_LOCATION;
+import static io.netty.handler.codec.http.HttpHeaders.Names.CONTENT_RANGE;
+import static io.netty.handler.codec.http.HttpHeaders.Names.CONTENT_TYPE;
+import static io.netty.handler.codec.http.HttpHeaders.Names.ETAG;
+import static io.netty.handler.codec.http.HttpHeaders.Names.EXPIRES;
+import static io.netty.handler.codec.http.HttpHeaders.Names.IF_MODIFIED_SINCE;
+import static io.netty.handler.codec.http.HttpHeaders.Names.IF_NONE_MATCH;
+import static io.netty.handler.codec.http.HttpHeaders.Names.IF_RANGE;
+import static io.netty.handler.codec.http.HttpHeaders.Names.LAST_MODIFIED;
+import static io.netty.handler.codec.http.HttpHeaders.Names.RANGE;
+import static io.netty.handler.codec.http.HttpHeaders.Values.BYTES;
 import static io.netty.handler.codec.http.HttpHeaders.Values.KEEP_ALIVE;
 import static io.netty.handler.codec.http.HttpHeaders.isKeepAlive;
 import static io.netty.handler.codec.http.HttpHeaders.setContentLength;
@@ -59,9 +89,9 @@ import static io.netty.handler.codec.http.HttpMethod.*;
 import static io.netty.handler.codec.http.HttpResponseStatus.*;
 import static io.netty.handler.codec.http.HttpVersion.HTTP_1_1;
 import static io.netty.handler.codec.http.LastHttpContent.EMPTY_LAST_CONTENT;
-import static java.time.Instant.ofEpochMilli;
-import static java.time.ZonedDateTime.from;
-import static java.time.ZonedDateTime.ofInstant;
+import static io.netty.util.CharsetUtil.US_ASCII;
+import static io.netty.util.CharsetUtil.UTF_8;
+import static java.util.concurrent.CompletableFuture.allOf;
 import static org.joda.time.DateTimeZone.UTC;
 
 @Singleton
@@ -69,11 +99,18 @@ import static org.joda.time.DateTimeZone.UTC;
 public class FileReaderHandler extends BaseFileHandler<FullHttpRequest> {
     private static final Logger log = LoggerFactory.getLogger(FileReaderHandler.class);
 
-    private static final int EXPIRE_YEARS = 1;
+    private static final String MULTIPART_BYTERANGES = "multipart/byteranges; boundary=";
+    private static final String MULTIPART_MIXED = "multipart/mixed; boundary=";
 
-    public static final DateTimeFormatter RFC1123_FORMATTER = DateTimeFormatter.RFC_1123_DATE_TIME
-            .withLocale(Locale.US)
-            .withZone(ZoneId.of("GMT"));
+    private static final String IDS_PARAMETER = "ids";
+    private static final String BLOB_STATUS_HEADER = "X-Blob-Status";
+    private static final int MAX_MULTI_GET_FILES = 256;
+
+    private static final Comparator<Part> PART_ORDER = Comparator
+            .<Part>comparingInt(part -> null == part.file ? 1 : 0)
+            .thenComparingInt(part -> null == part.file ? 0 : part.elt.getPartition().getDisk())
+            .thenComparingInt(part -> null == part.file ? 0 : part.elt.getPartition().getId())
+            .thenComparingLong(part -> null == part.file ? 0 : part.elt.getOffset());
 
     @Inject
     private Provider<FileWriterHandler> fileWriterHandlerProvider;
@@ -84,6 +121,9 @@ public class FileReaderHandler extends BaseFileHandler<FullHttpRequest> {
     @Inject
     private FileStorage fileStorage;
 
+    @Inject
+    private BlobCacheService blobCacheService;
+
     @Inject
     private RequestMapper requestMapper;
 
@@ -123,6 +163,13 @@ public class FileReaderHandler extends BaseFileHandler<FullHttpRequest> {
         }
 
         String uri = request.getUri();
+
+        QueryStringDecoder query = new QueryStringDecoder(uri);
+        if (query.path().equals(MULTI_GET.getUri())) {
+            multiGet(context, request, query);
+            return;
+        }
+
         final long fileId = getId(uri);
         final int typeId = getType(uri);
 
@@ -142,13 +189,208 @@ public class FileReaderHandler extends BaseFileHandler<FullHttpRequest> {
             return;
         }
 
+        log.debug("Id {}", fileId);
+
+        CompletableFuture<IndexElt> lookup;
+        try {
+            lookup = indexService.getByIdAsync(fileId, typeId);
+        } catch (Exception e) {
+            log.error("Unknown error", e);
+            sendError(context, BAD_GATEWAY, createError(SERVICE_ERROR, "Unknown error"));
+            return;
+        }
+
+        whenLookedUp(context, request, lookup, () -> sendFile(context, request, lookup));
+    }
+
+    /**
+     * Blobs of the comma separated id/type pairs: GET /multi?ids=id1/type1,id2/type2
+     */
+    private void multiGet(ChannelHandlerContext context, FullHttpRequest request, QueryStringDecoder query) throws IOException {
+        List<String> ids = query.parameters().get(IDS_PARAMETER);
+        List<CacheKey> keys = null == ids || ids.isEmpty() ? null : getKeys(ids.get(0));
+        if (null == keys || keys.isEmpty()) {
+            log.error("No ids");
+            sendError(context, BAD_REQUEST, createError(INVALID_REQUEST, "No ids"));
+            return;
+        }
+
+        if (keys.size() > MAX_MULTI_GET_FILES) {
+            log.error("Too many ids {}", keys.size());
+            sendError(context, BAD_REQUEST, createError(INVALID_REQUEST, "Too many ids, max " + MAX_MULTI_GET_FILES));
+            return;
+        }
+
+        List<CompletableFuture<IndexElt>> lookups;
+        try {
+            lookups = keys.stream()
+                    .map(key -> indexService.getByIdAsync(key.getId(), key.getTypeId()))
+                    .collect(toImmutableList());
+        } catch (Exception e) {
+            log.error("Unknown error", e);
+            sendError(context, BAD_GATEWAY, createError(SERVICE_ERROR, "Unknown error"));
+            return;
+        }
+
+        CompletableFuture<Void> lookup = allOf(lookups.toArray(new CompletableFuture[lookups.size()]));
+        whenLookedUp(context, request, lookup, () -> sendFiles(context, request, keys, lookups));
+    }
+
+    /**
+     * Sends the response inline if the lookup is done, otherwise on the event loop once it's completed.
+     * The next pipelined request is held by the pipelining handler until the response is written.
+     */
+    private void whenLookedUp(
+            ChannelHandlerContext context,
+            FullHttpRequest request,
+            CompletableFuture<?> lookup,
+            Sender sender
+    ) throws IOException {
+        if (lookup.isDone()) {
+            sender.send();
+            return;
+        }
+
+        // the request is released once channelRead0 is returned
+        request.retain();
+
+        lookup.whenComplete((ignored, t) -> context.executor().execute(() -> {
+            try {
+                setContext();
+                sender.send();
+            } catch (Exception e) {
+                context.fireExceptionCaught(e);
+            } finally {
+                request.release();
+            }
+        }));
+    }
+
+    /**
+     * multipart/mixed body, every part has the status of the blob and the blob itself if it's found.
+     * Found blobs go first in order of partition and offset, so they are read sequentially.
+     */
+    private void sendFiles(
+            ChannelHandlerContext context,
+            FullHttpRequest request,
+            List<CacheKey> keys,
+            List<CompletableFuture<IndexElt>> lookups
+    ) throws IOException {
+        String authToken = MetadataParser.getAuthToken(request);
+
+        List<Part> parts = new ArrayList<>(keys.size());
+        for (int i = 0; i < keys.size(); i++) {
+            parts.add(getPart(keys.get(i), lookups.get(i), authToken));
+        }
+        parts.sort(PART_ORDER);
+
+        String boundary = Long.toHexString(ThreadLocalRandom.current().nextLong());
+
+        List<ByteBuf> partHeaders = new ArrayList<>(parts.size());
+        long contentLength = 0;
+        for (Part part : parts) {
+            HttpHeaders headers = new DefaultHttpHeaders();
+            headers.set(CONTENT_LOCATION, "/" + part.key.getId() + "/" + part.key.getTypeId());
+            headers.set(BLOB_STATUS_HEADER, part.status.code());
+            if (null != part.file) {
+                MetadataParser.copyMetadata(part.elt.getHeaders(), headers);
+            }
+            headers.set(CONTENT_LENGTH, part.getLength());
+
+            StringBuilder partHeader = new StringBuilder()
+                    .append("\r\n--").append(boundary).append("\r\n");
+            for (Map.Entry<String, String> header : headers) {
+                partHeader.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+            }
+            partHeader.append("\r\n");
+
+            ByteBuf buffer = copiedBuffer(partHeader, UTF_8);
+            partHeaders.add(buffer);
+            contentLength += buffer.readableBytes() + part.getLength();
+        }
+
+        ByteBuf end = copiedBuffer("\r\n--" + boundary + "--\r\n", US_ASCII);
+        contentLength += end.readableBytes();
+
+        HttpResponse response = new DefaultHttpResponse(HTTP_1_1, OK);
+        response.headers().set(CONTENT_TYPE, MULTIPART_MIXED + boundary);
+        setContentLength(response, contentLength);
+
+        if (isKeepAlive(request)) {
+            response.headers().set(CONNECTION, KEEP_ALIVE);
+        }
+
+        context.write(response);
+
+        for (int i = 0; i < parts.size(); i++) {
+            Part part = parts.get(i);
+
+            context.write(new DefaultHttpContent(partHeaders.get(i)), context.voidPromise());
+            if (null != part.file) {
+                writeContent(context, part.file, part.elt.getOffset(), part.elt.getLength());
+            }
+        }
+
+        context.write(new DefaultHttpContent(end), context.voidPromise());
+
+        // Write the end marker
+        ChannelFuture lastContentFuture = context.writeAndFlush(EMPTY_LAST_CONTENT);
+
+        if (!isKeepAlive(request)) {
+            lastContentFuture.addListener(CLOSE);
+        }
+    }
+
+    private Part getPart(CacheKey key, CompletableFuture<IndexElt> lookup, String authToken) {
+        IndexElt indexElt;
+        try {
+            indexElt = lookup.join();
+        } catch (Exception e) {
+            log.error("Can't get index elt {}", key, e);
+            return new Part(key, null, null, BAD_GATEWAY);
+        }
+
+        if (null == indexElt) {
+            return new Part(key, null, null, HttpResponseStatus.NOT_FOUND);
+        }
+
+        if (indexElt.isDeleted()) {
+            return new Part(key, indexElt, null, GONE);
+        }
+
+        if (indexElt.isAuthRequired() && (null == authToken || !indexElt.isAllowed(authToken))) {
+            return new Part(key, indexElt, null, HttpResponseStatus.FORBIDDEN);
+        }
+
+        try {
+            File readerFile = fileStorage.getFile(indexElt);
+            if (null == readerFile || readerFile.getLength() - indexElt.getOffset() < indexElt.getLength()) {
+                log.error("Can't find reader file for {}", indexElt);
+                return new Part(key, indexElt, null, BAD_GATEWAY);
+            }
+
+            return new Part(key, indexElt, readerFile, OK);
+        } catch (Exception e) {
+            log.error("Can't get reader file for {}", indexElt, e);
+            return new Part(key, indexElt, null, BAD_GATEWAY);
+        }
+    }
+
+    /**
+     * Sends the blob of the looked up index elt
+     */
+    private void sendFile(
+            ChannelHandlerContext context,
+            FullHttpRequest request,
+            CompletableFuture<IndexElt> lookup
+    ) throws IOException {
         File readerFile = null;
+        ByteBuf cached = null;
         IndexElt indexElt;
+        CacheHeaders cacheHeaders = null;
         boolean modified;
         try {
-            log.debug("Id {}", fileId);
-
-            indexElt = indexService.getById(fileId, typeId);
+            indexElt = lookup.join();
             log.debug("Index elt is {}", indexElt);
 
             if (null != indexElt) {
@@ -166,10 +408,14 @@ public class FileReaderHandler extends BaseFileHandler<FullHttpRequest> {
                     }
                 }
 
-                modified = isModified(indexElt, request);
+                cacheHeaders = CacheHeaders.of(indexElt);
+                modified = isModified(cacheHeaders, request);
 
                 if (modified) {
-                    readerFile = fileStorage.getFile(indexElt);
+                    cached = getCached(context, indexElt, request);
+                    if (null == cached) {
+                        readerFile = fileStorage.getFile(indexElt);
+                    }
                 }
             } else {
                 log.error("Index elt not found");
@@ -183,17 +429,17 @@ public class FileReaderHandler extends BaseFileHandler<FullHttpRequest> {
         }
 
         if (!modified) {
-            sendNotModified(context, indexElt, request);
+            sendNotModified(context, indexElt, cacheHeaders, request);
             return;
         }
 
-        if (null == readerFile) {
+        if (null == readerFile && null == cached) {
             log.error("Can't find reader file");
             sendError(context, BAD_GATEWAY, createError(SERVICE_ERROR, "No reader file"));
             return;
         }
 
-        if (readerFile.getLength() - indexElt.getOffset() < indexElt.getLength()) {
+        if (null != readerFile && readerFile.getLength() - indexElt.getOffset() < indexElt.getLength()) {
             String errorMessage = String.format(
                     "Reader file length less than index elt %s < %s",
                     readerFile.getLength() - indexElt.getOffset(),
@@ -211,25 +457,41 @@ public class FileReaderHandler extends BaseFileHandler<FullHttpRequest> {
             return;
         }*/
 
-        HttpResponse response = new DefaultHttpResponse(HTTP_1_1, OK);
+        List<ByteRange> ranges = getRanges(indexElt, cacheHeaders, request);
+        if (null != ranges && ranges.isEmpty()) {
+            sendRangeNotSatisfiable(context, indexElt, request);
+            return;
+        }
+
+        HttpResponse response = new DefaultHttpResponse(HTTP_1_1, null == ranges ? OK : PARTIAL_CONTENT);
 
         MetadataParser.copyMetadata(indexElt.getHeaders(), response);
 
-        addCacheHeaders(response, indexElt);
+        addCacheHeaders(response, cacheHeaders);
 
-        setContentLength(response, indexElt.getLength());
+        response.headers().set(ACCEPT_RANGES, BYTES);
 
         if (isKeepAlive(request)) {
             response.headers().set(CONNECTION, KEEP_ALIVE);
         }
 
-        context.write(response);
+        if (null == ranges) {
+            setContentLength(response, indexElt.getLength());
+            context.write(response);
 
-        // Write the content.
-        context.write(
-                new UnClosableFileRegion(readerFile.getFileChannel(), indexElt.getOffset(), indexElt.getLength()),
-                context.voidPromise()
-        );
+            // Write the content.
+            writeBlob(context, cached, readerFile, indexElt);
+        } else if (ranges.size() == 1) {
+            ByteRange range = ranges.get(0);
+
+            response.headers().set(CONTENT_RANGE, range.getContentRange(indexElt.getLength()));
+            setContentLength(response, range.getLength());
+            context.write(response);
+
+            writeContent(context, readerFile, indexElt.getOffset() + range.getStart(), range.getLength());
+        } else {
+            writeRanges(context, response, readerFile, indexElt, ranges);
+        }
 
         // Write the end marker
         ChannelFuture lastContentFuture = context.writeAndFlush(EMPTY_LAST_CONTENT);
@@ -239,15 +501,173 @@ public class FileReaderHandler extends BaseFileHandler<FullHttpRequest> {
         }
     }
 
+    /**
+     * Small blobs are served from the pooled buffers, a loaded one is offered to the blob cache
+     */
+    private void writeBlob(ChannelHandlerContext context, ByteBuf cached, File readerFile, IndexElt indexElt) throws IOException {
+        if (null != cached) {
+            context.write(new DefaultHttpContent(cached), context.voidPromise());
+            return;
+        }
+
+        if (!blobCacheService.isCacheable(indexElt.getLength())) {
+            writeContent(context, readerFile, indexElt.getOffset(), indexElt.getLength());
+            return;
+        }
+
+        int length = (int) indexElt.getLength();
+        ByteBuf buffer = context.alloc().directBuffer(length);
+        try {
+            ByteBuffer data = buffer.nioBuffer(0, length);
+            while (data.hasRemaining()) {
+                if (readerFile.getFileChannel().read(data, indexElt.getOffset() + data.position()) < 0) {
+                    throw new EOFException("Unexpected end of the reader file");
+                }
+            }
+            buffer.writerIndex(length);
+        } catch (IOException e) {
+            buffer.release();
+            throw e;
+        }
+
+        blobCacheService.put(indexElt.toCacheKey(), buffer.nioBuffer());
+
+        context.write(new DefaultHttpContent(buffer), context.voidPromise());
+    }
+
+    private ByteBuf getCached(ChannelHandlerContext context, IndexElt indexElt, HttpRequest request) {
+        if (request.headers().contains(RANGE) || !blobCacheService.isCacheable(indexElt.getLength())) {
+            return null;
+        }
+
+        return blobCacheService.get(
+                indexElt.toCacheKey(),
+                data -> context.alloc().directBuffer(data.remaining()).writeBytes(data)
+        );
+    }
+
+    /**
+     * Zero-copy transfer of the blob region, SSL channels get it by chunks
+     */
+    private void writeContent(ChannelHandlerContext context, File readerFile, long offset, long length) throws IOException {
+        if (null == context.pipeline().get(SslHandler.class)) {
+            context.write(new UnClosableFileRegion(readerFile.getFileChannel(), offset, length), context.voidPromise());
+        } else {
+            context.write(new UnClosableChunkedFile(readerFile.getFileChannel(), offset, length), context.voidPromise());
+        }
+    }
+
+    /**
+     * multipart/byteranges body, every part is a region of the blob
+     */
+    private void writeRanges(
+            ChannelHandlerContext context,
+            HttpResponse response,
+            File readerFile,
+            IndexElt indexElt,
+            List<ByteRange> ranges
+    ) throws IOException {
+        String boundary = Long.toHexString(ThreadLocalRandom.current().nextLong());
+        String contentType = response.headers().get(CONTENT_TYPE);
+
+        List<ByteBuf> partHeaders = new ArrayList<>(ranges.size());
+        long contentLength = 0;
+        for (ByteRange range : ranges) {
+            StringBuilder partHeader = new StringBuilder()
+                    .append("\r\n--").append(boundary).append("\r\n");
+            if (null != contentType) {
+                partHeader.append(CONTENT_TYPE).append(": ").append(contentType).append("\r\n");
+            }
+            partHeader.append(CONTENT_RANGE).append(": ").append(range.getContentRange(indexElt.getLength()))
+                    .append("\r\n\r\n");
+
+            ByteBuf buffer = copiedBuffer(partHeader, US_ASCII);
+            partHeaders.add(buffer);
+            contentLength += buffer.readableBytes() + range.getLength();
+        }
+
+        ByteBuf end = copiedBuffer("\r\n--" + boundary + "--\r\n", US_ASCII);
+        contentLength += end.readableBytes();
+
+        response.headers().set(CONTENT_TYPE, MULTIPART_BYTERANGES + boundary);
+        setContentLength(response, contentLength);
+        context.write(response);
+
+        for (int i = 0; i < ranges.size(); i++) {
+            ByteRange range = ranges.get(i);
+
+            context.write(new DefaultHttpContent(partHeaders.get(i)), context.voidPromise());
+            writeContent(context, readerFile, indexElt.getOffset() + range.getStart(), range.getLength());
+        }
+
+        context.write(new DefaultHttpContent(end), context.voidPromise());
+    }
+
+    /**
+     * @return null if the whole blob is requested
+     */
+    private List<ByteRange> getRanges(IndexElt indexElt, CacheHeaders cacheHeaders, HttpRequest request) {
+        String range = request.headers().get(RANGE);
+        if (null == range) {
+            return null;
+        }
+
+        String ifRange = request.headers().get(IF_RANGE);
+        if (null != ifRange && !cacheHeaders.isRangeActual(ifRange)) {
+            return null;
+        }
+
+        return ByteRange.parse(range, indexElt.getLength());
+    }
+
+    private void sendRangeNotSatisfiable(ChannelHandlerContext ctx, IndexElt indexElt, HttpRequest request) {
+        HttpResponse response = new DefaultHttpResponse(HTTP_1_1, REQUESTED_RANGE_NOT_SATISFIABLE);
+
+        response.headers().set(CONTENT_RANGE, "bytes */" + indexElt.getLength());
+        response.headers().set(ACCEPT_RANGES, BYTES);
+        setContentLength(response, 0);
+
+        if (isKeepAlive(request)) {
+            response.headers().set(CONNECTION, KEEP_ALIVE);
+        }
+
+        ctx.write(response);
+
+        // Write the end marker
+        ChannelFuture lastContentFuture = ctx.writeAndFlush(EMPTY_LAST_CONTENT);
+
+        if (!isKeepAlive(request)) {
+            lastContentFuture.addListener(CLOSE);
+        }
+    }
+
     private boolean tryHandleApiRequest(ChannelHandlerContext context, FullHttpRequest request) {
+        RequestHandler<?, ? extends ApiRequest> requestHandler;
         try {
-            ReturnValue<?> returnValue = requestMapper.getByUri(request.getUri()).handleRequest("{}");
-            writeResponse(context.channel(), getJson(returnValue), request);
-            return true;
+            requestHandler = requestMapper.getByUri(request.getUri());
         } catch (Exception e) {
             log.error("Can't handle request", e);
             return false;
         }
+
+        // the request is released once channelRead0 is returned
+        request.retain();
+
+        requestMapper.handleRequestAsync(requestHandler, "{}")
+                .whenComplete((returnValue, t) -> context.executor().execute(() -> {
+                    try {
+                        setContext();
+                        if (null != t) {
+                            log.error("Can't handle request", t);
+                            writeResponse(context, new ReturnValue<>(createError(SERVICE_ERROR, "Unknown error")), request);
+                        } else {
+                            writeResponse(context.channel(), getJson(returnValue), request);
+                        }
+                    } finally {
+                        request.release();
+                    }
+                }));
+        return true;
     }
 
     private void addWriterBack(ChannelHandlerContext ctx) {
@@ -255,43 +675,32 @@ public class FileReaderHandler extends BaseFileHandler<FullHttpRequest> {
         ctx.pipeline().addBefore("reader", "writer", fileWriterHandlerProvider.get());
     }
 
-    private void addCacheHeaders(HttpResponse response, IndexElt indexElt) {
-        ZonedDateTime lastModified = ofInstant(ofEpochMilli(indexElt.getCreated()), ZoneId.of("UTC"));
-
-        response.headers().add("Last-Modified", lastModified.format(RFC1123_FORMATTER));
-        response.headers().add("Expires", lastModified.plusYears(EXPIRE_YEARS).format(RFC1123_FORMATTER));
-        response.headers().add("Cache-Control", "max-age=" + (EXPIRE_YEARS * 365 * 24 * 60 * 60));
+    private void addCacheHeaders(HttpResponse response, CacheHeaders cacheHeaders) {
+        response.headers().add(ETAG, cacheHeaders.getETag());
+        response.headers().add(LAST_MODIFIED, cacheHeaders.getLastModified());
+        response.headers().add(EXPIRES, cacheHeaders.getExpires());
+        response.headers().add(CACHE_CONTROL, CacheHeaders.CACHE_CONTROL);
     }
 
-    private boolean isModified(IndexElt indexElt, HttpRequest request) {
-        if (request.headers().contains("if-modified-since")) {
-            try {
-                ZonedDateTime lastModified = from(RFC1123_FORMATTER.parse(request.headers().get("if-modified-since")));
-                ZonedDateTime lastModifiedUTC = lastModified.withZoneSameInstant(ZoneId.of("UTC"));
-
-                // drop mills from created
-                ZonedDateTime indexCreated = ofInstant(ofEpochMilli(indexElt.getCreated()), ZoneId.of("UTC"));
-
-                if (indexCreated.toEpochSecond() <= lastModifiedUTC.toEpochSecond()) {
-                    return false;
-                }
-            } catch (Exception e) {
-                log.error("Can't parse date " + request.headers().get("if-modified-since"), e);
-            }
+    /**
+     * If-None-Match takes precedence over If-Modified-Since
+     */
+    private boolean isModified(CacheHeaders cacheHeaders, HttpRequest request) {
+        String ifNoneMatch = request.headers().get(IF_NONE_MATCH);
+        if (null != ifNoneMatch) {
+            return cacheHeaders.isNoneMatch(ifNoneMatch);
         }
 
-        return true;
+        String ifModifiedSince = request.headers().get(IF_MODIFIED_SINCE);
+        return null == ifModifiedSince || cacheHeaders.isModifiedSince(ifModifiedSince);
     }
 
-    private void sendNotModified(ChannelHandlerContext ctx, IndexElt indexElt, HttpRequest request) {
+    private void sendNotModified(ChannelHandlerContext ctx, IndexElt indexElt, CacheHeaders cacheHeaders, HttpRequest request) {
         HttpResponse response = new DefaultHttpResponse(HTTP_1_1, NOT_MODIFIED);
 
         MetadataParser.copyMetadata(indexElt.getHeaders(), response);
 
-        response.headers().add(
-                "Last-Modified",
-                ofInstant(ofEpochMilli(indexElt.getCreated()), ZoneId.of("UTC")).format(RFC1123_FORMATTER)
-        );
+        addCacheHeaders(response, cacheHeaders);
 
         if (isKeepAlive(request)) {
             response.headers().set(CONNECTION, KEEP_ALIVE);
@@ -306,4 +715,28 @@ public class FileReaderHandler extends BaseFileHandler<FullHttpRequest> {
             lastContentFuture.addListener(CLOSE);
         }
     }
+
+    @FunctionalInterface
+    private interface Sender {
+        void send() throws IOException;
+    }
+
+    private static class Part {
+        private final CacheKey key;
+        private final IndexElt elt;
+        // null if the blob isn't sent
+        private final File file;
+        private final HttpResponseStatus status;
+
+        Part(CacheKey key, IndexElt elt, File file, HttpResponseStatus status) {
+            this.key = key;
+            this.elt = elt;
+            this.file = file;
+            this.status = status;
+        }
+
+        long getLength() {
+            return null == file ? 0 : elt.getLength();
+        }
+    }
 }
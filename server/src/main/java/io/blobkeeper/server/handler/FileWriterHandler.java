@@ -20,12 +20,18 @@ package io.blobkeeper.server.handler;
  */
 
 import io.blobkeeper.cluster.service.ClusterMembershipService;
+import io.blobkeeper.cluster.service.ReplicationClientService;
 import io.blobkeeper.common.domain.Result;
 import io.blobkeeper.common.domain.api.ApiRequest;
 import io.blobkeeper.common.domain.api.ReturnValue;
 import io.blobkeeper.common.service.IdGeneratorService;
 import io.blobkeeper.file.configuration.FileConfiguration;
 import io.blobkeeper.file.domain.StorageFile;
+import io.blobkeeper.file.domain.WritableRegion;
+import io.blobkeeper.file.service.DiskSelectionPolicy;
+import io.blobkeeper.file.service.FileStorage;
+import io.blobkeeper.file.service.StagingJournal;
+import io.blobkeeper.index.domain.IndexElt;
 import io.blobkeeper.index.domain.IndexTempElt;
 import io.blobkeeper.index.service.IndexService;
 import io.blobkeeper.server.handler.api.RequestHandler;
@@ -40,16 +46,24 @@ import org.slf4j.Logger;
 
 import javax.inject.Inject;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 import static io.blobkeeper.common.domain.Error.createError;
 import static io.blobkeeper.common.domain.ErrorCode.*;
 import static io.blobkeeper.index.domain.IndexElt.DEFAULT_TYPE;
 import static io.blobkeeper.server.util.HttpUtils.*;
+import static io.netty.handler.codec.http.HttpHeaders.Names.CONTENT_TYPE;
+import static io.netty.handler.codec.http.HttpHeaders.Values.APPLICATION_X_WWW_FORM_URLENCODED;
+import static io.netty.handler.codec.http.HttpHeaders.getContentLength;
 import static io.netty.handler.codec.http.HttpMethod.*;
 import static io.netty.handler.codec.http.HttpResponseStatus.*;
 import static io.netty.handler.codec.http.LastHttpContent.EMPTY_LAST_CONTENT;
 import static io.netty.handler.codec.http.multipart.InterfaceHttpData.HttpDataType.FileUpload;
 import static java.lang.String.format;
+import static java.util.concurrent.CompletableFuture.completedFuture;
 import static org.joda.time.DateTime.now;
 import static org.joda.time.DateTimeZone.UTC;
 import static org.slf4j.LoggerFactory.getLogger;
@@ -68,6 +82,18 @@ public class FileWriterHandler extends BaseFileHandler<HttpObject> {
     @Inject
     private WriterTaskQueue writerTaskQueue;
 
+    @Inject
+    private DiskSelectionPolicy diskSelectionPolicy;
+
+    @Inject
+    private FileStorage fileStorage;
+
+    @Inject
+    private StagingJournal stagingJournal;
+
+    @Inject
+    private ReplicationClientService replicationClientService;
+
     @Inject
     private ClusterMembershipService clusterMembershipService;
 
@@ -84,6 +110,15 @@ public class FileWriterHandler extends BaseFileHandler<HttpObject> {
     private boolean requestIsSent = false;
     private boolean errorRequest = false;
 
+    // direct upload state, the region is null if the upload has failed
+    private boolean directUpload = false;
+    private StorageFile directFile;
+    private WritableRegion directRegion;
+
+    // the chunks received while the region is reserved off the event loop
+    private CompletableFuture<WritableRegion> directReservation;
+    private final List<HttpContent> directChunks = new ArrayList<>();
+
     // clean up garbage
     static {
         DiskFileUpload.deleteOnExitTemporaryFile = false;
@@ -110,6 +145,11 @@ public class FileWriterHandler extends BaseFileHandler<HttpObject> {
 
     @Override
     public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        if (directUpload) {
+            log.warn("Direct upload is interrupted {}", directRegion);
+            resetDirectUpload();
+        }
+
         if (decoder != null) {
             errorRequest = true;
             reset();
@@ -139,6 +179,22 @@ public class FileWriterHandler extends BaseFileHandler<HttpObject> {
                 // FIXME: restore will be here
                 return;
             }
+
+            if (isDirectUpload(request)) {
+                startDirectUpload(context, request);
+                return;
+            }
+        }
+
+        if (directUpload) {
+            if (object instanceof HttpContent) {
+                if (null != directReservation) {
+                    directChunks.add(((HttpContent) object).retain());
+                } else {
+                    writeDirectChunk(context, (HttpContent) object);
+                }
+            }
+            return;
         }
 
         if (object.equals(EMPTY_LAST_CONTENT)) {
@@ -187,15 +243,215 @@ public class FileWriterHandler extends BaseFileHandler<HttpObject> {
     }
 
     private void handleApiRequest(ChannelHandlerContext ctx, String value) {
+        HttpRequest request = this.request;
         try {
-            RequestHandler<?, ? extends ApiRequest> requestHandler = requestMapper.getByUri(this.request.getUri());
-            ReturnValue<?> returnValue = requestHandler.handleRequest(value);
-            writeResponse(ctx, returnValue, request);
+            RequestHandler<?, ? extends ApiRequest> requestHandler = requestMapper.getByUri(request.getUri());
+            requestMapper.handleRequestAsync(requestHandler, value)
+                    .whenComplete((returnValue, t) -> {
+                        if (null != t) {
+                            log.error("Can't handle request", t);
+                            writeResponse(ctx, new ReturnValue<>(createError(SERVICE_ERROR, "Unknown error")), request);
+                        } else {
+                            writeResponse(ctx, returnValue, request);
+                        }
+                    });
         } catch (Exception e) {
             log.error("Can't handle request", e);
         }
     }
 
+    /**
+     * Not multipart body of the known length is streamed to the reserved region of the partition without a temp file.
+     * Api calls and forms are decoded as before.
+     */
+    private boolean isDirectUpload(HttpRequest request) {
+        return fileConfiguration.isDirectUpload()
+                && request.getMethod() == POST
+                && getContentLength(request, 0) > 0
+                && !HttpPostRequestDecoder.isMultipart(request)
+                && !isForm(request)
+                && !requestMapper.hasHandler(new QueryStringDecoder(request.getUri()).path());
+    }
+
+    private static boolean isForm(HttpRequest request) {
+        String contentType = request.headers().get(CONTENT_TYPE);
+        return null != contentType
+                && contentType.toLowerCase().startsWith(APPLICATION_X_WWW_FORM_URLENCODED);
+    }
+
+    private void startDirectUpload(ChannelHandlerContext ctx, HttpRequest request) {
+        this.request = request;
+        this.directUpload = true;
+
+        if (!clusterMembershipService.isMaster()) {
+            log.error("Node is not a master");
+            sendError(ctx, METHOD_NOT_ALLOWED, createError(NOT_A_MASTER, "Node is not a master"));
+            return;
+        }
+
+        long length = getContentLength(request);
+        if (length > fileConfiguration.getMaxFileSize()) {
+            String errorMessage = "File is too large";
+            log.error(errorMessage);
+            sendError(ctx, REQUEST_ENTITY_TOO_LARGE, createError(INVALID_REQUEST, errorMessage));
+            return;
+        }
+
+        String uri = request.getUri();
+        long id = getId(uri);
+        int type = getType(uri);
+
+        CompletableFuture<IndexElt> existing;
+        if (id == HttpUtils.NOT_FOUND || type == HttpUtils.NOT_FOUND) {
+            id = isGeneratorService.generate(DEFAULT_SHARD_ID);
+            type = DEFAULT_TYPE;
+            log.info("New id : type is {} : {}", id, type);
+            existing = completedFuture(null);
+        } else {
+            log.info("Given file : type is {} : {}", id, type);
+            existing = indexService.getByIdAsync(id, type);
+        }
+
+        Integer disk = diskSelectionPolicy.select().orElse(null);
+        if (null == disk) {
+            String errorMessage = "Upload failed";
+            log.error("No writable disks");
+            sendError(ctx, BAD_GATEWAY, createError(SERVICE_ERROR, errorMessage));
+            return;
+        }
+
+        directFile = new StorageFile.StorageFileBuilder()
+                .id(id)
+                .type(type)
+                .length(length)
+                .headers(MetadataParser.getHeaders(request))
+                .build();
+
+        // the lookup and the reservation don't block the event loop, the chunks are kept until the region is reserved
+        long fileId = id;
+        int fileType = type;
+        CompletableFuture<WritableRegion> reservation = existing
+                .thenCompose(elt -> null == elt
+                        ? fileStorage.reserveAsync(disk, fileId, fileType, length)
+                        : completedFuture(null));
+
+        directReservation = reservation;
+        ctx.channel().config().setAutoRead(false);
+
+        reservation.whenComplete((region, t) -> ctx.executor().execute(() -> onReserved(ctx, reservation, region, t)));
+    }
+
+    private void onReserved(
+            ChannelHandlerContext ctx,
+            CompletableFuture<WritableRegion> reservation,
+            WritableRegion region,
+            Throwable t
+    ) {
+        setContext();
+
+        if (reservation != directReservation) {
+            // the upload is interrupted meanwhile
+            if (null != region) {
+                fileStorage.release(region);
+            }
+            return;
+        }
+
+        directReservation = null;
+        ctx.channel().config().setAutoRead(true);
+
+        if (null != t) {
+            log.error("Can't reserve region for the file {}", directFile.getId(), t);
+            sendError(ctx, BAD_GATEWAY, createError(SERVICE_ERROR, "Upload failed"));
+        } else if (null == region) {
+            log.error("File {} : {} is already present", directFile.getId(), directFile.getType());
+            sendError(ctx, CONFLICT, createError(ALREADY_EXISTS, "Object already exists"));
+        } else {
+            directRegion = region;
+            log.trace("Region reserved {}", directRegion);
+        }
+
+        List<HttpContent> chunks = new ArrayList<>(directChunks);
+        directChunks.clear();
+        for (HttpContent chunk : chunks) {
+            try {
+                writeDirectChunk(ctx, chunk);
+            } finally {
+                chunk.release();
+            }
+        }
+    }
+
+    private void writeDirectChunk(ChannelHandlerContext ctx, HttpContent chunk) {
+        if (null != directRegion) {
+            try {
+                for (ByteBuffer buffer : chunk.content().nioBuffers()) {
+                    directRegion.write(buffer);
+                }
+            } catch (IllegalArgumentException e) {
+                log.error("Upload exceeds the Content-Length {}", directRegion, e);
+                directRegion = null;
+                sendError(ctx, BAD_REQUEST, createError(INVALID_REQUEST, "Upload exceeds the Content-Length"));
+            } catch (Exception e) {
+                log.error("Can't write chunk to the region {}", directRegion, e);
+                directRegion = null;
+                sendError(ctx, BAD_GATEWAY, createError(SERVICE_ERROR, "Upload failed"));
+            }
+        }
+
+        if (chunk instanceof LastHttpContent) {
+            if (null != directRegion) {
+                commitDirectUpload(ctx);
+            }
+            resetDirectUpload();
+        }
+    }
+
+    private void commitDirectUpload(ChannelHandlerContext ctx) {
+        if (!directRegion.isComplete()) {
+            String errorMessage = "Upload is shorter than the Content-Length";
+            log.error(errorMessage);
+            sendError(ctx, BAD_REQUEST, createError(INVALID_REQUEST, errorMessage));
+            return;
+        }
+
+        // the region is kept reserved until the commit, so the partition isn't sealed without it
+        WritableRegion region = directRegion;
+        StorageFile storageFile = directFile;
+        HttpRequest request = this.request;
+        directRegion = null;
+
+        fileStorage.commitAsync(region, storageFile.getMetadata())
+                .thenApply(file -> {
+                    replicationClientService.replicate(file);
+                    return file;
+                })
+                .whenComplete((file, t) -> ctx.executor().execute(() -> {
+                    setContext();
+                    if (null != t) {
+                        log.error("Can't commit the file {}", storageFile.getId(), t);
+                        fileStorage.release(region);
+                        super.sendError(ctx, BAD_GATEWAY, createError(SERVICE_ERROR, "Upload failed"));
+                    } else {
+                        log.info("File {} uploaded to the region {}", storageFile.getId(), region);
+                        writeResponse(ctx, new ReturnValue<>(new Result(storageFile.getId())), request);
+                    }
+                }));
+    }
+
+    private void resetDirectUpload() {
+        if (null != directRegion) {
+            fileStorage.release(directRegion);
+        }
+        directChunks.forEach(HttpContent::release);
+        directChunks.clear();
+        directReservation = null;
+        directUpload = false;
+        directFile = null;
+        directRegion = null;
+        request = null;
+    }
+
     private void jumpToDeleter(ChannelHandlerContext context, HttpObject object) {
         context.pipeline().addBefore("deleter", "aggregator", new HttpObjectAggregator(65536));
         context.pipeline().remove(FileWriterHandler.class);
@@ -312,14 +568,16 @@ public class FileWriterHandler extends BaseFileHandler<HttpObject> {
 
                     addTempIndex(storageFile);
 
-                    // add file to the upload queue
-                    if (!writerTaskQueue.offer(storageFile)) {
+                    // add file to the upload queue of the least loaded disk
+                    Integer disk = diskSelectionPolicy.select().orElse(null);
+                    if (disk == null || !writerTaskQueue.offer(disk, storageFile)) {
                         String errorMessage = "Upload failed";
                         log.error(errorMessage);
                         sendError(ctx, BAD_GATEWAY, createError(SERVICE_ERROR, errorMessage));
                     } else {
-                        log.info("File {} added to the upload queue", id);
-                        writeResponse(ctx, new ReturnValue<>(new Result(id)), request);
+                        log.info("File {} added to the upload queue of disk {}", id, disk);
+
+                        respondWhenDurable(ctx, storageFile, request);
                         return;
                     }
                 } else {
@@ -338,7 +596,23 @@ public class FileWriterHandler extends BaseFileHandler<HttpObject> {
     }
 
     /**
-     * Save a temp index for recovering
+     * The file could be stolen by a writer of another disk, so the response waits for the file to be written
+     * whatever the mode of the selected disk is, the guarantee is the one of the disk it was written to
+     */
+    private void respondWhenDurable(ChannelHandlerContext ctx, StorageFile storageFile, HttpRequest request) {
+        storageFile.getDurable().whenComplete((ignored, t) -> ctx.executor().execute(() -> {
+            if (null == t) {
+                log.info("File {} is durable", storageFile.getId());
+                writeResponse(ctx, new ReturnValue<>(new Result(storageFile.getId())), request);
+            } else {
+                log.error("Can't write the file {}", storageFile.getId(), t);
+                super.sendError(ctx, BAD_GATEWAY, createError(SERVICE_ERROR, "Upload failed"));
+            }
+        }));
+    }
+
+    /**
+     * Stage the file for recovering
      */
     private void addTempIndex(StorageFile storageFile) {
         IndexTempElt indexElt = new IndexTempElt.IndexTempEltBuilder()
@@ -349,6 +623,6 @@ public class FileWriterHandler extends BaseFileHandler<HttpObject> {
                 .file(storageFile.getFile().getAbsolutePath())
                 .build();
 
-        indexService.add(indexElt);
+        stagingJournal.staged(indexElt);
     }
 }
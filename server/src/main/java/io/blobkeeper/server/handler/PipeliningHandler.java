@@ -0,0 +1,118 @@
+package io.blobkeeper.server.handler;
+
+/*
+ * Copyright (C) 2015 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.util.ReferenceCountUtil;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+import static io.netty.handler.codec.http.HttpResponseStatus.CONTINUE;
+
+/**
+ * Keeps the responses of pipelined requests in order. The next request is passed on once the last content
+ * of the previous response is written, the requests decoded meanwhile are queued and reading is suspended.
+ */
+public class PipeliningHandler extends ChannelDuplexHandler {
+    private final Queue<Object> queued = new ArrayDeque<>();
+
+    // a request is passed on and its response is not written yet
+    private boolean responding;
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+        if (!queued.isEmpty() || (responding && msg instanceof HttpRequest)) {
+            queued.add(msg);
+            ctx.channel().config().setAutoRead(false);
+            return;
+        }
+
+        if (msg instanceof HttpRequest) {
+            responding = true;
+        }
+        ctx.fireChannelRead(msg);
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        boolean last = msg instanceof LastHttpContent && !isContinue(msg);
+
+        ctx.write(msg, promise);
+
+        if (last) {
+            responding = false;
+            if (!queued.isEmpty()) {
+                ctx.executor().execute(() -> readQueued(ctx));
+            }
+        }
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        releaseQueued();
+        super.channelInactive(ctx);
+    }
+
+    @Override
+    public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+        releaseQueued();
+    }
+
+    private void readQueued(ChannelHandlerContext ctx) {
+        if (queued.isEmpty()) {
+            return;
+        }
+
+        while (!queued.isEmpty()) {
+            Object msg = queued.peek();
+            if (msg instanceof HttpRequest) {
+                if (responding) {
+                    break;
+                }
+                responding = true;
+            }
+
+            queued.poll();
+            ctx.fireChannelRead(msg);
+        }
+        ctx.fireChannelReadComplete();
+
+        if (queued.isEmpty()) {
+            ctx.channel().config().setAutoRead(true);
+        }
+    }
+
+    private void releaseQueued() {
+        Object msg;
+        while (null != (msg = queued.poll())) {
+            ReferenceCountUtil.release(msg);
+        }
+    }
+
+    private static boolean isContinue(Object msg) {
+        return msg instanceof HttpResponse && ((HttpResponse) msg).getStatus().code() == CONTINUE.code();
+    }
+}
@@ -0,0 +1,128 @@
+package io.blobkeeper.server.handler.api;
+
+/*
+ * Copyright (C) 2015 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.google.common.collect.ImmutableList;
+import io.blobkeeper.cluster.service.ClusterMembershipClient;
+import io.blobkeeper.common.domain.Result;
+import io.blobkeeper.common.domain.api.BulkFileRequest;
+import io.blobkeeper.common.domain.api.ReturnValue;
+import io.blobkeeper.index.domain.CacheKey;
+import io.blobkeeper.index.domain.IndexElt;
+import io.blobkeeper.index.service.IndexService;
+import org.jetbrains.annotations.NotNull;
+import org.slf4j.Logger;
+
+import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static io.blobkeeper.common.domain.Error.createError;
+import static io.blobkeeper.common.domain.ErrorCode.INVALID_REQUEST;
+import static io.blobkeeper.common.domain.ErrorCode.SERVICE_ERROR;
+import static io.blobkeeper.common.util.GuavaCollectors.toImmutableList;
+import static io.blobkeeper.index.domain.IndexElt.DEFAULT_TYPE;
+import static org.slf4j.LoggerFactory.getLogger;
+
+/**
+ * Results are in the order of the requested ids
+ */
+public abstract class BulkRequestHandler extends BaseRequestHandler<List<ReturnValue<Result>>, BulkFileRequest> {
+    private static final Logger log = getLogger(BulkRequestHandler.class);
+
+    private static final int MAX_IDS = 10000;
+
+    @Inject
+    protected IndexService indexService;
+
+    @Inject
+    private ClusterMembershipClient membershipClient;
+
+    protected abstract List<CompletableFuture<List<IndexElt>>> update(@NotNull List<Long> ids);
+
+    @Override
+    protected ReturnValue<List<ReturnValue<Result>>> handlerRequest(@NotNull BulkFileRequest request) {
+        List<Long> ids = request.getIds();
+        if (null == ids || ids.isEmpty() || ids.contains(null)) {
+            log.error("No file ids");
+            return new ReturnValue<>(createError(INVALID_REQUEST, "No ids"));
+        }
+
+        if (ids.size() > MAX_IDS) {
+            log.error("Too many ids {}", ids.size());
+            return new ReturnValue<>(createError(INVALID_REQUEST, "Too many ids, max " + MAX_IDS));
+        }
+
+        List<CompletableFuture<List<IndexElt>>> updated;
+        try {
+            updated = update(ids);
+        } catch (Exception e) {
+            log.error("Unknown error", e);
+            return new ReturnValue<>(createError(SERVICE_ERROR, "Unknown error"));
+        }
+
+        List<ReturnValue<Result>> results = new ArrayList<>(ids.size());
+        List<CacheKey> keys = new ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            long id = ids.get(i);
+            try {
+                List<IndexElt> elts = updated.get(i).join();
+                if (elts.isEmpty()) {
+                    results.add(new ReturnValue<>(createError(INVALID_REQUEST, "Index elt not found")));
+                } else {
+                    results.add(new ReturnValue<>(new Result(id)));
+                    elts.forEach(elt -> keys.add(elt.toCacheKey()));
+                }
+            } catch (CompletionException e) {
+                log.error("Can't update the elt {}", id, e.getCause());
+                results.add(new ReturnValue<>(createError(SERVICE_ERROR, "Unknown error")));
+
+                // the update could be applied partially, the slaves reload every type of the id
+                keys.addAll(getTypeKeys(id));
+            }
+        }
+
+        // the slaves have the own caches and the local index
+        membershipClient.invalidateCache(keys);
+
+        return new ReturnValue<>(results);
+    }
+
+    private List<CacheKey> getTypeKeys(long id) {
+        try {
+            List<CacheKey> keys = indexService.getListById(id).stream()
+                    .map(IndexElt::toCacheKey)
+                    .collect(toImmutableList());
+            if (!keys.isEmpty()) {
+                return keys;
+            }
+        } catch (Exception e) {
+            log.error("Can't get types of the elt {}", id, e);
+        }
+        return ImmutableList.of(new CacheKey(id, DEFAULT_TYPE));
+    }
+
+    @Override
+    protected Class<? extends BulkFileRequest> getRequestClass() {
+        return BulkFileRequest.class;
+    }
+}
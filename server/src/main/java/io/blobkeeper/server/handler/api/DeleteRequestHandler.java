@@ -23,7 +23,6 @@ import io.blobkeeper.cluster.service.ClusterMembershipClient;
 import io.blobkeeper.common.domain.Result;
 import io.blobkeeper.common.domain.api.FileRequest;
 import io.blobkeeper.common.domain.api.ReturnValue;
-import io.blobkeeper.index.configuration.IndexConfiguration;
 import io.blobkeeper.index.domain.IndexElt;
 import io.blobkeeper.index.service.IndexService;
 import io.blobkeeper.server.util.HttpUtils;
@@ -51,9 +50,6 @@ public class DeleteRequestHandler extends BaseRequestHandler<Result, FileRequest
     @Inject
     private ClusterMembershipClient membershipClient;
 
-    @Inject
-    private IndexConfiguration indexConfiguration;
-
     @Override
     protected ReturnValue<Result> handlerRequest(@NotNull FileRequest request) {
         if (HttpUtils.NOT_FOUND == request.getId()) {
@@ -70,9 +66,8 @@ public class DeleteRequestHandler extends BaseRequestHandler<Result, FileRequest
                 // update index, mark that original file and all thumbs were deleted
                 indexService.delete(indexElt);
 
-                if (indexConfiguration.isCacheEnabled()) {
-                    membershipClient.invalidateCache(indexElt.toCacheKey());
-                }
+                // the slaves have the own caches and the local index
+                membershipClient.invalidateCache(indexElt.toCacheKey());
             } else {
                 log.error("Index elt not found");
                 return new ReturnValue<>(createError(INVALID_REQUEST, "Index elt not found"));
@@ -21,9 +21,20 @@ package io.blobkeeper.server.handler.api;
 
 import com.google.inject.ImplementedBy;
 import io.blobkeeper.common.domain.api.ApiRequest;
+import io.blobkeeper.common.domain.api.ReturnValue;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.concurrent.CompletableFuture;
+
 @ImplementedBy(RequestMapperImpl.class)
 public interface RequestMapper {
     RequestHandler<?, ? extends ApiRequest> getByUri(@NotNull String uri);
+
+    boolean hasHandler(@NotNull String uri);
+
+    /**
+     * Handles the request off the event loop, handlers could block on the index and the cluster
+     */
+    @NotNull
+    <T> CompletableFuture<ReturnValue<T>> handleRequestAsync(@NotNull RequestHandler<T, ?> handler, @NotNull String data);
 }
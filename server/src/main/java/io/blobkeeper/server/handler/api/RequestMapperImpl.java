@@ -20,8 +20,10 @@ package io.blobkeeper.server.handler.api;
  */
 
 import com.google.common.collect.ImmutableMap;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.inject.Injector;
 import io.blobkeeper.common.domain.api.ApiRequest;
+import io.blobkeeper.common.domain.api.ReturnValue;
 import io.blobkeeper.common.domain.api.UriType;
 import io.blobkeeper.server.handler.api.master.IsMasterHandler;
 import io.blobkeeper.server.handler.api.master.RemoveMasterHandler;
@@ -34,11 +36,16 @@ import org.jetbrains.annotations.NotNull;
 import javax.inject.Inject;
 import javax.inject.Singleton;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
 
 import static io.blobkeeper.common.domain.api.UriType.*;
+import static java.util.concurrent.CompletableFuture.supplyAsync;
+import static java.util.concurrent.Executors.newFixedThreadPool;
 
 @Singleton
 public class RequestMapperImpl implements RequestMapper {
+    private static final int API_THREADS = 32;
 
     @Inject
     private Injector injector;
@@ -51,8 +58,18 @@ public class RequestMapperImpl implements RequestMapper {
                     .put(REFRESH, RefreshDiskHandler.class)
                     .put(REPAIR, RepairDiskHandler.class)
                     .put(BALANCE, RebalancingDiskHandler.class)
+                    .put(BULK_DELETE, BulkDeleteRequestHandler.class)
+                    .put(BULK_RESTORE, BulkRestoreRequestHandler.class)
                     .build();
 
+    private final ExecutorService apiExecutor = newFixedThreadPool(
+            API_THREADS,
+            new ThreadFactoryBuilder()
+                    .setDaemon(true)
+                    .setNameFormat("ApiRequestHandler-%d")
+                    .build()
+    );
+
     @Override
     public RequestHandler<?, ? extends ApiRequest> getByUri(@NotNull String uri) {
         UriType uriType = UriType.fromUri(uri);
@@ -67,4 +84,16 @@ public class RequestMapperImpl implements RequestMapper {
 
         return injector.getInstance(handlerClass);
     }
+
+    @Override
+    public boolean hasHandler(@NotNull String uri) {
+        UriType uriType = UriType.fromUri(uri);
+        return null != uriType && handlers.containsKey(uriType);
+    }
+
+    @NotNull
+    @Override
+    public <T> CompletableFuture<ReturnValue<T>> handleRequestAsync(@NotNull RequestHandler<T, ?> handler, @NotNull String data) {
+        return supplyAsync(() -> handler.handleRequest(data), apiExecutor);
+    }
 }
@@ -23,6 +23,7 @@ import io.blobkeeper.server.configuration.ServerConfiguration;
 import io.blobkeeper.server.handler.FileDeleteHandler;
 import io.blobkeeper.server.handler.FileReaderHandler;
 import io.blobkeeper.server.handler.FileWriterHandler;
+import io.blobkeeper.server.handler.PipeliningHandler;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelPipeline;
 import io.netty.channel.socket.SocketChannel;
@@ -65,6 +66,7 @@ public class BlobKeeperServerInitializer extends ChannelInitializer<SocketChanne
         ChannelPipeline pipeline = socketChannel.pipeline();
         pipeline.addLast("decoder", new HttpRequestDecoder());
         pipeline.addLast("encoder", new HttpResponseEncoder());
+        pipeline.addLast("pipelining", new PipeliningHandler());
         pipeline.addLast("chunkedWriter", new ChunkedWriteHandler());
         pipeline.addLast("cors", new CorsHandler(corsConfig));
 
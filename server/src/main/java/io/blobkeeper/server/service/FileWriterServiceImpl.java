@@ -21,25 +21,30 @@ package io.blobkeeper.server.service;
 
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import io.blobkeeper.cluster.configuration.ClusterPropertiesConfiguration;
+import io.blobkeeper.cluster.service.ClusterMembershipClient;
 import io.blobkeeper.cluster.service.ClusterMembershipService;
 import io.blobkeeper.cluster.service.CompactionService;
 import io.blobkeeper.cluster.service.RepairService;
 import io.blobkeeper.cluster.service.ReplicationClientService;
+import io.blobkeeper.file.configuration.FileConfiguration;
 import io.blobkeeper.file.domain.Disk;
 import io.blobkeeper.file.domain.ReplicationFile;
 import io.blobkeeper.file.domain.StorageFile;
+import io.blobkeeper.file.service.DiskSelectionPolicy;
 import io.blobkeeper.file.service.DiskService;
 import io.blobkeeper.file.service.FileStorage;
 import io.blobkeeper.file.service.ReplicationQueue;
+import io.blobkeeper.file.service.StagingJournal;
 import io.blobkeeper.file.service.WriterTaskQueue;
+import io.blobkeeper.index.domain.CacheKey;
 import io.blobkeeper.index.domain.IndexTempElt;
-import io.blobkeeper.index.service.IndexService;
 import io.blobkeeper.server.configuration.ServerConfiguration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
@@ -50,7 +55,10 @@ import static com.google.common.base.Preconditions.checkArgument;
 import static com.jayway.awaitility.Awaitility.await;
 import static com.jayway.awaitility.Duration.FIVE_HUNDRED_MILLISECONDS;
 import static java.lang.System.currentTimeMillis;
+import static java.lang.System.nanoTime;
 import static java.lang.Thread.sleep;
+import static java.util.Collections.emptyList;
+import static java.util.Collections.singletonList;
 import static java.util.concurrent.Executors.newScheduledThreadPool;
 import static java.util.concurrent.TimeUnit.MILLISECONDS;
 
@@ -61,12 +69,18 @@ public class FileWriterServiceImpl implements FileWriterService {
     @Inject
     private WriterTaskQueue writerTaskQueue;
 
+    @Inject
+    private DiskSelectionPolicy diskSelectionPolicy;
+
     @Inject
     private FileStorage fileStorage;
 
     @Inject
     private ServerConfiguration configuration;
 
+    @Inject
+    private FileConfiguration fileConfiguration;
+
     @Inject
     private DiskService diskService;
 
@@ -82,6 +96,9 @@ public class FileWriterServiceImpl implements FileWriterService {
     @Inject
     private ClusterMembershipService clusterMembershipService;
 
+    @Inject
+    private ClusterMembershipClient membershipClient;
+
     @Inject
     private CompactionService compactionService;
 
@@ -89,7 +106,7 @@ public class FileWriterServiceImpl implements FileWriterService {
     private ClusterPropertiesConfiguration clusterConfiguration;
 
     @Inject
-    private IndexService indexService;
+    private StagingJournal stagingJournal;
 
     private Map<Integer, ScheduledFuture<?>> disksToWriters = new ConcurrentHashMap<>();
 
@@ -156,11 +173,12 @@ public class FileWriterServiceImpl implements FileWriterService {
     @Override
     public void restore() {
         log.info("Restore files is started");
-        List<IndexTempElt> elts = indexService.getTempIndexList(1024);
+        List<IndexTempElt> elts = stagingJournal.getStaged();
 
+        // spread over the writable disks
         elts.parallelStream().forEach(this::restoreFile);
 
-        log.info("Restore files are scheduled");
+        log.info("Restore files are scheduled {}", elts.size());
     }
 
     @Override
@@ -194,14 +212,24 @@ public class FileWriterServiceImpl implements FileWriterService {
         StorageFile storageFile = null;
         int disk = -1;
         try {
+            java.io.File file = new java.io.File(indexElt.getFile());
+            if (!file.exists()) {
+                log.error("Upload file {} is not found", file);
+                stagingJournal.done(indexElt.getId(), indexElt.getType());
+                return;
+            }
+
             storageFile = new StorageFile.StorageFileBuilder()
-                    .file(new java.io.File(indexElt.getFile()))
+                    .file(file)
                     .id(indexElt.getId())
                     .type(indexElt.getType())
                     .metadata(indexElt.getMetadata())
                     .build();
 
-            writerTaskQueue.offer(storageFile);
+            disk = diskSelectionPolicy.select()
+                    .orElseThrow(() -> new IllegalStateException("No writable disks"));
+
+            writerTaskQueue.offer(disk, storageFile);
         } catch (Exception e) {
             log.error("Can't add file {} to the disk {}", storageFile, disk, e);
         }
@@ -221,6 +249,7 @@ public class FileWriterServiceImpl implements FileWriterService {
 
             while (true) {
                 long writeTimeStarted = 0;
+                List<StorageFile> storageFiles = emptyList();
                 try {
                     Disk disk = diskService.get(this.disk).orElse(null);
 
@@ -231,27 +260,89 @@ public class FileWriterServiceImpl implements FileWriterService {
                         continue;
                     }
 
-                    StorageFile storageFile = writerTaskQueue.take();
+                    storageFiles = writerTaskQueue.take(
+                            this.disk,
+                            fileConfiguration.getWriterBatchMaxFiles(),
+                            fileConfiguration.getWriterBatchMaxWaitMicros()
+                    );
                     checkArgument(clusterMembershipService.isMaster(), "Only master node accepts files!");
 
-                    log.trace("File writing started");
+                    log.trace("File writing started, batch size {}", storageFiles.size());
 
                     writeTimeStarted = currentTimeMillis();
 
-                    if (storageFile.isCompaction()) {
-                        fileStorage.copyFile(this.disk, storageFile);
-                    } else {
-                        ReplicationFile file = fileStorage.addFile(this.disk, storageFile);
-                        replicationClientService.replicate(file);
+                    List<StorageFile> newFiles = new ArrayList<>(storageFiles.size());
+                    for (StorageFile storageFile : storageFiles) {
+                        if (storageFile.isCompaction()) {
+                            copyFile(storageFile);
+                        } else {
+                            newFiles.add(storageFile);
+                        }
+                    }
+
+                    if (!newFiles.isEmpty()) {
+                        addFiles(newFiles);
                     }
                 } catch (Throwable t) {
                     log.error("Can't write file to the storage", t);
-                    // TODO: push back a failed to add storage file?
+
+                    // the waiting clients are failed, not added files are not recovered
+                    storageFiles.stream()
+                            .filter(storageFile -> !storageFile.isCompaction() && !storageFile.getDurable().isDone())
+                            .forEach(storageFile -> fileStorage.discard(storageFile, t));
                 } finally {
                     log.trace("File writing finished {}", currentTimeMillis() - writeTimeStarted);
                 }
             }
         }
+
+        /**
+         * A failed batch is written file by file, so a broken file doesn't fail the others
+         */
+        private void addFiles(List<StorageFile> storageFiles) {
+            try {
+                write(storageFiles);
+            } catch (Exception e) {
+                // not synced files are already failed, they are recovered on start
+                if (storageFiles.size() == 1 || storageFiles.get(0).getDurable().isDone()) {
+                    throw e;
+                }
+
+                log.error("Can't write the batch of {} files, the files are written one by one", storageFiles.size(), e);
+
+                for (StorageFile storageFile : storageFiles) {
+                    if (storageFile.getDurable().isDone()) {
+                        continue;
+                    }
+
+                    try {
+                        write(singletonList(storageFile));
+                    } catch (Exception fileError) {
+                        log.error("Can't write file {} to the disk {}", storageFile, this.disk, fileError);
+                        fileStorage.discard(storageFile, fileError);
+                    }
+                }
+            }
+        }
+
+        private void write(List<StorageFile> storageFiles) {
+            long addTimeStarted = nanoTime();
+            List<ReplicationFile> files = fileStorage.addFiles(this.disk, storageFiles);
+            diskSelectionPolicy.writeFinished(this.disk, (nanoTime() - addTimeStarted) / storageFiles.size());
+
+            files.forEach(replicationClientService::replicate);
+        }
+
+        private void copyFile(StorageFile storageFile) {
+            try {
+                fileStorage.copyFile(this.disk, storageFile);
+
+                // the slaves read the moved file from the old place
+                membershipClient.invalidateCache(new CacheKey(storageFile.getId(), storageFile.getType()));
+            } catch (Exception e) {
+                log.error("Can't copy file {} to the disk {}", storageFile, this.disk, e);
+            }
+        }
     }
 
     private class ReplicationWriterTask implements Runnable {
@@ -0,0 +1,176 @@
+package io.blobkeeper.server.util;
+
+/*
+ * Copyright (C) 2015 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.google.common.base.MoreObjects;
+import com.google.common.collect.ImmutableList;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.google.common.base.Splitter.on;
+import static java.lang.Long.parseLong;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.util.Comparator.comparingLong;
+
+/**
+ * RFC 7233 byte range of a blob, both positions are inclusive
+ */
+public class ByteRange {
+    private static final String BYTES_UNIT = "bytes=";
+
+    // more ranges than that are served as a full body
+    private static final int MAX_RANGES = 16;
+
+    private final long start;
+    private final long end;
+
+    public ByteRange(long start, long end) {
+        this.start = start;
+        this.end = end;
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public long getEnd() {
+        return end;
+    }
+
+    public long getLength() {
+        return end - start + 1;
+    }
+
+    public String getContentRange(long length) {
+        return "bytes " + start + "-" + end + "/" + length;
+    }
+
+    /**
+     * @return null if the header is invalid and must be ignored,
+     * an empty list if none of the ranges is satisfiable,
+     * sorted and coalesced ranges otherwise
+     */
+    @Nullable
+    public static List<ByteRange> parse(@NotNull String header, long length) {
+        String value = header.trim();
+        if (!value.regionMatches(true, 0, BYTES_UNIT, 0, BYTES_UNIT.length())) {
+            return null;
+        }
+
+        List<ByteRange> ranges = new ArrayList<>();
+        for (String spec : on(',').trimResults().omitEmptyStrings().split(value.substring(BYTES_UNIT.length()))) {
+            int dash = spec.indexOf('-');
+            if (dash < 0) {
+                return null;
+            }
+
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+
+            long start, end;
+            try {
+                if (first.isEmpty()) {
+                    // suffix range, the last N bytes
+                    long suffix = parseLong(last);
+                    if (suffix < 0) {
+                        return null;
+                    }
+                    if (suffix == 0) {
+                        continue;
+                    }
+                    start = max(0, length - suffix);
+                    end = length - 1;
+                } else {
+                    start = parseLong(first);
+                    end = last.isEmpty() ? Long.MAX_VALUE : parseLong(last);
+                    if (start < 0 || end < start) {
+                        return null;
+                    }
+                    end = min(end, length - 1);
+                }
+            } catch (NumberFormatException e) {
+                return null;
+            }
+
+            if (start < length) {
+                ranges.add(new ByteRange(start, end));
+            }
+        }
+
+        if (ranges.size() > MAX_RANGES) {
+            return null;
+        }
+
+        return coalesce(ranges);
+    }
+
+    private static List<ByteRange> coalesce(List<ByteRange> ranges) {
+        if (ranges.size() < 2) {
+            return ranges;
+        }
+
+        ranges.sort(comparingLong(ByteRange::getStart));
+
+        ImmutableList.Builder<ByteRange> result = ImmutableList.builder();
+        ByteRange current = ranges.get(0);
+        for (ByteRange range : ranges.subList(1, ranges.size())) {
+            if (range.start <= current.end + 1) {
+                current = new ByteRange(current.start, max(current.end, range.end));
+            } else {
+                result.add(current);
+                current = range;
+            }
+        }
+        result.add(current);
+
+        return result.build();
+    }
+
+    @Override
+    public boolean equals(Object object) {
+        if (this == object) {
+            return true;
+        }
+
+        if (!(object instanceof ByteRange)) {
+            return false;
+        }
+
+        ByteRange o = (ByteRange) object;
+        return start == o.start && end == o.end;
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Long.hashCode(start) + Long.hashCode(end);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .addValue(start)
+                .addValue(end)
+                .toString();
+    }
+}
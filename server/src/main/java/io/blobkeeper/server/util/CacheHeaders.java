@@ -0,0 +1,125 @@
+package io.blobkeeper.server.util;
+
+/*
+ * Copyright (C) 2015 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import io.blobkeeper.index.domain.IndexElt;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static com.google.common.base.Splitter.on;
+import static java.util.concurrent.TimeUnit.DAYS;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Validators and caching headers of a blob, the blob is never changed in place.
+ * Headers of the hot blobs are kept in the direct mapped cache, so a conditional GET doesn't build them again.
+ */
+public class CacheHeaders {
+    private static final int EXPIRE_DAYS = 365;
+
+    public static final String CACHE_CONTROL = "max-age=" + DAYS.toSeconds(EXPIRE_DAYS);
+
+    // power of two
+    private static final int CACHE_SIZE = 4096;
+
+    private static final AtomicReferenceArray<CacheHeaders> cache = new AtomicReferenceArray<>(CACHE_SIZE);
+
+    private final long id;
+    private final int type;
+    private final long crc;
+    private final long created;
+    private final long lastModifiedSecond;
+    private final String lastModified;
+    private final String expires;
+    private final String etag;
+
+    private CacheHeaders(IndexElt elt) {
+        this.id = elt.getId();
+        this.type = elt.getType();
+        this.crc = elt.getCrc();
+        this.created = elt.getCreated();
+        this.lastModifiedSecond = MILLISECONDS.toSeconds(created);
+        this.lastModified = HttpDates.format(lastModifiedSecond);
+        this.expires = HttpDates.format(lastModifiedSecond + DAYS.toSeconds(EXPIRE_DAYS));
+        // strong, the same content always has the same crc
+        this.etag = '"' + Long.toHexString(id) + '-' + type + '-' + Long.toHexString(crc) + '"';
+    }
+
+    @NotNull
+    public static CacheHeaders of(@NotNull IndexElt elt) {
+        int index = (Long.hashCode(elt.getId()) * 31 + elt.getType()) & (CACHE_SIZE - 1);
+
+        CacheHeaders headers = cache.get(index);
+        if (null == headers || !headers.isOf(elt)) {
+            headers = new CacheHeaders(elt);
+            cache.set(index, headers);
+        }
+        return headers;
+    }
+
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    public String getExpires() {
+        return expires;
+    }
+
+    public String getETag() {
+        return etag;
+    }
+
+    /**
+     * Weak comparison of If-None-Match
+     */
+    public boolean isNoneMatch(@NotNull String ifNoneMatch) {
+        // a single tag sent back by a client
+        if (etag.equals(ifNoneMatch)) {
+            return false;
+        }
+
+        for (String tag : on(',').trimResults().omitEmptyStrings().split(ifNoneMatch)) {
+            if (tag.equals("*") || etag.equals(tag.startsWith("W/") ? tag.substring(2) : tag)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean isModifiedSince(@NotNull String ifModifiedSince) {
+        long since = HttpDates.parse(ifModifiedSince);
+        return since == HttpDates.INVALID || lastModifiedSecond > since;
+    }
+
+    /**
+     * Strong comparison of If-Range, the validator is either the etag or the last modified date
+     */
+    public boolean isRangeActual(@NotNull String ifRange) {
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            return etag.equals(ifRange);
+        }
+        return HttpDates.parse(ifRange) == lastModifiedSecond;
+    }
+
+    private boolean isOf(IndexElt elt) {
+        return id == elt.getId() && type == elt.getType() && crc == elt.getCrc() && created == elt.getCreated();
+    }
+}
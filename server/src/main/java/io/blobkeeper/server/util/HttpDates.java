@@ -0,0 +1,94 @@
+package io.blobkeeper.server.util;
+
+/*
+ * Copyright (C) 2015 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import org.jetbrains.annotations.NotNull;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static java.time.ZonedDateTime.from;
+
+/**
+ * RFC 1123 dates of the http headers with a second precision.
+ * Formatted and parsed dates are kept in the direct mapped caches, so the hot dates are not formatted or parsed again.
+ */
+public class HttpDates {
+    public static final long INVALID = Long.MIN_VALUE;
+
+    public static final DateTimeFormatter RFC1123_FORMATTER = DateTimeFormatter.RFC_1123_DATE_TIME
+            .withLocale(Locale.US)
+            .withZone(ZoneId.of("GMT"));
+
+    // power of two
+    private static final int CACHE_SIZE = 1024;
+
+    private static final AtomicReferenceArray<Date> formatted = new AtomicReferenceArray<>(CACHE_SIZE);
+    private static final AtomicReferenceArray<Date> parsed = new AtomicReferenceArray<>(CACHE_SIZE);
+
+    private HttpDates() {
+    }
+
+    @NotNull
+    public static String format(long epochSecond) {
+        int index = (int) (epochSecond & (CACHE_SIZE - 1));
+
+        Date date = formatted.get(index);
+        if (null == date || date.epochSecond != epochSecond) {
+            date = new Date(epochSecond, RFC1123_FORMATTER.format(Instant.ofEpochSecond(epochSecond)));
+            formatted.set(index, date);
+        }
+        return date.value;
+    }
+
+    /**
+     * @return epoch second of the date or {@link #INVALID}
+     */
+    public static long parse(@NotNull String value) {
+        int index = value.hashCode() & (CACHE_SIZE - 1);
+
+        Date date = parsed.get(index);
+        if (null == date || !date.value.equals(value)) {
+            long epochSecond;
+            try {
+                epochSecond = from(RFC1123_FORMATTER.parse(value)).toEpochSecond();
+            } catch (Exception e) {
+                epochSecond = INVALID;
+            }
+
+            date = new Date(epochSecond, value);
+            parsed.set(index, date);
+        }
+        return date.epochSecond;
+    }
+
+    private static class Date {
+        private final long epochSecond;
+        private final String value;
+
+        Date(long epochSecond, String value) {
+            this.epochSecond = epochSecond;
+            this.value = value;
+        }
+    }
+}
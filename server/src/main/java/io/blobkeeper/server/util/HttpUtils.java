@@ -1,14 +1,18 @@
 package io.blobkeeper.server.util;
 
 import io.blobkeeper.file.domain.StorageFile;
+import io.blobkeeper.index.domain.CacheKey;
 import io.netty.handler.codec.http.multipart.FileUpload;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import static com.google.common.base.Splitter.on;
 import static java.util.regex.Pattern.compile;
 
 /*
@@ -36,6 +40,7 @@ public class HttpUtils {
     private static final Pattern idPattern = compile("/([0-9]{17,19})");
     private static final Pattern typePattern = compile("/([0-9]{17,19})/([0-9]{1,3})");
     private static final Pattern apiTokenPattern = compile("token=([0-9A-Za-z]{40})");
+    private static final Pattern keyPattern = compile("([0-9]{17,19})/([0-9]{1,3})");
 
     private HttpUtils() {
     }
@@ -67,6 +72,23 @@ public class HttpUtils {
         return matcher.group(1);
     }
 
+    /**
+     * @param ids comma separated id/type pairs
+     * @return null if any of the pairs is invalid
+     */
+    public static List<CacheKey> getKeys(@NotNull String ids) {
+        List<CacheKey> keys = new ArrayList<>();
+        for (String pair : on(',').trimResults().omitEmptyStrings().split(ids)) {
+            Matcher matcher = keyPattern.matcher(pair);
+            if (!matcher.matches()) {
+                return null;
+            }
+
+            keys.add(new CacheKey(Long.parseLong(matcher.group(1)), Integer.parseInt(matcher.group(2))));
+        }
+        return keys;
+    }
+
     public static StorageFile.StorageFileBuilder buildStorageFile(@NotNull FileUpload file) {
         StorageFile.StorageFileBuilder builder = new StorageFile.StorageFileBuilder()
                 .name(file.getName());
@@ -66,7 +66,10 @@ public class MetadataParser {
     }
 
     public static void copyMetadata(@NotNull Multimap<String, String> headers, @NotNull HttpResponse response) {
-        HttpHeaders httpHeaders = response.headers();
+        copyMetadata(headers, response.headers());
+    }
+
+    public static void copyMetadata(@NotNull Multimap<String, String> headers, @NotNull HttpHeaders httpHeaders) {
         for (Map.Entry<String, String> elt : headers.entries()) {
             if (elt.getKey().equals(AUTH_TOKEN_HEADER)) {
                 continue;
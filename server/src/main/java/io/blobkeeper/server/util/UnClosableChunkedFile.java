@@ -0,0 +1,41 @@
+package io.blobkeeper.server.util;
+
+/*
+ * Copyright (C) 2015 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import io.netty.handler.stream.ChunkedNioFile;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+/**
+ * Chunked reads of a blob for the channels which can't transfer a file region directly (e.g. SSL)
+ */
+public class UnClosableChunkedFile extends ChunkedNioFile {
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    public UnClosableChunkedFile(FileChannel file, long position, long count) throws IOException {
+        super(file, position, count, CHUNK_SIZE);
+    }
+
+    @Override
+    public void close() throws Exception {
+        /*_*/
+    }
+}
@@ -21,20 +21,25 @@ package io.blobkeeper.server;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableMultimap;
 import io.blobkeeper.client.service.BlobKeeperClient;
 import io.blobkeeper.client.service.BlobKeeperClientImpl;
 import io.blobkeeper.client.util.BlobKeeperClientUtils;
 import io.blobkeeper.common.configuration.MetricModule;
 import io.blobkeeper.common.configuration.RootModule;
 import io.blobkeeper.common.domain.Result;
+import io.blobkeeper.common.domain.api.BulkFileRequest;
 import io.blobkeeper.common.domain.api.EmptyRequest;
 import io.blobkeeper.common.domain.api.MasterNode;
 import io.blobkeeper.common.domain.api.RefreshDiskRequest;
 import io.blobkeeper.common.domain.api.SetMasterApiRequest;
+import io.blobkeeper.common.service.IdGeneratorService;
 import io.blobkeeper.common.util.TokenUtils;
 import io.blobkeeper.file.configuration.FileConfiguration;
 import io.blobkeeper.file.service.FileListService;
+import io.blobkeeper.index.domain.CacheKey;
 import io.blobkeeper.index.domain.IndexElt;
 import io.blobkeeper.index.service.IndexCacheService;
 import io.blobkeeper.index.service.IndexService;
@@ -58,13 +63,17 @@ import javax.inject.Inject;
 import java.io.File;
 import java.io.FileFilter;
 import java.io.IOException;
+import java.net.Socket;
+import java.net.URL;
 
 import static com.google.common.base.Strings.repeat;
+import static com.google.common.io.ByteStreams.toByteArray;
 import static com.google.common.io.Files.write;
 import static io.blobkeeper.file.util.FileUtils.getDiskPathByDisk;
 import static io.blobkeeper.server.TestUtils.assertResponseOk;
 import static java.io.File.createTempFile;
 import static java.nio.charset.Charset.forName;
+import static java.nio.charset.StandardCharsets.US_ASCII;
 import static org.testng.Assert.*;
 
 @Guice(modules = {RootModule.class, ServerModule.class, MetricModule.class})
@@ -98,6 +107,9 @@ public class BasicOperationTest {
     @Inject
     private BlobKeeperClientUtils clientUtils;
 
+    @Inject
+    private IdGeneratorService generatorService;
+
     private BlobKeeperClient client;
 
     @Test
@@ -310,6 +322,151 @@ public class BasicOperationTest {
         assertEquals(getResponse.getContentType(), "text/plain");
     }
 
+    @Test
+    public void getNotModifiedFileByETag() throws Exception {
+        File file = createTempFile(this.getClass().getName(), "");
+        write("test", file, forName("UTF-8"));
+
+        Response postResponse = client.addFile(file, ImmutableMap.of("X-Metadata-Content-Type", "text/plain"));
+
+        assertEquals(postResponse.getStatusCode(), 200);
+
+        Result result = jsonUtils.getFromJson(postResponse.getResponseBody());
+        assertNotNull(result.getIdLong());
+        long givenId = result.getIdLong();
+
+        Response getResponse = client.getFile(givenId, 0);
+        assertResponseOk(getResponse, "test", "text/plain");
+
+        String etag = getResponse.getHeader("ETag");
+        assertNotNull(etag);
+        assertTrue(etag.startsWith("\"" + Long.toHexString(givenId) + "-0-"));
+
+        String url = serverConfiguration.getBaseUrl().toString() + "/" + givenId + "/0";
+        AsyncHttpClient httpClient = new DefaultAsyncHttpClient();
+
+        getResponse = httpClient.prepareGet(url)
+                .addHeader("If-None-Match", "\"other\", W/" + etag)
+                .execute()
+                .get();
+
+        assertEquals(getResponse.getStatusCode(), 304);
+        assertEquals(getResponse.getResponseBody(), "");
+        assertEquals(getResponse.getHeader("ETag"), etag);
+
+        // If-None-Match takes precedence over If-Modified-Since
+        getResponse = httpClient.prepareGet(url)
+                .addHeader("If-None-Match", "\"other\"")
+                .addHeader("If-Modified-Since", getResponse.getHeader("Last-Modified"))
+                .execute()
+                .get();
+
+        assertResponseOk(getResponse, "test", "text/plain");
+
+        getResponse = httpClient.prepareGet(url)
+                .addHeader("Range", "bytes=1-2")
+                .addHeader("If-Range", etag)
+                .execute()
+                .get();
+
+        assertEquals(getResponse.getStatusCode(), 206);
+        assertEquals(getResponse.getResponseBody(), "es");
+    }
+
+    @Test
+    public void getFiles() throws Exception {
+        File file1 = createTempFile(this.getClass().getName(), "");
+        write("first", file1, forName("UTF-8"));
+        File file2 = createTempFile(this.getClass().getName(), "");
+        write("second", file2, forName("UTF-8"));
+
+        long givenId1 = jsonUtils.getFromJson(
+                client.addFile(file1, ImmutableMap.of("X-Metadata-Content-Type", "text/plain")).getResponseBody()
+        ).getIdLong();
+        long givenId2 = jsonUtils.getFromJson(
+                client.addFile(file2, ImmutableMap.of("X-Metadata-Content-Type", "text/html")).getResponseBody()
+        ).getIdLong();
+
+        Response getResponse = client.getFiles(ImmutableMultimap.of(givenId1, 0, givenId2, 0, 424242424242424242L, 6));
+
+        assertEquals(getResponse.getStatusCode(), 200);
+        assertTrue(getResponse.getContentType().startsWith("multipart/mixed; boundary="));
+
+        String body = getResponse.getResponseBody();
+        assertTrue(body.contains(
+                "Content-Location: /" + givenId1 + "/0\r\nX-Blob-Status: 200\r\nContent-Type: text/plain\r\nContent-Length: 5\r\n\r\nfirst\r\n"
+        ));
+        assertTrue(body.contains(
+                "Content-Location: /" + givenId2 + "/0\r\nX-Blob-Status: 200\r\nContent-Type: text/html\r\nContent-Length: 6\r\n\r\nsecond\r\n"
+        ));
+        assertTrue(body.contains(
+                "Content-Location: /424242424242424242/6\r\nX-Blob-Status: 404\r\nContent-Length: 0\r\n\r\n"
+        ));
+    }
+
+    @Test
+    public void getFileRanges() throws Exception {
+        File file = createTempFile(this.getClass().getName(), "");
+        write("0123456789", file, forName("UTF-8"));
+
+        Response postResponse = client.addFile(file, ImmutableMap.of("X-Metadata-Content-Type", "text/plain"));
+
+        assertEquals(postResponse.getStatusCode(), 200);
+
+        Result result = jsonUtils.getFromJson(postResponse.getResponseBody());
+        assertNotNull(result.getIdLong());
+        long givenId = result.getIdLong();
+
+        String url = serverConfiguration.getBaseUrl().toString() + "/" + givenId + "/0";
+        AsyncHttpClient httpClient = new DefaultAsyncHttpClient();
+
+        Response getResponse = httpClient.prepareGet(url)
+                .addHeader("Range", "bytes=2-4")
+                .execute()
+                .get();
+
+        assertEquals(getResponse.getStatusCode(), 206);
+        assertEquals(getResponse.getResponseBody(), "234");
+        assertEquals(getResponse.getHeader("Content-Range"), "bytes 2-4/10");
+        assertEquals(getResponse.getHeader("Accept-Ranges"), "bytes");
+
+        getResponse = httpClient.prepareGet(url)
+                .addHeader("Range", "bytes=0-1,-2")
+                .execute()
+                .get();
+
+        assertEquals(getResponse.getStatusCode(), 206);
+        assertTrue(getResponse.getContentType().startsWith("multipart/byteranges; boundary="));
+        assertTrue(getResponse.getResponseBody().contains("Content-Range: bytes 0-1/10\r\n\r\n01\r\n"));
+        assertTrue(getResponse.getResponseBody().contains("Content-Range: bytes 8-9/10\r\n\r\n89\r\n"));
+
+        getResponse = httpClient.prepareGet(url)
+                .addHeader("Range", "bytes=10-")
+                .execute()
+                .get();
+
+        assertEquals(getResponse.getStatusCode(), 416);
+        assertEquals(getResponse.getHeader("Content-Range"), "bytes */10");
+
+        // the blob is changed since the given date
+        getResponse = httpClient.prepareGet(url)
+                .addHeader("Range", "bytes=2-4")
+                .addHeader("If-Range", "Thu, 01 Jan 2015 00:00:00 GMT")
+                .execute()
+                .get();
+
+        assertResponseOk(getResponse, "0123456789", "text/plain");
+
+        getResponse = httpClient.prepareGet(url)
+                .addHeader("Range", "bytes=2-4")
+                .addHeader("If-Range", getResponse.getHeader("Last-Modified"))
+                .execute()
+                .get();
+
+        assertEquals(getResponse.getStatusCode(), 206);
+        assertEquals(getResponse.getResponseBody(), "234");
+    }
+
     @Test
     public void modifyFile() throws Exception {
         File file = createTempFile(this.getClass().getName(), "");
@@ -428,6 +585,58 @@ public class BasicOperationTest {
         assertEquals(postResponse.getStatusCode(), 409);
     }
 
+    @Test
+    public void directUpload() throws Exception {
+        AsyncHttpClient httpClient = new DefaultAsyncHttpClient();
+
+        BoundRequestBuilder boundRequestBuilder = httpClient.preparePost(serverConfiguration.getBaseUrl().toString());
+        boundRequestBuilder
+                .addHeader("X-Metadata-Content-Type", "text/plain")
+                .setBody("test");
+        Response postResponse = httpClient.executeRequest(boundRequestBuilder.build()).get();
+
+        assertEquals(postResponse.getStatusCode(), 200);
+        assertTrue(postResponse.getResponseBody().contains("\"result\":{\"id\""));
+
+        Result result = jsonUtils.getFromJson(postResponse.getResponseBody());
+        assertNotNull(result.getIdLong());
+
+        Response getResponse = client.getFile(result.getIdLong(), 0);
+        assertResponseOk(getResponse, "test", "text/plain");
+
+        httpClient.close();
+    }
+
+    @Test
+    public void directUploadOfGivenId() throws Exception {
+        AsyncHttpClient httpClient = new DefaultAsyncHttpClient();
+
+        // the region is reserved off the event loop after the lookup of the given id
+        String data = "test";
+        long givenId = generatorService.generate(1);
+        String url = serverConfiguration.getBaseUrl() + "/" + givenId + "/1";
+
+        Response postResponse = httpClient.executeRequest(
+                httpClient.preparePost(url)
+                        .addHeader("X-Metadata-Content-Type", "text/plain")
+                        .setBody(data)
+                        .build()
+        ).get();
+        assertEquals(postResponse.getStatusCode(), 200);
+
+        assertResponseOk(client.getFile(givenId, 1), data, "text/plain");
+
+        postResponse = httpClient.executeRequest(
+                httpClient.preparePost(url)
+                        .addHeader("X-Metadata-Content-Type", "text/plain")
+                        .setBody(data)
+                        .build()
+        ).get();
+        assertEquals(postResponse.getStatusCode(), 409);
+
+        httpClient.close();
+    }
+
     @Test
     public void invalidUploadRequest() throws Exception {
         AsyncHttpClient httpClient = new DefaultAsyncHttpClient();
@@ -502,6 +711,53 @@ public class BasicOperationTest {
         assertEquals(deleteResponse.getStatusCode(), 400);
     }
 
+    @Test
+    public void deleteAndRestoreFiles() throws Exception {
+        File file = createTempFile(this.getClass().getName(), "");
+        write("testtest", file, forName("UTF-8"));
+
+        long firstId = jsonUtils.getFromJson(
+                client.addFile(file, ImmutableMap.of("X-Metadata-Content-Type", "text/plain")).getResponseBody()
+        ).getIdLong();
+        long secondId = jsonUtils.getFromJson(
+                client.addFile(file, ImmutableMap.of("X-Metadata-Content-Type", "text/plain")).getResponseBody()
+        ).getIdLong();
+
+        BulkFileRequest request = new BulkFileRequest();
+        request.setIds(ImmutableList.of(firstId, secondId + 1, secondId));
+
+        // invalid token
+        Response deleteResponse = client.deleteFiles(request);
+        assertEquals(deleteResponse.getStatusCode(), 400);
+
+        request.setToken(serverConfiguration.getApiToken());
+
+        deleteResponse = client.deleteFiles(request);
+        assertEquals(deleteResponse.getStatusCode(), 200);
+        assertEquals(
+                deleteResponse.getResponseBody(),
+                "{\"result\":[{\"result\":{\"id\":\"" + firstId + "\"}}," +
+                        "{\"error\":{\"code\":\"INVALID_REQUEST\",\"message\":\"Index elt not found\"}}," +
+                        "{\"result\":{\"id\":\"" + secondId + "\"}}]}"
+        );
+
+        assertEquals(client.getFile(firstId, 0).getStatusCode(), 410);
+        assertEquals(client.getFile(secondId, 0).getStatusCode(), 410);
+
+        request.setIds(ImmutableList.of(secondId));
+
+        Response restoreResponse = client.restoreFiles(request);
+        assertEquals(restoreResponse.getStatusCode(), 200);
+        assertEquals(restoreResponse.getResponseBody(), "{\"result\":[{\"result\":{\"id\":\"" + secondId + "\"}}]}");
+
+        assertEquals(client.getFile(firstId, 0).getStatusCode(), 410);
+        assertResponseOk(client.getFile(secondId, 0), "testtest", "text/plain");
+
+        // no ids
+        request.setIds(ImmutableList.of());
+        assertEquals(client.deleteFiles(request).getStatusCode(), 400);
+    }
+
     @Test
     public void setInvalidMaster() throws IOException {
         AsyncHttpClient httpClient = new DefaultAsyncHttpClient();
@@ -538,6 +794,34 @@ public class BasicOperationTest {
         httpClient.close();
     }
 
+    @Test
+    public void pipelinedRequestsAreAnsweredInOrder() throws Exception {
+        File file = createTempFile(this.getClass().getName(), "");
+        write("first", file, forName("UTF-8"));
+        Result first = jsonUtils.getFromJson(client.addFile(file, ImmutableMap.of("X-Metadata-Content-Type", "text/plain")).getResponseBody());
+
+        write("second", file, forName("UTF-8"));
+        Result second = jsonUtils.getFromJson(client.addFile(file, ImmutableMap.of("X-Metadata-Content-Type", "text/plain")).getResponseBody());
+
+        // the second is answered inline from the cache, the first waits for the index
+        assertResponseOk(client.getFile(second.getIdLong(), 0), "second", "text/plain");
+        indexCacheService.remove(new CacheKey(first.getIdLong(), 0));
+
+        URL baseUrl = serverConfiguration.getBaseUrl();
+        try (Socket socket = new Socket(baseUrl.getHost(), baseUrl.getPort())) {
+            socket.setSoTimeout(10000);
+
+            String requests = "GET /" + first.getIdLong() + "/0 HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                    + "GET /" + second.getIdLong() + "/0 HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n";
+            socket.getOutputStream().write(requests.getBytes(US_ASCII));
+            socket.getOutputStream().flush();
+
+            String responses = new String(toByteArray(socket.getInputStream()), US_ASCII);
+            assertTrue(responses.indexOf("first") > 0);
+            assertTrue(responses.indexOf("first") < responses.indexOf("second"));
+        }
+    }
+
     @Test
     public void masterIsRequired() throws Exception {
         AsyncHttpClient httpClient = new DefaultAsyncHttpClient();
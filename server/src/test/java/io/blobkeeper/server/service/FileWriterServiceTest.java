@@ -31,6 +31,7 @@ import io.blobkeeper.file.configuration.FileConfiguration;
 import io.blobkeeper.file.configuration.FileModule;
 import io.blobkeeper.file.domain.StorageFile;
 import io.blobkeeper.file.service.BaseFileTest;
+import io.blobkeeper.file.service.StagingJournal;
 import io.blobkeeper.file.service.WriterTaskQueue;
 import io.blobkeeper.index.domain.IndexTempElt;
 import io.blobkeeper.index.service.IndexService;
@@ -46,18 +47,21 @@ import javax.inject.Inject;
 import javax.inject.Singleton;
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
 
 import static com.google.common.io.Files.write;
 import static com.jayway.awaitility.Awaitility.await;
 import static com.jayway.awaitility.Duration.FIVE_HUNDRED_MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.joda.time.DateTime.now;
 import static org.joda.time.DateTimeZone.UTC;
 import static org.mockito.Mockito.when;
-import static org.testng.Assert.assertEquals;
-import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.*;
 
 @Guice(modules = {RootModule.class, FileWriterServiceTest.Mocks.class, MetricModule.class, FileModule.class})
 public class FileWriterServiceTest extends BaseFileTest {
@@ -81,6 +85,9 @@ public class FileWriterServiceTest extends BaseFileTest {
     @Inject
     private WriterTaskQueue writerTaskQueue;
 
+    @Inject
+    private StagingJournal stagingJournal;
+
     @Test
     public void repair() throws IOException, InterruptedException {
         when(clusterMembershipService.isMaster()).thenReturn(true);
@@ -110,7 +117,7 @@ public class FileWriterServiceTest extends BaseFileTest {
                     .file(storageFile.getFile().getAbsolutePath())
                     .build();
 
-            indexService.add(indexElt);
+            stagingJournal.staged(indexElt);
         }
 
         // restore
@@ -123,7 +130,7 @@ public class FileWriterServiceTest extends BaseFileTest {
                 });
 
         assertUploadDirectoryIsEmpty();
-        assertTrue(indexService.getTempIndexList(1024).isEmpty());
+        assertTrue(stagingJournal.getStaged().isEmpty());
 
         long foundElt = ids.stream()
                 .map(id -> indexService.getById(id, 0))
@@ -133,9 +140,52 @@ public class FileWriterServiceTest extends BaseFileTest {
         assertEquals(foundElt, 128);
     }
 
+    @Test
+    public void brokenFileOfBatch() throws Exception {
+        when(clusterMembershipService.isMaster()).thenReturn(true);
+
+        List<StorageFile> storageFiles = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            java.io.File file = new java.io.File(fileConfiguration.getUploadPath() + "4321" + i);
+            write("4242", file, Charsets.UTF_8);
+
+            storageFiles.add(new StorageFile.StorageFileBuilder()
+                    .id(generatorService.generate(1))
+                    .type(0)
+                    .name("test")
+                    .file(file)
+                    .headers(ImmutableMultimap.<String, String>of())
+                    .build());
+        }
+
+        // the upload is lost after it's queued
+        StorageFile brokenFile = storageFiles.get(1);
+        assertTrue(brokenFile.getFile().delete());
+
+        storageFiles.forEach(storageFile -> writerTaskQueue.offer(0, storageFile));
+
+        fileWriterService.start();
+
+        storageFiles.get(0).getDurable().get(5, SECONDS);
+        storageFiles.get(2).getDurable().get(5, SECONDS);
+
+        try {
+            brokenFile.getDurable().get(5, SECONDS);
+            fail("Broken file is written");
+        } catch (ExecutionException expected) {
+        }
+
+        assertNotNull(indexService.getById(storageFiles.get(0).getId(), 0));
+        assertNull(indexService.getById(brokenFile.getId(), 0));
+        assertNotNull(indexService.getById(storageFiles.get(2).getId(), 0));
+
+        assertUploadDirectoryIsEmpty();
+    }
+
     @BeforeMethod(dependsOnMethods = {"deleteFiles"})
     private void start() throws InterruptedException {
         indexService.clear();
+        stagingJournal.clear();
     }
 
     @AfterMethod
@@ -144,8 +194,9 @@ public class FileWriterServiceTest extends BaseFileTest {
     }
 
     private void assertUploadDirectoryIsEmpty() {
+        // journals are kept in the upload directory
         assertEquals(new File(fileConfiguration.getUploadPath())
-                .list().length, 0);
+                .listFiles(File::isFile).length, 0);
     }
 
     public static class Mocks extends AbstractModule {
@@ -0,0 +1,74 @@
+package io.blobkeeper.server.util;
+
+/*
+ * Copyright (C) 2015 by Denis M. Gabaydulin
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import com.google.common.collect.ImmutableList;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertTrue;
+
+public class ByteRangeTest {
+
+    @Test
+    public void singleRange() {
+        assertEquals(ByteRange.parse("bytes=0-9", 100), ImmutableList.of(new ByteRange(0, 9)));
+        assertEquals(ByteRange.parse("bytes=90-", 100), ImmutableList.of(new ByteRange(90, 99)));
+        assertEquals(ByteRange.parse("bytes=-10", 100), ImmutableList.of(new ByteRange(90, 99)));
+        assertEquals(ByteRange.parse("bytes=90-1000", 100), ImmutableList.of(new ByteRange(90, 99)));
+        assertEquals(ByteRange.parse("bytes=-1000", 100), ImmutableList.of(new ByteRange(0, 99)));
+    }
+
+    @Test
+    public void multipleRanges() {
+        assertEquals(
+                ByteRange.parse("bytes=50-59, 0-9", 100),
+                ImmutableList.of(new ByteRange(0, 9), new ByteRange(50, 59))
+        );
+
+        // overlapped and adjacent ranges are coalesced
+        assertEquals(
+                ByteRange.parse("bytes=0-9,5-19,20-29,-10", 100),
+                ImmutableList.of(new ByteRange(0, 29), new ByteRange(90, 99))
+        );
+    }
+
+    @Test
+    public void notSatisfiable() {
+        assertTrue(ByteRange.parse("bytes=100-", 100).isEmpty());
+        assertTrue(ByteRange.parse("bytes=-0", 100).isEmpty());
+        assertTrue(ByteRange.parse("bytes=0-", 0).isEmpty());
+    }
+
+    @Test
+    public void ignored() {
+        assertNull(ByteRange.parse("items=0-9", 100));
+        assertNull(ByteRange.parse("bytes=9-0", 100));
+        assertNull(ByteRange.parse("bytes=a-b", 100));
+        assertNull(ByteRange.parse("bytes=10", 100));
+    }
+
+    @Test
+    public void contentRange() {
+        assertEquals(new ByteRange(0, 9).getContentRange(100), "bytes 0-9/100");
+        assertEquals(new ByteRange(0, 9).getLength(), 10);
+    }
+}